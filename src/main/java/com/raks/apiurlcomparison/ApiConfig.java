@@ -22,6 +22,9 @@ public class ApiConfig {
     @JsonProperty("operations")
     private List<Operation> operations;
 
+    @JsonProperty("transport")
+    private String transport; // "APACHE" (default) or "HTTP2"
+
     // Getters
     public String getBaseUrl() {
         return baseUrl;
@@ -35,6 +38,10 @@ public class ApiConfig {
         return operations;
     }
 
+    public String getTransport() {
+        return transport;
+    }
+
     // Setters
     public void setBaseUrl(String baseUrl) {
         this.baseUrl = baseUrl;
@@ -48,6 +55,10 @@ public class ApiConfig {
         this.operations = operations;
     }
 
+    public void setTransport(String transport) {
+        this.transport = transport;
+    }
+
     // This helper method is no longer directly applicable to ApiConfig as headers
     // are now defined per operation.
     // It might be moved to the Operation class if needed for templating.
@@ -7,7 +7,6 @@ import org.slf4j.LoggerFactory;
 import picocli.CommandLine;
 
 import java.io.File;
-import java.util.List;
 import java.util.concurrent.Callable;
 
 @CommandLine.Command(name = "apiurlcomparison", mixinStandardHelpOptions = true, version = "1.0")
@@ -23,6 +22,14 @@ public class ApiUrlComparisonMain implements Callable<Integer> {
             "--output" }, description = "Path for the output JSON report", defaultValue = "results.json")
     private String outputReportPath;
 
+    @CommandLine.Option(names = {
+            "--convert-baselines" }, description = "Convert all baselines in the configured storage directory to the packed format, then exit")
+    private boolean convertBaselines;
+
+    @CommandLine.Option(names = {
+            "--rebuild-catalog" }, description = "Rebuild the baseline catalog from the runs in the configured storage directory, then exit")
+    private boolean rebuildCatalog;
+
     @Override
     public Integer call() throws Exception {
         logger.info("Starting API URL Comparison Tool (CLI)...");
@@ -32,18 +39,43 @@ public class ApiUrlComparisonMain implements Callable<Integer> {
         Config config = mapper.readValue(configFile, Config.class);
         logger.info("Configuration loaded successfully from: {}", configFile.getAbsolutePath());
 
-        // 2. Execute Comparison
+        if (convertBaselines) {
+            String storageDir = config.getBaseline() != null ? config.getBaseline().getStorageDir() : "baselines";
+            // Compression and deduplication as configured for new captures
+            BaselineStorageService storage = config.getBaseline() != null
+                    ? BaselineStorageService.from(config.getBaseline())
+                    : new BaselineStorageService(storageDir);
+            int converted = storage.convertAllToPacked();
+            logger.info("Converted {} baseline run(s) in {} to the packed format", converted, storageDir);
+            return 0;
+        }
+
+        if (rebuildCatalog) {
+            String storageDir = config.getBaseline() != null ? config.getBaseline().getStorageDir() : "baselines";
+            int runs = new BaselineStorageService(storageDir).rebuildCatalog();
+            logger.info("Rebuilt the baseline catalog of {} with {} run(s)", storageDir, runs);
+            return 0;
+        }
+
+        // 2. Execute Comparison, streaming results to a JSON Lines log next to the report
+        File jsonReportPath = HtmlReportGenerator.resolveJsonReportFile(outputReportPath);
+        File resultsLog = new File(jsonReportPath.getAbsoluteFile().getParentFile(),
+                jsonReportPath.getName().replaceFirst("[.][^.]+$", "") + ".jsonl");
         ComparisonService service = new ComparisonService();
-        List<ComparisonResult> allResults = service.execute(config);
+        ResultSummary summary;
+        try (JsonLinesResultSink sink = new JsonLinesResultSink(resultsLog)) {
+            summary = service.execute(config, sink);
+        }
+        logger.info("{} results written to {}", summary.getTotal(), resultsLog.getAbsolutePath());
 
         // 3. Generate Report
         try {
             logger.info("Generating JSON report...");
-            File jsonReportFile = HtmlReportGenerator.generateJsonReport(allResults, outputReportPath);
+            File jsonReportFile = HtmlReportGenerator.generateJsonReport(resultsLog, outputReportPath);
             logger.info("JSON report generated successfully: {}", jsonReportFile.getAbsolutePath());
 
             logger.info("Generating HTML report...");
-            File htmlReportFile = HtmlReportGenerator.generateHtmlReport(allResults, outputReportPath);
+            File htmlReportFile = HtmlReportGenerator.generateHtmlReport(resultsLog, summary, outputReportPath);
             logger.info("HTML report generated successfully: {}", htmlReportFile.getAbsolutePath());
         } catch (Exception e) {
             logger.error("Failed to generate report(s): {}", e.getMessage(), e);
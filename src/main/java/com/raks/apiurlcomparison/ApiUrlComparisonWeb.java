@@ -176,6 +176,40 @@ public class ApiUrlComparisonWeb {
             }
         });
 
+        // Search runs by service, tag, description and capture date range
+        get("/api/baselines/search", (req, res) -> {
+            res.type("application/json");
+            try {
+                ObjectMapper mapper = new ObjectMapper();
+                String storageDir = "baselines";
+
+                // Try to read from config
+                java.io.File configFile = new java.io.File("config.yaml");
+                if (configFile.exists()) {
+                    try {
+                        ObjectMapper yamlMapper = new ObjectMapper(
+                                new com.fasterxml.jackson.dataformat.yaml.YAMLFactory());
+                        Config config = yamlMapper.readValue(configFile, Config.class);
+                        if (config.getBaseline() != null && config.getBaseline().getStorageDir() != null) {
+                            storageDir = config.getBaseline().getStorageDir();
+                        }
+                    } catch (Exception e) {
+                        logger.warn("Could not read storage dir from config, using default", e);
+                    }
+                }
+
+                BaselineStorageService storageService = new BaselineStorageService(storageDir);
+                List<RunMetadata> runs = storageService.findRuns(req.queryParams("service"),
+                        req.queryParams("tag"), req.queryParams("description"), req.queryParams("from"),
+                        req.queryParams("to"));
+                return mapper.writeValueAsString(runs);
+            } catch (Exception e) {
+                logger.error("Error searching baseline runs", e);
+                res.status(500);
+                return "{\"error\": \"" + e.getMessage() + "\"}";
+            }
+        });
+
         // Ensure server is started
         awaitInitialization();
         logger.info("Server started. Access at http://localhost:{}", port);
@@ -0,0 +1,394 @@
+package com.raks.apiurlcomparison;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.DataFormatException;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+
+/**
+ * Content-addressed store for the response payloads of all runs of a service,
+ * under {@code {serviceName}/.blobs/}. A payload is kept once, keyed by the
+ * SHA-256 of its UTF-8 bytes, however many iterations and runs captured it.
+ *
+ * <pre>
+ * .blobs/pack     "BPAK" version:int generation:long
+ *                 (hash:byte[32] codec:byte rawLength:int storedLength:int bytes)*
+ * .blobs/.lock    held while the pack is appended to or compacted
+ * run-NNN/blobs.refs   hex hashes the run references, one per line
+ * </pre>
+ *
+ * Blobs are appended to the one pack file; each run lists the blobs it
+ * references in its own folder. The reference is recorded, under the lock,
+ * before the record pointing at the blob is written, so a capture in
+ * progress or interrupted never references a blob that is not listed.
+ * Deleting a run compacts the pack down to the blobs the remaining runs list,
+ * which bumps its generation; readers notice and re-index. A torn entry at
+ * the end of the pack is cut off by the next append. Reads verify the hash.
+ *
+ * <p>
+ * Blobs are deflated on their own, without the run's trained dictionary: the
+ * pack is shared by every run of the service while each run trains its own
+ * dictionary, so a blob would be readable only through the run that wrote
+ * it. Blobs are large enough ({@value BaselineSegment#MIN_BLOB_LENGTH} bytes
+ * and more) that a preset dictionary gains them little.
+ */
+final class BaselineBlobStore {
+
+    private static final Logger logger = LoggerFactory.getLogger(BaselineBlobStore.class);
+
+    static final String DIRECTORY_NAME = ".blobs";
+    static final String REFERENCES_FILE = "blobs.refs";
+    static final int HASH_LENGTH = 32;
+
+    private static final String PACK_FILE = "pack";
+    private static final String LOCK_FILE = ".lock";
+    private static final int PACK_MAGIC = 0x4250_414B; // "BPAK"
+    private static final int PACK_VERSION = 1;
+    private static final int PACK_HEADER_LENGTH = 16;
+    private static final int ENTRY_HEADER_LENGTH = HASH_LENGTH + 9;
+    private static final byte STORED = 0;
+    private static final byte DEFLATED = 1;
+
+    // One index per pack, shared by every store on it in this process; also
+    // the monitor for the pack, as FileLock excludes other processes only
+    private static final Map<Path, PackIndex> indexes = new ConcurrentHashMap<>();
+
+    private final Path dir;
+    private final boolean compress;
+
+    BaselineBlobStore(Path serviceDir, boolean compress) {
+        this.dir = serviceDir.resolve(DIRECTORY_NAME).toAbsolutePath().normalize();
+        this.compress = compress;
+    }
+
+    static byte[] hash(String content) {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(content.getBytes(StandardCharsets.UTF_8));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    static String hex(byte[] hash) {
+        return HexFormat.of().formatHex(hash);
+    }
+
+    /**
+     * Records that the run in {@code runDir} references a payload, and stores
+     * the payload unless the pack holds it already. Call once per run and
+     * payload, before writing the reference anywhere else.
+     */
+    void put(Path runDir, String hexHash, String content) throws IOException {
+        Files.createDirectories(dir);
+        locked(index -> {
+            try (BufferedWriter refs = Files.newBufferedWriter(runDir.resolve(REFERENCES_FILE),
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+                refs.write(hexHash);
+                refs.newLine();
+            }
+            try (FileChannel pack = openPack(index)) {
+                if (index.offsets.containsKey(hexHash)) {
+                    return;
+                }
+                // Whatever follows the last complete entry was torn by a crash
+                pack.truncate(index.indexedLength);
+                byte[] raw = content.getBytes(StandardCharsets.UTF_8);
+                byte[] stored = compress ? deflate(raw) : raw;
+                byte codec = stored.length < raw.length ? DEFLATED : STORED;
+                if (codec == STORED) {
+                    stored = raw;
+                }
+                ByteBuffer entry = ByteBuffer.allocate(ENTRY_HEADER_LENGTH + stored.length);
+                entry.put(HexFormat.of().parseHex(hexHash)).put(codec).putInt(raw.length).putInt(stored.length)
+                        .put(stored).flip();
+                long offset = index.indexedLength;
+                while (entry.hasRemaining()) {
+                    pack.write(entry, offset + entry.position());
+                }
+                index.offsets.put(hexHash, offset);
+                index.indexedLength = offset + entry.limit();
+            }
+        });
+    }
+
+    /**
+     * Forces the pack and the references of the run in {@code runDir} to the
+     * storage device, so that records synced after them never point at a
+     * blob lost in a crash.
+     */
+    void sync(Path runDir) throws IOException {
+        for (Path file : new Path[] { dir.resolve(PACK_FILE), runDir.resolve(REFERENCES_FILE) }) {
+            if (Files.exists(file)) {
+                try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+                    channel.force(false);
+                }
+            }
+        }
+    }
+
+    /**
+     * @throws IOException if the blob is missing or does not match its hash
+     */
+    String get(String hexHash) throws IOException {
+        PackIndex index = indexes.computeIfAbsent(dir, d -> new PackIndex());
+        byte[] header = new byte[ENTRY_HEADER_LENGTH];
+        ByteBuffer stored;
+        try (FileChannel pack = FileChannel.open(dir.resolve(PACK_FILE), StandardOpenOption.READ)) {
+            Long offset;
+            synchronized (index) {
+                catchUp(index, pack);
+                offset = index.offsets.get(hexHash);
+            }
+            if (offset == null) {
+                throw new IOException("Baseline payload " + hexHash + " is missing from " + dir);
+            }
+            ByteBuffer entryHeader = ByteBuffer.wrap(header);
+            readFully(pack, entryHeader, offset);
+            entryHeader.position(HASH_LENGTH);
+            entryHeader.get(); // codec
+            entryHeader.getInt(); // raw length
+            stored = ByteBuffer.allocate(entryHeader.getInt());
+            readFully(pack, stored, offset + ENTRY_HEADER_LENGTH);
+        } catch (NoSuchFileException e) {
+            throw new IOException("Baseline payload " + hexHash + " is missing from " + dir, e);
+        }
+
+        byte[] raw;
+        if (header[HASH_LENGTH] == DEFLATED) {
+            raw = new byte[ByteBuffer.wrap(header, HASH_LENGTH + 1, 4).getInt()];
+            Inflater inflater = new Inflater();
+            try {
+                inflater.setInput(stored.array());
+                int length = 0;
+                while (length < raw.length && !inflater.finished()) {
+                    int n = inflater.inflate(raw, length, raw.length - length);
+                    if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                        break;
+                    }
+                    length += n;
+                }
+            } catch (DataFormatException e) {
+                throw new IOException("Corrupt baseline payload " + hexHash, e);
+            } finally {
+                inflater.end();
+            }
+        } else {
+            raw = stored.array();
+        }
+        String content = new String(raw, StandardCharsets.UTF_8);
+        if (!hex(hash(content)).equals(hexHash)) {
+            throw new IOException("Checksum mismatch in baseline payload " + hexHash);
+        }
+        return content;
+    }
+
+    boolean contains(String hexHash) throws IOException {
+        if (!Files.exists(dir.resolve(PACK_FILE))) {
+            return false;
+        }
+        PackIndex index = indexes.computeIfAbsent(dir, d -> new PackIndex());
+        try (FileChannel pack = FileChannel.open(dir.resolve(PACK_FILE), StandardOpenOption.READ)) {
+            synchronized (index) {
+                catchUp(index, pack);
+                return index.offsets.containsKey(hexHash);
+            }
+        }
+    }
+
+    /**
+     * Hashes the run in {@code runDir} references; empty if it lists none.
+     */
+    static Set<String> references(Path runDir) throws IOException {
+        Set<String> references = new HashSet<>();
+        Path refs = runDir.resolve(REFERENCES_FILE);
+        if (Files.exists(refs)) {
+            for (String line : Files.readAllLines(refs, StandardCharsets.UTF_8)) {
+                // A line torn by a crash is never the only record of a reference in use
+                if (line.length() == 2 * HASH_LENGTH) {
+                    references.add(line);
+                }
+            }
+        }
+        return references;
+    }
+
+    /**
+     * Rewrites the pack with only the blobs some run still references.
+     *
+     * @param references lists the references of every run of the service;
+     *                   called under the lock, so no run can take new ones
+     *                   meanwhile
+     * @return number of blobs removed
+     */
+    int compact(ReferenceLister references) throws IOException {
+        if (!Files.exists(dir.resolve(PACK_FILE))) {
+            return 0;
+        }
+        int[] removed = new int[1];
+        locked(index -> {
+            Set<String> live = references.list();
+            try (FileChannel pack = openPack(index)) {
+                if (live.containsAll(index.offsets.keySet())) {
+                    return;
+                }
+                Path partial = dir.resolve(PACK_FILE + ".tmp");
+                Map<String, Long> offsets = new HashMap<>();
+                long position = PACK_HEADER_LENGTH;
+                try (FileChannel compacted = FileChannel.open(partial, StandardOpenOption.CREATE,
+                        StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+                    writeHeader(compacted, index.generation + 1);
+                    compacted.position(PACK_HEADER_LENGTH); // Entries are transferred at the position
+                    for (Map.Entry<String, Long> blob : index.offsets.entrySet()) {
+                        if (!live.contains(blob.getKey())) {
+                            removed[0]++;
+                            continue;
+                        }
+                        ByteBuffer entryHeader = ByteBuffer.allocate(ENTRY_HEADER_LENGTH);
+                        readFully(pack, entryHeader, blob.getValue());
+                        long length = ENTRY_HEADER_LENGTH + entryHeader.getInt(HASH_LENGTH + 5);
+                        for (long copied = 0; copied < length; ) {
+                            copied += pack.transferTo(blob.getValue() + copied, length - copied, compacted);
+                        }
+                        offsets.put(blob.getKey(), position);
+                        position += length;
+                    }
+                    compacted.force(false);
+                }
+                Files.move(partial, dir.resolve(PACK_FILE), StandardCopyOption.REPLACE_EXISTING,
+                        StandardCopyOption.ATOMIC_MOVE);
+                index.generation++;
+                index.offsets.clear();
+                index.offsets.putAll(offsets);
+                index.indexedLength = position;
+            }
+            logger.debug("Compacted baseline payloads in {}: {} removed", dir, removed[0]);
+        });
+        return removed[0];
+    }
+
+    @FunctionalInterface
+    interface ReferenceLister {
+        Set<String> list() throws IOException;
+    }
+
+    // Hash to entry offset of a pack, up to indexedLength, for one generation of the file
+    private static final class PackIndex {
+        final Map<String, Long> offsets = new HashMap<>();
+        long generation = -1;
+        long indexedLength;
+    }
+
+    private interface LockedAction {
+        void run(PackIndex index) throws IOException;
+    }
+
+    private void locked(LockedAction action) throws IOException {
+        PackIndex index = indexes.computeIfAbsent(dir, d -> new PackIndex());
+        synchronized (index) {
+            try (FileChannel lockChannel = FileChannel.open(dir.resolve(LOCK_FILE),
+                    StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+                    FileLock lock = lockChannel.lock()) {
+                action.run(index);
+            }
+        }
+    }
+
+    // Under the lock: creates the pack if needed and brings the index up to date
+    private FileChannel openPack(PackIndex index) throws IOException {
+        FileChannel pack = FileChannel.open(dir.resolve(PACK_FILE), StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            if (pack.size() < PACK_HEADER_LENGTH) {
+                writeHeader(pack, 0);
+            }
+            catchUp(index, pack);
+            return pack;
+        } catch (IOException | RuntimeException e) {
+            pack.close();
+            throw e;
+        }
+    }
+
+    // Indexes entries appended since the index was last brought up to date
+    private void catchUp(PackIndex index, FileChannel pack) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(PACK_HEADER_LENGTH);
+        if (pack.read(header, 0) < PACK_HEADER_LENGTH) {
+            throw new IOException("Baseline payload pack is truncated: " + dir.resolve(PACK_FILE));
+        }
+        header.flip();
+        if (header.getInt() != PACK_MAGIC || header.getInt() != PACK_VERSION) {
+            throw new IOException("Not a baseline payload pack: " + dir.resolve(PACK_FILE));
+        }
+        long generation = header.getLong();
+        if (generation != index.generation) {
+            // Compacted by another process: offsets changed
+            index.offsets.clear();
+            index.generation = generation;
+            index.indexedLength = PACK_HEADER_LENGTH;
+        }
+        long size = pack.size();
+        ByteBuffer entryHeader = ByteBuffer.allocate(ENTRY_HEADER_LENGTH);
+        byte[] hash = new byte[HASH_LENGTH];
+        while (index.indexedLength + ENTRY_HEADER_LENGTH <= size) {
+            entryHeader.clear();
+            readFully(pack, entryHeader, index.indexedLength);
+            entryHeader.flip();
+            entryHeader.get(hash);
+            entryHeader.get(); // codec
+            entryHeader.getInt(); // raw length
+            int storedLength = entryHeader.getInt();
+            long end = index.indexedLength + ENTRY_HEADER_LENGTH + storedLength;
+            if (storedLength < 0 || end > size) {
+                break; // Torn by a crash while being appended
+            }
+            index.offsets.put(hex(hash), index.indexedLength);
+            index.indexedLength = end;
+        }
+    }
+
+    private static void writeHeader(FileChannel pack, long generation) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(PACK_HEADER_LENGTH);
+        header.putInt(PACK_MAGIC).putInt(PACK_VERSION).putLong(generation).flip();
+        while (header.hasRemaining()) {
+            pack.write(header, header.position());
+        }
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long offset) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, offset + buffer.position()) < 0) {
+                throw new IOException("Unexpected end of baseline payload pack");
+            }
+        }
+    }
+
+    private static byte[] deflate(byte[] raw) throws IOException {
+        ByteArrayOutputStream stored = new ByteArrayOutputStream(raw.length / 2);
+        try (DeflaterOutputStream out = new DeflaterOutputStream(stored)) {
+            out.write(raw);
+        }
+        return stored.toByteArray();
+    }
+}
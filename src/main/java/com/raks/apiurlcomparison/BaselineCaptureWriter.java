@@ -0,0 +1,296 @@
+package com.raks.apiurlcomparison;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Writes a baseline run while it is being captured: each iteration is
+ * persisted as soon as it is appended, so a crash loses at most the
+ * iterations not yet synced instead of the whole run. Obtained from
+ * {@link BaselineStorageService#startCapture} or
+ * {@link BaselineStorageService#resumeCapture}; safe to share between
+ * concurrent capture workers.
+ *
+ * <p>
+ * Until {@link #complete()} the run directory holds a
+ * {@value #INCOMPLETE_MARKER} file (with the run metadata and what is needed
+ * to reopen the segment) and no metadata.json, so the run is neither listed
+ * nor loadable, only resumable. {@link #complete()} writes the segment
+ * index, summary.json and metadata.json, removes the marker and adds the run
+ * to the storage's {@link BaselineCatalog}.
+ *
+ * <p>
+ * A writer holds an exclusive lock on {@value #LOCK_FILE} in the run
+ * directory for as long as it is open, so an incomplete run is only resumed
+ * once its writer is gone: closed, or its process dead, which releases the
+ * lock with it.
+ */
+public final class BaselineCaptureWriter implements Closeable {
+
+    private static final Logger logger = LoggerFactory.getLogger(BaselineCaptureWriter.class);
+    private static final ObjectMapper mapper = new ObjectMapper();
+
+    static final String INCOMPLETE_MARKER = "capture.incomplete";
+    static final String LOCK_FILE = "capture.lock";
+
+    private final Path runDir;
+    private final RunMetadata runMetadata;
+    private final BaselineSegment.Writer segment; // null for the directory layout
+    private final int syncInterval;
+    private final BaselineCatalog catalog;
+    private final FileLock lock;
+    private final Set<Integer> completed = new HashSet<>();
+    private final List<Map<String, Object>> summaries = new ArrayList<>();
+    private long markedRecordsOffset = -1;
+    private int sinceSync;
+    private boolean closed;
+
+    /**
+     * @param segment      partial segment ({@link #partialSegment}) to append
+     *                     to; null to write iteration directories
+     * @param syncInterval iterations between forcing the segment to disk; 0
+     *                     to force it only on completion
+     * @param recovered    iterations already in the run, when resuming
+     * @param catalog      catalog the run is added to on completion
+     * @param lock         the run's capture lock ({@link #lock}), released
+     *                     when the writer is completed or closed
+     */
+    BaselineCaptureWriter(Path runDir, RunMetadata runMetadata, BaselineSegment.Writer segment, int syncInterval,
+            List<BaselineStorageService.BaselineIteration> recovered, BaselineCatalog catalog, FileLock lock)
+            throws IOException {
+        this.lock = lock;
+        this.runDir = runDir;
+        this.runMetadata = runMetadata;
+        this.segment = segment;
+        this.syncInterval = syncInterval;
+        this.catalog = catalog;
+        for (BaselineStorageService.BaselineIteration iteration : recovered) {
+            track(iteration);
+        }
+        if (segment != null) {
+            segment.sync();
+        }
+        writeMarker();
+    }
+
+    /**
+     * Takes the capture lock of a run; null if another writer, in this
+     * process or another, holds it.
+     */
+    static FileLock lock(Path runDir) throws IOException {
+        FileChannel channel = FileChannel.open(runDir.resolve(LOCK_FILE), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE);
+        try {
+            FileLock lock = channel.tryLock();
+            if (lock != null) {
+                return lock;
+            }
+        } catch (OverlappingFileLockException e) {
+            // Held by a writer in this process
+        }
+        channel.close();
+        return null;
+    }
+
+    static void release(FileLock lock) throws IOException {
+        lock.channel().close(); // Releases the lock with the channel
+    }
+
+    /**
+     * Whether a writer currently has the run open.
+     */
+    static boolean isInProgress(Path runDir) throws IOException {
+        FileLock lock = lock(runDir);
+        if (lock == null) {
+            return true;
+        }
+        release(lock);
+        return false;
+    }
+
+    static Path partialSegment(Path runDir) {
+        return runDir.resolve(BaselineSegment.FILE_NAME + ".tmp");
+    }
+
+    static boolean isIncomplete(Path runDir) {
+        return Files.exists(runDir.resolve(INCOMPLETE_MARKER));
+    }
+
+    /**
+     * Run metadata and segment state recorded in the marker of an incomplete run.
+     */
+    static Map<String, Object> readMarker(Path runDir) throws IOException {
+        @SuppressWarnings("unchecked")
+        Map<String, Object> marker = mapper.readValue(runDir.resolve(INCOMPLETE_MARKER).toFile(), Map.class);
+        return marker;
+    }
+
+    static RunMetadata runMetadata(Map<String, Object> marker) {
+        return mapper.convertValue(marker.get("runMetadata"), RunMetadata.class);
+    }
+
+    static long markedOffset(Map<String, Object> marker, String name) {
+        Object offset = marker.get(name);
+        return offset instanceof Number ? ((Number) offset).longValue() : -1;
+    }
+
+    public RunMetadata getRunMetadata() {
+        return runMetadata;
+    }
+
+    /**
+     * Whether an iteration is already in the run, e.g. captured before the
+     * run was interrupted.
+     */
+    public synchronized boolean isCaptured(int iterationNumber) {
+        return completed.contains(iterationNumber);
+    }
+
+    public synchronized int getCapturedCount() {
+        return completed.size();
+    }
+
+    /**
+     * Persists one iteration. Iterations may be appended in any order; each
+     * iteration number once.
+     */
+    public synchronized void append(BaselineStorageService.BaselineIteration iteration) throws IOException {
+        if (closed) {
+            throw new IOException("Baseline capture " + runMetadata.getRunId() + " is closed");
+        }
+        if (!completed.add(iteration.getIterationNumber())) {
+            throw new IllegalArgumentException("Iteration " + iteration.getIterationNumber()
+                    + " is already captured in " + runMetadata.getRunId());
+        }
+        if (segment == null) {
+            BaselineStorageService.saveIteration(runDir, iteration);
+        } else {
+            segment.append(iteration);
+            segment.flush();
+            if (markedRecordsOffset < 0 && segment.recordsOffset() >= 0) {
+                // Dictionary training is over: make it durable before the marker points at it
+                segment.sync();
+                writeMarker();
+                sinceSync = 0;
+            } else if (syncInterval > 0 && ++sinceSync >= syncInterval) {
+                segment.sync();
+                sinceSync = 0;
+            }
+        }
+        summaries.add(summaryEntry(iteration));
+    }
+
+    /**
+     * Finishes the run: the segment index, summary.json and metadata.json
+     * are written and the run becomes loadable.
+     */
+    public synchronized void complete() throws IOException {
+        if (closed) {
+            throw new IOException("Baseline capture " + runMetadata.getRunId() + " is closed");
+        }
+        closed = true;
+        try {
+            if (segment != null) {
+                segment.close();
+                Files.move(partialSegment(runDir), runDir.resolve(BaselineSegment.FILE_NAME),
+                        StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            }
+
+            summaries.sort(Comparator.comparing(entry -> (Integer) entry.get("iterationNumber")));
+            Map<String, Object> summary = new HashMap<>();
+            summary.put("totalIterations", summaries.size());
+            summary.put("iterations", summaries);
+            BaselineStorageService.writeJson(runDir.resolve("summary.json"), summary);
+
+            runMetadata.setTotalIterations(summaries.size());
+            BaselineStorageService.writeJson(runDir.resolve("metadata.json"), runMetadata);
+            Files.delete(runDir.resolve(INCOMPLETE_MARKER));
+            logger.info("Saved run metadata to: {}", runDir.resolve("metadata.json"));
+        } finally {
+            release(lock);
+        }
+        // No marker any more, so nobody takes the lock to resume: the file can go
+        Files.deleteIfExists(runDir.resolve(LOCK_FILE));
+        catalog.put(runMetadata);
+    }
+
+    /**
+     * Without {@link #complete()}, leaves the run incomplete and resumable.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            if (segment != null) {
+                segment.abandon();
+            }
+        } finally {
+            release(lock);
+        }
+        logger.warn("Baseline capture {}/{}/{} left incomplete with {} iterations; it can be resumed",
+                runMetadata.getServiceName(), runMetadata.getCaptureDate(), runMetadata.getRunId(),
+                completed.size());
+    }
+
+    private void track(BaselineStorageService.BaselineIteration iteration) {
+        completed.add(iteration.getIterationNumber());
+        summaries.add(summaryEntry(iteration));
+    }
+
+    private static Map<String, Object> summaryEntry(BaselineStorageService.BaselineIteration iteration) {
+        Map<String, Object> entry = new HashMap<>();
+        entry.put("iterationNumber", iteration.getIterationNumber());
+        entry.put("tokens", iteration.getRequestMetadata() != null
+                ? iteration.getRequestMetadata().getTokensUsed()
+                : Collections.emptyMap());
+        Map<String, Object> responseMetadata = iteration.getResponseMetadata() != null
+                ? iteration.getResponseMetadata()
+                : Collections.emptyMap();
+        entry.put("statusCode", responseMetadata.get("statusCode"));
+        entry.put("duration", responseMetadata.get("duration"));
+        return entry;
+    }
+
+    private void writeMarker() throws IOException {
+        Map<String, Object> marker = new HashMap<>();
+        marker.put("runMetadata", runMetadata);
+        marker.put("storageFormat", segment != null
+                ? BaselineStorageService.StorageFormat.PACKED.name()
+                : BaselineStorageService.StorageFormat.DIRECTORY.name());
+        if (segment != null) {
+            markedRecordsOffset = segment.recordsOffset();
+            marker.put("recordsOffset", markedRecordsOffset);
+            marker.put("dictionaryOffset", segment.dictionaryOffset());
+            // Settings the capture was started with; a resume must use the same
+            marker.put("compressed", segment.compression().enabled());
+            marker.put("dictionarySamples", segment.compression().dictionarySamples());
+            marker.put("deduplicated", segment.deduplicates());
+        }
+        Path partial = runDir.resolve(INCOMPLETE_MARKER + ".tmp");
+        mapper.writeValue(partial.toFile(), marker);
+        Files.move(partial, runDir.resolve(INCOMPLETE_MARKER), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+    }
+}
@@ -0,0 +1,380 @@
+package com.raks.apiurlcomparison;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Index of the completed runs under a storage root, kept in
+ * {@value #FILE_NAME} at the root so that listing services, dates and runs
+ * reads one small file instead of walking the tree and parsing every run's
+ * metadata.json. Created by scanning the tree the first time it is needed,
+ * then updated as runs are captured and deleted: each change re-reads the
+ * file under a lock, applies itself and replaces the file atomically, so
+ * several processes can share a store.
+ *
+ * <p>
+ * One instance per root is shared by every {@link BaselineStorageService}
+ * on it. It keeps the parsed index in memory, with lookup tables per service,
+ * date and tag. Every lookup compares the file's modification time, size and
+ * identity with those of the version indexed and reloads it if any differs,
+ * so changes by other processes and other hosts sharing the store (e.g. over
+ * NFS) are seen. A {@link WatchService} on the root drops the index early
+ * when the file changes locally.
+ */
+final class BaselineCatalog {
+
+    private static final Logger logger = LoggerFactory.getLogger(BaselineCatalog.class);
+    private static final ObjectMapper mapper = new ObjectMapper()
+            .disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES);
+
+    static final String FILE_NAME = "catalog.json";
+    private static final String LOCK_FILE = ".catalog.lock";
+
+    private static final Map<Path, BaselineCatalog> catalogs = new ConcurrentHashMap<>();
+
+    private final Path root;
+    private volatile Index index; // null until loaded, or after the file changed
+    private WatchService watcher;
+
+    private BaselineCatalog(Path root) {
+        this.root = root;
+    }
+
+    static BaselineCatalog forRoot(Path root) {
+        return catalogs.computeIfAbsent(root.toAbsolutePath().normalize(), BaselineCatalog::new);
+    }
+
+    /**
+     * Services with at least one run, sorted.
+     */
+    List<String> services() throws IOException {
+        return index().services;
+    }
+
+    /**
+     * Dates with at least one run of the service, newest first.
+     */
+    List<String> dates(String serviceName) throws IOException {
+        NavigableMap<String, List<RunMetadata>> dates = index().runs.get(serviceName);
+        return dates != null ? new ArrayList<>(dates.descendingKeySet()) : Collections.emptyList();
+    }
+
+    /**
+     * Runs of a service on a date, sorted by run ID.
+     */
+    List<RunMetadata> runs(String serviceName, String date) throws IOException {
+        NavigableMap<String, List<RunMetadata>> dates = index().runs.get(serviceName);
+        List<RunMetadata> runs = dates != null ? dates.get(date) : null;
+        return runs != null ? runs : Collections.emptyList();
+    }
+
+    /**
+     * Runs matching every criterion given; null criteria match anything. Dates
+     * are inclusive YYYYMMDD bounds; the description matches case-insensitively
+     * as a substring. Newest first.
+     */
+    List<RunMetadata> find(String serviceName, String tag, String description, String fromDate, String toDate)
+            throws IOException {
+        Index index = index();
+        List<RunMetadata> candidates;
+        if (tag != null) {
+            candidates = index.byTag.getOrDefault(tag, Collections.emptyList());
+        } else if (serviceName != null) {
+            candidates = new ArrayList<>();
+            NavigableMap<String, List<RunMetadata>> dates = index.runs.get(serviceName);
+            if (dates != null) {
+                dateRange(dates, fromDate, toDate).values().forEach(candidates::addAll);
+            }
+        } else {
+            candidates = index.all;
+        }
+        String needle = description != null ? description.toLowerCase(Locale.ROOT) : null;
+        List<RunMetadata> matches = new ArrayList<>();
+        for (RunMetadata run : candidates) {
+            if ((serviceName == null || serviceName.equals(run.getServiceName()))
+                    && (fromDate == null || run.getCaptureDate().compareTo(fromDate) >= 0)
+                    && (toDate == null || run.getCaptureDate().compareTo(toDate) <= 0)
+                    && (needle == null || (run.getDescription() != null
+                            && run.getDescription().toLowerCase(Locale.ROOT).contains(needle)))) {
+                matches.add(run);
+            }
+        }
+        matches.sort(NEWEST_FIRST);
+        return matches;
+    }
+
+    private static NavigableMap<String, List<RunMetadata>> dateRange(NavigableMap<String, List<RunMetadata>> dates,
+            String fromDate, String toDate) {
+        if (fromDate != null && toDate != null) {
+            return fromDate.compareTo(toDate) <= 0 ? dates.subMap(fromDate, true, toDate, true) : new TreeMap<>();
+        }
+        if (fromDate != null) {
+            return dates.tailMap(fromDate, true);
+        }
+        return toDate != null ? dates.headMap(toDate, true) : dates;
+    }
+
+    private static final Comparator<RunMetadata> NEWEST_FIRST = Comparator
+            .comparing(RunMetadata::getCaptureDate, Comparator.nullsLast(Comparator.reverseOrder()))
+            .thenComparing(RunMetadata::getRunId, Comparator.nullsLast(Comparator.reverseOrder()));
+
+    /**
+     * Adds or replaces a run.
+     */
+    void put(RunMetadata runMetadata) throws IOException {
+        RunMetadata entry = entry(runMetadata);
+        update(entries -> {
+            entries.removeIf(run -> sameRun(run, entry));
+            entries.add(entry);
+        });
+    }
+
+    void remove(String serviceName, String date, String runId) throws IOException {
+        update(entries -> entries.removeIf(run -> serviceName.equals(run.getServiceName())
+                && date.equals(run.getCaptureDate()) && runId.equals(run.getRunId())));
+    }
+
+    /**
+     * Rebuilds the catalog from the runs on disk, e.g. after runs were copied
+     * in or written by an older version.
+     *
+     * @return number of runs in the catalog
+     */
+    int rebuild() throws IOException {
+        int[] count = new int[1];
+        update(null, entries -> {
+            entries.addAll(scan());
+            count[0] = entries.size();
+        });
+        return count[0];
+    }
+
+    private interface Change {
+        void apply(List<RunMetadata> entries) throws IOException;
+    }
+
+    private void update(Change change) throws IOException {
+        update(this::current, change);
+    }
+
+    private interface Source {
+        List<RunMetadata> read() throws IOException;
+    }
+
+    // from null starts from an empty catalog
+    private void update(Source from, Change change) throws IOException {
+        Files.createDirectories(root);
+        synchronized (this) {
+            try (FileChannel lockChannel = FileChannel.open(root.resolve(LOCK_FILE),
+                    StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+                    FileLock lock = lockChannel.lock()) {
+                // Re-read under the lock: another process may have changed it
+                List<RunMetadata> entries = from != null ? from.read() : new ArrayList<>();
+                change.apply(entries);
+                write(entries);
+                index = new Index(entries, Stamp.of(root.resolve(FILE_NAME)));
+            }
+        }
+    }
+
+    private Index index() throws IOException {
+        Index current = index;
+        if (current != null && Objects.equals(current.stamp, Stamp.of(root.resolve(FILE_NAME)))) {
+            return current;
+        }
+        synchronized (this) {
+            if (index == null || !Objects.equals(index.stamp, Stamp.of(root.resolve(FILE_NAME)))) {
+                if (!Files.isDirectory(root)) {
+                    return new Index(Collections.emptyList(), null); // Nothing stored yet; not cached
+                }
+                watch();
+                // Stamped before reading: if the file is replaced meanwhile, the next lookup reloads it
+                Stamp stamp = Stamp.of(root.resolve(FILE_NAME));
+                if (stamp != null) {
+                    index = new Index(read(), stamp);
+                } else {
+                    logger.info("Building baseline catalog for {}", root);
+                    rebuild();
+                }
+            }
+            return index;
+        }
+    }
+
+    private List<RunMetadata> current() throws IOException {
+        return Files.exists(root.resolve(FILE_NAME)) ? read() : scan();
+    }
+
+    private List<RunMetadata> read() throws IOException {
+        return mapper.readValue(root.resolve(FILE_NAME).toFile(), new TypeReference<List<RunMetadata>>() {
+        });
+    }
+
+    private void write(List<RunMetadata> entries) throws IOException {
+        Path partial = root.resolve(FILE_NAME + ".tmp");
+        mapper.writeValue(partial.toFile(), entries);
+        Files.move(partial, root.resolve(FILE_NAME), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    // Completed runs on disk: those with a readable metadata.json
+    private List<RunMetadata> scan() throws IOException {
+        List<RunMetadata> entries = new ArrayList<>();
+        for (File serviceDir : directories(root.toFile())) {
+            for (File dateDir : directories(serviceDir)) {
+                File[] runDirs = dateDir.listFiles((dir, name) -> name.startsWith("run-"));
+                if (runDirs == null) {
+                    continue;
+                }
+                for (File runDir : runDirs) {
+                    File metadataFile = new File(runDir, "metadata.json");
+                    if (metadataFile.exists()) {
+                        RunMetadata metadata;
+                        try {
+                            metadata = mapper.readValue(metadataFile, RunMetadata.class);
+                        } catch (IOException e) {
+                            logger.warn("Leaving run {} out of the baseline catalog, its metadata cannot be read: {}",
+                                    runDir, e.getMessage());
+                            continue;
+                        }
+                        // Folder names locate the run, whatever the file says
+                        metadata.setServiceName(serviceDir.getName());
+                        metadata.setCaptureDate(dateDir.getName());
+                        metadata.setRunId(runDir.getName());
+                        entries.add(entry(metadata));
+                    }
+                }
+            }
+        }
+        return entries;
+    }
+
+    // Skips .blobs and other hidden directories
+    private static File[] directories(File dir) {
+        File[] dirs = dir.listFiles(file -> file.isDirectory() && !file.getName().startsWith("."));
+        return dirs != null ? dirs : new File[0];
+    }
+
+    // What the catalog keeps of a run: its metadata without the configuration used
+    private static RunMetadata entry(RunMetadata metadata) {
+        RunMetadata entry = mapper.convertValue(metadata, RunMetadata.class);
+        entry.setConfigUsed(null);
+        return entry;
+    }
+
+    private static boolean sameRun(RunMetadata a, RunMetadata b) {
+        return a.getServiceName().equals(b.getServiceName()) && a.getCaptureDate().equals(b.getCaptureDate())
+                && a.getRunId().equals(b.getRunId());
+    }
+
+    // Drops the in-memory index whenever the catalog file is replaced
+    private void watch() throws IOException {
+        if (watcher != null) {
+            return;
+        }
+        watcher = root.getFileSystem().newWatchService();
+        root.register(watcher, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY,
+                StandardWatchEventKinds.ENTRY_DELETE);
+        Thread thread = new Thread(() -> {
+            try {
+                while (true) {
+                    WatchKey key = watcher.take();
+                    for (WatchEvent<?> event : key.pollEvents()) {
+                        if (event.kind() == StandardWatchEventKinds.OVERFLOW
+                                || FILE_NAME.equals(String.valueOf(event.context()))) {
+                            index = null;
+                        }
+                    }
+                    if (!key.reset()) {
+                        index = null; // Root is gone; the next lookup starts over
+                        synchronized (this) {
+                            watcher.close();
+                            watcher = null;
+                        }
+                        return;
+                    }
+                }
+            } catch (InterruptedException | ClosedWatchServiceException | IOException e) {
+                index = null;
+            }
+        }, "baseline-catalog-watcher");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    // Identifies one version of the catalog file; null if there is none
+    private record Stamp(long lastModified, long size, Object fileKey) {
+        static Stamp of(Path file) throws IOException {
+            try {
+                BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+                return new Stamp(attributes.lastModifiedTime().toMillis(), attributes.size(), attributes.fileKey());
+            } catch (NoSuchFileException e) {
+                return null;
+            }
+        }
+    }
+
+    /**
+     * Immutable lookup tables over one version of the catalog.
+     */
+    private static final class Index {
+        final Stamp stamp; // Of the file the entries were read from or written to
+        final List<RunMetadata> all;
+        final List<String> services;
+        final Map<String, NavigableMap<String, List<RunMetadata>>> runs = new HashMap<>();
+        final Map<String, List<RunMetadata>> byTag = new HashMap<>();
+
+        Index(List<RunMetadata> entries, Stamp stamp) {
+            this.stamp = stamp;
+            this.all = Collections.unmodifiableList(new ArrayList<>(entries));
+            for (RunMetadata run : entries) {
+                runs.computeIfAbsent(run.getServiceName(), s -> new TreeMap<>())
+                        .computeIfAbsent(run.getCaptureDate(), d -> new ArrayList<>())
+                        .add(run);
+                if (run.getTags() != null) {
+                    for (String tag : run.getTags()) {
+                        byTag.computeIfAbsent(tag, t -> new ArrayList<>()).add(run);
+                    }
+                }
+            }
+            for (NavigableMap<String, List<RunMetadata>> dates : runs.values()) {
+                for (List<RunMetadata> sameDate : dates.values()) {
+                    sameDate.sort(Comparator.comparing(RunMetadata::getRunId));
+                }
+            }
+            List<String> names = new ArrayList<>(runs.keySet());
+            Collections.sort(names);
+            this.services = Collections.unmodifiableList(names);
+        }
+    }
+}
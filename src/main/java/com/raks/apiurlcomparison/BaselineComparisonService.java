@@ -1,20 +1,31 @@
 package com.raks.apiurlcomparison;
 
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.raks.apiurlcomparison.http.ApiClient;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.File;
+import java.io.IOException;
 import java.time.ZonedDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 
 /**
- * Service for baseline testing operations (CAPTURE and COMPARE)
+ * Service for baseline testing operations (CAPTURE, COMPARE and DIFF)
  */
 public class BaselineComparisonService {
 
     private static final Logger logger = LoggerFactory.getLogger(BaselineComparisonService.class);
+    private static final ObjectMapper mapper = new ObjectMapper();
+    private static final String ITERATION_FINGERPRINT = "iterationFingerprint";
     private final BaselineStorageService storageService;
+    private final Map<ApiConfig, ApiClient> clients = new ConcurrentHashMap<>();
+    private final Map<Operation, PayloadProcessor> payloadProcessors = new ConcurrentHashMap<>();
 
     public BaselineComparisonService(BaselineStorageService storageService) {
         this.storageService = storageService;
@@ -24,6 +35,17 @@ public class BaselineComparisonService {
      * Capture baseline: Execute API calls and save responses
      */
     public List<ComparisonResult> captureBaseline(Config config) throws Exception {
+        List<ComparisonResult> results = new ArrayList<>();
+        captureBaseline(config, results::add);
+        return results;
+    }
+
+    /**
+     * Captures a baseline, handing each iteration's result to {@code sink}
+     * once the iteration is stored. No result is kept once published, so a
+     * capture of any size runs in the same memory.
+     */
+    public void captureBaseline(Config config, ResultSink sink) throws Exception {
         Config.BaselineConfig baselineConfig = config.getBaseline();
 
         if (baselineConfig == null || baselineConfig.getServiceName() == null) {
@@ -31,19 +53,16 @@ public class BaselineComparisonService {
         }
 
         String serviceName = baselineConfig.getServiceName();
-        String date = BaselineStorageService.getTodayDate();
-        String runId = storageService.generateRunId(serviceName, date);
-
-        logger.info("Capturing baseline for service: {}, date: {}, run: {}", serviceName, date, runId);
 
         // Generate iterations
-        List<Map<String, Object>> iterations = TestDataGenerator.generate(
+        IterationSpace iterations = TestDataGenerator.iterationSpace(
                 config.getTokens(),
                 config.getMaxIterations(),
-                config.getIterationController());
+                config.getIterationController(),
+                config.getPairwiseStrength());
 
         if (config.getTokens() != null && !config.getTokens().isEmpty()) {
-            iterations.add(0, new HashMap<>());
+            iterations = iterations.withOriginalPayload();
         }
 
         // Get API config
@@ -57,69 +76,114 @@ public class BaselineComparisonService {
 
         ApiConfig apiConfig = apis.get("api1");
 
-        // Execute iterations
-        List<ComparisonResult> results = new ArrayList<>();
-        List<BaselineStorageService.BaselineIteration> baselineIterations = new ArrayList<>();
-
-        int iterationNumber = 0;
-        for (Map<String, Object> currentTokens : iterations) {
-            iterationNumber++;
-            boolean isOriginal = (iterationNumber == 1);
-
-            logger.info("Capturing iteration {}: {}{}", iterationNumber, currentTokens,
-                    isOriginal ? " (Original Input Payload)" : "");
-
-            try {
-                ComparisonResult result = executeApiCall(
-                        apiConfig, currentTokens, config.getTestType(), iterationNumber, isOriginal);
-
-                // Set status to CAPTURED with run ID for capture mode
-                result.setStatus(ComparisonResult.Status.MATCH); // Keep internal status as MATCH
-                result.setBaselineServiceName(serviceName);
-                result.setBaselineDate(date);
-                result.setBaselineRunId(runId);
-
-                // Set formatted baseline path for display
-                String baselinePath = baselineConfig.getStorageDir() + "\\" + serviceName + "\\" + date + "\\" + runId;
-                result.setBaselinePath(baselinePath);
-
-                result.setBaselineDescription("Baseline captured to: " + baselinePath);
-                result.setBaselineTags(baselineConfig.getTags());
-                result.setBaselineCaptureTimestamp(ZonedDateTime.now().format(DateTimeFormatter.ISO_OFFSET_DATE_TIME));
-
-                results.add(result);
+        // Iterations are persisted as they complete; an interrupted run can be resumed,
+        // but not one another worker is still capturing, nor one started with other
+        // iterations or another target, whose numbers mean other requests
+        String fingerprint = iterationFingerprint(apiConfig, config);
+        BaselineCaptureWriter resumed = baselineConfig.isResumeCapture()
+                ? storageService.resumeIncompleteCapture(serviceName,
+                        run -> run.getConfigUsed() != null
+                                && fingerprint.equals(run.getConfigUsed().get(ITERATION_FINGERPRINT)),
+                        baselineConfig.getSyncInterval())
+                : null;
+        BaselineCaptureWriter writer;
+        if (resumed != null) {
+            writer = resumed;
+        } else {
+            String today = BaselineStorageService.getTodayDate();
+            RunMetadata runMetadata = createRunMetadata(
+                    storageService.generateRunId(serviceName, today), serviceName, today, apiConfig, config, 0);
+            runMetadata.getConfigUsed().put(ITERATION_FINGERPRINT, fingerprint);
+            writer = storageService.startCapture(runMetadata, baselineConfig.getSyncInterval());
+        }
+        String date = writer.getRunMetadata().getCaptureDate();
+        String runId = writer.getRunMetadata().getRunId();
 
-                BaselineStorageService.BaselineIteration baselineIter = convertToBaselineIteration(
-                        result, iterationNumber, currentTokens, apiConfig, config.getTestType());
-                baselineIterations.add(baselineIter);
+        logger.info("Capturing baseline for service: {}, date: {}, run: {}", serviceName, date, runId);
 
-            } catch (Exception e) {
-                logger.error("Error capturing iteration {}: {}", iterationNumber, e.getMessage(), e);
-                ComparisonResult errorResult = new ComparisonResult();
-                errorResult.setOperationName(apiConfig.getOperations().get(0).getName());
-                errorResult.setStatus(ComparisonResult.Status.ERROR);
-                errorResult.setErrorMessage("Capture failed: " + e.getMessage());
-                results.add(errorResult);
+        // Execute iterations
+        try (writer) {
+            int iterationNumber = 0;
+            for (Map<String, Object> currentTokens : iterations) {
+                iterationNumber++;
+                boolean isOriginal = (iterationNumber == 1);
+
+                if (writer.isCaptured(iterationNumber)) {
+                    logger.info("Iteration {} already captured, skipping", iterationNumber);
+                    continue;
+                }
+
+                logger.info("Capturing iteration {}: {}{}", iterationNumber, currentTokens,
+                        isOriginal ? " (Original Input Payload)" : "");
+
+                ComparisonResult published;
+                BaselineStorageService.BaselineIteration baselineIter = null;
+                try {
+                    ComparisonResult result = executeApiCall(
+                            apiConfig, currentTokens, config.getTestType(), iterationNumber, isOriginal);
+
+                    // Set status to CAPTURED with run ID for capture mode
+                    result.setStatus(ComparisonResult.Status.MATCH); // Keep internal status as MATCH
+                    result.setBaselineServiceName(serviceName);
+                    result.setBaselineDate(date);
+                    result.setBaselineRunId(runId);
+
+                    // Set formatted baseline path for display
+                    String baselinePath = baselineConfig.getStorageDir() + "\\" + serviceName + "\\" + date + "\\"
+                            + runId;
+                    result.setBaselinePath(baselinePath);
+
+                    result.setBaselineDescription("Baseline captured to: " + baselinePath);
+                    result.setBaselineTags(baselineConfig.getTags());
+                    result.setBaselineCaptureTimestamp(
+                            ZonedDateTime.now().format(DateTimeFormatter.ISO_OFFSET_DATE_TIME));
+
+                    published = result;
+
+                    baselineIter = convertToBaselineIteration(
+                            result, iterationNumber, currentTokens, apiConfig, config.getTestType());
+
+                } catch (Exception e) {
+                    logger.error("Error capturing iteration {}: {}", iterationNumber, e.getMessage(), e);
+                    ComparisonResult errorResult = new ComparisonResult();
+                    errorResult.setOperationName(apiConfig.getOperations().get(0).getName());
+                    errorResult.setStatus(ComparisonResult.Status.ERROR);
+                    errorResult.setErrorMessage("Capture failed: " + e.getMessage());
+                    published = errorResult;
+                }
+
+                // A storage failure ends the capture, leaving the run resumable
+                if (baselineIter != null) {
+                    writer.append(baselineIter);
+                }
+                sink.accept(published);
             }
-        }
-
-        // Create and save run metadata
-        RunMetadata runMetadata = createRunMetadata(
-                runId, serviceName, date, apiConfig, config, baselineIterations.size());
 
-        storageService.saveBaseline(runMetadata, baselineIterations);
+            writer.complete();
+        }
 
         logger.info("Baseline captured successfully: {}/{}/{} with {} iterations",
-                serviceName, date, runId, baselineIterations.size());
-
-        return results;
+                serviceName, date, runId, writer.getCapturedCount());
     }
 
     /**
      * Compare with baseline: Execute API calls and compare against saved baseline
      */
     public List<ComparisonResult> compareWithBaseline(Config config) throws Exception {
+        List<ComparisonResult> results = new ArrayList<>();
+        compareWithBaseline(config, results::add);
+        return results;
+    }
+
+    /**
+     * Compares with a baseline, handing each iteration's result to
+     * {@code sink} as soon as it is compared. Baseline iterations are read
+     * ahead only as far as prefetchIterations, and no result is kept once
+     * published.
+     */
+    public void compareWithBaseline(Config config, ResultSink sink) throws Exception {
         Config.BaselineConfig baselineConfig = config.getBaseline();
+        ComparisonOptions options = ComparisonOptions.from(config);
 
         if (baselineConfig == null || baselineConfig.getServiceName() == null
                 || baselineConfig.getCompareDate() == null || baselineConfig.getCompareRunId() == null) {
@@ -133,12 +197,6 @@ public class BaselineComparisonService {
 
         logger.info("Comparing with baseline: {}/{}/{}", serviceName, date, runId);
 
-        // Load baseline
-        BaselineStorageService.BaselineRun baseline = storageService.loadBaseline(serviceName, date, runId);
-        List<BaselineStorageService.BaselineIteration> baselineIterations = baseline.getIterations();
-
-        logger.info("Loaded baseline with {} iterations", baselineIterations.size());
-
         // Get API config
         Map<String, ApiConfig> apis = "SOAP".equalsIgnoreCase(config.getTestType())
                 ? config.getSoapApis()
@@ -150,36 +208,39 @@ public class BaselineComparisonService {
 
         ApiConfig apiConfig = apis.get("api1");
 
-        // Execute current API calls and compare
-        List<ComparisonResult> results = new ArrayList<>();
+        // Open baseline: iterations are read while the previous ones are being compared
+        try (BaselineStorageService.BaselineRun baseline = storageService.openBaseline(serviceName, date, runId);
+                BaselineStorageService.BaselineRun.Cursor cursor = baseline.cursor(
+                        baselineConfig.getPrefetchIterations())) {
+            logger.info("Opened baseline with {} iterations", baseline.size());
+            compareIterations(cursor, baseline.getMetadata(), apiConfig, config, options, sink);
+        }
+    }
 
-        for (BaselineStorageService.BaselineIteration baselineIter : baselineIterations) {
+    private void compareIterations(Iterator<BaselineStorageService.BaselineIteration> cursor,
+            RunMetadata baselineMetadata, ApiConfig apiConfig, Config config, ComparisonOptions options,
+            ResultSink sink) throws IOException {
+        // Execute current API calls and compare
+        int compared = 0;
+        while (cursor.hasNext()) {
+            BaselineStorageService.BaselineIteration baselineIter = cursor.next();
             int iterNum = baselineIter.getIterationNumber();
             Map<String, Object> tokens = convertTokensToMap(baselineIter.getRequestMetadata().getTokensUsed());
 
             logger.info("Comparing iteration {}: {}", iterNum, tokens);
 
+            ComparisonResult published;
             try {
                 ComparisonResult result = executeApiCall(
                         apiConfig, tokens, config.getTestType(), iterNum, iterNum == 1);
 
                 // Add baseline metadata to result
-                result.setBaselineServiceName(serviceName);
-                result.setBaselineDate(date);
-                result.setBaselineRunId(runId);
-
-                // Set formatted baseline path for display
-                String baselinePath = baselineConfig.getStorageDir() + "\\" + serviceName + "\\" + date + "\\" + runId;
-                result.setBaselinePath(baselinePath);
-
-                result.setBaselineDescription(baseline.getMetadata().getDescription());
-                result.setBaselineTags(baseline.getMetadata().getTags());
-                result.setBaselineCaptureTimestamp(baseline.getMetadata().getCaptureTimestamp());
+                describeBaseline(result, config.getBaseline(), baselineMetadata);
 
                 // Compare with baseline
-                compareWithBaselineIteration(result, baselineIter, config.getTestType());
+                compareWithBaselineIteration(result, baselineIter, config.getTestType(), options);
 
-                results.add(result);
+                published = result;
 
             } catch (Exception e) {
                 logger.error("Error comparing iteration {}: {}", iterNum, e.getMessage(), e);
@@ -188,14 +249,272 @@ public class BaselineComparisonService {
                 errorResult.setIterationTokens(tokens); // Fix NullPointerException in HTML report
                 errorResult.setStatus(ComparisonResult.Status.ERROR);
                 errorResult.setErrorMessage("Comparison failed: " + e.getMessage());
-                results.add(errorResult);
+                published = errorResult;
             }
+            sink.accept(published);
+            compared++;
         }
 
-        logger.info("Baseline comparison completed: {} iterations", results.size());
+        logger.info("Baseline comparison completed: {} iterations", compared);
+    }
+
+    /**
+     * Diff against baseline without calling any API: the responses of another
+     * stored run (diffRunId), or the API 1 responses in the JSON Lines results
+     * of an earlier live run (diffResultsFile), are compared with the baseline.
+     * Iterations are paired by iteration number or by token set (matchBy) and
+     * diffed in parallel on a fork-join pool. Results keep the order of the
+     * diffed run, followed by an ERROR for each baseline iteration left
+     * unpaired.
+     */
+    public List<ComparisonResult> diffWithBaseline(Config config) throws Exception {
+        List<ComparisonResult> results = new ArrayList<>();
+        diffWithBaseline(config, results::add);
         return results;
     }
 
+    /**
+     * Diffs against a baseline as {@link #diffWithBaseline(Config)} does,
+     * handing results to {@code sink} in order as they are diffed. Only a
+     * window of diffs is in flight at a time, and the baseline is held as an
+     * index of match keys, read without decoding payloads.
+     */
+    public void diffWithBaseline(Config config, ResultSink sink) throws Exception {
+        Config.BaselineConfig baselineConfig = config.getBaseline();
+        ComparisonOptions options = ComparisonOptions.from(config);
+
+        if (baselineConfig == null || baselineConfig.getServiceName() == null
+                || baselineConfig.getCompareDate() == null || baselineConfig.getCompareRunId() == null) {
+            throw new IllegalArgumentException(
+                    "Baseline configuration with serviceName, compareDate, and compareRunId is required for DIFF mode");
+        }
+        if (baselineConfig.getDiffRunId() == null && baselineConfig.getDiffResultsFile() == null) {
+            throw new IllegalArgumentException("diffRunId or diffResultsFile is required for DIFF mode");
+        }
+        String matchBy = baselineConfig.getMatchBy() != null ? baselineConfig.getMatchBy() : "ITERATION";
+        if (!"ITERATION".equalsIgnoreCase(matchBy) && !"TOKENS".equalsIgnoreCase(matchBy)) {
+            throw new IllegalArgumentException("Invalid matchBy: " + matchBy + ". Must be ITERATION or TOKENS");
+        }
+        boolean byTokens = "TOKENS".equalsIgnoreCase(matchBy);
+
+        String serviceName = baselineConfig.getServiceName();
+        logger.info("Diffing {} against baseline: {}/{}/{}",
+                baselineConfig.getDiffRunId() != null
+                        ? serviceName + "/" + baselineConfig.getDiffDate() + "/" + baselineConfig.getDiffRunId()
+                        : baselineConfig.getDiffResultsFile(),
+                serviceName, baselineConfig.getCompareDate(), baselineConfig.getCompareRunId());
+
+        try (BaselineStorageService.BaselineRun baseline = storageService.openBaseline(serviceName,
+                baselineConfig.getCompareDate(), baselineConfig.getCompareRunId())) {
+            // Position of each baseline iteration by match key; payloads are read only when diffed
+            Map<Object, Deque<Integer>> positions = new HashMap<>();
+            for (int position = 0; position < baseline.size(); position++) {
+                Object key = byTokens
+                        ? tokenKey(baseline.getRequestMetadata(position).getTokensUsed())
+                        : (Object) baseline.getIterationNumber(position);
+                positions.computeIfAbsent(key, k -> new ArrayDeque<>()).add(position);
+            }
+
+            // Diffing is CPU-bound: without a configured concurrency, use every core
+            int parallelism = config.getConcurrency() > 1
+                    ? config.getConcurrency()
+                    : Runtime.getRuntime().availableProcessors();
+            ForkJoinPool pool = new ForkJoinPool(parallelism);
+            DiffWindow diffs = new DiffWindow(4 * parallelism, sink);
+            try {
+                if (baselineConfig.getDiffRunId() != null) {
+                    try (BaselineStorageService.BaselineRun current = storageService.openBaseline(serviceName,
+                            baselineConfig.getDiffDate(), baselineConfig.getDiffRunId());
+                            BaselineStorageService.BaselineRun.Cursor cursor = current.cursor(
+                                    baselineConfig.getPrefetchIterations())) {
+                        while (cursor.hasNext()) {
+                            BaselineStorageService.BaselineIteration iteration = cursor.next();
+                            Map<String, String> tokens = iteration.getRequestMetadata().getTokensUsed();
+                            ComparisonResult result = new ComparisonResult();
+                            result.setOperationName(current.getMetadata().getOperation());
+                            result.setIterationTokens(convertTokensToMap(tokens));
+                            result.setTimestamp(iteration.getRequestMetadata().getTimestamp());
+                            ApiCallResult api1 = toApiCallResult(iteration);
+                            api1.setResponsePayload(iteration.getResponsePayload());
+                            result.setApi1(api1);
+                            Object key = byTokens ? tokenKey(tokens) : (Object) iteration.getIterationNumber();
+                            diffs.add(submitDiff(pool, result, nextPosition(positions, key), baseline, config,
+                                    options));
+                        }
+                    }
+                } else {
+                    diffResultsFile(new File(baselineConfig.getDiffResultsFile()), byTokens,
+                            baseline.getMetadata().getOperation(), (result, key) -> diffs.add(
+                                    submitDiff(pool, result, nextPosition(positions, key), baseline, config,
+                                            options)));
+                }
+                diffs.drain();
+                for (ComparisonResult result : unpairedBaselineIterations(positions, baseline)) {
+                    diffs.publish(result);
+                }
+                logger.info("Baseline diff completed: {} results", diffs.published);
+            } finally {
+                pool.shutdown();
+            }
+        }
+    }
+
+    private interface LiveResultConsumer {
+        void accept(ComparisonResult result, Object key) throws IOException;
+    }
+
+    /**
+     * Reads the API 1 side of a live run's JSON Lines results. A live run
+     * writes one result per operation and iteration, in iteration order: the
+     * n-th result of the baseline's operation belongs to iteration n. Results
+     * of other operations are skipped; a file with several operations is
+     * rejected if the baseline does not name its own.
+     */
+    private static void diffResultsFile(File resultsFile, boolean byTokens, String baselineOperation,
+            LiveResultConsumer consumer) throws IOException {
+        String operation = baselineOperation;
+        int skipped = 0;
+        try (MappingIterator<ComparisonResult> liveResults = JsonLinesResultSink.read(resultsFile)) {
+            int iterationNumber = 0;
+            while (liveResults.hasNext()) {
+                ComparisonResult live = liveResults.next();
+                String liveOperation = baseOperationName(live.getOperationName());
+                if (operation == null) {
+                    operation = liveOperation;
+                } else if (!Objects.equals(operation, liveOperation)) {
+                    if (baselineOperation == null) {
+                        throw new IllegalArgumentException("diffResultsFile " + resultsFile
+                                + " holds results of several operations (" + operation + ", " + liveOperation
+                                + ") and the baseline does not say which one it captured");
+                    }
+                    skipped++;
+                    continue;
+                }
+                iterationNumber++;
+                ComparisonResult result = new ComparisonResult();
+                result.setOperationName(live.getOperationName());
+                result.setIterationTokens(live.getIterationTokens());
+                result.setTimestamp(live.getTimestamp());
+                result.setApi1(live.getApi1());
+                consumer.accept(result, byTokens ? tokenKey(live.getIterationTokens()) : (Object) iterationNumber);
+            }
+        }
+        if (skipped > 0) {
+            logger.info("Skipped {} results of operations other than {} in {}", skipped, operation, resultsFile);
+        }
+    }
+
+    // The first iteration of a live run is labelled as the original payload
+    private static String baseOperationName(String operationName) {
+        String suffix = " (Original Input Payload)";
+        return operationName != null && operationName.endsWith(suffix)
+                ? operationName.substring(0, operationName.length() - suffix.length())
+                : operationName;
+    }
+
+    // Diffs in flight, published in submission order once at most `size` are pending
+    private static final class DiffWindow {
+        private final Deque<ForkJoinTask<ComparisonResult>> inFlight = new ArrayDeque<>();
+        private final int size;
+        private final ResultSink sink;
+        private int published;
+
+        DiffWindow(int size, ResultSink sink) {
+            this.size = size;
+            this.sink = sink;
+        }
+
+        void add(ForkJoinTask<ComparisonResult> diff) throws IOException {
+            inFlight.add(diff);
+            while (inFlight.size() > size) {
+                publish(inFlight.poll().join());
+            }
+        }
+
+        void drain() throws IOException {
+            while (!inFlight.isEmpty()) {
+                publish(inFlight.poll().join());
+            }
+        }
+
+        void publish(ComparisonResult result) throws IOException {
+            sink.accept(result);
+            published++;
+        }
+    }
+
+    private ForkJoinTask<ComparisonResult> submitDiff(ForkJoinPool pool, ComparisonResult result, Integer position,
+            BaselineStorageService.BaselineRun baseline, Config config, ComparisonOptions options) {
+        return pool.submit(() -> {
+            if (position == null) {
+                result.setStatus(ComparisonResult.Status.ERROR);
+                result.setErrorMessage("No baseline iteration matches this iteration");
+                return result;
+            }
+            try {
+                describeBaseline(result, config.getBaseline(), baseline.getMetadata());
+                compareWithBaselineIteration(result, baseline.getIteration(position), config.getTestType(),
+                        options);
+            } catch (Exception e) {
+                logger.error("Error diffing against baseline iteration {}: {}", position + 1, e.getMessage(), e);
+                result.setStatus(ComparisonResult.Status.ERROR);
+                result.setErrorMessage("Comparison failed: " + e.getMessage());
+            }
+            return result;
+        });
+    }
+
+    private static Integer nextPosition(Map<Object, Deque<Integer>> positions, Object key) {
+        Deque<Integer> candidates = positions.get(key);
+        return candidates != null ? candidates.poll() : null;
+    }
+
+    private List<ComparisonResult> unpairedBaselineIterations(Map<Object, Deque<Integer>> positions,
+            BaselineStorageService.BaselineRun baseline) throws IOException {
+        List<Integer> unpaired = new ArrayList<>();
+        positions.values().forEach(unpaired::addAll);
+        Collections.sort(unpaired);
+
+        List<ComparisonResult> results = new ArrayList<>();
+        for (int position : unpaired) {
+            ComparisonResult result = new ComparisonResult();
+            result.setOperationName(baseline.getMetadata().getOperation());
+            result.setIterationTokens(convertTokensToMap(baseline.getRequestMetadata(position).getTokensUsed()));
+            result.setStatus(ComparisonResult.Status.ERROR);
+            result.setErrorMessage("Baseline iteration " + baseline.getIterationNumber(position)
+                    + " has no matching iteration in the diffed run");
+            results.add(result);
+        }
+        return results;
+    }
+
+    // Token sets compare equal whatever their order and value types
+    private static Map<String, String> tokenKey(Map<String, ?> tokens) {
+        Map<String, String> key = new TreeMap<>();
+        if (tokens != null) {
+            tokens.forEach((name, value) -> key.put(name, String.valueOf(value)));
+        }
+        return key;
+    }
+
+    private static void describeBaseline(ComparisonResult result, Config.BaselineConfig baselineConfig,
+            RunMetadata baselineMetadata) {
+        String serviceName = baselineConfig.getServiceName();
+        String date = baselineConfig.getCompareDate();
+        String runId = baselineConfig.getCompareRunId();
+        result.setBaselineServiceName(serviceName);
+        result.setBaselineDate(date);
+        result.setBaselineRunId(runId);
+
+        // Set formatted baseline path for display
+        String baselinePath = baselineConfig.getStorageDir() + "\\" + serviceName + "\\" + date + "\\" + runId;
+        result.setBaselinePath(baselinePath);
+
+        result.setBaselineDescription(baselineMetadata.getDescription());
+        result.setBaselineTags(baselineMetadata.getTags());
+        result.setBaselineCaptureTimestamp(baselineMetadata.getCaptureTimestamp());
+    }
+
     private ComparisonResult executeApiCall(ApiConfig apiConfig, Map<String, Object> tokens,
             String testType, int iterationNumber, boolean isOriginal) throws Exception {
 
@@ -211,7 +530,7 @@ public class BaselineComparisonService {
         result.setIterationTokens(new HashMap<>(tokens));
         result.setTimestamp(ZonedDateTime.now().format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss")));
 
-        ApiClient client = new ApiClient(apiConfig.getAuthentication());
+        ApiClient client = clients.computeIfAbsent(apiConfig, c -> new ApiClient(c.getAuthentication(), c.getTransport()));
         ApiCallResult apiCallResult = new ApiCallResult();
         result.setApi1(apiCallResult);
 
@@ -220,7 +539,7 @@ public class BaselineComparisonService {
 
         String payload = null;
         if (operation.getPayloadTemplatePath() != null && !operation.getPayloadTemplatePath().isEmpty()) {
-            PayloadProcessor processor = new PayloadProcessor(operation.getPayloadTemplatePath(), testType);
+            PayloadProcessor processor = payloadProcessorFor(operation, testType);
             payload = processor.process(tokens);
         }
 
@@ -240,6 +559,19 @@ public class BaselineComparisonService {
         return result;
     }
 
+    // Templates are read and compiled once per operation, not per iteration
+    private PayloadProcessor payloadProcessorFor(Operation operation, String testType) throws IOException {
+        PayloadProcessor processor = payloadProcessors.get(operation);
+        if (processor == null) {
+            processor = new PayloadProcessor(operation.getPayloadTemplatePath(), testType);
+            PayloadProcessor existing = payloadProcessors.putIfAbsent(operation, processor);
+            if (existing != null) {
+                processor = existing;
+            }
+        }
+        return processor;
+    }
+
     private BaselineStorageService.BaselineIteration convertToBaselineIteration(
             ComparisonResult result, int iterationNumber, Map<String, Object> tokens,
             ApiConfig apiConfig, String testType) {
@@ -283,25 +615,38 @@ public class BaselineComparisonService {
 
     private void compareWithBaselineIteration(ComparisonResult result,
             BaselineStorageService.BaselineIteration baseline,
-            String testType) {
+            String testType, ComparisonOptions options) {
+
+        ApiCallResult baselineApi = toApiCallResult(baseline);
+        String liveResponse = result.getApi1().getResponsePayload();
+        if (baseline.getResponsePayloadHash() != null && liveResponse != null
+                && baseline.getResponsePayloadHash().equals(BaselineBlobStore.hex(BaselineBlobStore.hash(liveResponse)))) {
+            // Same content as captured: a MATCH without reading the stored payload
+            baselineApi.setResponsePayload(liveResponse);
+        } else {
+            baselineApi.setResponsePayload(baseline.getResponsePayload());
+        }
+
+        result.setApi2(baselineApi);
+
+        ComparisonEngine.compare(result, testType, options);
+    }
 
-        ApiCallResult baselineApi = new ApiCallResult();
-        baselineApi.setUrl(baseline.getRequestMetadata().getEndpoint());
-        baselineApi.setMethod(baseline.getRequestMetadata().getMethod());
-        baselineApi.setRequestPayload(baseline.getRequestPayload());
-        baselineApi.setResponsePayload(baseline.getResponsePayload());
+    // Everything but the response payload, which callers set when they need it
+    private static ApiCallResult toApiCallResult(BaselineStorageService.BaselineIteration iteration) {
+        ApiCallResult apiCall = new ApiCallResult();
+        apiCall.setUrl(iteration.getRequestMetadata().getEndpoint());
+        apiCall.setMethod(iteration.getRequestMetadata().getMethod());
+        apiCall.setRequestPayload(iteration.getRequestPayload());
 
         // Handle duration - could be Integer or Long from JSON deserialization
-        Object durationObj = baseline.getResponseMetadata().get("duration");
+        Object durationObj = iteration.getResponseMetadata().get("duration");
         if (durationObj instanceof Number) {
-            baselineApi.setDuration(((Number) durationObj).longValue());
+            apiCall.setDuration(((Number) durationObj).longValue());
         }
 
-        baselineApi.setStatusCode((Integer) baseline.getResponseMetadata().get("statusCode"));
-
-        result.setApi2(baselineApi);
-
-        ComparisonEngine.compare(result, testType);
+        apiCall.setStatusCode((Integer) iteration.getResponseMetadata().get("statusCode"));
+        return apiCall;
     }
 
     private RunMetadata createRunMetadata(String runId, String serviceName, String date,
@@ -310,7 +655,11 @@ public class BaselineComparisonService {
         Map<String, Object> configUsed = new HashMap<>();
         configUsed.put("maxIterations", config.getMaxIterations());
         configUsed.put("iterationController", config.getIterationController());
+        if ("PAIRWISE".equalsIgnoreCase(config.getIterationController())) {
+            configUsed.put("pairwiseStrength", config.getPairwiseStrength());
+        }
         configUsed.put("testType", config.getTestType());
+        configUsed.put("tokens", config.getTokens());
 
         return new RunMetadata(
                 runId,
@@ -326,6 +675,21 @@ public class BaselineComparisonService {
                 configUsed);
     }
 
+    // Hash of everything that decides which request each iteration number stands for
+    private static String iterationFingerprint(ApiConfig apiConfig, Config config) throws IOException {
+        Operation operation = apiConfig.getOperations().get(0);
+        Map<String, Object> space = new LinkedHashMap<>();
+        space.put("testType", config.getTestType());
+        space.put("baseUrl", apiConfig.getBaseUrl());
+        space.put("operation", Arrays.asList(operation.getName(), operation.getPath(), operation.getMethods(),
+                operation.getPayloadTemplatePath()));
+        space.put("iterationController", config.getIterationController());
+        space.put("maxIterations", config.getMaxIterations());
+        space.put("pairwiseStrength", config.getPairwiseStrength());
+        space.put("tokens", config.getTokens());
+        return BaselineBlobStore.hex(BaselineBlobStore.hash(mapper.writeValueAsString(space)));
+    }
+
     private Map<String, Object> convertTokensToMap(Map<String, String> stringTokens) {
         Map<String, Object> result = new HashMap<>();
         if (stringTokens != null) {
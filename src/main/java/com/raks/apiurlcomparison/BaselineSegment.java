@@ -0,0 +1,872 @@
+package com.raks.apiurlcomparison;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.zip.CRC32C;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Packed baseline run: every iteration of a run in one append-only file,
+ * {@value #FILE_NAME}, instead of a directory of six files per iteration.
+ *
+ * <pre>
+ * header      "BSEG" version:int
+ * dictionary? length:int bytes                          (version 2+, optional)
+ * record*     length:int iterationNumber:int field{6}
+ * index       count:int (iterationNumber:int offset:long length:int){count}
+ * trailer     dictionaryOffset:long indexOffset:long version:int "BIDX"   (version 2+)
+ *             indexOffset:long version:int "BIDX"                         (version 1)
+ *
+ * field v1    length:int (-1 = null) UTF-8 bytes
+ * field v2+   codec:byte rawLength:int (-1 = null) storedLength:int crc32c:int bytes
+ * </pre>
+ *
+ * Fields are, in order: request payload, request headers, request metadata,
+ * response payload, response headers and response metadata; headers and
+ * metadata as compact JSON. Readers map the file and find any iteration
+ * through the index without reading the others.
+ *
+ * <p>
+ * Version 2 deflates each field on its own, optionally primed with a preset
+ * dictionary trained from the first iterations of the run, and stores a
+ * CRC-32C of the uncompressed bytes that is verified on every read. Version 3
+ * adds references into the service's {@link BaselineBlobStore}: response
+ * payloads of at least {@value #MIN_BLOB_LENGTH} bytes are stored there once
+ * and the field holds their SHA-256 instead (checksum 0; the blob store verifies
+ * the hash). Older segments stay readable.
+ */
+final class BaselineSegment {
+
+    static final String FILE_NAME = "iterations.seg";
+    static final int VERSION = 3;
+
+    private static final int HEADER_MAGIC = 0x4253_4547; // "BSEG"
+    private static final int TRAILER_MAGIC = 0x4249_4458; // "BIDX"
+    private static final int HEADER_LENGTH = 8;
+    private static final int INDEX_ENTRY_LENGTH = 16;
+
+    private static final byte STORED = 0;
+    private static final byte DEFLATED = 1;
+    private static final byte DEFLATED_WITH_DICTIONARY = 2;
+    private static final byte BLOB_REFERENCE = 3;
+
+    // Fields shorter than this are stored as they are; deflate would not pay off
+    private static final int MIN_COMPRESSED_LENGTH = 64;
+    // Deflate only looks back 32 KB, so a longer dictionary is wasted
+    private static final int MAX_DICTIONARY_LENGTH = 32 * 1024;
+    // Payloads shorter than this stay inline; a lookup in the pack would cost more than it saves
+    static final int MIN_BLOB_LENGTH = 512;
+
+    private static final Logger logger = LoggerFactory.getLogger(BaselineSegment.class);
+    private static final ObjectMapper mapper = new ObjectMapper();
+
+    private BaselineSegment() {
+    }
+
+    static boolean exists(Path runDir) {
+        return Files.isRegularFile(runDir.resolve(FILE_NAME));
+    }
+
+    /**
+     * @param dictionarySamples iterations to train a dictionary from before
+     *                          the first record is written; 0 for none
+     */
+    record Compression(boolean enabled, int dictionarySamples) {
+        static final Compression NONE = new Compression(false, 0);
+        static final Compression DEFAULT = new Compression(true, 0);
+    }
+
+    /**
+     * Appends iterations to a new segment file. The index is written by
+     * {@link #close()}; until then the file is not readable as a segment, but
+     * {@link #resume} can recover the records written so far. While a
+     * dictionary is being trained, the first iterations are held back and
+     * written once it is complete. With a blob store, response payloads go
+     * there and the run lists each distinct one among its references. Request
+     * payloads stay inline: they differ from one iteration to the next.
+     */
+    static final class Writer implements Closeable {
+        private final FileChannel channel;
+        private final DataOutputStream out;
+        private final Compression compression;
+        private final ByteArrayOutputStream record = new ByteArrayOutputStream(8192);
+        private final DataOutputStream recordOut = new DataOutputStream(record);
+        private final Deflater deflater;
+        private final CRC32C crc = new CRC32C();
+        private final BaselineBlobStore blobs;
+        private final Path runDir;
+        private final Set<String> retained = new HashSet<>();
+        private byte[] deflateBuffer = new byte[8192];
+        private List<BaselineStorageService.BaselineIteration> samples;
+        private byte[] dictionary;
+        private long dictionaryOffset = -1;
+        private long recordsOffset = -1;
+        private long position;
+        private int count;
+        private int[] indexNumbers = new int[64];
+        private long[] indexOffsets = new long[64];
+        private int[] indexLengths = new int[64];
+
+        /**
+         * @param blobs store for deduplicated payloads; null to keep them inline
+         */
+        Writer(Path file, Compression compression, BaselineBlobStore blobs) throws IOException {
+            this(FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                    StandardOpenOption.WRITE), file.getParent(), compression, blobs);
+            out.writeInt(HEADER_MAGIC);
+            out.writeInt(VERSION);
+            position = HEADER_LENGTH;
+            if (samples == null) {
+                recordsOffset = position;
+            }
+        }
+
+        // Writes at the channel's current position
+        private Writer(FileChannel channel, Path runDir, Compression compression, BaselineBlobStore blobs) {
+            this.channel = channel;
+            this.runDir = runDir;
+            this.out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel), 64 * 1024));
+            this.compression = compression;
+            this.blobs = blobs;
+            this.deflater = compression.enabled() ? new Deflater(Deflater.DEFAULT_COMPRESSION) : null;
+            if (compression.enabled() && compression.dictionarySamples() > 0) {
+                samples = new ArrayList<>(compression.dictionarySamples());
+            }
+        }
+
+        /**
+         * Reopens a segment left without an index by an interrupted capture.
+         * Every complete, intact record is kept and passed to
+         * {@code recovered}; a torn record at the end is cut off, and writing
+         * continues after the last good one. Only the last record can have
+         * been torn: damage before it, or a payload missing from the blob
+         * store, fails the resume rather than dropping captured iterations.
+         *
+         * @param recordsOffset    {@link #recordsOffset()} as it was last made
+         *                         durable; -1 if records were never written
+         * @param dictionaryOffset {@link #dictionaryOffset()} at that time
+         */
+        static Writer resume(Path file, Compression compression, BaselineBlobStore blobs, long recordsOffset,
+                long dictionaryOffset, Consumer<BaselineStorageService.BaselineIteration> recovered)
+                throws IOException {
+            FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            try {
+                ByteBuffer header = readFully(channel, 0, HEADER_LENGTH);
+                if (header == null || header.getInt() != HEADER_MAGIC || header.getInt() != VERSION) {
+                    throw new IOException("Cannot resume baseline segment: " + file);
+                }
+                if (recordsOffset < 0) {
+                    // Still training the dictionary: nothing was written yet
+                    channel.truncate(HEADER_LENGTH);
+                    channel.position(HEADER_LENGTH);
+                    Writer writer = new Writer(channel, file.getParent(), compression, blobs);
+                    writer.position = HEADER_LENGTH;
+                    if (writer.samples == null) {
+                        writer.recordsOffset = HEADER_LENGTH;
+                    }
+                    return writer;
+                }
+
+                byte[] dictionary = null;
+                if (dictionaryOffset >= 0) {
+                    ByteBuffer length = readFully(channel, dictionaryOffset, 4);
+                    ByteBuffer bytes = length != null ? readFully(channel, dictionaryOffset + 4, length.getInt()) : null;
+                    if (bytes == null) {
+                        throw new IOException("Cannot resume baseline segment, dictionary is missing: " + file);
+                    }
+                    dictionary = new byte[bytes.remaining()];
+                    bytes.get(dictionary);
+                }
+                Decoder decoder = new Decoder(VERSION, dictionary, blobs);
+
+                Writer writer = new Writer(channel, file.getParent(), compression, blobs);
+                writer.samples = null;
+                writer.dictionary = dictionary;
+                writer.dictionaryOffset = dictionaryOffset;
+                writer.recordsOffset = recordsOffset;
+
+                long position = recordsOffset;
+                while (position < channel.size()) {
+                    ByteBuffer length = readFully(channel, position, 4);
+                    int recordLength = length != null ? length.getInt() : -1;
+                    if (length != null && recordLength < 4 && !isZeroFilled(channel, position)) {
+                        throw new IOException("Cannot resume baseline segment, record length " + recordLength
+                                + " at offset " + position + " is invalid: " + file);
+                    }
+                    ByteBuffer record = recordLength >= 4 ? readFully(channel, position + 4, recordLength) : null;
+                    if (record == null) {
+                        logger.warn("Dropping a torn record at offset {} of {}", position, file);
+                        break;
+                    }
+                    BaselineStorageService.BaselineIteration iteration;
+                    Set<String> references = new HashSet<>();
+                    try {
+                        iteration = decoder.decode(record.duplicate());
+                        decoder.collectBlobReferences(record.duplicate(), references);
+                    } catch (CorruptRecordException e) {
+                        if (position + 4 + recordLength < channel.size()) {
+                            throw new IOException("Cannot resume baseline segment, record at offset " + position
+                                    + " is corrupt and not the last one: " + file, e);
+                        }
+                        logger.warn("Dropping a torn record at offset {} of {}: {}", position, file, e.getMessage());
+                        break;
+                    }
+                    for (String hash : references) {
+                        if (blobs == null || !blobs.contains(hash)) {
+                            throw new IOException("Cannot resume baseline segment, payload " + hash
+                                    + " is missing from the blob store: " + file);
+                        }
+                    }
+                    writer.retained.addAll(references);
+                    writer.addToIndex(iteration.getIterationNumber(), position + 4, recordLength);
+                    recovered.accept(iteration);
+                    position += 4 + recordLength;
+                }
+                channel.truncate(position);
+                channel.position(position);
+                writer.position = position;
+                return writer;
+            } catch (IOException | RuntimeException e) {
+                channel.close();
+                throw e;
+            }
+        }
+
+        // A crash can leave the end of a file zero-filled rather than cut short
+        private static boolean isZeroFilled(FileChannel channel, long offset) throws IOException {
+            ByteBuffer buffer = ByteBuffer.allocate(8192);
+            for (long position = offset; position < channel.size(); position += buffer.position()) {
+                buffer.clear();
+                channel.read(buffer, position);
+                for (int i = 0; i < buffer.position(); i++) {
+                    if (buffer.get(i) != 0) {
+                        return false;
+                    }
+                }
+            }
+            return true;
+        }
+
+        // Null if the file ends before length bytes
+        private static ByteBuffer readFully(FileChannel channel, long offset, int length) throws IOException {
+            if (length < 0 || offset + length > channel.size()) {
+                return null;
+            }
+            ByteBuffer buffer = ByteBuffer.allocate(length);
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer, offset + buffer.position()) < 0) {
+                    return null;
+                }
+            }
+            return buffer.flip();
+        }
+
+        void append(BaselineStorageService.BaselineIteration iteration) throws IOException {
+            if (samples != null) {
+                samples.add(iteration);
+                if (samples.size() >= compression.dictionarySamples()) {
+                    flushSamples();
+                }
+                return;
+            }
+            write(iteration);
+        }
+
+        int count() {
+            return count + (samples != null ? samples.size() : 0);
+        }
+
+        /**
+         * Offset of the first record; -1 while a dictionary is being trained
+         * and no record has been written.
+         */
+        long recordsOffset() {
+            return recordsOffset;
+        }
+
+        long dictionaryOffset() {
+            return dictionaryOffset;
+        }
+
+        Compression compression() {
+            return compression;
+        }
+
+        boolean deduplicates() {
+            return blobs != null;
+        }
+
+        /**
+         * Hands everything appended so far, apart from iterations held back
+         * for dictionary training, to the operating system.
+         */
+        void flush() throws IOException {
+            out.flush();
+        }
+
+        /**
+         * Flushes and forces what was written to the storage device.
+         */
+        void sync() throws IOException {
+            out.flush();
+            if (blobs != null) {
+                blobs.sync(runDir); // Before the records referencing its blobs
+            }
+            channel.force(false);
+        }
+
+        // Trains the dictionary, writes it, then the iterations held back for it
+        private void flushSamples() throws IOException {
+            List<BaselineStorageService.BaselineIteration> held = samples;
+            samples = null;
+            List<String> payloads = new ArrayList<>(held.size() * 2);
+            for (BaselineStorageService.BaselineIteration iteration : held) {
+                payloads.add(iteration.getRequestPayload());
+                payloads.add(iteration.getResponsePayload());
+            }
+            dictionary = trainDictionary(payloads);
+            if (dictionary.length > 0) {
+                dictionaryOffset = position;
+                out.writeInt(dictionary.length);
+                out.write(dictionary);
+                position += 4 + dictionary.length;
+            } else {
+                dictionary = null;
+            }
+            recordsOffset = position;
+            for (BaselineStorageService.BaselineIteration iteration : held) {
+                write(iteration);
+            }
+        }
+
+        private void write(BaselineStorageService.BaselineIteration iteration) throws IOException {
+            record.reset();
+            recordOut.writeInt(iteration.getIterationNumber());
+            writeField(iteration.getRequestPayload());
+            writeField(json(iteration.getRequestHeaders()));
+            writeField(json(iteration.getRequestMetadata()));
+            writeResponsePayload(iteration.getResponsePayload());
+            writeField(json(iteration.getResponseHeaders()));
+            writeField(json(iteration.getResponseMetadata()));
+
+            out.writeInt(record.size());
+            record.writeTo(out);
+            addToIndex(iteration.getIterationNumber(), position + 4, record.size());
+            position += 4 + record.size();
+        }
+
+        private void addToIndex(int iterationNumber, long offset, int length) {
+            if (count == indexNumbers.length) {
+                indexNumbers = Arrays.copyOf(indexNumbers, count * 2);
+                indexOffsets = Arrays.copyOf(indexOffsets, count * 2);
+                indexLengths = Arrays.copyOf(indexLengths, count * 2);
+            }
+            indexNumbers[count] = iterationNumber;
+            indexOffsets[count] = offset;
+            indexLengths[count] = length;
+            count++;
+        }
+
+        private void writeResponsePayload(String value) throws IOException {
+            if (blobs == null || value == null || value.length() < MIN_BLOB_LENGTH) {
+                writeField(value);
+                return;
+            }
+            byte[] hash = BaselineBlobStore.hash(value);
+            String hexHash = BaselineBlobStore.hex(hash);
+            if (retained.add(hexHash)) {
+                blobs.put(runDir, hexHash, value);
+            }
+            recordOut.writeByte(BLOB_REFERENCE);
+            recordOut.writeInt(value.getBytes(StandardCharsets.UTF_8).length);
+            recordOut.writeInt(hash.length);
+            recordOut.writeInt(0);
+            recordOut.write(hash);
+        }
+
+        private void writeField(String value) throws IOException {
+            if (value == null) {
+                recordOut.writeByte(STORED);
+                recordOut.writeInt(-1);
+                return;
+            }
+            byte[] raw = value.getBytes(StandardCharsets.UTF_8);
+            crc.reset();
+            crc.update(raw);
+            int checksum = (int) crc.getValue();
+
+            if (deflater != null && raw.length >= MIN_COMPRESSED_LENGTH) {
+                int compressed = deflate(raw);
+                if (compressed < raw.length) {
+                    recordOut.writeByte(dictionary != null ? DEFLATED_WITH_DICTIONARY : DEFLATED);
+                    recordOut.writeInt(raw.length);
+                    recordOut.writeInt(compressed);
+                    recordOut.writeInt(checksum);
+                    recordOut.write(deflateBuffer, 0, compressed);
+                    return;
+                }
+            }
+            recordOut.writeByte(STORED);
+            recordOut.writeInt(raw.length);
+            recordOut.writeInt(raw.length);
+            recordOut.writeInt(checksum);
+            recordOut.write(raw);
+        }
+
+        // Deflates into deflateBuffer, growing it as needed; returns the length
+        private int deflate(byte[] raw) {
+            deflater.reset();
+            if (dictionary != null) {
+                deflater.setDictionary(dictionary);
+            }
+            deflater.setInput(raw);
+            deflater.finish();
+            int length = 0;
+            while (!deflater.finished()) {
+                if (length == deflateBuffer.length) {
+                    deflateBuffer = Arrays.copyOf(deflateBuffer, deflateBuffer.length * 2);
+                }
+                length += deflater.deflate(deflateBuffer, length, deflateBuffer.length - length);
+            }
+            return length;
+        }
+
+        /**
+         * Writes the index, in iteration order whatever order the iterations
+         * were appended in, and the trailer.
+         */
+        @Override
+        public void close() throws IOException {
+            try {
+                if (samples != null) {
+                    flushSamples(); // Fewer iterations than samples requested
+                }
+                Integer[] order = new Integer[count];
+                for (int i = 0; i < count; i++) {
+                    order[i] = i;
+                }
+                Arrays.sort(order, (a, b) -> Integer.compare(indexNumbers[a], indexNumbers[b]));
+
+                long indexOffset = position;
+                out.writeInt(count);
+                for (int i : order) {
+                    out.writeInt(indexNumbers[i]);
+                    out.writeLong(indexOffsets[i]);
+                    out.writeInt(indexLengths[i]);
+                }
+                out.writeLong(dictionaryOffset);
+                out.writeLong(indexOffset);
+                out.writeInt(VERSION);
+                out.writeInt(TRAILER_MAGIC);
+            } finally {
+                if (deflater != null) {
+                    deflater.end();
+                }
+                out.close();
+            }
+        }
+
+        /**
+         * Closes the file without writing an index, leaving it to
+         * {@link #resume}. Iterations held back for dictionary training are lost.
+         */
+        void abandon() throws IOException {
+            try {
+                out.flush();
+            } finally {
+                if (deflater != null) {
+                    deflater.end();
+                }
+                channel.close();
+            }
+        }
+
+        private static String json(Object value) throws IOException {
+            return value != null ? mapper.writeValueAsString(value) : null;
+        }
+    }
+
+    /**
+     * Builds a preset dictionary from sample payloads: the lines (or tags)
+     * that recur in at least two samples, most valuable last, where deflate
+     * reaches them with the shortest distances.
+     */
+    static byte[] trainDictionary(List<String> samples) {
+        Map<String, Integer> occurrences = new HashMap<>();
+        for (String sample : samples) {
+            if (sample == null) {
+                continue;
+            }
+            Map<String, Boolean> seen = new HashMap<>();
+            int start = 0;
+            for (int i = 0; i < sample.length(); i++) {
+                char c = sample.charAt(i);
+                // Split after a tag, a line or a JSON value
+                if (c == '>' || c == '\n' || c == ',' || i == sample.length() - 1) {
+                    String piece = sample.substring(start, i + 1).trim();
+                    if (piece.length() >= 4 && seen.put(piece, Boolean.TRUE) == null) {
+                        occurrences.merge(piece, 1, Integer::sum);
+                    }
+                    start = i + 1;
+                }
+            }
+        }
+        List<Map.Entry<String, Integer>> recurring = new ArrayList<>();
+        for (Map.Entry<String, Integer> entry : occurrences.entrySet()) {
+            if (entry.getValue() >= 2) {
+                recurring.add(entry);
+            }
+        }
+        // Most bytes saved first, so the cut below keeps the best pieces
+        recurring.sort((a, b) -> Long.compare((long) b.getValue() * b.getKey().length(),
+                (long) a.getValue() * a.getKey().length()));
+        List<byte[]> kept = new ArrayList<>();
+        int length = 0;
+        for (Map.Entry<String, Integer> entry : recurring) {
+            byte[] bytes = entry.getKey().getBytes(StandardCharsets.UTF_8);
+            if (length + bytes.length > MAX_DICTIONARY_LENGTH) {
+                continue;
+            }
+            kept.add(bytes);
+            length += bytes.length;
+        }
+        byte[] dictionary = new byte[length];
+        int position = length;
+        for (byte[] piece : kept) {
+            position -= piece.length;
+            System.arraycopy(piece, 0, dictionary, position, piece.length);
+        }
+        return dictionary;
+    }
+
+    /**
+     * A record whose bytes are damaged: a checksum or a length does not add
+     * up. Unlike other read failures, this is what a torn write leaves.
+     */
+    static final class CorruptRecordException extends IOException {
+        CorruptRecordException(String message, Throwable cause) {
+            super(message, cause);
+        }
+    }
+
+    /**
+     * Turns records back into iterations, verifying checksums. Response
+     * payloads kept in the blob store are read from it only when first asked
+     * for.
+     */
+    private static final class Decoder {
+        private final int version;
+        private final byte[] dictionary;
+        private final BaselineBlobStore blobs;
+
+        Decoder(int version, byte[] dictionary, BaselineBlobStore blobs) {
+            this.version = version;
+            this.dictionary = dictionary;
+            this.blobs = blobs;
+        }
+
+        /**
+         * @param record positioned at the iteration number
+         * @throws CorruptRecordException if the record's bytes are damaged
+         * @throws IOException            if a payload it references cannot
+         *                                be read
+         */
+        @SuppressWarnings("unchecked")
+        BaselineStorageService.BaselineIteration decode(ByteBuffer record) throws IOException {
+            int iterationNumber = record.getInt();
+            Inflater inflater = version == 1 ? null : new Inflater();
+            try {
+                String requestPayload = readPayload(record, inflater);
+                String requestHeaders = readField(record, inflater);
+                String requestMetadata = readField(record, inflater);
+                String responseHash = blobReference(record);
+                String responsePayload = responseHash == null ? readField(record, inflater) : null;
+                String responseHeaders = readField(record, inflater);
+                String responseMetadata = readField(record, inflater);
+                return new BaselineStorageService.BaselineIteration(
+                        iterationNumber,
+                        requestPayload,
+                        requestHeaders != null ? mapper.readValue(requestHeaders, Map.class) : null,
+                        requestMetadata != null ? mapper.readValue(requestMetadata, IterationMetadata.class) : null,
+                        responsePayload,
+                        responseHeaders != null ? mapper.readValue(responseHeaders, Map.class) : null,
+                        responseMetadata != null ? mapper.readValue(responseMetadata, Map.class) : null,
+                        responseHash,
+                        responseHash != null ? blobs() : null);
+            } catch (DataFormatException | BufferUnderflowException | IndexOutOfBoundsException
+                    | IllegalArgumentException e) {
+                throw new CorruptRecordException("Corrupt baseline record for iteration " + iterationNumber + ": "
+                        + e.getMessage(), e);
+            } finally {
+                if (inflater != null) {
+                    inflater.end();
+                }
+            }
+        }
+
+        /**
+         * Decodes the request metadata of a record, skipping the fields before
+         * it and leaving the rest unread.
+         */
+        IterationMetadata decodeRequestMetadata(ByteBuffer record) throws IOException {
+            int iterationNumber = record.getInt();
+            Inflater inflater = version == 1 ? null : new Inflater();
+            try {
+                if (blobReference(record) == null) {
+                    skipField(record); // request payload
+                }
+                skipField(record); // request headers
+                String requestMetadata = readField(record, inflater);
+                return requestMetadata != null ? mapper.readValue(requestMetadata, IterationMetadata.class) : null;
+            } catch (DataFormatException | BufferUnderflowException | IndexOutOfBoundsException
+                    | IllegalArgumentException e) {
+                throw new CorruptRecordException("Corrupt baseline record for iteration " + iterationNumber + ": "
+                        + e.getMessage(), e);
+            } finally {
+                if (inflater != null) {
+                    inflater.end();
+                }
+            }
+        }
+
+        /**
+         * Adds the hashes of the blobs a record references, without reading them.
+         */
+        void collectBlobReferences(ByteBuffer record, Set<String> references) throws IOException {
+            if (version < 3) {
+                return;
+            }
+            try {
+                record.getInt(); // iteration number
+                for (int field = 0; field < 6; field++) {
+                    String hash = blobReference(record);
+                    if (hash != null) {
+                        references.add(hash);
+                    } else {
+                        skipField(record);
+                    }
+                }
+            } catch (BufferUnderflowException | IndexOutOfBoundsException | IllegalArgumentException e) {
+                throw new CorruptRecordException("Corrupt baseline record: " + e, e);
+            }
+        }
+
+        private String readPayload(ByteBuffer record, Inflater inflater) throws IOException, DataFormatException {
+            String hash = blobReference(record);
+            return hash != null ? blobs().get(hash) : readField(record, inflater);
+        }
+
+        // Consumes the field if it is a blob reference and returns its hash; null otherwise
+        private String blobReference(ByteBuffer record) {
+            if (version < 3 || record.get(record.position()) != BLOB_REFERENCE) {
+                return null;
+            }
+            record.get(); // codec
+            record.getInt(); // raw length
+            byte[] hash = new byte[record.getInt()];
+            record.getInt(); // checksum, unused: the blob store verifies the hash
+            record.get(hash);
+            return BaselineBlobStore.hex(hash);
+        }
+
+        private void skipField(ByteBuffer record) {
+            if (version == 1) {
+                int length = record.getInt();
+                record.position(record.position() + Math.max(length, 0));
+                return;
+            }
+            record.get(); // codec
+            if (record.getInt() >= 0) {
+                int storedLength = record.getInt();
+                record.getInt(); // checksum
+                record.position(record.position() + storedLength);
+            }
+        }
+
+        private BaselineBlobStore blobs() throws IOException {
+            if (blobs == null) {
+                throw new IOException("Baseline segment references payloads but no blob store was given");
+            }
+            return blobs;
+        }
+
+        private String readField(ByteBuffer record, Inflater inflater) throws IOException, DataFormatException {
+            if (version == 1) {
+                int length = record.getInt();
+                if (length < 0) {
+                    return null;
+                }
+                byte[] bytes = new byte[length];
+                record.get(bytes);
+                return new String(bytes, StandardCharsets.UTF_8);
+            }
+
+            byte codec = record.get();
+            int rawLength = record.getInt();
+            if (rawLength < 0) {
+                return null;
+            }
+            int storedLength = record.getInt();
+            int checksum = record.getInt();
+            byte[] raw = new byte[rawLength];
+            if (codec == STORED) {
+                record.get(raw);
+            } else {
+                // Inflate straight from the mapping, no copy of the compressed bytes
+                ByteBuffer stored = record.slice(record.position(), storedLength);
+                record.position(record.position() + storedLength);
+                inflater.reset();
+                inflater.setInput(stored);
+                int length = 0;
+                while (length < rawLength) {
+                    int n = inflater.inflate(raw, length, rawLength - length);
+                    if (n == 0) {
+                        if (inflater.needsDictionary() && codec == DEFLATED_WITH_DICTIONARY && dictionary != null) {
+                            inflater.setDictionary(dictionary);
+                        } else if (inflater.finished() || inflater.needsInput() || inflater.needsDictionary()) {
+                            throw new DataFormatException("truncated field");
+                        }
+                    }
+                    length += n;
+                }
+            }
+            CRC32C crc = new CRC32C();
+            crc.update(raw);
+            if ((int) crc.getValue() != checksum) {
+                throw new CorruptRecordException("Checksum mismatch in baseline segment", null);
+            }
+            return new String(raw, StandardCharsets.UTF_8);
+        }
+    }
+
+    /**
+     * Random access to the iterations of a segment through a read-only memory
+     * mapping. Files above 2 GB are mapped one record at a time. Safe for
+     * concurrent reads.
+     */
+    static final class Reader implements Closeable, BaselineStorageService.BaselineRun.IterationSource {
+        private final FileChannel channel;
+        private final MappedByteBuffer whole; // null when the file is too large to map at once
+        private final Decoder decoder;
+        private final int[] iterationNumbers;
+        private final long[] offsets;
+        private final int[] lengths;
+
+        /**
+         * @param blobs store the segment's payload references point into; may
+         *              be null for segments written without one
+         */
+        Reader(Path file, BaselineBlobStore blobs) throws IOException {
+            this.channel = FileChannel.open(file, StandardOpenOption.READ);
+            try {
+                long size = channel.size();
+                if (size < HEADER_LENGTH + 4 + 16) {
+                    throw new IOException("Not a baseline segment (too short): " + file);
+                }
+                this.whole = size <= Integer.MAX_VALUE ? channel.map(FileChannel.MapMode.READ_ONLY, 0, size) : null;
+
+                ByteBuffer header = region(0, HEADER_LENGTH);
+                if (header.getInt() != HEADER_MAGIC) {
+                    throw new IOException("Not a baseline segment: " + file);
+                }
+                int version = header.getInt();
+                if (version < 1 || version > VERSION) {
+                    throw new IOException("Unsupported baseline segment version " + version + ": " + file);
+                }
+                int trailerLength = version == 1 ? 16 : 24;
+                ByteBuffer trailer = region(size - trailerLength, trailerLength);
+                long dictionaryOffset = version == 1 ? -1 : trailer.getLong();
+                long indexOffset = trailer.getLong();
+                trailer.getInt(); // version, repeated
+                if (trailer.getInt() != TRAILER_MAGIC) {
+                    throw new IOException("Baseline segment has no index (incomplete capture?): " + file);
+                }
+
+                byte[] dictionary = null;
+                if (dictionaryOffset >= 0) {
+                    int length = region(dictionaryOffset, 4).getInt();
+                    dictionary = new byte[length];
+                    region(dictionaryOffset + 4, length).get(dictionary);
+                }
+                decoder = new Decoder(version, dictionary, blobs);
+
+                int count = region(indexOffset, 4).getInt();
+                ByteBuffer index = region(indexOffset + 4, count * INDEX_ENTRY_LENGTH);
+                iterationNumbers = new int[count];
+                offsets = new long[count];
+                lengths = new int[count];
+                for (int i = 0; i < count; i++) {
+                    iterationNumbers[i] = index.getInt();
+                    offsets[i] = index.getLong();
+                    lengths[i] = index.getInt();
+                }
+            } catch (IOException | RuntimeException e) {
+                channel.close();
+                throw e;
+            }
+        }
+
+        int size() {
+            return iterationNumbers.length;
+        }
+
+        @Override
+        public int iterationNumber(int i) {
+            return iterationNumbers[i];
+        }
+
+        /**
+         * @throws IOException if the record is corrupt (checksum mismatch)
+         */
+        @Override
+        public BaselineStorageService.BaselineIteration read(int i) throws IOException {
+            return decoder.decode(region(offsets[i], lengths[i]));
+        }
+
+        /**
+         * Decodes only the request metadata field of a record.
+         */
+        @Override
+        public IterationMetadata requestMetadata(int i) throws IOException {
+            return decoder.decodeRequestMetadata(region(offsets[i], lengths[i]));
+        }
+
+        private ByteBuffer region(long offset, int length) throws IOException {
+            if (whole != null) {
+                return whole.slice((int) offset, length);
+            }
+            return channel.map(FileChannel.MapMode.READ_ONLY, offset, length);
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+    }
+}
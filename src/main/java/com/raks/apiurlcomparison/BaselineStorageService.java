@@ -5,19 +5,42 @@ import com.fasterxml.jackson.databind.SerializationFeature;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.Closeable;
 import java.io.File;
 import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileLock;
+import java.nio.file.FileAlreadyExistsException;
 import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
 import java.time.LocalDate;
 import java.time.format.DateTimeFormatter;
 import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Predicate;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 /**
  * Service for managing baseline storage with date/run folder structure:
- * baselines/{serviceName}/{YYYYMMDD}/{run-XXX}/iteration-XXX/
+ * baselines/{serviceName}/{YYYYMMDD}/{run-XXX}/
+ *
+ * <p>
+ * A run holds metadata.json, summary.json and its iterations, either packed
+ * into one segment file ({@link BaselineSegment}) or, in the original layout,
+ * as one iteration-XXX/ directory of six files per iteration. Both layouts
+ * are read; new runs are written in the configured {@link StorageFormat}.
+ * Packed payloads are deflated unless compression is turned off, optionally
+ * with a dictionary trained from the first iterations of the run. Large
+ * payloads of packed runs are deduplicated into a per-service
+ * {@link BaselineBlobStore} under {serviceName}/.blobs/.
  */
 public class BaselineStorageService {
 
@@ -25,39 +48,254 @@ public class BaselineStorageService {
     private static final ObjectMapper mapper = new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT);
     private static final DateTimeFormatter DATE_FORMATTER = DateTimeFormatter.ofPattern("yyyyMMdd");
 
+    /**
+     * How the iterations of a new run are written.
+     */
+    public enum StorageFormat {
+        /** One segment file per run with an offset index. */
+        PACKED,
+        /** One directory of six files per iteration. */
+        DIRECTORY;
+
+        public static StorageFormat parse(String value) {
+            if (value == null || value.isBlank()) {
+                return PACKED;
+            }
+            try {
+                return valueOf(value.trim().toUpperCase());
+            } catch (IllegalArgumentException e) {
+                logger.warn("Unknown baseline storageFormat '{}', using PACKED.", value);
+                return PACKED;
+            }
+        }
+    }
+
     private final String baseStorageDir;
+    private final StorageFormat storageFormat;
+    private final BaselineSegment.Compression compression;
+    private final boolean deduplicate;
 
     public BaselineStorageService(String baseStorageDir) {
+        this(baseStorageDir, StorageFormat.PACKED);
+    }
+
+    public BaselineStorageService(String baseStorageDir, StorageFormat storageFormat) {
+        this(baseStorageDir, storageFormat, true, 0, true);
+    }
+
+    /**
+     * @param compress                     deflate payloads of packed runs
+     * @param dictionaryTrainingIterations iterations to train a compression
+     *                                     dictionary from; 0 for none
+     * @param deduplicate                  keep large payloads of packed runs
+     *                                     once in the service's blob store
+     */
+    public BaselineStorageService(String baseStorageDir, StorageFormat storageFormat, boolean compress,
+            int dictionaryTrainingIterations, boolean deduplicate) {
         this.baseStorageDir = baseStorageDir;
+        this.storageFormat = storageFormat;
+        this.compression = compress
+                ? new BaselineSegment.Compression(true, Math.max(0, dictionaryTrainingIterations))
+                : BaselineSegment.Compression.NONE;
+        this.deduplicate = deduplicate;
+    }
+
+    public static BaselineStorageService from(Config.BaselineConfig config) {
+        return new BaselineStorageService(config.getStorageDir(),
+                StorageFormat.parse(config.getStorageFormat()),
+                !"NONE".equalsIgnoreCase(config.getCompression()),
+                config.getDictionaryTrainingIterations(),
+                config.isDeduplicatePayloads());
     }
 
     /**
      * Save a complete baseline run with all iterations
      */
     public void saveBaseline(RunMetadata runMetadata, List<BaselineIteration> iterations) throws IOException {
-        String serviceName = runMetadata.getServiceName();
-        String date = runMetadata.getCaptureDate();
-        String runId = runMetadata.getRunId();
+        try (BaselineCaptureWriter writer = startCapture(runMetadata, 0)) {
+            for (BaselineIteration iteration : iterations) {
+                writer.append(iteration);
+            }
+            writer.complete();
+        }
+        logger.info("Baseline saved: {}/{}/{} with {} iterations", runMetadata.getServiceName(),
+                runMetadata.getCaptureDate(), runMetadata.getRunId(), iterations.size());
+    }
 
-        Path runDir = getRunDirectory(serviceName, date, runId);
+    /**
+     * Starts capturing a run whose iterations are persisted one by one as
+     * they are appended. The run ID should come from {@link #generateRunId};
+     * an existing run is never overwritten.
+     *
+     * @param syncInterval iterations between forcing a packed run to disk; 0
+     *                     to force it only on completion
+     */
+    public BaselineCaptureWriter startCapture(RunMetadata runMetadata, int syncInterval) throws IOException {
+        Path runDir = getRunDirectory(runMetadata.getServiceName(), runMetadata.getCaptureDate(),
+                runMetadata.getRunId());
         Files.createDirectories(runDir);
+        FileLock lock = BaselineCaptureWriter.lock(runDir);
+        if (lock == null) {
+            throw new IOException("Baseline run is being captured by another writer: " + runDir);
+        }
+        try {
+            if (Files.exists(runDir.resolve("metadata.json")) || BaselineCaptureWriter.isIncomplete(runDir)) {
+                throw new IOException("Baseline run already exists: " + runDir);
+            }
+            BaselineSegment.Writer segment = null;
+            if (storageFormat == StorageFormat.PACKED) {
+                segment = new BaselineSegment.Writer(BaselineCaptureWriter.partialSegment(runDir), compression,
+                        deduplicate ? blobStore(runMetadata.getServiceName()) : null);
+            }
+            return new BaselineCaptureWriter(runDir, runMetadata, segment, syncInterval, Collections.emptyList(),
+                    catalog(), lock);
+        } catch (IOException | RuntimeException e) {
+            BaselineCaptureWriter.release(lock);
+            throw e;
+        }
+    }
 
-        // Save run metadata
-        mapper.writeValue(runDir.resolve("metadata.json").toFile(), runMetadata);
-        logger.info("Saved run metadata to: {}", runDir.resolve("metadata.json"));
+    /**
+     * Reopens an interrupted capture. Iterations it had persisted are kept
+     * (see {@link BaselineCaptureWriter#isCaptured}); one torn by the
+     * interruption is dropped and has to be captured again.
+     *
+     * @throws IOException also if the capture is still running in another
+     *                     writer
+     */
+    public BaselineCaptureWriter resumeCapture(String serviceName, String date, String runId, int syncInterval)
+            throws IOException {
+        Path runDir = getRunDirectory(serviceName, date, runId);
+        if (!BaselineCaptureWriter.isIncomplete(runDir)) {
+            throw new IOException("No incomplete baseline capture at " + runDir);
+        }
+        FileLock lock = BaselineCaptureWriter.lock(runDir);
+        if (lock == null) {
+            throw new IOException("Baseline capture is still in progress in another writer: " + runDir);
+        }
+        return resumeLocked(runDir, syncInterval, lock);
+    }
 
-        // Save each iteration
-        for (BaselineIteration iteration : iterations) {
-            saveIteration(runDir, iteration);
+    /**
+     * Reopens the most recent interrupted capture of a service, skipping
+     * those still running in another writer and those {@code resumable}
+     * rejects, such as runs started with other iterations.
+     *
+     * @return null if there is none
+     */
+    public BaselineCaptureWriter resumeIncompleteCapture(String serviceName, Predicate<RunMetadata> resumable,
+            int syncInterval) throws IOException {
+        for (Path runDir : incompleteRuns(serviceName)) {
+            RunMetadata runMetadata;
+            try {
+                runMetadata = BaselineCaptureWriter.runMetadata(BaselineCaptureWriter.readMarker(runDir));
+            } catch (NoSuchFileException e) {
+                // Completed meanwhile
+                continue;
+            }
+            if (!resumable.test(runMetadata)) {
+                logger.info("Not resuming baseline capture {}: it was started with other settings", runDir);
+                continue;
+            }
+            FileLock lock = BaselineCaptureWriter.lock(runDir);
+            if (lock != null) {
+                return resumeLocked(runDir, syncInterval, lock);
+            }
         }
+        return null;
+    }
 
-        // Save summary
-        saveSummary(runDir, iterations);
+    // Takes over the lock; the marker is checked again now that it is held
+    private BaselineCaptureWriter resumeLocked(Path runDir, int syncInterval, FileLock lock) throws IOException {
+        try {
+            if (!BaselineCaptureWriter.isIncomplete(runDir)) {
+                throw new IOException("Baseline capture was completed meanwhile: " + runDir);
+            }
+            return resume(runDir, syncInterval, lock);
+        } catch (IOException | RuntimeException e) {
+            BaselineCaptureWriter.release(lock);
+            throw e;
+        }
+    }
 
-        logger.info("Baseline saved: {}/{}/{} with {} iterations", serviceName, date, runId, iterations.size());
+    private BaselineCaptureWriter resume(Path runDir, int syncInterval, FileLock lock) throws IOException {
+        String serviceName = runDir.getParent().getParent().getFileName().toString();
+        Map<String, Object> marker = BaselineCaptureWriter.readMarker(runDir);
+        RunMetadata runMetadata = BaselineCaptureWriter.runMetadata(marker);
+        List<BaselineIteration> recovered = new ArrayList<>();
+        BaselineSegment.Writer segment = null;
+        if (StorageFormat.parse((String) marker.get("storageFormat")) == StorageFormat.PACKED) {
+            checkMarkedSetting(marker, "compressed", compression.enabled(), runDir);
+            checkMarkedSetting(marker, "dictionarySamples", compression.dictionarySamples(), runDir);
+            checkMarkedSetting(marker, "deduplicated", deduplicate, runDir);
+            segment = BaselineSegment.Writer.resume(BaselineCaptureWriter.partialSegment(runDir), compression,
+                    deduplicate ? blobStore(serviceName) : null,
+                    BaselineCaptureWriter.markedOffset(marker, "recordsOffset"),
+                    BaselineCaptureWriter.markedOffset(marker, "dictionaryOffset"),
+                    recovered::add);
+        } else {
+            for (File iterDir : iterationDirectories(runDir)) {
+                try {
+                    recovered.add(loadIteration(iterDir.toPath()));
+                } catch (IOException e) {
+                    // Interrupted while being written: capture it again
+                    deleteRecursively(iterDir.toPath());
+                }
+            }
+        }
+        logger.info("Resuming baseline capture {}/{}/{} with {} iterations already captured", serviceName,
+                runMetadata.getCaptureDate(), runMetadata.getRunId(), recovered.size());
+        return new BaselineCaptureWriter(runDir, runMetadata, segment, syncInterval, recovered, catalog(), lock);
+    }
+
+    // Markers written before settings were recorded are taken as matching
+    private static void checkMarkedSetting(Map<String, Object> marker, String name, Object configured,
+            Path runDir) throws IOException {
+        Object marked = marker.get(name);
+        if (marked != null && !marked.equals(configured)) {
+            throw new IOException("Baseline capture at " + runDir + " was started with " + name + "=" + marked
+                    + " but is resumed with " + name + "=" + configured
+                    + "; resume it with the baseline settings it was started with");
+        }
+    }
+
+    /**
+     * Metadata of the most recent incomplete capture of a service that no
+     * writer has open, or null.
+     */
+    public RunMetadata findIncompleteCapture(String serviceName) throws IOException {
+        for (Path runDir : incompleteRuns(serviceName)) {
+            if (!BaselineCaptureWriter.isInProgress(runDir)) {
+                return BaselineCaptureWriter.runMetadata(BaselineCaptureWriter.readMarker(runDir));
+            }
+        }
+        return null;
     }
 
-    private void saveIteration(Path runDir, BaselineIteration iteration) throws IOException {
+    // Runs with an incomplete-capture marker, most recent first, whether or not a writer has them open
+    private List<Path> incompleteRuns(String serviceName) {
+        List<Path> incomplete = new ArrayList<>();
+        for (String date : dateDirectoryNames(serviceName)) {
+            File[] runDirs = getDateDirectory(serviceName, date).toFile()
+                    .listFiles((dir, name) -> name.startsWith("run-"));
+            if (runDirs == null) {
+                continue;
+            }
+            Arrays.sort(runDirs, Comparator.reverseOrder());
+            for (File runDir : runDirs) {
+                if (BaselineCaptureWriter.isIncomplete(runDir.toPath())) {
+                    incomplete.add(runDir.toPath());
+                }
+            }
+        }
+        return incomplete;
+    }
+
+    static void writeJson(Path file, Object value) throws IOException {
+        mapper.writeValue(file.toFile(), value);
+    }
+
+    static void saveIteration(Path runDir, BaselineIteration iteration) throws IOException {
         int iterNum = iteration.getIterationNumber();
         Path iterDir = runDir.resolve(String.format("iteration-%03d", iterNum));
         Files.createDirectories(iterDir);
@@ -71,52 +309,210 @@ public class BaselineStorageService {
         mapper.writeValue(iterDir.resolve("response-metadata.json").toFile(), iteration.getResponseMetadata());
     }
 
-    private void saveSummary(Path runDir, List<BaselineIteration> iterations) throws IOException {
-        Map<String, Object> summary = new HashMap<>();
-        summary.put("totalIterations", iterations.size());
-
-        List<Map<String, Object>> iterSummaries = new ArrayList<>();
-        for (BaselineIteration iter : iterations) {
-            Map<String, Object> iterSum = new HashMap<>();
-            iterSum.put("iterationNumber", iter.getIterationNumber());
-            iterSum.put("tokens", iter.getRequestMetadata().getTokensUsed());
-            iterSum.put("statusCode", iter.getResponseMetadata().get("statusCode"));
-            iterSum.put("duration", iter.getResponseMetadata().get("duration"));
-            iterSummaries.add(iterSum);
+    // Written under a temporary name and moved into place once the index is complete
+    private void writeSegment(String serviceName, Path runDir, Iterable<BaselineIteration> iterations)
+            throws IOException {
+        Path segment = runDir.resolve(BaselineSegment.FILE_NAME);
+        Path partial = runDir.resolve(BaselineSegment.FILE_NAME + ".tmp");
+        try (BaselineSegment.Writer writer = new BaselineSegment.Writer(partial, compression,
+                deduplicate ? blobStore(serviceName) : null)) {
+            for (BaselineIteration iteration : iterations) {
+                writer.append(iteration);
+            }
         }
-        summary.put("iterations", iterSummaries);
-
-        mapper.writeValue(runDir.resolve("summary.json").toFile(), summary);
+        Files.move(partial, segment, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
     }
 
     /**
      * Load a baseline run
      */
     public BaselineRun loadBaseline(String serviceName, String date, String runId) throws IOException {
+        try (BaselineRun run = openBaseline(serviceName, date, runId)) {
+            List<BaselineIteration> iterations = new ArrayList<>(run.size());
+            for (int i = 0; i < run.size(); i++) {
+                iterations.add(run.getIteration(i));
+            }
+            logger.info("Loaded baseline: {}/{}/{} with {} iterations", serviceName, date, runId, iterations.size());
+            return new BaselineRun(run.getMetadata(), iterations);
+        }
+    }
+
+    /**
+     * Opens a baseline run without reading its iterations: they are read on
+     * demand, by index or through a prefetching {@link BaselineRun#cursor}.
+     * Close the run when done with it.
+     */
+    public BaselineRun openBaseline(String serviceName, String date, String runId) throws IOException {
         Path runDir = getRunDirectory(serviceName, date, runId);
 
         if (!Files.exists(runDir)) {
             throw new IOException("Baseline not found: " + runDir);
         }
+        if (BaselineCaptureWriter.isIncomplete(runDir)) {
+            throw new IOException("Baseline capture was interrupted and is incomplete (resume it with"
+                    + " resumeCapture: true): " + runDir);
+        }
 
         RunMetadata runMetadata = mapper.readValue(runDir.resolve("metadata.json").toFile(), RunMetadata.class);
 
-        List<BaselineIteration> iterations = new ArrayList<>();
+        if (BaselineSegment.exists(runDir)) {
+            BaselineSegment.Reader reader = new BaselineSegment.Reader(runDir.resolve(BaselineSegment.FILE_NAME),
+                    blobStore(serviceName));
+            return new BaselineRun(runMetadata, reader.size(), reader, reader);
+        }
+        File[] iterDirs = iterationDirectories(runDir);
+        return new BaselineRun(runMetadata, iterDirs.length, new BaselineRun.IterationSource() {
+            @Override
+            public BaselineIteration read(int index) throws IOException {
+                return loadIteration(iterDirs[index].toPath());
+            }
+
+            @Override
+            public int iterationNumber(int index) {
+                return Integer.parseInt(iterDirs[index].getName().substring("iteration-".length()));
+            }
+
+            @Override
+            public IterationMetadata requestMetadata(int index) throws IOException {
+                return mapper.readValue(new File(iterDirs[index], "request-metadata.json"), IterationMetadata.class);
+            }
+        }, null);
+    }
+
+    private static File[] iterationDirectories(Path runDir) {
         File[] iterDirs = runDir.toFile().listFiles((dir, name) -> name.startsWith("iteration-"));
+        if (iterDirs == null) {
+            return new File[0];
+        }
+        Arrays.sort(iterDirs);
+        return iterDirs;
+    }
 
-        if (iterDirs != null) {
-            Arrays.sort(iterDirs);
-            for (File iterDir : iterDirs) {
-                iterations.add(loadIteration(iterDir.toPath()));
+    /**
+     * Rewrites a run stored in the directory layout as a packed segment and
+     * removes its iteration directories. Runs already packed, incomplete
+     * captures and run IDs reserved but not captured into are left alone.
+     *
+     * @return true if the run was converted
+     */
+    public boolean convertToPacked(String serviceName, String date, String runId) throws IOException {
+        Path runDir = getRunDirectory(serviceName, date, runId);
+        if (BaselineSegment.exists(runDir) || BaselineCaptureWriter.isIncomplete(runDir)) {
+            return false;
+        }
+        if (!Files.exists(runDir.resolve("metadata.json"))) {
+            // Reserved by generateRunId and not (yet) captured into: nothing to convert
+            return false;
+        }
+        File[] iterDirs = iterationDirectories(runDir);
+        List<BaselineIteration> iterations = new ArrayList<>(iterDirs.length);
+        for (File iterDir : iterDirs) {
+            iterations.add(loadIteration(iterDir.toPath()));
+        }
+        writeSegment(serviceName, runDir, iterations);
+
+        // The segment is complete and in place: the directories are redundant now
+        for (File iterDir : iterDirs) {
+            deleteRecursively(iterDir.toPath());
+        }
+        logger.info("Converted baseline {}/{}/{} to packed format ({} iterations)", serviceName, date, runId,
+                iterations.size());
+        return true;
+    }
+
+    /**
+     * Converts every run in the store to the packed format.
+     *
+     * @return number of runs converted
+     */
+    public int convertAllToPacked() throws IOException {
+        int converted = 0;
+        for (String service : serviceDirectoryNames()) {
+            for (String date : dateDirectoryNames(service)) {
+                File[] runDirs = getDateDirectory(service, date).toFile()
+                        .listFiles((dir, name) -> name.startsWith("run-"));
+                if (runDirs == null) {
+                    continue;
+                }
+                for (File runDir : runDirs) {
+                    if (convertToPacked(service, date, runDir.getName())) {
+                        converted++;
+                    }
+                }
+            }
+        }
+        return converted;
+    }
+
+    /**
+     * Deletes a run; deduplicated payloads no other run references are
+     * removed from the service's blob store with it.
+     *
+     * @return false if there is no such run
+     * @throws IOException also if a writer is still capturing the run
+     */
+    public boolean deleteRun(String serviceName, String date, String runId) throws IOException {
+        Path runDir = getRunDirectory(serviceName, date, runId);
+        if (!Files.isDirectory(runDir)) {
+            return false;
+        }
+        FileLock lock = BaselineCaptureWriter.lock(runDir);
+        if (lock == null) {
+            throw new IOException("Baseline run is being captured and cannot be deleted: " + runDir);
+        }
+        // The run goes first: a crash in between leaves blobs behind, never a dangling run.
+        // Everything but the lock file goes while the lock keeps writers out
+        try (Stream<Path> entries = Files.list(runDir)) {
+            for (Path entry : (Iterable<Path>) entries::iterator) {
+                if (!entry.getFileName().toString().equals(BaselineCaptureWriter.LOCK_FILE)) {
+                    deleteRecursively(entry);
+                }
             }
+        } finally {
+            BaselineCaptureWriter.release(lock);
         }
+        deleteRecursively(runDir);
+        catalog().remove(serviceName, date, runId);
+        blobStore(serviceName).compact(() -> {
+            Set<String> references = new HashSet<>();
+            for (Path run : runDirectories(serviceName)) {
+                references.addAll(BaselineBlobStore.references(run));
+            }
+            return references;
+        });
+        logger.info("Deleted baseline {}/{}/{}", serviceName, date, runId);
+        return true;
+    }
 
-        logger.info("Loaded baseline: {}/{}/{} with {} iterations", serviceName, date, runId, iterations.size());
-        return new BaselineRun(runMetadata, iterations);
+    // Every run folder of a service, complete or not
+    private List<Path> runDirectories(String serviceName) {
+        List<Path> runs = new ArrayList<>();
+        for (String date : dateDirectoryNames(serviceName)) {
+            File[] runDirs = getDateDirectory(serviceName, date).toFile()
+                    .listFiles((dir, name) -> name.startsWith("run-"));
+            if (runDirs != null) {
+                for (File runDir : runDirs) {
+                    runs.add(runDir.toPath());
+                }
+            }
+        }
+        return runs;
+    }
+
+    private static void deleteRecursively(Path dir) throws IOException {
+        try (Stream<Path> files = Files.walk(dir)) {
+            for (Path file : (Iterable<Path>) files.sorted(Comparator.reverseOrder())::iterator) {
+                Files.delete(file);
+            }
+        }
+    }
+
+    private BaselineBlobStore blobStore(String serviceName) {
+        return new BaselineBlobStore(Paths.get(baseStorageDir, serviceName), compression.enabled());
     }
 
     @SuppressWarnings("unchecked")
-    private BaselineIteration loadIteration(Path iterDir) throws IOException {
+    private static BaselineIteration loadIteration(Path iterDir) throws IOException {
         String requestPayload = Files.readString(iterDir.resolve("request.xml"));
         Map<String, String> requestHeaders = mapper.readValue(iterDir.resolve("request-headers.json").toFile(),
                 Map.class);
@@ -140,104 +536,121 @@ public class BaselineStorageService {
     }
 
     /**
-     * Generate next run ID for a given service and date
+     * Allocates the next run ID for a given service and date by creating its
+     * run directory. Directory creation is atomic, so concurrent captures,
+     * in this process or others, always get distinct IDs: on a collision the
+     * next number is tried. The directory stays empty, and is ignored by
+     * listings, until {@link #startCapture} writes the run into it.
      */
-    public String generateRunId(String serviceName, String date) {
+    public String generateRunId(String serviceName, String date) throws IOException {
         Path dateDir = getDateDirectory(serviceName, date);
-
-        if (!Files.exists(dateDir)) {
-            return "run-001";
-        }
+        Files.createDirectories(dateDir);
 
         File[] runDirs = dateDir.toFile().listFiles((dir, name) -> name.startsWith("run-"));
-
-        if (runDirs == null || runDirs.length == 0) {
-            return "run-001";
+        int maxRunNum = 0;
+        if (runDirs != null) {
+            for (File runDir : runDirs) {
+                String name = runDir.getName();
+                try {
+                    int runNum = Integer.parseInt(name.substring(4));
+                    maxRunNum = Math.max(maxRunNum, runNum);
+                } catch (NumberFormatException e) {
+                    logger.warn("Invalid run directory name: {}", name);
+                }
+            }
         }
 
-        int maxRunNum = 0;
-        for (File runDir : runDirs) {
-            String name = runDir.getName();
+        for (int runNum = maxRunNum + 1;; runNum++) {
+            String runId = String.format("run-%03d", runNum);
             try {
-                int runNum = Integer.parseInt(name.substring(4));
-                maxRunNum = Math.max(maxRunNum, runNum);
-            } catch (NumberFormatException e) {
-                logger.warn("Invalid run directory name: {}", name);
+                Files.createDirectory(dateDir.resolve(runId));
+                return runId;
+            } catch (FileAlreadyExistsException e) {
+                logger.debug("Run ID {} taken by a concurrent capture, trying the next", runId);
             }
         }
+    }
 
-        return String.format("run-%03d", maxRunNum + 1);
+    /**
+     * List all services with at least one captured run
+     */
+    public List<String> listServices() throws IOException {
+        return catalog().services();
     }
 
     /**
-     * List all services
+     * List all dates for a service, newest first
      */
-    public List<String> listServices() {
-        File baseDir = new File(baseStorageDir);
-        if (!baseDir.exists()) {
-            return Collections.emptyList();
+    public List<String> listDates(String serviceName) throws IOException {
+        return catalog().dates(serviceName);
+    }
+
+    /**
+     * List all runs for a service and date
+     */
+    public List<RunInfo> listRuns(String serviceName, String date) throws IOException {
+        List<RunInfo> runs = new ArrayList<>();
+        for (RunMetadata metadata : catalog().runs(serviceName, date)) {
+            runs.add(new RunInfo(metadata.getRunId(), metadata.getDescription(),
+                    metadata.getTags(), metadata.getTotalIterations(),
+                    metadata.getCaptureTimestamp()));
         }
+        return runs;
+    }
 
-        File[] serviceDirs = baseDir.listFiles(File::isDirectory);
+    /**
+     * Runs matching every given criterion, newest first; null criteria match
+     * anything.
+     *
+     * @param description substring of the description, case-insensitive
+     * @param fromDate    first capture date (YYYYMMDD), inclusive
+     * @param toDate      last capture date (YYYYMMDD), inclusive
+     */
+    public List<RunMetadata> findRuns(String serviceName, String tag, String description, String fromDate,
+            String toDate) throws IOException {
+        return catalog().find(serviceName, tag, description, fromDate, toDate);
+    }
+
+    /**
+     * Rebuilds the catalog behind the listings from the runs on disk.
+     *
+     * @return number of runs found
+     */
+    public int rebuildCatalog() throws IOException {
+        return catalog().rebuild();
+    }
+
+    private BaselineCatalog catalog() {
+        return BaselineCatalog.forRoot(Paths.get(baseStorageDir));
+    }
+
+    // Directory scans, for what the catalog does not track (incomplete runs)
+
+    private List<String> serviceDirectoryNames() {
+        File[] serviceDirs = new File(baseStorageDir).listFiles(file -> file.isDirectory()
+                && !file.getName().startsWith("."));
         if (serviceDirs == null) {
             return Collections.emptyList();
         }
-
         return Arrays.stream(serviceDirs)
                 .map(File::getName)
                 .sorted()
                 .collect(Collectors.toList());
     }
 
-    /**
-     * List all dates for a service
-     */
-    public List<String> listDates(String serviceName) {
-        Path serviceDir = Paths.get(baseStorageDir, serviceName);
-        if (!Files.exists(serviceDir)) {
-            return Collections.emptyList();
-        }
-
-        File[] dateDirs = serviceDir.toFile().listFiles(File::isDirectory);
+    private List<String> dateDirectoryNames(String serviceName) {
+        // Skips .blobs and other hidden directories
+        File[] dateDirs = Paths.get(baseStorageDir, serviceName).toFile()
+                .listFiles(file -> file.isDirectory() && !file.getName().startsWith("."));
         if (dateDirs == null) {
             return Collections.emptyList();
         }
-
         return Arrays.stream(dateDirs)
                 .map(File::getName)
                 .sorted(Comparator.reverseOrder())
                 .collect(Collectors.toList());
     }
 
-    /**
-     * List all runs for a service and date
-     */
-    public List<RunInfo> listRuns(String serviceName, String date) throws IOException {
-        Path dateDir = getDateDirectory(serviceName, date);
-        if (!Files.exists(dateDir)) {
-            return Collections.emptyList();
-        }
-
-        File[] runDirs = dateDir.toFile().listFiles((dir, name) -> name.startsWith("run-"));
-        if (runDirs == null) {
-            return Collections.emptyList();
-        }
-
-        List<RunInfo> runs = new ArrayList<>();
-        for (File runDir : runDirs) {
-            File metadataFile = new File(runDir, "metadata.json");
-            if (metadataFile.exists()) {
-                RunMetadata metadata = mapper.readValue(metadataFile, RunMetadata.class);
-                runs.add(new RunInfo(metadata.getRunId(), metadata.getDescription(),
-                        metadata.getTags(), metadata.getTotalIterations(),
-                        metadata.getCaptureTimestamp()));
-            }
-        }
-
-        runs.sort(Comparator.comparing(RunInfo::getRunId));
-        return runs;
-    }
-
     public static String getTodayDate() {
         return LocalDate.now().format(DATE_FORMATTER);
     }
@@ -251,22 +664,193 @@ public class BaselineStorageService {
     }
 
     // Inner classes
-    public static class BaselineRun {
+    /**
+     * A baseline run, either loaded whole or opened for reading its
+     * iterations on demand ({@link #openBaseline}).
+     */
+    public static class BaselineRun implements Closeable {
+        // Upper bound on the reader threads of one cursor
+        private static final int MAX_READ_THREADS = 4;
+
+        interface IterationSource {
+            BaselineIteration read(int index) throws IOException;
+
+            // Sources that can answer these without reading the whole iteration override them
+            default int iterationNumber(int index) throws IOException {
+                return read(index).getIterationNumber();
+            }
+
+            default IterationMetadata requestMetadata(int index) throws IOException {
+                return read(index).getRequestMetadata();
+            }
+        }
+
         private final RunMetadata metadata;
-        private final List<BaselineIteration> iterations;
+        private final int size;
+        private final IterationSource source;
+        private final Closeable resource;
+        private List<BaselineIteration> iterations;
 
         public BaselineRun(RunMetadata metadata, List<BaselineIteration> iterations) {
-            this.metadata = metadata;
+            this(metadata, iterations.size(), iterations::get, null);
             this.iterations = iterations;
         }
 
+        BaselineRun(RunMetadata metadata, int size, IterationSource source, Closeable resource) {
+            this.metadata = metadata;
+            this.size = size;
+            this.source = source;
+            this.resource = resource;
+        }
+
         public RunMetadata getMetadata() {
             return metadata;
         }
 
-        public List<BaselineIteration> getIterations() {
+        public int size() {
+            return size;
+        }
+
+        /**
+         * Reads one iteration, in capture order.
+         */
+        public BaselineIteration getIteration(int index) throws IOException {
+            return source.read(index);
+        }
+
+        /**
+         * Iteration number of one iteration, without reading its payloads.
+         */
+        public int getIterationNumber(int index) throws IOException {
+            return source.iterationNumber(index);
+        }
+
+        /**
+         * Request metadata (tokens used, timestamp) of one iteration, without
+         * reading its payloads.
+         */
+        public IterationMetadata getRequestMetadata(int index) throws IOException {
+            return source.requestMetadata(index);
+        }
+
+        /**
+         * All iterations in memory at once; prefer {@link #cursor} for large
+         * runs.
+         *
+         * @throws UncheckedIOException if an iteration cannot be read
+         */
+        public synchronized List<BaselineIteration> getIterations() {
+            if (iterations == null) {
+                List<BaselineIteration> all = new ArrayList<>(size);
+                try {
+                    for (int i = 0; i < size; i++) {
+                        all.add(source.read(i));
+                    }
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                iterations = all;
+            }
             return iterations;
         }
+
+        /**
+         * Iterates the run in order, reading up to {@code prefetch} iterations
+         * ahead in parallel. Only those are held by the cursor, so memory
+         * stays bounded however long the run is.
+         *
+         * @param prefetch iterations to read ahead; 0 reads each on demand
+         */
+        public Cursor cursor(int prefetch) {
+            return new Cursor(this, prefetch);
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (resource != null) {
+                resource.close();
+            }
+        }
+
+        /**
+         * Iterator over a run's iterations with read-ahead on a small pool of
+         * daemon threads. {@link #next()} throws {@link UncheckedIOException}
+         * if an iteration cannot be read. Not thread-safe.
+         */
+        public static final class Cursor implements Iterator<BaselineIteration>, Closeable {
+            private final BaselineRun run;
+            private final ExecutorService readers; // null without prefetch
+            private final Deque<Future<BaselineIteration>> ahead = new ArrayDeque<>();
+            private int nextToRead;
+            private int nextToReturn;
+
+            private Cursor(BaselineRun run, int prefetch) {
+                this.run = run;
+                if (prefetch > 0 && run.size() > 0) {
+                    readers = Executors.newFixedThreadPool(Math.min(prefetch, MAX_READ_THREADS), task -> {
+                        Thread thread = new Thread(task, "baseline-reader");
+                        thread.setDaemon(true);
+                        return thread;
+                    });
+                    while (ahead.size() < prefetch && nextToRead < run.size()) {
+                        readAhead();
+                    }
+                } else {
+                    readers = null;
+                }
+            }
+
+            private void readAhead() {
+                int index = nextToRead++;
+                ahead.add(readers.submit(() -> run.getIteration(index)));
+            }
+
+            @Override
+            public boolean hasNext() {
+                return nextToReturn < run.size();
+            }
+
+            @Override
+            public BaselineIteration next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                int index = nextToReturn++;
+                try {
+                    if (readers == null) {
+                        return run.getIteration(index);
+                    }
+                    Future<BaselineIteration> next = ahead.poll();
+                    if (nextToRead < run.size()) {
+                        readAhead();
+                    }
+                    return next.get();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                } catch (ExecutionException e) {
+                    Throwable cause = e.getCause();
+                    if (cause instanceof IOException) {
+                        throw new UncheckedIOException((IOException) cause);
+                    }
+                    if (cause instanceof RuntimeException) {
+                        throw (RuntimeException) cause;
+                    }
+                    throw new IllegalStateException(cause);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new UncheckedIOException(new InterruptedIOException(
+                            "Interrupted while reading baseline iteration " + index));
+                }
+            }
+
+            @Override
+            public void close() {
+                if (readers != null) {
+                    readers.shutdownNow();
+                }
+                ahead.clear();
+            }
+        }
     }
 
     public static class BaselineIteration {
@@ -274,13 +858,24 @@ public class BaselineStorageService {
         private final String requestPayload;
         private final Map<String, String> requestHeaders;
         private final IterationMetadata requestMetadata;
-        private final String responsePayload;
+        private String responsePayload;
         private final Map<String, String> responseHeaders;
         private final Map<String, Object> responseMetadata;
+        private final String responsePayloadHash;
+        private BaselineBlobStore responsePayloadStore; // Until the payload has been read from it
 
         public BaselineIteration(int iterationNumber, String requestPayload, Map<String, String> requestHeaders,
                 IterationMetadata requestMetadata, String responsePayload,
                 Map<String, String> responseHeaders, Map<String, Object> responseMetadata) {
+            this(iterationNumber, requestPayload, requestHeaders, requestMetadata, responsePayload,
+                    responseHeaders, responseMetadata, null, null);
+        }
+
+        // A response payload kept in a blob store is read on first access
+        BaselineIteration(int iterationNumber, String requestPayload, Map<String, String> requestHeaders,
+                IterationMetadata requestMetadata, String responsePayload,
+                Map<String, String> responseHeaders, Map<String, Object> responseMetadata,
+                String responsePayloadHash, BaselineBlobStore responsePayloadStore) {
             this.iterationNumber = iterationNumber;
             this.requestPayload = requestPayload;
             this.requestHeaders = requestHeaders;
@@ -288,6 +883,8 @@ public class BaselineStorageService {
             this.responsePayload = responsePayload;
             this.responseHeaders = responseHeaders;
             this.responseMetadata = responseMetadata;
+            this.responsePayloadHash = responsePayloadHash;
+            this.responsePayloadStore = responsePayloadStore;
         }
 
         public int getIterationNumber() {
@@ -306,10 +903,30 @@ public class BaselineStorageService {
             return requestMetadata;
         }
 
-        public String getResponsePayload() {
+        /**
+         * @throws UncheckedIOException if a deduplicated payload cannot be read
+         */
+        public synchronized String getResponsePayload() {
+            if (responsePayloadStore != null) {
+                try {
+                    responsePayload = responsePayloadStore.get(responsePayloadHash);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                responsePayloadStore = null;
+            }
             return responsePayload;
         }
 
+        /**
+         * Hex SHA-256 of the response payload if it was stored deduplicated,
+         * else null. Lets a live response be matched without reading the
+         * stored payload.
+         */
+        public String getResponsePayloadHash() {
+            return responsePayloadHash;
+        }
+
         public Map<String, String> getResponseHeaders() {
             return responseHeaders;
         }
@@ -0,0 +1,70 @@
+package com.raks.apiurlcomparison;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Binary bodies: compared as a whole. A difference names the first differing
+ * offset and the size and SHA-256 of each side, so the same payload can be
+ * recognized across runs.
+ *
+ * <p>
+ * Offsets, sizes and hashes are of the bytes as received. The Apache
+ * transport decodes a body without a declared charset as ISO-8859-1, one
+ * char per byte, so such a body is encoded back the same way; only a body
+ * holding characters beyond U+00FF, which came through a UTF-8 decode, is
+ * encoded as UTF-8.
+ */
+final class BinaryResponseComparator implements ResponseComparator {
+
+    @Override
+    public String format() {
+        return ResponseComparators.BINARY;
+    }
+
+    @Override
+    public Set<String> mediaTypes() {
+        return Set.of("application/octet-stream", "application/pdf", "application/zip", "application/gzip");
+    }
+
+    @Override
+    public void compare(ComparisonResult result, String response1, String response2, ComparisonOptions options) {
+        byte[] bytes1 = wireBytes(response1);
+        byte[] bytes2 = wireBytes(response2);
+        int offset = Arrays.mismatch(bytes1, bytes2);
+        List<String> differences = new ArrayList<>();
+        if (offset < 0) {
+            result.setStatus(ComparisonResult.Status.MATCH);
+            result.setDifferences(differences);
+            return;
+        }
+        differences.add("Binary content differs at byte " + offset
+                + ". API 1: " + bytes1.length + " bytes, SHA-256 " + sha256(bytes1)
+                + ", API 2: " + bytes2.length + " bytes, SHA-256 " + sha256(bytes2));
+        result.setStatus(ComparisonResult.Status.MISMATCH);
+        result.setDifferences(differences);
+    }
+
+    static byte[] wireBytes(String body) {
+        for (int i = 0; i < body.length(); i++) {
+            if (body.charAt(i) > 0xFF) {
+                return body.getBytes(StandardCharsets.UTF_8);
+            }
+        }
+        return body.getBytes(StandardCharsets.ISO_8859_1);
+    }
+
+    private static String sha256(byte[] bytes) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(bytes));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e); // Required of every JRE
+        }
+    }
+}
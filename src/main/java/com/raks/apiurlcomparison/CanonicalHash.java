@@ -0,0 +1,327 @@
+package com.raks.apiurlcomparison;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.StreamReadFeature;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * 128-bit hashes of a response's canonical form, computed in one streaming pass
+ * without building a tree. Two payloads with equal hashes compare as equal in
+ * {@link ComparisonEngine}, so the canonical form only drops what the detailed
+ * comparison ignores as well:
+ * <ul>
+ * <li>JSON: whitespace and the order of object fields. Numbers hash by value
+ * and kind, the same way {@code JsonNode} equality treats them.</li>
+ * <li>XML: whitespace-only text, whitespace around text, comments and the
+ * order of attributes. Element and attribute prefixes, namespaces, attribute
+ * values, CDATA and processing instructions are kept.</li>
+ * </ul>
+ */
+final class CanonicalHash {
+
+    private static final JsonFactory jsonFactory = JsonFactory.builder()
+            // A repeated key would let both orders hash alike while the trees differ
+            .enable(StreamReadFeature.STRICT_DUPLICATE_DETECTION)
+            .build();
+    private static final XMLInputFactory xmlInputFactory = createXmlInputFactory();
+
+    // Type tags, so values of different kinds never share a hash
+    private static final long OBJECT = 0x6f626a6563740001L;
+    private static final long FIELD = 0x6669656c64000002L;
+    private static final long ARRAY = 0x6172726179000003L;
+    private static final long STRING = 0x737472696e670004L;
+    private static final long INTEGER = 0x696e746567650005L;
+    private static final long FLOAT = 0x666c6f6174000006L;
+    private static final long TRUE = 0x7472756500000007L;
+    private static final long FALSE = 0x66616c7365000008L;
+    private static final long NULL = 0x6e756c6c00000009L;
+    private static final long DOCUMENT = 0x646f63756d65000aL;
+    private static final long ELEMENT = 0x656c656d656e000bL;
+    private static final long ATTRIBUTE = 0x6174747269620000L;
+    private static final long TEXT = 0x746578740000000dL;
+    private static final long CDATA = 0x6364617461000000L;
+    private static final long PI = 0x706900000000000fL;
+    private static final long DTD = 0x6474640000000010L;
+
+    private CanonicalHash() {
+    }
+
+    private static XMLInputFactory createXmlInputFactory() {
+        XMLInputFactory factory = XMLInputFactory.newInstance();
+        factory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, true);
+        factory.setProperty(XMLInputFactory.IS_COALESCING, false);
+        // Responses come from the network: no DTD processing, no external entities
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        return factory;
+    }
+
+    /**
+     * Hash of a 128-bit value, as two independently mixed 64-bit lanes.
+     */
+    record Value(long high, long low) {
+    }
+
+    /**
+     * Canonical hash of the first JSON value in {@code json}; trailing content is
+     * ignored, as {@code ObjectMapper.readTree} does.
+     *
+     * @throws IOException if the JSON is malformed or has duplicate keys
+     */
+    static Value ofJson(String json) throws IOException {
+        try (JsonParser parser = jsonFactory.createParser(json)) {
+            Hasher hasher = new Hasher(0);
+            if (parser.nextToken() != null) {
+                jsonValue(parser, hasher);
+            }
+            return hasher.value();
+        }
+    }
+
+    /**
+     * @throws XMLStreamException if the XML is malformed
+     */
+    static Value ofXml(String xml) throws XMLStreamException {
+        XMLStreamReader reader = xmlInputFactory.createXMLStreamReader(new StringReader(xml));
+        try {
+            Deque<Hasher> open = new ArrayDeque<>();
+            Hasher document = new Hasher(DOCUMENT);
+            document.add(reader.getVersion());
+            document.add(reader.getCharacterEncodingScheme());
+            document.add(reader.standaloneSet() ? (reader.isStandalone() ? TRUE : FALSE) : NULL);
+            open.push(document);
+
+            StringBuilder text = new StringBuilder();
+            int textKind = XMLStreamConstants.CHARACTERS;
+            while (reader.hasNext()) {
+                int event = reader.next();
+                boolean isText = event == XMLStreamConstants.CHARACTERS || event == XMLStreamConstants.SPACE
+                        || event == XMLStreamConstants.CDATA;
+                int kind = event == XMLStreamConstants.CDATA ? XMLStreamConstants.CDATA
+                        : XMLStreamConstants.CHARACTERS;
+                if (text.length() > 0 && (!isText || kind != textKind)) {
+                    // Same rule as XMLUnit's ignoreWhitespace: trim, drop if empty
+                    addTrimmed(open.peek(), textKind == XMLStreamConstants.CDATA ? CDATA : TEXT, text);
+                    text.setLength(0);
+                }
+                if (isText) {
+                    textKind = kind;
+                    text.append(reader.getTextCharacters(), reader.getTextStart(), reader.getTextLength());
+                    continue;
+                }
+
+                switch (event) {
+                    case XMLStreamConstants.START_ELEMENT: {
+                        Hasher element = new Hasher(ELEMENT);
+                        element.add(reader.getNamespaceURI());
+                        element.add(reader.getPrefix());
+                        element.add(reader.getLocalName());
+                        // Attribute order is insignificant: sum the attribute hashes
+                        long high = 0;
+                        long low = 0;
+                        for (int i = 0; i < reader.getAttributeCount(); i++) {
+                            Hasher attribute = new Hasher(ATTRIBUTE);
+                            attribute.add(reader.getAttributeNamespace(i));
+                            attribute.add(reader.getAttributePrefix(i));
+                            attribute.add(reader.getAttributeLocalName(i));
+                            attribute.add(reader.getAttributeValue(i));
+                            Value value = attribute.value();
+                            high += value.high();
+                            low += value.low();
+                        }
+                        element.add(high, low);
+                        element.add(reader.getAttributeCount());
+                        open.push(element);
+                        break;
+                    }
+                    case XMLStreamConstants.END_ELEMENT: {
+                        Hasher element = open.pop();
+                        open.peek().add(element.value());
+                        break;
+                    }
+                    case XMLStreamConstants.PROCESSING_INSTRUCTION: {
+                        Hasher instruction = new Hasher(PI);
+                        instruction.add(reader.getPITarget());
+                        instruction.add(reader.getPIData());
+                        open.peek().add(instruction.value());
+                        break;
+                    }
+                    case XMLStreamConstants.DTD: {
+                        Hasher dtd = new Hasher(DTD);
+                        dtd.add(reader.getText());
+                        open.peek().add(dtd.value());
+                        break;
+                    }
+                    case XMLStreamConstants.ENTITY_REFERENCE:
+                        // Unresolved without DTD support; leave it to the detailed comparison
+                        throw new XMLStreamException("Unresolved entity reference &" + reader.getLocalName() + ";");
+                    default:
+                        break; // Comments are ignored
+                }
+            }
+            return document.value();
+        } finally {
+            reader.close();
+        }
+    }
+
+    private static void jsonValue(JsonParser parser, Hasher out) throws IOException {
+        JsonToken token = parser.currentToken();
+        switch (token) {
+            case START_OBJECT: {
+                // Field order is insignificant: sum the field hashes
+                long high = 0;
+                long low = 0;
+                int fields = 0;
+                while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                    Hasher field = new Hasher(FIELD);
+                    field.add(parser.getTextCharacters(), parser.getTextOffset(), parser.getTextLength());
+                    parser.nextToken();
+                    jsonValue(parser, field);
+                    Value value = field.value();
+                    high += value.high();
+                    low += value.low();
+                    fields++;
+                }
+                out.add(OBJECT);
+                out.add(high, low);
+                out.add(fields);
+                break;
+            }
+            case START_ARRAY: {
+                Hasher array = new Hasher(ARRAY);
+                int elements = 0;
+                while (parser.nextToken() != JsonToken.END_ARRAY) {
+                    jsonValue(parser, array);
+                    elements++;
+                }
+                array.add(elements);
+                out.add(array.value());
+                break;
+            }
+            case VALUE_STRING:
+                out.add(STRING);
+                out.add(parser.getTextCharacters(), parser.getTextOffset(), parser.getTextLength());
+                break;
+            case VALUE_NUMBER_INT:
+                out.add(INTEGER);
+                if (parser.getNumberType() == JsonParser.NumberType.BIG_INTEGER) {
+                    out.add(parser.getBigIntegerValue().toString());
+                } else {
+                    out.add(parser.getLongValue());
+                }
+                break;
+            case VALUE_NUMBER_FLOAT:
+                // readTree() keeps floats as doubles, so 1.0 and 1.00 are equal
+                out.add(FLOAT);
+                out.add(Double.doubleToLongBits(parser.getDoubleValue()));
+                break;
+            case VALUE_TRUE:
+                out.add(TRUE);
+                break;
+            case VALUE_FALSE:
+                out.add(FALSE);
+                break;
+            case VALUE_NULL:
+                out.add(NULL);
+                break;
+            default:
+                throw new IOException("Unexpected JSON token " + token);
+        }
+    }
+
+    private static void addTrimmed(Hasher out, long kind, CharSequence text) {
+        int start = 0;
+        int end = text.length();
+        while (start < end && Character.isWhitespace(text.charAt(start))) {
+            start++;
+        }
+        while (end > start && Character.isWhitespace(text.charAt(end - 1))) {
+            end--;
+        }
+        if (start == end) {
+            return;
+        }
+        Hasher node = new Hasher(kind);
+        for (int i = start; i < end; i++) {
+            node.addChar(text.charAt(i));
+        }
+        node.add(end - start);
+        out.add(node.value());
+    }
+
+    /**
+     * Order-sensitive accumulator over two 64-bit lanes with different
+     * multipliers and finalizers.
+     */
+    private static final class Hasher {
+        private long high;
+        private long low;
+
+        private Hasher(long seed) {
+            high = seed ^ 0xcbf29ce484222325L;
+            low = seed ^ 0x84222325cbf29ce4L;
+        }
+
+        private void addChar(char c) {
+            high = (high ^ c) * 0x100000001b3L;
+            low = (low + c) * 0x9e3779b97f4a7c15L;
+        }
+
+        private void add(long x) {
+            high = mix(high ^ (x + 0x9e3779b97f4a7c15L + (high << 6) + (high >>> 2)));
+            low = mix((low + x) * 0xc2b2ae3d27d4eb4fL + 0x165667b19e3779f9L);
+        }
+
+        private void add(long xHigh, long xLow) {
+            high = mix(high ^ (xHigh + 0x9e3779b97f4a7c15L + (high << 6) + (high >>> 2)));
+            low = mix((low + xLow) * 0xc2b2ae3d27d4eb4fL + 0x165667b19e3779f9L);
+        }
+
+        private void add(Value value) {
+            add(value.high(), value.low());
+        }
+
+        private void add(String s) {
+            if (s == null) {
+                add(NULL);
+                return;
+            }
+            for (int i = 0; i < s.length(); i++) {
+                addChar(s.charAt(i));
+            }
+            add(s.length());
+        }
+
+        private void add(char[] chars, int offset, int length) {
+            for (int i = offset; i < offset + length; i++) {
+                addChar(chars[i]);
+            }
+            add(length);
+        }
+
+        private Value value() {
+            return new Value(mix(high), mix(low ^ 0x27d4eb2f165667c5L));
+        }
+
+        // MurmurHash3 64-bit finalizer
+        private static long mix(long h) {
+            h ^= h >>> 33;
+            h *= 0xff51afd7ed558ccdL;
+            h ^= h >>> 33;
+            h *= 0xc4ceb9fe1a85ec53L;
+            h ^= h >>> 33;
+            return h;
+        }
+    }
+}
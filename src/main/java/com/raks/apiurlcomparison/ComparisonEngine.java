@@ -1,22 +1,31 @@
 package com.raks.apiurlcomparison;
 
-import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.xmlunit.builder.DiffBuilder;
-import org.xmlunit.diff.Diff;
 
-import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 
 public class ComparisonEngine {
 
     private static final Logger logger = LoggerFactory.getLogger(ComparisonEngine.class);
-    private static final ObjectMapper objectMapper = new ObjectMapper();
+
+    // Differences reported per result unless configured otherwise
+    public static final int DEFAULT_MAX_DIFFERENCES = 1000;
+
+    // SOAP responses from this size on are compared by streaming, without a DOM
+    public static final int DEFAULT_STREAMING_XML_THRESHOLD = 5 * 1024 * 1024;
 
     public static void compare(ComparisonResult result, String apiType) {
+        compare(result, apiType, ComparisonOptions.defaults());
+    }
+
+    /**
+     * Compares the two responses of a result with the {@link ResponseComparator}
+     * for their format, detected from the bodies and response headers.
+     * {@code apiType} no longer decides the format; it is kept for callers.
+     */
+    public static void compare(ComparisonResult result, String apiType, ComparisonOptions options) {
         ApiCallResult api1Result = result.getApi1();
         ApiCallResult api2Result = result.getApi2();
 
@@ -35,44 +44,24 @@ public class ComparisonEngine {
             return;
         }
 
-        try {
-            boolean isMatch = false;
-            List<String> differences = new ArrayList<>();
+        // Fast path: identical bodies need no format at all
+        if (response1.equals(response2)) {
+            result.setStatus(ComparisonResult.Status.MATCH);
+            result.setDifferences(new ArrayList<>());
+            return;
+        }
 
-            if ("SOAP".equalsIgnoreCase(apiType)) {
-                try {
-                    Diff xmlDiff = DiffBuilder.compare(response1).withTest(response2).ignoreComments().build();
-                    isMatch = !xmlDiff.hasDifferences();
-                    if (!isMatch) {
-                        for (org.xmlunit.diff.Difference diff : xmlDiff.getDifferences()) {
-                            differences.add(diff.toString());
-                        }
-                    }
-                } catch (Exception e) {
-                    // Fallback if XML parsing fails
-                    isMatch = safeStringEquals(response1, response2);
-                    if (!isMatch)
-                        differences.add("XML Parsing failed, and strings differ.");
-                }
-            } else { // Default to JSON/REST
-                try {
-                    JsonNode json1 = objectMapper.readTree(response1);
-                    JsonNode json2 = objectMapper.readTree(response2);
-                    isMatch = json1.equals(json2);
-                    if (!isMatch) {
-                        differences = detailedJsonDiff(json1, json2, "$");
-                    }
-                } catch (Exception e) {
-                    // Fallback if JSON parsing fails (e.g. HTML 404)
-                    isMatch = safeStringEquals(response1, response2);
-                    if (!isMatch)
-                        differences.add("JSON Parsing failed (possible HTML response?), and strings differ.");
-                }
+        try {
+            String format1 = ResponseComparators.detect(response1, api1Result.getResponseHeaders());
+            String format2 = ResponseComparators.detect(response2, api2Result.getResponseHeaders());
+            if (!format1.equals(format2)) {
+                List<String> differences = new ArrayList<>();
+                differences.add("Response formats differ. API 1: " + format1 + ", API 2: " + format2);
+                result.setStatus(ComparisonResult.Status.MISMATCH);
+                result.setDifferences(differences);
+                return;
             }
-
-            result.setStatus(isMatch ? ComparisonResult.Status.MATCH : ComparisonResult.Status.MISMATCH);
-            result.setDifferences(differences);
-
+            ResponseComparators.forFormat(format1).compare(result, response1, response2, options);
         } catch (Exception e) {
             logger.error("Failed to parse or compare responses", e);
             result.setStatus(ComparisonResult.Status.ERROR);
@@ -80,61 +69,7 @@ public class ComparisonEngine {
         }
     }
 
-    private static boolean safeStringEquals(String s1, String s2) {
-        if (s1 == null && s2 == null)
-            return true;
-        if (s1 == null || s2 == null)
-            return false;
-        return s1.trim().equals(s2.trim());
-    }
-
-    private static List<String> detailedJsonDiff(JsonNode node1, JsonNode node2, String path) {
-        List<String> differences = new ArrayList<>();
-
-        if (node1.isObject() && node2.isObject()) {
-            com.fasterxml.jackson.databind.node.ObjectNode obj1 = (com.fasterxml.jackson.databind.node.ObjectNode) node1;
-            com.fasterxml.jackson.databind.node.ObjectNode obj2 = (com.fasterxml.jackson.databind.node.ObjectNode) node2;
-            java.util.Iterator<String> fieldNames = obj1.fieldNames();
-
-            while (fieldNames.hasNext()) {
-                String fieldName = fieldNames.next();
-                String currentPath = path + "." + fieldName;
-                if (obj2.has(fieldName)) {
-                    differences.addAll(detailedJsonDiff(obj1.get(fieldName), obj2.get(fieldName), currentPath));
-                } else {
-                    differences.add("Missing field in API 2: " + currentPath);
-                }
-            }
-
-            obj2.fieldNames().forEachRemaining(fieldName -> {
-                if (!obj1.has(fieldName)) {
-                    String currentPath = path + "." + fieldName;
-                    differences.add("Missing field in API 1: " + currentPath);
-                }
-            });
-
-        } else if (node1.isArray() && node2.isArray()) {
-            com.fasterxml.jackson.databind.node.ArrayNode array1 = (com.fasterxml.jackson.databind.node.ArrayNode) node1;
-            com.fasterxml.jackson.databind.node.ArrayNode array2 = (com.fasterxml.jackson.databind.node.ArrayNode) node2;
-            int len1 = array1.size();
-            int len2 = array2.size();
-            int maxLength = Math.max(len1, len2);
-
-            for (int i = 0; i < maxLength; i++) {
-                String currentPath = path + "[" + i + "]";
-                if (i < len1 && i < len2) {
-                    differences.addAll(detailedJsonDiff(array1.get(i), array2.get(i), currentPath));
-                } else if (i < len1) {
-                    differences.add("Missing element in API 2: " + currentPath);
-                } else {
-                    differences.add("Missing element in API 1: " + currentPath);
-                }
-            }
-        } else if (!node1.equals(node2)) {
-            differences.add(
-                    "Values differ at " + path + ". API 1: " + node1.textValue() + ", API 2: " + node2.textValue());
-        }
-
-        return differences;
+    static String limitReached(int maxDifferences) {
+        return "Difference limit (" + maxDifferences + ") reached; further differences not reported.";
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,129 @@
+package com.raks.apiurlcomparison;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Collection;
+import java.util.Set;
+
+/**
+ * How responses are compared, resolved once per run from the {@link Config}.
+ */
+public class ComparisonOptions {
+    private static final Logger logger = LoggerFactory.getLogger(ComparisonOptions.class);
+
+    /**
+     * How elements of two JSON arrays are paired up before they are compared.
+     */
+    public enum ArrayAlignment {
+        /** Element i against element i. */
+        INDEX,
+        /** Objects with equal values of the key field; order is ignored. */
+        KEY,
+        /** Equal elements line up (LCS); the rest is compared in place. */
+        HASH
+    }
+
+    private final int maxDifferences;
+    private final ArrayAlignment arrayAlignment;
+    private final String arrayKeyField;
+    private final ComparisonRules rules;
+    private final Set<String> ignoredNamespaces;
+    private final boolean ignoreNamespacePrefixes;
+    private final int streamingXmlThreshold;
+
+    public ComparisonOptions(int maxDifferences, ArrayAlignment arrayAlignment, String arrayKeyField) {
+        this(maxDifferences, arrayAlignment, arrayKeyField, ComparisonRules.none());
+    }
+
+    public ComparisonOptions(int maxDifferences, ArrayAlignment arrayAlignment, String arrayKeyField,
+            ComparisonRules rules) {
+        this(maxDifferences, arrayAlignment, arrayKeyField, rules, Set.of(), false,
+                ComparisonEngine.DEFAULT_STREAMING_XML_THRESHOLD);
+    }
+
+    private ComparisonOptions(int maxDifferences, ArrayAlignment arrayAlignment, String arrayKeyField,
+            ComparisonRules rules, Set<String> ignoredNamespaces, boolean ignoreNamespacePrefixes,
+            int streamingXmlThreshold) {
+        this.maxDifferences = maxDifferences;
+        this.arrayAlignment = arrayAlignment;
+        this.arrayKeyField = arrayKeyField;
+        this.rules = rules;
+        this.ignoredNamespaces = ignoredNamespaces;
+        this.ignoreNamespacePrefixes = ignoreNamespacePrefixes;
+        this.streamingXmlThreshold = streamingXmlThreshold;
+    }
+
+    /**
+     * A copy of these options for XML comparison that skips elements and
+     * attributes in the given namespace URIs and, optionally, treats elements
+     * that differ only in their prefix as equal.
+     */
+    public ComparisonOptions withNamespaces(Collection<String> ignoredNamespaces, boolean ignoreNamespacePrefixes) {
+        Set<String> namespaces = ignoredNamespaces != null ? Set.copyOf(ignoredNamespaces) : Set.of();
+        return new ComparisonOptions(maxDifferences, arrayAlignment, arrayKeyField, rules, namespaces,
+                ignoreNamespacePrefixes, streamingXmlThreshold);
+    }
+
+    /**
+     * A copy of these options that compares XML responses of at least
+     * {@code threshold} characters with the streaming comparator instead of a
+     * DOM. 0 always streams.
+     */
+    public ComparisonOptions withStreamingXmlThreshold(int threshold) {
+        return new ComparisonOptions(maxDifferences, arrayAlignment, arrayKeyField, rules, ignoredNamespaces,
+                ignoreNamespacePrefixes, threshold);
+    }
+
+    public static ComparisonOptions defaults() {
+        return new ComparisonOptions(ComparisonEngine.DEFAULT_MAX_DIFFERENCES, ArrayAlignment.INDEX, null);
+    }
+
+    public static ComparisonOptions from(Config config) {
+        ArrayAlignment alignment = ArrayAlignment.INDEX;
+        if (config.getArrayAlignment() != null) {
+            try {
+                alignment = ArrayAlignment.valueOf(config.getArrayAlignment().trim().toUpperCase());
+            } catch (IllegalArgumentException e) {
+                logger.warn("Unknown arrayAlignment '{}', using INDEX.", config.getArrayAlignment());
+            }
+        }
+        String keyField = config.getArrayKeyField();
+        if (alignment == ArrayAlignment.KEY && (keyField == null || keyField.isEmpty())) {
+            logger.warn("arrayAlignment KEY needs arrayKeyField; aligning arrays by HASH instead.");
+            alignment = ArrayAlignment.HASH;
+        }
+        ComparisonRules rules = ComparisonRules.compile(config.getIgnorePaths(), config.getNormalizers());
+        return new ComparisonOptions(config.getMaxDifferences(), alignment, keyField, rules)
+                .withNamespaces(config.getIgnoreNamespaces(), config.isIgnoreNamespacePrefixes())
+                .withStreamingXmlThreshold(config.getStreamingXmlThreshold());
+    }
+
+    public int getMaxDifferences() {
+        return maxDifferences;
+    }
+
+    public ArrayAlignment getArrayAlignment() {
+        return arrayAlignment;
+    }
+
+    public String getArrayKeyField() {
+        return arrayKeyField;
+    }
+
+    public ComparisonRules getRules() {
+        return rules;
+    }
+
+    public Set<String> getIgnoredNamespaces() {
+        return ignoredNamespaces;
+    }
+
+    public boolean isIgnoreNamespacePrefixes() {
+        return ignoreNamespacePrefixes;
+    }
+
+    public int getStreamingXmlThreshold() {
+        return streamingXmlThreshold;
+    }
+}
@@ -1,9 +1,11 @@
 package com.raks.apiurlcomparison;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonInclude;
 
 import java.util.List;
 import java.util.Map;
+import java.util.function.Supplier;
 
 @JsonInclude(JsonInclude.Include.NON_NULL)
 public class ComparisonResult {
@@ -12,6 +14,8 @@ public class ComparisonResult {
     private String status; // e.g., MATCH, MISMATCH, ERROR
     private String errorMessage;
     private List<String> differences;
+    @JsonIgnore
+    private Supplier<List<String>> pendingDifferences; // Computed on first getDifferences()
     private String timestamp;
 
     // Baseline metadata (only populated in BASELINE comparison mode)
@@ -64,12 +68,26 @@ public class ComparisonResult {
         this.errorMessage = errorMessage;
     }
 
-    public List<String> getDifferences() {
+    public synchronized List<String> getDifferences() {
+        if (pendingDifferences != null) {
+            differences = pendingDifferences.get();
+            pendingDifferences = null;
+        }
         return differences;
     }
 
-    public void setDifferences(List<String> differences) {
+    public synchronized void setDifferences(List<String> differences) {
         this.differences = differences;
+        this.pendingDifferences = null;
+    }
+
+    /**
+     * Defers computing the difference list until it is first read, typically
+     * when the result is written to a report.
+     */
+    public synchronized void deferDifferences(Supplier<List<String>> differences) {
+        this.differences = null;
+        this.pendingDifferences = differences;
     }
 
     public String getTimestamp() {
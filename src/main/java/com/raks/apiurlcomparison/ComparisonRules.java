@@ -0,0 +1,346 @@
+package com.raks.apiurlcomparison;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * Ignore and normalize rules for volatile response content (timestamps,
+ * request IDs, trace headers), compiled once per run into a path trie.
+ *
+ * <p>
+ * Comparisons move a {@link Cursor} down the trie one path segment at a time,
+ * so checking a node costs O(depth) no matter how many rules there are, and a
+ * subtree under an ignored path is skipped without being visited. Paths:
+ * <ul>
+ * <li>REST, JSONPath-style: {@code $.meta.timestamp}, {@code $.items[*].id},
+ * {@code $.items[0]}, {@code $..traceId} (at any depth), {@code $.*}</li>
+ * <li>SOAP, XPath-style: {@code /Envelope/Header/MessageID},
+ * {@code //Timestamp}, {@code /Envelope/Body/*}, {@code //Order/@created},
+ * {@code //@*}. Steps match local names; prefixes and positions ({@code [1]})
+ * are dropped.</li>
+ * </ul>
+ * A normalizer without a path applies to every value.
+ */
+public class ComparisonRules {
+
+    private static final ComparisonRules NONE = new ComparisonRules(new Node(), new Node(), false);
+
+    private final Node jsonRoot;
+    private final Node xmlRoot;
+    private final boolean empty;
+
+    private ComparisonRules(Node jsonRoot, Node xmlRoot, boolean hasRules) {
+        this.jsonRoot = jsonRoot;
+        this.xmlRoot = xmlRoot;
+        this.empty = !hasRules;
+    }
+
+    public static ComparisonRules none() {
+        return NONE;
+    }
+
+    /**
+     * @throws IllegalArgumentException if a path or pattern does not compile
+     */
+    public static ComparisonRules compile(List<String> ignorePaths, List<Config.NormalizeRule> normalizers) {
+        boolean hasRules = false;
+        Node jsonRoot = new Node();
+        Node xmlRoot = new Node();
+        if (ignorePaths != null) {
+            for (String path : ignorePaths) {
+                for (Node node : insert(jsonRoot, xmlRoot, path)) {
+                    node.ignore = true;
+                }
+                hasRules = true;
+            }
+        }
+        if (normalizers != null) {
+            for (Config.NormalizeRule rule : normalizers) {
+                if (rule.getPattern() == null) {
+                    throw new IllegalArgumentException("Normalizer without pattern for path " + rule.getPath());
+                }
+                Normalizer normalizer = new Normalizer(Pattern.compile(rule.getPattern()),
+                        rule.getReplacement() != null ? rule.getReplacement() : "");
+                // Without a path a normalizer applies to every value and attribute
+                String path = rule.getPath() != null ? rule.getPath() : "*";
+                for (Node node : insert(jsonRoot, xmlRoot, path)) {
+                    node.normalizers.add(normalizer);
+                }
+                hasRules = true;
+            }
+        }
+        return hasRules ? new ComparisonRules(jsonRoot, xmlRoot, true) : NONE;
+    }
+
+    public boolean isEmpty() {
+        return empty;
+    }
+
+    /**
+     * Cursor at the root of a JSON document ({@code $}).
+     */
+    public Cursor jsonRoot() {
+        return empty ? Cursor.NONE : Cursor.at(jsonRoot);
+    }
+
+    /**
+     * Cursor above the document element of an XML document ({@code /}).
+     */
+    public Cursor xmlRoot() {
+        return empty ? Cursor.NONE : Cursor.at(xmlRoot);
+    }
+
+    // Returns the node(s) a path ends at; "*" alone adds to both tries
+    private static List<Node> insert(Node jsonRoot, Node xmlRoot, String path) {
+        String trimmed = path.trim();
+        if (trimmed.equals("*")) {
+            return List.of(jsonRoot.descendants().child(Node.ANY), xmlRoot.descendants().child(Node.ANY),
+                    xmlRoot.descendants().child(Node.ANY_ATTRIBUTE));
+        }
+        if (trimmed.startsWith("$")) {
+            return List.of(insertJson(jsonRoot, trimmed));
+        }
+        if (trimmed.startsWith("/")) {
+            return List.of(insertXml(xmlRoot, trimmed));
+        }
+        throw new IllegalArgumentException(
+                "Rule path must start with '$' (JSON) or '/' (XML): " + path);
+    }
+
+    private static Node insertJson(Node root, String path) {
+        Node node = root;
+        int i = 1;
+        while (i < path.length()) {
+            char c = path.charAt(i);
+            if (c == '.') {
+                if (i + 1 < path.length() && path.charAt(i + 1) == '.') {
+                    node = node.descendants();
+                    i += 2;
+                } else {
+                    i++;
+                }
+                int end = i;
+                while (end < path.length() && path.charAt(end) != '.' && path.charAt(end) != '[') {
+                    end++;
+                }
+                if (end == i) {
+                    throw new IllegalArgumentException("Empty field name in rule path: " + path);
+                }
+                node = node.child(path.substring(i, end));
+                i = end;
+            } else if (c == '[') {
+                int end = path.indexOf(']', i);
+                if (end < 0) {
+                    throw new IllegalArgumentException("Unclosed '[' in rule path: " + path);
+                }
+                String segment = path.substring(i + 1, end).trim();
+                if (segment.length() >= 2 && (segment.charAt(0) == '\'' || segment.charAt(0) == '"')) {
+                    segment = segment.substring(1, segment.length() - 1); // ['field name']
+                }
+                node = node.child(segment);
+                i = end + 1;
+            } else {
+                throw new IllegalArgumentException("Unexpected '" + c + "' in rule path: " + path);
+            }
+        }
+        return node;
+    }
+
+    private static Node insertXml(Node root, String path) {
+        Node node = root;
+        int i = 0;
+        while (i < path.length()) {
+            if (path.startsWith("//", i)) {
+                node = node.descendants();
+                i += 2;
+            } else if (path.charAt(i) == '/') {
+                i++;
+            } else {
+                throw new IllegalArgumentException("Unexpected '" + path.charAt(i) + "' in rule path: " + path);
+            }
+            int end = path.indexOf('/', i);
+            if (end < 0) {
+                end = path.length();
+            }
+            String step = path.substring(i, end);
+            int predicate = step.indexOf('[');
+            if (predicate >= 0) {
+                step = step.substring(0, predicate);
+            }
+            boolean attribute = step.startsWith("@");
+            String name = attribute ? step.substring(1) : step;
+            int colon = name.indexOf(':');
+            if (colon >= 0) {
+                name = name.substring(colon + 1);
+            }
+            if (name.isEmpty()) {
+                throw new IllegalArgumentException("Empty step in rule path: " + path);
+            }
+            node = node.child(attribute ? "@" + name : name);
+            i = end;
+        }
+        return node;
+    }
+
+    /**
+     * A position in the trie: the set of rule nodes that match the path walked
+     * so far. Immutable; {@link #NONE} once no rule can match any more.
+     */
+    public static final class Cursor {
+        static final Cursor NONE = new Cursor(new Node[0]);
+
+        private final Node[] states;
+
+        private Cursor(Node[] states) {
+            this.states = states;
+        }
+
+        private static Cursor at(Node node) {
+            List<Node> states = new ArrayList<>(2);
+            addWithDescendants(states, node);
+            return new Cursor(states.toArray(new Node[0]));
+        }
+
+        /**
+         * True once no rule applies at or below this position.
+         */
+        public boolean isNone() {
+            return states.length == 0;
+        }
+
+        /**
+         * Moves to a child: a field name or array index (JSON), or an element
+         * local name or {@code @attribute} (XML).
+         */
+        public Cursor child(String segment) {
+            if (states.length == 0) {
+                return this;
+            }
+            List<Node> next = null;
+            for (Node state : states) {
+                if (state.recursive) {
+                    next = add(next, state);
+                }
+                Node named = state.named != null ? state.named.get(segment) : null;
+                if (named != null) {
+                    next = add(next, named);
+                }
+                // "*" matches elements and fields, "@*" any attribute
+                Node wildcard = segment.startsWith("@") ? state.anyAttribute : state.any;
+                if (wildcard != null) {
+                    next = add(next, wildcard);
+                }
+            }
+            return next == null ? NONE : new Cursor(next.toArray(new Node[0]));
+        }
+
+        public Cursor child(int index) {
+            return states.length == 0 ? this : child(Integer.toString(index));
+        }
+
+        public boolean isIgnored() {
+            for (Node state : states) {
+                if (state.ignore) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        public boolean hasNormalizers() {
+            for (Node state : states) {
+                if (!state.normalizers.isEmpty()) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * Applies every normalizer for this position, in rule order.
+         */
+        public String normalize(String value) {
+            if (value == null) {
+                return null;
+            }
+            String normalized = value;
+            for (Node state : states) {
+                for (Normalizer normalizer : state.normalizers) {
+                    normalized = normalizer.pattern.matcher(normalized).replaceAll(normalizer.replacement);
+                }
+            }
+            return normalized;
+        }
+
+        private static List<Node> add(List<Node> states, Node node) {
+            if (states == null) {
+                states = new ArrayList<>(2);
+            }
+            addWithDescendants(states, node);
+            return states;
+        }
+
+        private static void addWithDescendants(List<Node> states, Node node) {
+            if (!states.contains(node)) {
+                states.add(node);
+            }
+            // A '..' or '//' step also matches zero levels down
+            if (node.descendants != null && !states.contains(node.descendants)) {
+                states.add(node.descendants);
+            }
+        }
+    }
+
+    private static final class Normalizer {
+        private final Pattern pattern;
+        private final String replacement;
+
+        private Normalizer(Pattern pattern, String replacement) {
+            this.pattern = pattern;
+            this.replacement = replacement;
+        }
+    }
+
+    private static final class Node {
+        private static final String ANY = "*";
+        private static final String ANY_ATTRIBUTE = "@*";
+
+        private Map<String, Node> named;
+        private Node any;
+        private Node anyAttribute;
+        private Node descendants; // Reached without consuming a segment
+        private boolean recursive; // Stays matched on every further segment
+        private boolean ignore;
+        private final List<Normalizer> normalizers = new ArrayList<>(0);
+
+        private Node child(String segment) {
+            if (ANY.equals(segment)) {
+                if (any == null) {
+                    any = new Node();
+                }
+                return any;
+            }
+            if (ANY_ATTRIBUTE.equals(segment)) {
+                if (anyAttribute == null) {
+                    anyAttribute = new Node();
+                }
+                return anyAttribute;
+            }
+            if (named == null) {
+                named = new HashMap<>();
+            }
+            return named.computeIfAbsent(segment, s -> new Node());
+        }
+
+        private Node descendants() {
+            if (descendants == null) {
+                descendants = new Node();
+                descendants.recursive = true;
+            }
+            return descendants;
+        }
+    }
+}
@@ -1,66 +1,198 @@
 package com.raks.apiurlcomparison;
 
 import com.raks.apiurlcomparison.http.ApiClient;
+import com.raks.apiurlcomparison.http.HttpConnectionPool;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Deque;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class ComparisonService {
     private static final Logger logger = LoggerFactory.getLogger(ComparisonService.class);
 
+    // One client per configured API for the whole run; the transport underneath
+    // is the shared connection pool
+    private final Map<ApiConfig, ApiClient> clients = new ConcurrentHashMap<>();
+    // Templates are read and compiled once per operation, not per iteration
+    private final Map<Operation, PayloadProcessor> payloadProcessors = new ConcurrentHashMap<>();
+
     public List<ComparisonResult> execute(Config config) {
+        List<ComparisonResult> allResults = new ArrayList<>();
+        try {
+            execute(config, allResults::add);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e); // Not thrown by an in-memory list
+        }
+        return allResults;
+    }
+
+    /**
+     * Runs the comparison and hands every result to {@code sink} as soon as its
+     * iteration completes, in iteration order. Only the summary is kept in
+     * memory; the sink is not closed.
+     */
+    public ResultSummary execute(Config config, ResultSink sink) throws IOException {
+        ResultSummary summary = new ResultSummary();
         // Check if we're in baseline mode
         if ("BASELINE".equalsIgnoreCase(config.getComparisonMode())) {
-            return executeBaselineMode(config);
+            executeBaselineMode(config, sink, summary);
+            return summary;
         }
 
         // Original LIVE comparison mode
-        List<ComparisonResult> allResults = new ArrayList<>();
-
         // Prepare for iterations
         logger.info("Generating iterations with strategy: {}", config.getIterationController());
-        List<Map<String, Object>> iterations = TestDataGenerator.generate(
+        IterationSpace iterations = TestDataGenerator.iterationSpace(
                 config.getTokens(),
                 config.getMaxIterations(),
-                config.getIterationController());
+                config.getIterationController(),
+                config.getPairwiseStrength());
 
         // Enforce "Original Input Payload" (Raw Execution) as the first iteration
         // This ensures the payload is executed "as-is" before any token replacement
         // occurs.
         if (config.getTokens() != null && !config.getTokens().isEmpty()) {
-            iterations.add(0, new HashMap<>());
+            iterations = iterations.withOriginalPayload();
+        }
+
+        ComparisonOptions options = ComparisonOptions.from(config);
+        int concurrency = config.getConcurrency();
+        if (concurrency > 1) {
+            executeParallel(config, options, iterations, concurrency, sink, summary);
+            return summary;
         }
 
         int iterationCount = 0;
         for (Map<String, Object> currentTokens : iterations) {
             iterationCount++;
-            boolean isOriginal = (iterationCount == 1);
-            logger.info("Running iteration {}: {}{}", iterationCount, currentTokens,
-                    isOriginal ? " (Original Input Payload)" : "");
+            publish(runIteration(config, options, currentTokens, iterationCount, null), sink, summary);
+        }
+        return summary;
+    }
 
-            try {
-                if ("REST".equalsIgnoreCase(config.getTestType())) {
-                    processApis(config.getRestApis(), currentTokens, allResults, config.getTestType(), isOriginal);
-                } else if ("SOAP".equalsIgnoreCase(config.getTestType())) {
-                    processApis(config.getSoapApis(), currentTokens, allResults, config.getTestType(), isOriginal);
-                } else {
-                    logger.error("Invalid testType specified in config: {}", config.getTestType());
+    private static void publish(List<ComparisonResult> results, ResultSink sink, ResultSummary summary)
+            throws IOException {
+        for (ComparisonResult result : results) {
+            sink.accept(result);
+            summary.add(result);
+        }
+    }
+
+    /**
+     * Runs iterations on a bounded pool of {@code concurrency} workers. Results are
+     * published in the original iteration order regardless of completion order.
+     * Iterations are built as they are submitted, and at most a window of
+     * {@code 2 * concurrency} is in flight, so memory does not grow with the size
+     * of the iteration space.
+     */
+    private void executeParallel(Config config, ComparisonOptions options, IterationSpace iterations,
+            int concurrency, ResultSink sink, ResultSummary summary) throws IOException {
+        logger.info("Running {} iterations with concurrency {}", iterations.size(), concurrency);
+        // api1 and api2 of each iteration are in flight together, often on the same host
+        HttpConnectionPool.ensureCapacity(2 * concurrency);
+
+        ExecutorService iterationExecutor = Executors.newFixedThreadPool(concurrency, namedThreadFactory("iteration"));
+        // Separate pool for the api1 side of each iteration, so workers never wait on their own pool
+        ExecutorService callExecutor = Executors.newFixedThreadPool(concurrency, namedThreadFactory("api-call"));
+        try {
+            int window = concurrency * 2;
+            Deque<Future<List<ComparisonResult>>> inFlight = new ArrayDeque<>(window);
+            for (int index = 0; index < iterations.size(); index++) {
+                if (inFlight.size() == window) {
+                    collect(inFlight.poll(), sink, summary);
                 }
-            } catch (Exception e) {
-                logger.error("Error during iteration {}: {}", iterationCount, e.getMessage(), e);
+                final int iterationNumber = index + 1;
+                final Map<String, Object> currentTokens = iterations.get(index);
+                inFlight.add(iterationExecutor.submit(
+                        () -> runIteration(config, options, currentTokens, iterationNumber, callExecutor)));
+            }
+            while (!inFlight.isEmpty()) {
+                collect(inFlight.poll(), sink, summary);
             }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for iterations to complete", e);
+        } finally {
+            iterationExecutor.shutdownNow();
+            callExecutor.shutdownNow();
         }
-        return allResults;
+    }
+
+    private static void collect(Future<List<ComparisonResult>> future, ResultSink sink, ResultSummary summary)
+            throws InterruptedException, IOException {
+        List<ComparisonResult> results;
+        try {
+            results = future.get();
+        } catch (ExecutionException e) {
+            // runIteration reports failed calls as ERROR results; anything escaping it ends
+            // the run, as it does when iterations run one by one
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IllegalStateException("Iteration worker failed", cause);
+        }
+        publish(results, sink, summary);
+    }
+
+    private List<ComparisonResult> runIteration(Config config, ComparisonOptions options,
+            Map<String, Object> currentTokens, int iterationCount, ExecutorService callExecutor) {
+        List<ComparisonResult> results = new ArrayList<>();
+        boolean isOriginal = (iterationCount == 1);
+        logger.info("Running iteration {}: {}{}", iterationCount, currentTokens,
+                isOriginal ? " (Original Input Payload)" : "");
+
+        try {
+            if ("REST".equalsIgnoreCase(config.getTestType())) {
+                processApis(config.getRestApis(), currentTokens, results, config.getTestType(), isOriginal,
+                        callExecutor, options);
+            } else if ("SOAP".equalsIgnoreCase(config.getTestType())) {
+                processApis(config.getSoapApis(), currentTokens, results, config.getTestType(), isOriginal,
+                        callExecutor, options);
+            } else {
+                logger.error("Invalid testType specified in config: {}", config.getTestType());
+            }
+        } catch (Exception e) {
+            logger.error("Error during iteration {}: {}", iterationCount, e.getMessage(), e);
+        }
+        return results;
+    }
+
+    private static ThreadFactory namedThreadFactory(String prefix) {
+        AtomicInteger counter = new AtomicInteger();
+        return r -> {
+            Thread t = new Thread(r, prefix + "-" + counter.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        };
     }
 
     /**
-     * Execute baseline mode (CAPTURE or COMPARE)
+     * Execute baseline mode (CAPTURE, COMPARE or DIFF), publishing results as
+     * they are produced. A failure of the operation itself is published as one
+     * more ERROR result; a failure of the sink is thrown.
      */
-    private List<ComparisonResult> executeBaselineMode(Config config) {
+    private void executeBaselineMode(Config config, ResultSink sink, ResultSummary summary) throws IOException {
+        PublishingSink publishing = new PublishingSink(sink, summary);
         try {
             Config.BaselineConfig baselineConfig = config.getBaseline();
             if (baselineConfig == null) {
@@ -68,34 +200,66 @@ public class ComparisonService {
                         "Baseline configuration is required when comparisonMode is BASELINE");
             }
 
-            String storageDir = baselineConfig.getStorageDir();
-            BaselineStorageService storageService = new BaselineStorageService(storageDir);
+            BaselineStorageService storageService = BaselineStorageService.from(baselineConfig);
             BaselineComparisonService baselineService = new BaselineComparisonService(storageService);
 
             String operation = baselineConfig.getOperation();
             if ("CAPTURE".equalsIgnoreCase(operation)) {
                 logger.info("Executing baseline CAPTURE mode");
-                return baselineService.captureBaseline(config);
+                baselineService.captureBaseline(config, publishing);
             } else if ("COMPARE".equalsIgnoreCase(operation)) {
                 logger.info("Executing baseline COMPARE mode");
-                return baselineService.compareWithBaseline(config);
+                baselineService.compareWithBaseline(config, publishing);
+            } else if ("DIFF".equalsIgnoreCase(operation)) {
+                logger.info("Executing baseline DIFF mode");
+                baselineService.diffWithBaseline(config, publishing);
             } else {
                 throw new IllegalArgumentException(
-                        "Invalid baseline operation: " + operation + ". Must be CAPTURE or COMPARE");
+                        "Invalid baseline operation: " + operation + ". Must be CAPTURE, COMPARE or DIFF");
             }
         } catch (Exception e) {
+            if (publishing.failure != null) {
+                throw publishing.failure;
+            }
             logger.error("Error in baseline mode: {}", e.getMessage(), e);
-            List<ComparisonResult> errorResults = new ArrayList<>();
             ComparisonResult errorResult = new ComparisonResult();
             errorResult.setStatus(ComparisonResult.Status.ERROR);
             errorResult.setErrorMessage("Baseline mode failed: " + e.getMessage());
-            errorResults.add(errorResult);
-            return errorResults;
+            publishing.accept(errorResult);
         }
     }
 
+    // Adds each result to the summary and remembers whether the sink failed
+    private static final class PublishingSink implements ResultSink {
+        private final ResultSink sink;
+        private final ResultSummary summary;
+        private IOException failure;
+
+        PublishingSink(ResultSink sink, ResultSummary summary) {
+            this.sink = sink;
+            this.summary = summary;
+        }
+
+        @Override
+        public void accept(ComparisonResult result) throws IOException {
+            try {
+                sink.accept(result);
+            } catch (IOException e) {
+                failure = e;
+                throw e;
+            }
+            summary.add(result);
+        }
+    }
+
+    /**
+     * Compares every operation of api1 against its namesake in api2. When a
+     * {@code callExecutor} is given, the two calls of an operation are issued at
+     * the same time so both targets are hit at the same moment.
+     */
     private void processApis(Map<String, ApiConfig> apis, Map<String, Object> currentTokens,
-            List<ComparisonResult> allResults, String apiType, boolean isOriginal) {
+            List<ComparisonResult> allResults, String apiType, boolean isOriginal, ExecutorService callExecutor,
+            ComparisonOptions options) {
         if (apis == null || apis.isEmpty()) {
             logger.warn("No {} APIs configured.", apiType);
             return;
@@ -136,8 +300,8 @@ public class ComparisonService {
             result.setTimestamp(java.time.LocalDateTime.now()
                     .format(java.time.format.DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss")));
 
-            ApiClient client1 = new ApiClient(api1Config.getAuthentication());
-            ApiClient client2 = new ApiClient(api2Config.getAuthentication());
+            ApiClient client1 = clientFor(api1Config);
+            ApiClient client2 = clientFor(api2Config);
 
             ApiCallResult api1CallResult = new ApiCallResult();
             ApiCallResult api2CallResult = new ApiCallResult();
@@ -157,7 +321,7 @@ public class ComparisonService {
                 String payload1 = null;
                 if (op1.getPayloadTemplatePath() != null && !op1.getPayloadTemplatePath().isEmpty()) {
                     try {
-                        PayloadProcessor processor1 = new PayloadProcessor(op1.getPayloadTemplatePath(), apiType);
+                        PayloadProcessor processor1 = payloadProcessorFor(op1, apiType);
                         payload1 = processor1.process(currentTokens);
                     } catch (Exception e) {
                         logger.warn("Could not process payload template: {}", e.getMessage());
@@ -174,7 +338,7 @@ public class ComparisonService {
                 String payload2 = null;
                 if (op2.getPayloadTemplatePath() != null && !op2.getPayloadTemplatePath().isEmpty()) {
                     try {
-                        PayloadProcessor processor2 = new PayloadProcessor(op2.getPayloadTemplatePath(), apiType);
+                        PayloadProcessor processor2 = payloadProcessorFor(op2, apiType);
                         payload2 = processor2.process(currentTokens);
                     } catch (Exception e) {
                         logger.warn("Could not process payload template: {}", e.getMessage());
@@ -183,20 +347,32 @@ public class ComparisonService {
                 }
                 api2CallResult.setRequestPayload(payload2);
 
-                // Execute API 1
-                long start1 = System.currentTimeMillis();
-                String response1 = client1.sendRequest(url1, method1, op1.getHeaders(), payload1);
-                api1CallResult.setDuration(System.currentTimeMillis() - start1);
-                api1CallResult.setResponsePayload(response1);
-
-                // Execute API 2
-                long start2 = System.currentTimeMillis();
-                String response2 = client2.sendRequest(url2, method2, op2.getHeaders(), payload2);
-                api2CallResult.setDuration(System.currentTimeMillis() - start2);
-                api2CallResult.setResponsePayload(response2);
+                if (callExecutor != null) {
+                    // Fan out: api1 in the background, api2 on this thread
+                    Future<?> call1 = startCall(client1, url1, method1, op1.getHeaders(), payload1,
+                            api1CallResult, callExecutor);
+                    Exception call2Failure = null;
+                    try {
+                        executeCall(client2, url2, method2, op2.getHeaders(), payload2, api2CallResult);
+                    } catch (Exception e) {
+                        call2Failure = e;
+                    }
+                    // Always wait for api1 so it never writes into a result already reported
+                    try {
+                        call1.get();
+                    } catch (ExecutionException e) {
+                        throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+                    }
+                    if (call2Failure != null) {
+                        throw call2Failure;
+                    }
+                } else {
+                    executeCall(client1, url1, method1, op1.getHeaders(), payload1, api1CallResult);
+                    executeCall(client2, url2, method2, op2.getHeaders(), payload2, api2CallResult);
+                }
 
                 // Compare
-                ComparisonEngine.compare(result, apiType);
+                ComparisonEngine.compare(result, apiType, options);
 
             } catch (Exception e) {
                 logger.error("Error during operation '{}' comparison: {}", op1.getName(), e.getMessage());
@@ -207,6 +383,52 @@ public class ComparisonService {
         }
     }
 
+    private void executeCall(ApiClient client, String url, String method, Map<String, String> headers,
+            String payload, ApiCallResult callResult) throws IOException {
+        long start = System.currentTimeMillis();
+        String response = client.sendRequest(url, method, headers, payload);
+        callResult.setDuration(System.currentTimeMillis() - start);
+        callResult.setResponsePayload(response);
+    }
+
+    /**
+     * Starts a call without blocking the caller: natively async for the HTTP2
+     * transport, otherwise on the given call pool.
+     */
+    private CompletableFuture<Void> startCall(ApiClient client, String url, String method,
+            Map<String, String> headers, String payload, ApiCallResult callResult, ExecutorService callExecutor) {
+        if (client.isNonBlocking()) {
+            long start = System.currentTimeMillis();
+            return client.sendRequestAsync(url, method, headers, payload).thenAccept(response -> {
+                callResult.setDuration(System.currentTimeMillis() - start);
+                callResult.setResponsePayload(response);
+            });
+        }
+        return CompletableFuture.runAsync(() -> {
+            try {
+                executeCall(client, url, method, headers, payload, callResult);
+            } catch (IOException e) {
+                throw new CompletionException(e);
+            }
+        }, callExecutor);
+    }
+
+    private PayloadProcessor payloadProcessorFor(Operation operation, String apiType) throws IOException {
+        PayloadProcessor processor = payloadProcessors.get(operation);
+        if (processor == null) {
+            processor = new PayloadProcessor(operation.getPayloadTemplatePath(), apiType);
+            PayloadProcessor existing = payloadProcessors.putIfAbsent(operation, processor);
+            if (existing != null) {
+                processor = existing;
+            }
+        }
+        return processor;
+    }
+
+    private ApiClient clientFor(ApiConfig apiConfig) {
+        return clients.computeIfAbsent(apiConfig, c -> new ApiClient(c.getAuthentication(), c.getTransport()));
+    }
+
     private String constructUrl(String baseUrl, String path, String apiType) {
         if ("SOAP".equalsIgnoreCase(apiType)) {
             return baseUrl;
@@ -25,6 +25,36 @@ public class Config {
     @JsonProperty("iterationController")
     private String iterationController;
 
+    @JsonProperty("pairwiseStrength")
+    private int pairwiseStrength = TestDataGenerator.DEFAULT_PAIRWISE_STRENGTH; // t for PAIRWISE
+
+    @JsonProperty("concurrency")
+    private int concurrency = 1; // Iterations in flight at once; 1 = sequential
+
+    @JsonProperty("maxDifferences")
+    private int maxDifferences = ComparisonEngine.DEFAULT_MAX_DIFFERENCES; // Per result; 0 = unlimited
+
+    @JsonProperty("arrayAlignment")
+    private String arrayAlignment; // "INDEX" (default), "KEY" or "HASH"
+
+    @JsonProperty("arrayKeyField")
+    private String arrayKeyField; // Field identifying array elements for KEY alignment
+
+    @JsonProperty("ignorePaths")
+    private List<String> ignorePaths; // Excluded from comparison: "$.meta.timestamp", "//MessageID"
+
+    @JsonProperty("normalizers")
+    private List<NormalizeRule> normalizers;
+
+    @JsonProperty("ignoreNamespaces")
+    private List<String> ignoreNamespaces; // SOAP: namespace URIs whose elements/attributes are not compared
+
+    @JsonProperty("ignoreNamespacePrefixes")
+    private boolean ignoreNamespacePrefixes; // SOAP: ns0:Order equals soap:Order in the same namespace
+
+    @JsonProperty("streamingXmlThreshold")
+    private int streamingXmlThreshold = ComparisonEngine.DEFAULT_STREAMING_XML_THRESHOLD; // SOAP: stream, no DOM, from this size (chars)
+
     @JsonProperty("comparisonMode")
     private String comparisonMode = "LIVE"; // "LIVE" or "BASELINE"
 
@@ -40,6 +70,46 @@ public class Config {
         return iterationController;
     }
 
+    public int getPairwiseStrength() {
+        return pairwiseStrength;
+    }
+
+    public int getConcurrency() {
+        return Math.max(1, concurrency);
+    }
+
+    public int getMaxDifferences() {
+        return maxDifferences;
+    }
+
+    public String getArrayAlignment() {
+        return arrayAlignment;
+    }
+
+    public String getArrayKeyField() {
+        return arrayKeyField;
+    }
+
+    public List<String> getIgnorePaths() {
+        return ignorePaths;
+    }
+
+    public List<NormalizeRule> getNormalizers() {
+        return normalizers;
+    }
+
+    public List<String> getIgnoreNamespaces() {
+        return ignoreNamespaces;
+    }
+
+    public boolean isIgnoreNamespacePrefixes() {
+        return ignoreNamespacePrefixes;
+    }
+
+    public int getStreamingXmlThreshold() {
+        return streamingXmlThreshold;
+    }
+
     public String getComparisonMode() {
         return comparisonMode != null ? comparisonMode : "LIVE";
     }
@@ -73,6 +143,46 @@ public class Config {
         this.iterationController = iterationController;
     }
 
+    public void setPairwiseStrength(int pairwiseStrength) {
+        this.pairwiseStrength = pairwiseStrength;
+    }
+
+    public void setConcurrency(int concurrency) {
+        this.concurrency = concurrency;
+    }
+
+    public void setMaxDifferences(int maxDifferences) {
+        this.maxDifferences = maxDifferences;
+    }
+
+    public void setArrayAlignment(String arrayAlignment) {
+        this.arrayAlignment = arrayAlignment;
+    }
+
+    public void setArrayKeyField(String arrayKeyField) {
+        this.arrayKeyField = arrayKeyField;
+    }
+
+    public void setIgnorePaths(List<String> ignorePaths) {
+        this.ignorePaths = ignorePaths;
+    }
+
+    public void setNormalizers(List<NormalizeRule> normalizers) {
+        this.normalizers = normalizers;
+    }
+
+    public void setIgnoreNamespaces(List<String> ignoreNamespaces) {
+        this.ignoreNamespaces = ignoreNamespaces;
+    }
+
+    public void setIgnoreNamespacePrefixes(boolean ignoreNamespacePrefixes) {
+        this.ignoreNamespacePrefixes = ignoreNamespacePrefixes;
+    }
+
+    public void setStreamingXmlThreshold(int streamingXmlThreshold) {
+        this.streamingXmlThreshold = streamingXmlThreshold;
+    }
+
     public void setComparisonMode(String comparisonMode) {
         this.comparisonMode = comparisonMode;
     }
@@ -97,14 +207,71 @@ public class Config {
         this.tokens = tokens;
     }
 
+    // Inner class for a value normalizer: regex replacement applied to both sides before comparing
+    public static class NormalizeRule {
+        @JsonProperty("path")
+        private String path; // JSONPath-style or XPath-style; all values if omitted
+
+        @JsonProperty("pattern")
+        private String pattern;
+
+        @JsonProperty("replacement")
+        private String replacement = "";
+
+        public String getPath() {
+            return path;
+        }
+
+        public String getPattern() {
+            return pattern;
+        }
+
+        public String getReplacement() {
+            return replacement;
+        }
+
+        public void setPath(String path) {
+            this.path = path;
+        }
+
+        public void setPattern(String pattern) {
+            this.pattern = pattern;
+        }
+
+        public void setReplacement(String replacement) {
+            this.replacement = replacement;
+        }
+    }
+
     // Inner class for baseline configuration
     public static class BaselineConfig {
         @JsonProperty("operation")
-        private String operation; // "CAPTURE" or "COMPARE"
+        private String operation; // "CAPTURE", "COMPARE" or "DIFF" (offline, no API calls)
 
         @JsonProperty("storageDir")
         private String storageDir = "baselines";
 
+        @JsonProperty("storageFormat")
+        private String storageFormat = "PACKED"; // "PACKED" (one segment file per run) or "DIRECTORY"
+
+        @JsonProperty("compression")
+        private String compression = "DEFLATE"; // Packed payloads: "DEFLATE" or "NONE"
+
+        @JsonProperty("dictionaryTrainingIterations")
+        private int dictionaryTrainingIterations = 0; // Iterations to train a compression dictionary from; 0 for none
+
+        @JsonProperty("deduplicatePayloads")
+        private boolean deduplicatePayloads = true; // Keep large payloads once per service, shared across runs
+
+        @JsonProperty("syncInterval")
+        private int syncInterval = 100; // Captured iterations between syncs to disk; 0 = only at the end
+
+        @JsonProperty("resumeCapture")
+        private boolean resumeCapture = false; // CAPTURE continues the service's last interrupted run, if any
+
+        @JsonProperty("prefetchIterations")
+        private int prefetchIterations = 8; // COMPARE reads this many baseline iterations ahead; 0 = on demand
+
         @JsonProperty("serviceName")
         private String serviceName;
 
@@ -120,6 +287,18 @@ public class Config {
         @JsonProperty("compareRunId")
         private String compareRunId;
 
+        @JsonProperty("diffDate")
+        private String diffDate; // DIFF: date of the run diffed against the baseline; defaults to compareDate
+
+        @JsonProperty("diffRunId")
+        private String diffRunId; // DIFF: run diffed against the baseline
+
+        @JsonProperty("diffResultsFile")
+        private String diffResultsFile; // DIFF: JSON Lines results of a live run, instead of diffRunId
+
+        @JsonProperty("matchBy")
+        private String matchBy = "ITERATION"; // DIFF pairs iterations by "ITERATION" number or "TOKENS"
+
         // Getters
         public String getOperation() {
             return operation;
@@ -129,6 +308,34 @@ public class Config {
             return storageDir != null ? storageDir : "baselines";
         }
 
+        public String getStorageFormat() {
+            return storageFormat;
+        }
+
+        public String getCompression() {
+            return compression;
+        }
+
+        public int getDictionaryTrainingIterations() {
+            return dictionaryTrainingIterations;
+        }
+
+        public boolean isDeduplicatePayloads() {
+            return deduplicatePayloads;
+        }
+
+        public int getSyncInterval() {
+            return syncInterval;
+        }
+
+        public boolean isResumeCapture() {
+            return resumeCapture;
+        }
+
+        public int getPrefetchIterations() {
+            return prefetchIterations;
+        }
+
         public String getServiceName() {
             return serviceName;
         }
@@ -149,6 +356,22 @@ public class Config {
             return compareRunId;
         }
 
+        public String getDiffDate() {
+            return diffDate != null ? diffDate : compareDate;
+        }
+
+        public String getDiffRunId() {
+            return diffRunId;
+        }
+
+        public String getDiffResultsFile() {
+            return diffResultsFile;
+        }
+
+        public String getMatchBy() {
+            return matchBy;
+        }
+
         // Setters
         public void setOperation(String operation) {
             this.operation = operation;
@@ -158,6 +381,34 @@ public class Config {
             this.storageDir = storageDir;
         }
 
+        public void setStorageFormat(String storageFormat) {
+            this.storageFormat = storageFormat;
+        }
+
+        public void setCompression(String compression) {
+            this.compression = compression;
+        }
+
+        public void setDictionaryTrainingIterations(int dictionaryTrainingIterations) {
+            this.dictionaryTrainingIterations = dictionaryTrainingIterations;
+        }
+
+        public void setDeduplicatePayloads(boolean deduplicatePayloads) {
+            this.deduplicatePayloads = deduplicatePayloads;
+        }
+
+        public void setSyncInterval(int syncInterval) {
+            this.syncInterval = syncInterval;
+        }
+
+        public void setResumeCapture(boolean resumeCapture) {
+            this.resumeCapture = resumeCapture;
+        }
+
+        public void setPrefetchIterations(int prefetchIterations) {
+            this.prefetchIterations = prefetchIterations;
+        }
+
         public void setServiceName(String serviceName) {
             this.serviceName = serviceName;
         }
@@ -177,5 +428,21 @@ public class Config {
         public void setCompareRunId(String compareRunId) {
             this.compareRunId = compareRunId;
         }
+
+        public void setDiffDate(String diffDate) {
+            this.diffDate = diffDate;
+        }
+
+        public void setDiffRunId(String diffRunId) {
+            this.diffRunId = diffRunId;
+        }
+
+        public void setDiffResultsFile(String diffResultsFile) {
+            this.diffResultsFile = diffResultsFile;
+        }
+
+        public void setMatchBy(String matchBy) {
+            this.matchBy = matchBy;
+        }
     }
 }
\ No newline at end of file
@@ -0,0 +1,190 @@
+package com.raks.apiurlcomparison;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * Greedy construction of a t-way covering array: a set of rows (one value
+ * index per parameter) in which every combination of values of every
+ * {@code t} parameters appears at least once.
+ *
+ * <p>
+ * Rows are built one at a time. Each row starts from the first combination
+ * not yet covered, and the remaining parameters take the value that covers the
+ * most uncovered combinations together with the parameters already chosen.
+ * The result is deterministic for a given input.
+ */
+final class CoveringArray {
+
+    // Upper bound on the t-way combinations tracked at once (one bit each)
+    private static final long MAX_TUPLES = 1L << 27;
+
+    private CoveringArray() {
+    }
+
+    /**
+     * @param radices  number of values of each parameter, all at least 1
+     * @param strength interaction strength t, between 1 and the number of
+     *                 parameters
+     * @return rows of value indexes, one entry per parameter
+     */
+    static List<int[]> generate(int[] radices, int strength) {
+        int parameters = radices.length;
+        if (strength < 1 || strength > parameters) {
+            throw new IllegalArgumentException(
+                    "Strength must be between 1 and " + parameters + ", was " + strength);
+        }
+
+        List<Interaction> interactions = new ArrayList<>();
+        List<List<Interaction>> byParameter = new ArrayList<>(parameters);
+        for (int p = 0; p < parameters; p++) {
+            byParameter.add(new ArrayList<>());
+        }
+        long uncovered = 0;
+        int[] subset = new int[strength];
+        for (int i = 0; i < strength; i++) {
+            subset[i] = i;
+        }
+        while (true) {
+            Interaction interaction = new Interaction(subset.clone(), radices);
+            uncovered += interaction.tuples;
+            if (uncovered > MAX_TUPLES) {
+                throw new IllegalArgumentException("Too many " + strength
+                        + "-way value combinations to cover; lower the strength or the number of token values");
+            }
+            interactions.add(interaction);
+            for (int p : interaction.parameters) {
+                byParameter.get(p).add(interaction);
+            }
+            if (!nextSubset(subset, parameters)) {
+                break;
+            }
+        }
+
+        List<int[]> rows = new ArrayList<>();
+        // How often each value was picked, to spread values over tie-breaks
+        int[][] usage = new int[parameters][];
+        for (int p = 0; p < parameters; p++) {
+            usage[p] = new int[radices[p]];
+        }
+        int seedCursor = 0;
+        while (uncovered > 0) {
+            int[] row = new int[parameters];
+            Arrays.fill(row, -1);
+
+            while (interactions.get(seedCursor).uncovered == 0) {
+                seedCursor++;
+            }
+            Interaction seed = interactions.get(seedCursor);
+            seed.decode(seed.covered.nextClearBit(0), row);
+
+            for (int p = 0; p < parameters; p++) {
+                if (row[p] >= 0) {
+                    continue;
+                }
+                int best = 0;
+                int bestGain = -1;
+                for (int v = 0; v < radices[p]; v++) {
+                    row[p] = v;
+                    int gain = 0;
+                    for (Interaction interaction : byParameter.get(p)) {
+                        if (interaction.isAssigned(row) && !interaction.covered.get(interaction.index(row))) {
+                            gain++;
+                        }
+                    }
+                    if (gain > bestGain || (gain == bestGain && usage[p][v] < usage[p][best])) {
+                        best = v;
+                        bestGain = gain;
+                    }
+                }
+                row[p] = best;
+            }
+
+            for (Interaction interaction : interactions) {
+                int index = interaction.index(row);
+                if (!interaction.covered.get(index)) {
+                    interaction.covered.set(index);
+                    interaction.uncovered--;
+                    uncovered--;
+                }
+            }
+            for (int p = 0; p < parameters; p++) {
+                usage[p][row[p]]++;
+            }
+            rows.add(row);
+        }
+        return rows;
+    }
+
+    // Advances to the next t-subset of {0..n-1} in lexicographic order
+    private static boolean nextSubset(int[] subset, int n) {
+        int t = subset.length;
+        int i = t - 1;
+        while (i >= 0 && subset[i] == n - t + i) {
+            i--;
+        }
+        if (i < 0) {
+            return false;
+        }
+        subset[i]++;
+        for (int j = i + 1; j < t; j++) {
+            subset[j] = subset[j - 1] + 1;
+        }
+        return true;
+    }
+
+    /**
+     * One set of t parameters and which of their value combinations are covered.
+     * Combinations are numbered mixed-radix over the parameters' values.
+     */
+    private static final class Interaction {
+        private final int[] parameters;
+        private final int[] radices;
+        private final int tuples;
+        private final BitSet covered;
+        private int uncovered;
+
+        private Interaction(int[] parameters, int[] allRadices) {
+            this.parameters = parameters;
+            this.radices = new int[parameters.length];
+            long product = 1;
+            for (int i = 0; i < parameters.length; i++) {
+                radices[i] = allRadices[parameters[i]];
+                product *= radices[i];
+                if (product > MAX_TUPLES) {
+                    throw new IllegalArgumentException("Too many " + parameters.length
+                            + "-way value combinations to cover; lower the strength or the number of token values");
+                }
+            }
+            this.tuples = (int) product;
+            this.covered = new BitSet(tuples);
+            this.uncovered = tuples;
+        }
+
+        private boolean isAssigned(int[] row) {
+            for (int p : parameters) {
+                if (row[p] < 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private int index(int[] row) {
+            int index = 0;
+            for (int i = 0; i < parameters.length; i++) {
+                index = index * radices[i] + row[parameters[i]];
+            }
+            return index;
+        }
+
+        private void decode(int index, int[] row) {
+            for (int i = parameters.length - 1; i >= 0; i--) {
+                row[parameters[i]] = index % radices[i];
+                index /= radices[i];
+            }
+        }
+    }
+}
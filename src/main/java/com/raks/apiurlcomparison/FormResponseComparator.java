@@ -0,0 +1,114 @@
+package com.raks.apiurlcomparison;
+
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * {@code application/x-www-form-urlencoded} bodies: compared field by field,
+ * in any order. Fields are addressed like top-level JSON fields
+ * ({@code $.name}), so ignore paths and normalizers apply to them too.
+ */
+final class FormResponseComparator implements ResponseComparator {
+
+    @Override
+    public String format() {
+        return ResponseComparators.FORM;
+    }
+
+    @Override
+    public Set<String> mediaTypes() {
+        return Set.of("application/x-www-form-urlencoded");
+    }
+
+    @Override
+    public void compare(ComparisonResult result, String response1, String response2, ComparisonOptions options) {
+        Map<String, List<String>> form1 = parse(response1.trim());
+        Map<String, List<String>> form2 = parse(response2.trim());
+        ComparisonRules.Cursor root = options.getRules().jsonRoot();
+        int maxDifferences = options.getMaxDifferences();
+        List<String> differences = new ArrayList<>();
+
+        for (Map.Entry<String, List<String>> field : form1.entrySet()) {
+            ComparisonRules.Cursor rule = root.child(field.getKey());
+            List<String> values2 = form2.get(field.getKey());
+            if (rule.isIgnored() || sameValues(field.getValue(), values2, rule)) {
+                continue;
+            }
+            if (!add(differences, maxDifferences, values2 == null
+                    ? "Missing field in API 2: $." + field.getKey()
+                    : "Values differ at $." + field.getKey() + ". API 1: " + String.join(",", field.getValue())
+                            + ", API 2: " + String.join(",", values2))) {
+                break;
+            }
+        }
+        for (String name : form2.keySet()) {
+            if (!form1.containsKey(name) && !root.child(name).isIgnored()
+                    && !add(differences, maxDifferences, "Missing field in API 1: $." + name)) {
+                break;
+            }
+        }
+        result.setStatus(differences.isEmpty() ? ComparisonResult.Status.MATCH : ComparisonResult.Status.MISMATCH);
+        result.setDifferences(differences);
+    }
+
+    private static boolean sameValues(List<String> values1, List<String> values2, ComparisonRules.Cursor rule) {
+        if (values2 == null || values1.size() != values2.size()) {
+            return false;
+        }
+        for (int i = 0; i < values1.size(); i++) {
+            String value1 = values1.get(i);
+            String value2 = values2.get(i);
+            if (!value1.equals(value2)
+                    && !(rule.hasNormalizers() && rule.normalize(value1).equals(rule.normalize(value2)))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Returns false once the limit is reached
+    private static boolean add(List<String> differences, int maxDifferences, String difference) {
+        if (maxDifferences > 0 && differences.size() == maxDifferences) {
+            differences.add(ComparisonEngine.limitReached(maxDifferences));
+            return false;
+        }
+        differences.add(difference);
+        return true;
+    }
+
+    private static Map<String, List<String>> parse(String body) {
+        Map<String, List<String>> fields = new LinkedHashMap<>();
+        int start = 0;
+        while (start <= body.length()) {
+            int end = body.indexOf('&', start);
+            if (end < 0) {
+                end = body.length();
+            }
+            if (end > start) {
+                int equals = body.indexOf('=', start);
+                String name = equals >= 0 && equals < end ? body.substring(start, equals) : body.substring(start, end);
+                String value = equals >= 0 && equals < end ? body.substring(equals + 1, end) : "";
+                fields.computeIfAbsent(decode(name), k -> new ArrayList<>(1)).add(decode(value));
+            }
+            start = end + 1;
+        }
+        return fields;
+    }
+
+    // Malformed escapes are kept as they are rather than failing the comparison
+    private static String decode(String s) {
+        if (s.indexOf('%') < 0 && s.indexOf('+') < 0) {
+            return s;
+        }
+        try {
+            return URLDecoder.decode(s, StandardCharsets.UTF_8);
+        } catch (IllegalArgumentException e) {
+            return s;
+        }
+    }
+}
@@ -1,8 +1,10 @@
 package com.raks.apiurlcomparison;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
 
 import java.io.File;
 import java.io.FileWriter;
@@ -21,6 +23,35 @@ public class HtmlReportGenerator {
             throw new IllegalArgumentException("Results list cannot be null for JSON report generation.");
         }
 
+        File outputFile = resolveJsonReportFile(outputPath);
+        mapper.writerWithDefaultPrettyPrinter().writeValue(outputFile, results); // Pretty print JSON
+        return outputFile;
+    }
+
+    /**
+     * Writes the JSON report from a results log (see {@link JsonLinesResultSink}),
+     * copying one result at a time.
+     */
+    public static File generateJsonReport(File resultsLog, String outputPath) throws IOException {
+        File outputFile = resolveJsonReportFile(outputPath);
+        try (MappingIterator<ComparisonResult> results = JsonLinesResultSink.read(resultsLog);
+                JsonGenerator generator = mapper.getFactory().createGenerator(outputFile, JsonEncoding.UTF8)) {
+            generator.useDefaultPrettyPrinter();
+            generator.writeStartArray();
+            while (results.hasNextValue()) {
+                mapper.writeValue(generator, results.nextValue());
+            }
+            generator.writeEndArray();
+        }
+        return outputFile;
+    }
+
+    /**
+     * The JSON report file for the given output path: the path itself, or
+     * {@code results.json} inside it when it is a directory. Parent directories
+     * are created.
+     */
+    public static File resolveJsonReportFile(String outputPath) {
         File outputFile = new File(outputPath);
         // If the provided path is a directory, append a default filename.
         if (outputFile.isDirectory()) {
@@ -28,27 +59,35 @@ public class HtmlReportGenerator {
         }
 
         // Ensure the parent directory exists.
-        File parentDir = outputFile.getParentFile();
+        File parentDir = outputFile.getAbsoluteFile().getParentFile();
         if (parentDir != null && !parentDir.exists()) {
             parentDir.mkdirs();
         }
-
-        mapper.enable(SerializationFeature.INDENT_OUTPUT); // Pretty print JSON
-        mapper.writeValue(outputFile, results);
         return outputFile;
     }
 
     public static File generateHtmlReport(List<ComparisonResult> results, String outputPath) throws IOException {
-        File baseOutputFile = new File(outputPath);
-        // If the provided path is a directory, append a default filename to determine
-        // the base name.
-        if (baseOutputFile.isDirectory()) {
-            baseOutputFile = new File(baseOutputFile, "results.json");
+        return writeHtmlReport(results, ResultSummary.of(results), outputPath);
+    }
+
+    /**
+     * Writes the HTML report from a results log, reading it back one result at a
+     * time; {@code summary} is the one returned by the run that wrote the log.
+     */
+    public static File generateHtmlReport(File resultsLog, ResultSummary summary, String outputPath)
+            throws IOException {
+        try (MappingIterator<ComparisonResult> results = JsonLinesResultSink.read(resultsLog)) {
+            return writeHtmlReport(() -> results, summary, outputPath);
         }
+    }
+
+    private static File writeHtmlReport(Iterable<ComparisonResult> results, ResultSummary summary,
+            String outputPath) throws IOException {
+        File baseOutputFile = resolveJsonReportFile(outputPath);
 
         // Construct the HTML file path based on the resolved base file path.
         String htmlFileName = baseOutputFile.getName().replaceFirst("[.][^.]+$", "") + ".html";
-        File htmlFile = new File(baseOutputFile.getParent(), htmlFileName);
+        File htmlFile = new File(baseOutputFile.getAbsoluteFile().getParent(), htmlFileName);
 
         try (PrintWriter writer = new PrintWriter(new FileWriter(htmlFile))) {
             writer.println("<!DOCTYPE html>");
@@ -65,7 +104,7 @@ public class HtmlReportGenerator {
             // --- Summaries ---
             String generationTimestamp = ZonedDateTime.now()
                     .format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss z"));
-            generateSummary(writer, results, generationTimestamp);
+            generateSummary(writer, summary, generationTimestamp);
 
             // --- Details Table ---
             writer.println("<h2>Iteration Details</h2>");
@@ -191,31 +230,22 @@ public class HtmlReportGenerator {
         return text.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;");
     }
 
-    private static void generateSummary(PrintWriter writer, List<ComparisonResult> results,
-            String generationTimestamp) {
-        long matches = results.stream().filter(r -> "MATCH".equals(r.getStatus())).count();
-        long mismatches = results.stream().filter(r -> "MISMATCH".equals(r.getStatus())).count();
-        long errors = results.stream().filter(r -> "ERROR".equals(r.getStatus())).count();
-        long totalDuration = results.stream()
-                .mapToLong(r -> (r.getApi1() != null ? r.getApi1().getDuration() : 0)
-                        + (r.getApi2() != null ? r.getApi2().getDuration() : 0))
-                .sum();
+    private static void generateSummary(PrintWriter writer, ResultSummary summary, String generationTimestamp) {
+        long matches = summary.getMatches();
+        long mismatches = summary.getMismatches();
+        long errors = summary.getErrors();
+        long totalDuration = summary.getTotalDuration();
 
         // Check if this is a baseline operation
-        String baselinePath = null;
-        String baselineOperation = null;
-        if (!results.isEmpty() && results.get(0).getBaselinePath() != null) {
-            baselinePath = results.get(0).getBaselinePath();
-            // Determine if this is capture or compare based on whether api2 exists
-            baselineOperation = results.get(0).getApi2() != null ? "Baseline Used" : "Baseline Captured";
-        }
+        String baselinePath = summary.getBaselinePath();
+        String baselineOperation = summary.getBaselineOperation();
 
         writer.println("<div class=\"summary-container\">");
 
         // Build execution summary content
         StringBuilder execSummary = new StringBuilder();
         execSummary.append("<div class=\"summary-box\"><h2>Execution Summary</h2>")
-                .append("<p><strong>Total Iterations:</strong> ").append(results.size()).append("</p>")
+                .append("<p><strong>Total Iterations:</strong> ").append(summary.getTotal()).append("</p>")
                 .append("<p><strong>Total API Call Duration:</strong> ").append(totalDuration).append(" ms</p>");
 
         // Add baseline path if present
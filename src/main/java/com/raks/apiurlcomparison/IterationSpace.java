@@ -0,0 +1,167 @@
+package com.raks.apiurlcomparison;
+
+import java.util.AbstractList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.RandomAccess;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * An ordered, index-addressable sequence of iteration token maps. Iteration
+ * {@code i} is computed on demand by {@link #get(int)}, so a space never holds
+ * more than the token definitions themselves, however many combinations it
+ * describes. Spliterators split by index range for parallel consumption.
+ */
+public abstract class IterationSpace implements Iterable<Map<String, Object>> {
+
+    /**
+     * Number of iterations in this space.
+     */
+    public abstract int size();
+
+    /**
+     * Builds the token map for iteration {@code index} (0-based). Each call
+     * returns a new, mutable map.
+     */
+    public abstract Map<String, Object> get(int index);
+
+    /**
+     * This space preceded by one empty token map, the "Original Input Payload"
+     * iteration that sends the template as-is.
+     */
+    public IterationSpace withOriginalPayload() {
+        IterationSpace tokens = this;
+        return new IterationSpace() {
+            @Override
+            public int size() {
+                return tokens.size() + 1;
+            }
+
+            @Override
+            public Map<String, Object> get(int index) {
+                return index == 0 ? new HashMap<>() : tokens.get(index - 1);
+            }
+        };
+    }
+
+    /**
+     * Unmodifiable, random-access list view; elements are computed on access.
+     */
+    public List<Map<String, Object>> asList() {
+        return new ListView();
+    }
+
+    @Override
+    public Iterator<Map<String, Object>> iterator() {
+        return new Iterator<Map<String, Object>>() {
+            private int next;
+
+            @Override
+            public boolean hasNext() {
+                return next < size();
+            }
+
+            @Override
+            public Map<String, Object> next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return get(next++);
+            }
+        };
+    }
+
+    @Override
+    public Spliterator<Map<String, Object>> spliterator() {
+        return new RangeSpliterator(0, size());
+    }
+
+    public Stream<Map<String, Object>> stream() {
+        return StreamSupport.stream(spliterator(), false);
+    }
+
+    /**
+     * A space over already materialized iterations.
+     */
+    static IterationSpace of(List<Map<String, Object>> iterations) {
+        return new IterationSpace() {
+            @Override
+            public int size() {
+                return iterations.size();
+            }
+
+            @Override
+            public Map<String, Object> get(int index) {
+                return new HashMap<>(iterations.get(index));
+            }
+        };
+    }
+
+    private final class ListView extends AbstractList<Map<String, Object>> implements RandomAccess {
+        @Override
+        public Map<String, Object> get(int index) {
+            if (index < 0 || index >= size()) {
+                throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size());
+            }
+            return IterationSpace.this.get(index);
+        }
+
+        @Override
+        public int size() {
+            return IterationSpace.this.size();
+        }
+    }
+
+    private final class RangeSpliterator implements Spliterator<Map<String, Object>> {
+        private int from;
+        private final int to;
+
+        private RangeSpliterator(int from, int to) {
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super Map<String, Object>> action) {
+            if (from >= to) {
+                return false;
+            }
+            action.accept(get(from++));
+            return true;
+        }
+
+        @Override
+        public void forEachRemaining(Consumer<? super Map<String, Object>> action) {
+            while (from < to) {
+                action.accept(get(from++));
+            }
+        }
+
+        @Override
+        public Spliterator<Map<String, Object>> trySplit() {
+            int mid = (from + to) >>> 1;
+            if (mid <= from) {
+                return null;
+            }
+            Spliterator<Map<String, Object>> prefix = new RangeSpliterator(from, mid);
+            from = mid;
+            return prefix;
+        }
+
+        @Override
+        public long estimateSize() {
+            return to - from;
+        }
+
+        @Override
+        public int characteristics() {
+            return ORDERED | SIZED | SUBSIZED | IMMUTABLE | NONNULL;
+        }
+    }
+}
@@ -0,0 +1,347 @@
+package com.raks.apiurlcomparison;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Walks two JSON trees side by side and reports their differences. One path
+ * buffer is shared by the whole walk (extended on the way down, truncated on
+ * the way back), and a path is only turned into a string when a difference is
+ * reported. The walk stops once {@code maxDifferences} have been collected.
+ *
+ * <p>
+ * Arrays are paired up according to {@link ComparisonOptions.ArrayAlignment}:
+ * by index, by a key field (paths then read {@code $.items[id=42]}), or by
+ * aligning equal elements so that an insert or delete is reported once instead
+ * of shifting every later element.
+ */
+final class JsonDiffWalker {
+
+    // Edit distance up to which HASH alignment runs the O((N+M)D) LCS; beyond
+    // that the arrays have too little in common to be worth aligning
+    private static final int MAX_EDIT_DISTANCE = 500;
+
+    private final StringBuilder path = new StringBuilder(64);
+    private final List<String> differences;
+    private final int maxDifferences;
+    private final ComparisonOptions.ArrayAlignment arrayAlignment;
+    private final String arrayKeyField;
+    private final ComparisonRules rules;
+    private int reported;
+
+    /**
+     * @param differences receives the differences found
+     */
+    JsonDiffWalker(List<String> differences, ComparisonOptions options) {
+        this.differences = differences;
+        this.maxDifferences = options.getMaxDifferences() > 0 ? options.getMaxDifferences() : Integer.MAX_VALUE;
+        this.arrayAlignment = options.getArrayAlignment();
+        this.arrayKeyField = options.getArrayKeyField();
+        this.rules = options.getRules();
+    }
+
+    /**
+     * Compares the two trees from the root, reported as {@code $}.
+     *
+     * @return false if the walk stopped at the difference limit
+     */
+    boolean walk(JsonNode node1, JsonNode node2) {
+        path.setLength(0);
+        path.append('$');
+        return compare(node1, node2, rules.jsonRoot());
+    }
+
+    // Returns false once the limit is reached, unwinding the whole walk. The
+    // cursor tracks which ignore/normalize rules apply at this node.
+    private boolean compare(JsonNode node1, JsonNode node2, ComparisonRules.Cursor rule) {
+        int mark = path.length();
+        if (node1.isObject() && node2.isObject()) {
+            Iterator<Map.Entry<String, JsonNode>> fields = node1.fields();
+            while (fields.hasNext()) {
+                Map.Entry<String, JsonNode> field = fields.next();
+                ComparisonRules.Cursor fieldRule = rule.child(field.getKey());
+                if (fieldRule.isIgnored()) {
+                    continue; // Whole subtree skipped
+                }
+                JsonNode other = node2.get(field.getKey());
+                path.append('.').append(field.getKey());
+                boolean more = other != null
+                        ? compare(field.getValue(), other, fieldRule)
+                        : report("Missing field in API 2: ", path);
+                path.setLength(mark);
+                if (!more) {
+                    return false;
+                }
+            }
+
+            Iterator<String> fieldNames = node2.fieldNames();
+            while (fieldNames.hasNext()) {
+                String fieldName = fieldNames.next();
+                if (!node1.has(fieldName) && !rule.child(fieldName).isIgnored()) {
+                    path.append('.').append(fieldName);
+                    boolean more = report("Missing field in API 1: ", path);
+                    path.setLength(mark);
+                    if (!more) {
+                        return false;
+                    }
+                }
+            }
+        } else if (node1.isArray() && node2.isArray()) {
+            if (arrayAlignment == ComparisonOptions.ArrayAlignment.KEY) {
+                Map<JsonNode, Integer> keys1 = keyIndex(node1);
+                Map<JsonNode, Integer> keys2 = keys1 != null ? keyIndex(node2) : null;
+                if (keys2 != null) {
+                    return compareByKey(node1, node2, keys1, keys2, rule);
+                }
+                // Not every element carries a unique key: fall back to alignment by content
+            }
+            if (arrayAlignment != ComparisonOptions.ArrayAlignment.INDEX) {
+                return compareAligned(node1, node2, rule);
+            }
+            return compareInPlace(node1, 0, node1.size(), node2, 0, node2.size(), rule);
+        } else if (!node1.equals(node2) && !equalAfterNormalizing(node1, node2, rule)) {
+            return report("Values differ at " + path + ". API 1: " + node1.textValue()
+                    + ", API 2: " + node2.textValue());
+        }
+        return true;
+    }
+
+    /**
+     * Compares {@code array1[from1, to1)} with {@code array2[from2, to2)}
+     * position by position; elements past the shorter range are missing.
+     * Reported indexes are those of the array the element is in.
+     */
+    private boolean compareInPlace(JsonNode array1, int from1, int to1, JsonNode array2, int from2, int to2,
+            ComparisonRules.Cursor rule) {
+        int mark = path.length();
+        int len1 = to1 - from1;
+        int len2 = to2 - from2;
+        int maxLength = Math.max(len1, len2);
+
+        for (int i = 0; i < maxLength; i++) {
+            // Elements are addressed by their index in API 1, or in API 2 if only there
+            int index = i < len1 ? from1 + i : from2 + i;
+            ComparisonRules.Cursor elementRule = rule.child(index);
+            if (elementRule.isIgnored()) {
+                continue;
+            }
+            path.append('[').append(index).append(']');
+            boolean more;
+            if (i < len1 && i < len2) {
+                more = compare(array1.get(from1 + i), array2.get(from2 + i), elementRule);
+            } else if (i < len1) {
+                more = report("Missing element in API 2: ", path);
+            } else {
+                more = report("Missing element in API 1: ", path);
+            }
+            path.setLength(mark);
+            if (!more) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Lines up equal elements of both arrays (longest common subsequence) and
+     * compares only what lies between them, in place.
+     */
+    private boolean compareAligned(JsonNode array1, JsonNode array2, ComparisonRules.Cursor rule) {
+        int n = array1.size();
+        int m = array2.size();
+
+        // Common prefix and suffix need no alignment; usually that is everything
+        int start = 0;
+        while (start < n && start < m && array1.get(start).equals(array2.get(start))) {
+            start++;
+        }
+        int end1 = n;
+        int end2 = m;
+        while (end1 > start && end2 > start && array1.get(end1 - 1).equals(array2.get(end2 - 1))) {
+            end1--;
+            end2--;
+        }
+
+        int[] matches = alignMiddle(array1, start, end1, array2, start, end2);
+        if (matches == null) {
+            return compareInPlace(array1, start, end1, array2, start, end2, rule);
+        }
+
+        // Compare the gaps between consecutive matched pairs
+        int i = start;
+        int j = start;
+        for (int a = start; a <= end1; a++) {
+            int b = a < end1 ? matches[a - start] : end2;
+            if (b < 0) {
+                continue;
+            }
+            if (!compareInPlace(array1, i, a, array2, j, b, rule)) {
+                return false;
+            }
+            i = a + 1;
+            j = b + 1;
+        }
+        return true;
+    }
+
+    /**
+     * Myers' O((N+M)D) diff over element hashes. Returns, for each element of
+     * {@code array1[from1, to1)}, the index in {@code array2} it is aligned with
+     * or -1; or null when nothing lines up or the edit distance exceeds
+     * {@link #MAX_EDIT_DISTANCE}.
+     */
+    private static int[] alignMiddle(JsonNode array1, int from1, int to1, JsonNode array2, int from2, int to2) {
+        int n = to1 - from1;
+        int m = to2 - from2;
+        if (n == 0 || m == 0) {
+            return null;
+        }
+
+        // Hash index: element hashes are compared first, equals() only on a hit
+        int[] hashes1 = new int[n];
+        int[] hashes2 = new int[m];
+        Set<Integer> index2 = new HashSet<>(m * 2);
+        for (int j = 0; j < m; j++) {
+            hashes2[j] = array2.get(from2 + j).hashCode();
+            index2.add(hashes2[j]);
+        }
+        boolean anyCommon = false;
+        for (int i = 0; i < n; i++) {
+            hashes1[i] = array1.get(from1 + i).hashCode();
+            anyCommon |= index2.contains(hashes1[i]);
+        }
+        if (!anyCommon) {
+            return null;
+        }
+
+        int max = Math.min(n + m, MAX_EDIT_DISTANCE);
+        int offset = max + 1;
+        int[] v = new int[2 * max + 3];
+        // V as it was before each step d, for entries k in [-d, d]
+        int[][] trace = new int[max + 1][];
+        for (int d = 0; d <= max; d++) {
+            trace[d] = Arrays.copyOfRange(v, offset - d, offset + d + 1);
+            for (int k = -d; k <= d; k += 2) {
+                int x = (k == -d || (k != d && v[offset + k - 1] < v[offset + k + 1]))
+                        ? v[offset + k + 1]
+                        : v[offset + k - 1] + 1;
+                int y = x - k;
+                while (x < n && y < m && hashes1[x] == hashes2[y]
+                        && array1.get(from1 + x).equals(array2.get(from2 + y))) {
+                    x++;
+                    y++;
+                }
+                v[offset + k] = x;
+                if (x >= n && y >= m) {
+                    return backtrack(trace, d, n, m, from2);
+                }
+            }
+        }
+        return null;
+    }
+
+    private static int[] backtrack(int[][] trace, int distance, int n, int m, int from2) {
+        int[] matches = new int[n];
+        Arrays.fill(matches, -1);
+        int x = n;
+        int y = m;
+        for (int d = distance; d > 0; d--) {
+            int[] previous = trace[d]; // index k + d
+            int k = x - y;
+            int previousK = (k == -d || (k != d && previous[k - 1 + d] < previous[k + 1 + d])) ? k + 1 : k - 1;
+            int previousX = previous[previousK + d];
+            int previousY = previousX - previousK;
+            while (x > previousX && y > previousY) {
+                x--;
+                y--;
+                matches[x] = from2 + y;
+            }
+            x = previousX;
+            y = previousY;
+        }
+        while (x > 0 && y > 0) {
+            x--;
+            y--;
+            matches[x] = from2 + y;
+        }
+        return matches;
+    }
+
+    /**
+     * Pairs elements by their key field value, regardless of position.
+     */
+    private boolean compareByKey(JsonNode array1, JsonNode array2, Map<JsonNode, Integer> keys1,
+            Map<JsonNode, Integer> keys2, ComparisonRules.Cursor rule) {
+        int mark = path.length();
+        for (int i = 0; i < array1.size(); i++) {
+            ComparisonRules.Cursor elementRule = rule.child(i);
+            if (elementRule.isIgnored()) {
+                continue;
+            }
+            JsonNode key = array1.get(i).get(arrayKeyField);
+            Integer j = keys2.get(key);
+            appendKey(key);
+            boolean more = j != null
+                    ? compare(array1.get(i), array2.get(j), elementRule)
+                    : report("Missing element in API 2: ", path);
+            path.setLength(mark);
+            if (!more) {
+                return false;
+            }
+        }
+        for (int j = 0; j < array2.size(); j++) {
+            JsonNode key = array2.get(j).get(arrayKeyField);
+            if (!keys1.containsKey(key) && !rule.child(j).isIgnored()) {
+                appendKey(key);
+                boolean more = report("Missing element in API 1: ", path);
+                path.setLength(mark);
+                if (!more) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Key value to element index, or null unless every element is an object
+     * with a unique scalar value for the key field.
+     */
+    private Map<JsonNode, Integer> keyIndex(JsonNode array) {
+        Map<JsonNode, Integer> index = new HashMap<>(array.size() * 2);
+        for (int i = 0; i < array.size(); i++) {
+            JsonNode key = array.get(i).get(arrayKeyField);
+            if (key == null || !key.isValueNode() || index.putIfAbsent(key, i) != null) {
+                return null;
+            }
+        }
+        return index;
+    }
+
+    private static boolean equalAfterNormalizing(JsonNode node1, JsonNode node2, ComparisonRules.Cursor rule) {
+        if (!rule.hasNormalizers() || !node1.isValueNode() || !node2.isValueNode()) {
+            return false;
+        }
+        return rule.normalize(node1.asText()).equals(rule.normalize(node2.asText()));
+    }
+
+    private void appendKey(JsonNode key) {
+        path.append('[').append(arrayKeyField).append('=').append(key.asText()).append(']');
+    }
+
+    private boolean report(String prefix, CharSequence at) {
+        return report(prefix + at);
+    }
+
+    private boolean report(String difference) {
+        differences.add(difference);
+        return ++reported < maxDifferences;
+    }
+}
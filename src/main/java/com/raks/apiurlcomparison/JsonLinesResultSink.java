@@ -0,0 +1,61 @@
+package com.raks.apiurlcomparison;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+/**
+ * Writes each result to a JSON Lines file (one compact JSON object per line)
+ * the moment it is accepted, and flushes it, so memory stays flat however long
+ * the run is and a crash keeps every result written so far. Reports are
+ * generated by reading the file back with {@link #read(File)}.
+ */
+public class JsonLinesResultSink implements ResultSink {
+
+    private static final ObjectMapper mapper = new ObjectMapper();
+
+    private final File file;
+    private final JsonGenerator generator;
+
+    public JsonLinesResultSink(File file) throws IOException {
+        this.file = file;
+        File parentDir = file.getAbsoluteFile().getParentFile();
+        if (parentDir != null && !parentDir.exists()) {
+            parentDir.mkdirs();
+        }
+        this.generator = mapper.getFactory().createGenerator(
+                new BufferedOutputStream(new FileOutputStream(file)), JsonEncoding.UTF8);
+        // Lines are separated explicitly; no space before each root value
+        this.generator.setRootValueSeparator(null);
+    }
+
+    @Override
+    public synchronized void accept(ComparisonResult result) throws IOException {
+        mapper.writeValue(generator, result);
+        generator.writeRaw('\n');
+        generator.flush();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        generator.close();
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * Reads results back one at a time, in the order they were written. The
+     * caller must close the returned iterator.
+     */
+    public static MappingIterator<ComparisonResult> read(File file) throws IOException {
+        return mapper.readerFor(ComparisonResult.class).readValues(file);
+    }
+}
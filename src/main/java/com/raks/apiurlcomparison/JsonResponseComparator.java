@@ -0,0 +1,66 @@
+package com.raks.apiurlcomparison;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * JSON bodies: canonical hash first, then a tree diff with {@link JsonDiffWalker}.
+ */
+final class JsonResponseComparator implements ResponseComparator {
+
+    private static final Logger logger = LoggerFactory.getLogger(JsonResponseComparator.class);
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+
+    @Override
+    public String format() {
+        return ResponseComparators.JSON;
+    }
+
+    @Override
+    public Set<String> mediaTypes() {
+        return Set.of("application/json", "text/json", "+json");
+    }
+
+    @Override
+    public void compare(ComparisonResult result, String response1, String response2, ComparisonOptions options) {
+        // Equal canonical hashes settle it without building a tree
+        try {
+            if (CanonicalHash.ofJson(response1).equals(CanonicalHash.ofJson(response2))) {
+                result.setStatus(ComparisonResult.Status.MATCH);
+                result.setDifferences(new ArrayList<>());
+                return;
+            }
+        } catch (IOException e) {
+            logger.debug("Canonical hash not available, running detailed comparison: {}", e.getMessage());
+        }
+
+        List<String> differences = new ArrayList<>();
+        boolean isMatch;
+        try {
+            JsonNode json1 = objectMapper.readTree(response1);
+            JsonNode json2 = objectMapper.readTree(response2);
+            isMatch = json1.equals(json2);
+            if (!isMatch) {
+                if (new JsonDiffWalker(differences, options).walk(json1, json2)) {
+                    // Ignored and normalized values can leave nothing to report
+                    isMatch = differences.isEmpty();
+                } else {
+                    differences.add(ComparisonEngine.limitReached(options.getMaxDifferences()));
+                }
+            }
+        } catch (IOException e) {
+            // Looked like JSON but is not; the bodies differ, so say why
+            isMatch = false;
+            differences.add("JSON Parsing failed, and strings differ.");
+        }
+        result.setStatus(isMatch ? ComparisonResult.Status.MATCH : ComparisonResult.Status.MISMATCH);
+        result.setDifferences(differences);
+    }
+}
@@ -0,0 +1,97 @@
+package com.raks.apiurlcomparison;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.StreamWriteFeature;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.Set;
+
+/**
+ * Compiles a JSON (REST) payload template into a {@link PayloadTemplate} by
+ * copying events from a {@link JsonParser} to a {@link JsonGenerator}. No tree
+ * is built; the value of every field whose name contains a token name becomes
+ * a slot. Output is the same compact form the tree serializer produced, with
+ * numbers normalized the same way.
+ */
+public final class JsonTemplateCompiler {
+
+    private static final JsonFactory jsonFactory = JsonFactory.builder()
+            // Slot generators share the writer; it must outlive them
+            .disable(StreamWriteFeature.AUTO_CLOSE_TARGET)
+            .build();
+
+    private JsonTemplateCompiler() {
+    }
+
+    public static PayloadTemplate compile(String json, Set<String> tokenNames) throws IOException {
+        PayloadTemplate.Builder template = PayloadTemplate.builder(PayloadTemplate.Format.JSON);
+        StringWriter out = new StringWriter(json.length());
+
+        try (JsonParser parser = jsonFactory.createParser(json)) {
+            if (parser.nextToken() == null) {
+                throw new IOException("Payload template contains no JSON value");
+            }
+            JsonGenerator generator = jsonFactory.createGenerator(out);
+            copyValue(parser, generator, out, template, tokenNames);
+            generator.flush();
+        }
+        cut(out, template);
+        return template.build();
+    }
+
+    /**
+     * Copies the value at the parser's current token, including all nested
+     * content, and leaves the parser on that value's last token.
+     */
+    private static void copyValue(JsonParser parser, JsonGenerator generator, StringWriter out,
+            PayloadTemplate.Builder template, Set<String> tokenNames) throws IOException {
+        JsonToken token = parser.currentToken();
+        if (token == JsonToken.START_OBJECT) {
+            generator.writeStartObject();
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String fieldName = parser.getCurrentName();
+                JsonToken valueToken = parser.nextToken();
+                Set<String> matches = PayloadTemplate.matchingTokens(fieldName, tokenNames);
+                if (matches.isEmpty()) {
+                    generator.writeFieldName(fieldName);
+                    copyValue(parser, generator, out, template, tokenNames);
+                    continue;
+                }
+
+                // Emit the name and separator now and record an empty value, so the
+                // outer generator keeps its comma bookkeeping; the real value goes
+                // into the slot through a generator of its own.
+                generator.writeFieldName(fieldName);
+                generator.writeRawValue("");
+                generator.flush();
+                cut(out, template);
+
+                template.openSlot(matches, valueToken.isNumeric());
+                JsonGenerator slotGenerator = jsonFactory.createGenerator(out);
+                copyValue(parser, slotGenerator, out, template, tokenNames);
+                slotGenerator.flush();
+                cut(out, template);
+                template.closeSlot();
+            }
+            generator.writeEndObject();
+        } else if (token == JsonToken.START_ARRAY) {
+            generator.writeStartArray();
+            while (parser.nextToken() != JsonToken.END_ARRAY) {
+                copyValue(parser, generator, out, template, tokenNames);
+            }
+            generator.writeEndArray();
+        } else {
+            generator.copyCurrentEvent(parser);
+        }
+    }
+
+    private static void cut(StringWriter out, PayloadTemplate.Builder template) {
+        StringBuffer buffer = out.getBuffer();
+        template.literal(buffer);
+        buffer.setLength(0);
+    }
+}
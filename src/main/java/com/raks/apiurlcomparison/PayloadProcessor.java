@@ -1,32 +1,24 @@
 package com.raks.apiurlcomparison;
 
-import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.node.ObjectNode;
-import org.w3c.dom.Document;
-import org.w3c.dom.Node;
-import org.w3c.dom.NodeList;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
-import javax.xml.transform.Transformer;
-import javax.xml.transform.TransformerFactory;
-import javax.xml.transform.dom.DOMSource;
-import javax.xml.transform.stream.StreamResult;
-import java.io.ByteArrayInputStream;
-import java.io.StringWriter;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.util.Iterator;
+import java.util.HashSet;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class PayloadProcessor {
 
+    private static final Logger logger = LoggerFactory.getLogger(PayloadProcessor.class);
+
     private final String templateContent;
     private final String apiType;
-    private final ObjectMapper jsonMapper = new ObjectMapper();
+    private final Map<Set<String>, PayloadTemplate> compiled = new ConcurrentHashMap<>();
 
     /**
      * Constructor for PayloadProcessor.
@@ -62,6 +54,10 @@ public class PayloadProcessor {
 
     /**
      * Processes the template with the given token values for an iteration.
+     * <p>
+     * The template is compiled once per distinct set of token names and every
+     * later call only splices values into the compiled slots, so build one
+     * processor per operation and reuse it across iterations.
      * 
      * @param iterationTokens A map containing token names and their values for the
      *                        current iteration.
@@ -69,94 +65,44 @@ public class PayloadProcessor {
      *         failure.
      */
     public String process(Map<String, Object> iterationTokens) {
+        if (templateContent == null || templateContent.trim().isEmpty())
+            return "";
         try {
-            if ("SOAP".equalsIgnoreCase(apiType)) {
-                return processXml(iterationTokens);
-            } else { // Default to JSON
-                return processJson(iterationTokens);
-            }
+            return compiledFor(iterationTokens.keySet()).render(iterationTokens);
         } catch (Exception e) {
-            // System.err.println("Error processing payload, returning original template.
-            // Error: " + e.getMessage());
             // Fail safe: return raw template
             return templateContent;
         }
     }
 
-    private String processJson(Map<String, Object> tokens) throws IOException {
-        if (templateContent == null || templateContent.trim().isEmpty())
-            return "";
-        JsonNode rootNode = jsonMapper.readTree(templateContent);
-        traverseAndReplaceJson(rootNode, tokens);
-        return jsonMapper.writeValueAsString(rootNode);
-    }
-
-    private void traverseAndReplaceJson(JsonNode node, Map<String, Object> tokens) {
-        if (node.isObject()) {
-            ObjectNode objectNode = (ObjectNode) node;
-            Iterator<Map.Entry<String, JsonNode>> fields = objectNode.fields();
-            while (fields.hasNext()) {
-                Map.Entry<String, JsonNode> field = fields.next();
-                String fieldName = field.getKey();
-                JsonNode childNode = field.getValue();
+    private PayloadTemplate compiledFor(Set<String> tokenNames) {
+        PayloadTemplate template = compiled.get(tokenNames);
+        if (template != null) {
+            return template;
+        }
 
-                // Check if the field name contains a token key (case-insensitive)
-                for (Map.Entry<String, Object> token : tokens.entrySet()) {
-                    if (fieldName.toLowerCase().contains(token.getKey().toLowerCase())) {
-                        Object value = token.getValue();
-                        if (value instanceof Number) {
-                            // If the original node was a number, keep it as a number
-                            if (childNode.isNumber()) {
-                                objectNode.put(fieldName, ((Number) value).doubleValue());
-                            } else {
-                                objectNode.put(fieldName, String.valueOf(value));
-                            }
-                        } else {
-                            objectNode.put(fieldName, String.valueOf(value));
-                        }
-                        break; // Token found and replaced, move to the next field
-                    }
-                }
-                traverseAndReplaceJson(childNode, tokens);
-            }
-        } else if (node.isArray()) {
-            for (JsonNode arrayElement : node) {
-                traverseAndReplaceJson(arrayElement, tokens);
-            }
+        Set<String> lowerCaseNames = new HashSet<>();
+        for (String name : tokenNames) {
+            lowerCaseNames.add(name.toLowerCase());
         }
+        boolean xml = "SOAP".equalsIgnoreCase(apiType);
+        try {
+            template = xml ? compileXml(lowerCaseNames) : compileJson(lowerCaseNames);
+        } catch (Exception e) {
+            // Fail safe: keep sending the raw template without re-trying every iteration
+            logger.warn("Could not compile payload template, sending it unmodified: {}", e.getMessage());
+            template = PayloadTemplate.literal(xml ? PayloadTemplate.Format.XML : PayloadTemplate.Format.JSON,
+                    templateContent);
+        }
+        PayloadTemplate existing = compiled.putIfAbsent(Set.copyOf(tokenNames), template);
+        return existing != null ? existing : template;
     }
 
-    private String processXml(Map<String, Object> tokens) throws Exception {
-        if (templateContent == null || templateContent.trim().isEmpty())
-            return "";
-        DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
-        DocumentBuilder builder = factory.newDocumentBuilder();
-        Document doc = builder.parse(new ByteArrayInputStream(templateContent.getBytes()));
-
-        traverseAndReplaceXml(doc.getDocumentElement(), tokens);
-
-        TransformerFactory transformerFactory = TransformerFactory.newInstance();
-        Transformer transformer = transformerFactory.newTransformer();
-        StringWriter writer = new StringWriter();
-        transformer.transform(new DOMSource(doc), new StreamResult(writer));
-        return writer.toString();
+    private PayloadTemplate compileJson(Set<String> tokenNames) throws IOException {
+        return JsonTemplateCompiler.compile(templateContent, tokenNames);
     }
 
-    private void traverseAndReplaceXml(Node node, Map<String, Object> tokens) {
-        NodeList children = node.getChildNodes();
-        for (int i = 0; i < children.getLength(); i++) {
-            Node child = children.item(i);
-            if (child.getNodeType() == Node.ELEMENT_NODE) {
-                String nodeName = child.getNodeName();
-                // Check if the XML element name contains a token key (case-insensitive)
-                for (Map.Entry<String, Object> token : tokens.entrySet()) {
-                    if (nodeName.toLowerCase().contains(token.getKey().toLowerCase())) {
-                        child.setTextContent(String.valueOf(token.getValue()));
-                        break; // Token found and replaced, move to the next node
-                    }
-                }
-            }
-            traverseAndReplaceXml(child, tokens);
-        }
+    private PayloadTemplate compileXml(Set<String> tokenNames) throws Exception {
+        return XmlTemplateCompiler.compile(templateContent, tokenNames);
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,228 @@
+package com.raks.apiurlcomparison;
+
+import com.fasterxml.jackson.core.io.JsonStringEncoder;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A payload template compiled for one set of token names. The serialized
+ * template is split into literal text and token slots (the JSON fields or XML
+ * elements whose names contain a token name), so rendering an iteration only
+ * splices the token values into place instead of parsing and re-serializing
+ * the whole document.
+ *
+ * <p>
+ * Slots keep their original content, so a slot that no token of the
+ * iteration matches renders exactly as the template did, including any nested
+ * slots inside it.
+ */
+public class PayloadTemplate {
+
+    public enum Format {
+        JSON, XML
+    }
+
+    private final Format format;
+    private final List<Object> segments; // String literals and Slots
+    private final int literalLength;
+
+    private PayloadTemplate(Format format, List<Object> segments, int literalLength) {
+        this.format = format;
+        this.segments = segments;
+        this.literalLength = literalLength;
+    }
+
+    /**
+     * A template without slots that always renders the given text.
+     */
+    public static PayloadTemplate literal(Format format, String text) {
+        return new PayloadTemplate(format, Collections.singletonList(text), text.length());
+    }
+
+    public static Builder builder(Format format) {
+        return new Builder(format);
+    }
+
+    /**
+     * Returns the (lower-case) token names contained in the given field or
+     * element name, using the same case-insensitive rule as token replacement.
+     */
+    public static Set<String> matchingTokens(String name, Set<String> lowerCaseTokenNames) {
+        if (lowerCaseTokenNames.isEmpty()) {
+            return Collections.emptySet();
+        }
+        String lowerName = name.toLowerCase();
+        Set<String> matches = null;
+        for (String token : lowerCaseTokenNames) {
+            if (lowerName.contains(token)) {
+                if (matches == null) {
+                    matches = new HashSet<>();
+                }
+                matches.add(token);
+            }
+        }
+        return matches != null ? matches : Collections.emptySet();
+    }
+
+    /**
+     * Renders the template for one iteration. For each slot the first token (in
+     * the map's iteration order) whose name the slot matches supplies the value.
+     */
+    public String render(Map<String, Object> tokens) {
+        String[] keys = new String[tokens.size()];
+        Object[] values = new Object[tokens.size()];
+        int i = 0;
+        for (Map.Entry<String, Object> token : tokens.entrySet()) {
+            keys[i] = token.getKey().toLowerCase();
+            values[i] = token.getValue();
+            i++;
+        }
+
+        StringBuilder out = new StringBuilder(literalLength + 16 * keys.length);
+        renderSegments(segments, keys, values, out);
+        return out.toString();
+    }
+
+    private void renderSegments(List<Object> parts, String[] keys, Object[] values, StringBuilder out) {
+        for (Object part : parts) {
+            if (part instanceof String) {
+                out.append((String) part);
+                continue;
+            }
+            Slot slot = (Slot) part;
+            int match = slot.firstMatch(keys);
+            if (match < 0) {
+                renderSegments(slot.original, keys, values, out);
+            } else if (format == Format.XML) {
+                appendXmlText(String.valueOf(values[match]), out);
+            } else {
+                appendJsonValue(values[match], slot.numeric, out);
+            }
+        }
+    }
+
+    // Number tokens stay numbers only where the template held a number
+    private static void appendJsonValue(Object value, boolean numericSlot, StringBuilder out) {
+        if (value instanceof Number && numericSlot) {
+            double d = ((Number) value).doubleValue();
+            if (!Double.isNaN(d) && !Double.isInfinite(d)) {
+                out.append(d);
+                return;
+            }
+        }
+        out.append('"');
+        JsonStringEncoder.getInstance().quoteAsString(String.valueOf(value), out);
+        out.append('"');
+    }
+
+    static void appendXmlText(String text, StringBuilder out) {
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            switch (c) {
+                case '&':
+                    out.append("&amp;");
+                    break;
+                case '<':
+                    out.append("&lt;");
+                    break;
+                case '>':
+                    out.append("&gt;");
+                    break;
+                case '\r':
+                    out.append("&#13;");
+                    break;
+                default:
+                    out.append(c);
+            }
+        }
+    }
+
+    private static final class Slot {
+        private final Set<String> tokenNames;
+        private final boolean numeric;
+        private final List<Object> original = new ArrayList<>();
+
+        private Slot(Set<String> tokenNames, boolean numeric) {
+            this.tokenNames = tokenNames;
+            this.numeric = numeric;
+        }
+
+        private int firstMatch(String[] keys) {
+            for (int i = 0; i < keys.length; i++) {
+                if (tokenNames.contains(keys[i])) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+    }
+
+    /**
+     * Collects literal text and slots in document order. Slots may nest; every
+     * {@link #openSlot} must be balanced by a {@link #closeSlot}.
+     */
+    public static class Builder {
+        private final Format format;
+        private final List<Object> root = new ArrayList<>();
+        private final Deque<List<Object>> open = new ArrayDeque<>();
+        private final StringBuilder pending = new StringBuilder();
+        private int literalLength;
+
+        private Builder(Format format) {
+            this.format = format;
+            open.push(root);
+        }
+
+        public Builder literal(CharSequence text) {
+            pending.append(text);
+            return this;
+        }
+
+        /**
+         * Starts a slot for a field or element matching the given token names.
+         * Everything up to the matching {@link #closeSlot()} is its original
+         * content.
+         *
+         * @param numeric whether the original JSON value is a number
+         */
+        public Builder openSlot(Set<String> tokenNames, boolean numeric) {
+            flushPending();
+            Slot slot = new Slot(tokenNames, numeric);
+            open.peek().add(slot);
+            open.push(slot.original);
+            return this;
+        }
+
+        public Builder closeSlot() {
+            if (open.size() == 1) {
+                throw new IllegalStateException("closeSlot() without matching openSlot()");
+            }
+            flushPending();
+            open.pop();
+            return this;
+        }
+
+        public PayloadTemplate build() {
+            if (open.size() != 1) {
+                throw new IllegalStateException("Unclosed slot in payload template");
+            }
+            flushPending();
+            return new PayloadTemplate(format, root, literalLength);
+        }
+
+        private void flushPending() {
+            if (pending.length() > 0) {
+                open.peek().add(pending.toString());
+                literalLength += pending.length();
+                pending.setLength(0);
+            }
+        }
+    }
+}
@@ -0,0 +1,33 @@
+package com.raks.apiurlcomparison;
+
+import java.util.Set;
+
+/**
+ * Compares two response bodies of one format. Implementations are picked by
+ * {@link ResponseComparators} from the sniffed format or the response
+ * {@code Content-Type}; more can be added with {@link ResponseComparators#register}
+ * or as a {@link java.util.ServiceLoader} provider
+ * ({@code META-INF/services/com.raks.apiurlcomparison.ResponseComparator}).
+ *
+ * <p>
+ * The bodies handed over are never null and never identical. An
+ * implementation sets the status and differences of the result; a body it
+ * cannot parse is a MISMATCH with a difference saying so, not an exception.
+ */
+public interface ResponseComparator {
+
+    /**
+     * Registry key, e.g. {@code "json"}.
+     */
+    String format();
+
+    /**
+     * Media types ({@code application/json}) and structured-syntax suffixes
+     * ({@code +json}) that select this comparator when a response declares them.
+     */
+    default Set<String> mediaTypes() {
+        return Set.of();
+    }
+
+    void compare(ComparisonResult result, String response1, String response2, ComparisonOptions options);
+}
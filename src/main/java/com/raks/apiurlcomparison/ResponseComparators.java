@@ -0,0 +1,165 @@
+package com.raks.apiurlcomparison;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Locale;
+import java.util.Map;
+import java.util.ServiceConfigurationError;
+import java.util.ServiceLoader;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Registry of {@link ResponseComparator}s by format, and the detection that
+ * picks one for a response. Detection looks at a few leading characters of the
+ * body, never parses it, and uses the declared {@code Content-Type} when the
+ * body alone is not conclusive:
+ * <ul>
+ * <li><code>{</code> or <code>[</code> is JSON; {@code <} is XML unless it opens an HTML
+ * page, which is text. These win over a contradicting header, so an HTML
+ * error page served as {@code application/json} is compared as text.</li>
+ * <li>Control characters or undecodable bytes make it binary.</li>
+ * <li>Anything else is text, unless the header says otherwise
+ * ({@code application/json} for a bare {@code 42}) or it looks like
+ * {@code a=1&b=2} form data.</li>
+ * </ul>
+ */
+public final class ResponseComparators {
+
+    private static final Logger logger = LoggerFactory.getLogger(ResponseComparators.class);
+
+    public static final String JSON = "json";
+    public static final String XML = "xml";
+    public static final String TEXT = "text";
+    public static final String BINARY = "binary";
+    public static final String FORM = "form";
+
+    // Characters looked at when sniffing; enough to see past a BOM or prolog
+    private static final int SNIFF_LENGTH = 512;
+
+    private static final Map<String, ResponseComparator> byFormat = new ConcurrentHashMap<>();
+    private static final Map<String, String> formatByMediaType = new ConcurrentHashMap<>();
+
+    static {
+        register(new JsonResponseComparator());
+        register(new XmlResponseComparator());
+        register(new TextResponseComparator());
+        register(new BinaryResponseComparator());
+        register(new FormResponseComparator());
+        try {
+            for (ResponseComparator comparator : ServiceLoader.load(ResponseComparator.class)) {
+                register(comparator);
+                logger.info("Registered response comparator for format '{}'", comparator.format());
+            }
+        } catch (ServiceConfigurationError e) {
+            logger.warn("Could not load response comparator providers: {}", e.getMessage());
+        }
+    }
+
+    private ResponseComparators() {
+    }
+
+    /**
+     * Adds a comparator, replacing any registered for the same format or
+     * media types.
+     */
+    public static void register(ResponseComparator comparator) {
+        byFormat.put(comparator.format(), comparator);
+        for (String mediaType : comparator.mediaTypes()) {
+            formatByMediaType.put(mediaType.toLowerCase(Locale.ROOT), comparator.format());
+        }
+    }
+
+    /**
+     * Comparator for a format; the text comparator if none is registered.
+     */
+    public static ResponseComparator forFormat(String format) {
+        ResponseComparator comparator = byFormat.get(format);
+        return comparator != null ? comparator : byFormat.get(TEXT);
+    }
+
+    /**
+     * Format of a response body, given its response headers (may be null).
+     */
+    public static String detect(String body, Map<String, String> headers) {
+        int start = 0;
+        int end = Math.min(body.length(), SNIFF_LENGTH);
+        while (start < end && (body.charAt(start) == '\uFEFF' || Character.isWhitespace(body.charAt(start)))) {
+            start++;
+        }
+        if (start < end) {
+            char first = body.charAt(start);
+            if (first == '{' || first == '[') {
+                return JSON;
+            }
+            if (first == '<') {
+                return isHtml(body, start) ? TEXT : XML;
+            }
+        }
+        for (int i = start; i < end; i++) {
+            char c = body.charAt(i);
+            if ((c < 0x20 && c != '\t' && c != '\n' && c != '\r' && c != '\f') || c == '\uFFFD') {
+                return BINARY;
+            }
+        }
+
+        String declared = declaredFormat(headers);
+        if (declared != null) {
+            return declared;
+        }
+        return start < end && looksLikeForm(body, start, end) ? FORM : TEXT;
+    }
+
+    private static boolean isHtml(String body, int start) {
+        return body.regionMatches(true, start, "<!doctype html", 0, 14)
+                || body.regionMatches(true, start, "<html", 0, 5);
+    }
+
+    // name=value pairs joined by '&', in URL-encoded characters only
+    private static boolean looksLikeForm(String body, int start, int end) {
+        boolean sawEquals = false;
+        for (int i = start; i < end; i++) {
+            char c = body.charAt(i);
+            if (c == '=') {
+                sawEquals = true;
+            } else if (!(Character.isLetterOrDigit(c) && c < 0x80) && "&%+-._~*".indexOf(c) < 0) {
+                return false;
+            }
+        }
+        return sawEquals && body.charAt(start) != '=';
+    }
+
+    private static String declaredFormat(Map<String, String> headers) {
+        if (headers == null) {
+            return null;
+        }
+        String contentType = null;
+        for (Map.Entry<String, String> header : headers.entrySet()) {
+            if ("Content-Type".equalsIgnoreCase(header.getKey())) {
+                contentType = header.getValue();
+                break;
+            }
+        }
+        if (contentType == null) {
+            return null;
+        }
+        int parameters = contentType.indexOf(';');
+        String mediaType = (parameters >= 0 ? contentType.substring(0, parameters) : contentType)
+                .trim().toLowerCase(Locale.ROOT);
+        String format = formatByMediaType.get(mediaType);
+        if (format != null) {
+            return format;
+        }
+        int plus = mediaType.lastIndexOf('+');
+        if (plus >= 0 && (format = formatByMediaType.get(mediaType.substring(plus))) != null) {
+            return format; // application/soap+xml, application/problem+json
+        }
+        if (mediaType.startsWith("text/")) {
+            return TEXT;
+        }
+        if (mediaType.startsWith("image/") || mediaType.startsWith("audio/") || mediaType.startsWith("video/")) {
+            return BINARY;
+        }
+        return null;
+    }
+}
@@ -0,0 +1,17 @@
+package com.raks.apiurlcomparison;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Receives comparison results as soon as they are produced, in iteration order.
+ */
+@FunctionalInterface
+public interface ResultSink extends Closeable {
+
+    void accept(ComparisonResult result) throws IOException;
+
+    @Override
+    default void close() throws IOException {
+    }
+}
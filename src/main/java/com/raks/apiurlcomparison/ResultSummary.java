@@ -0,0 +1,69 @@
+package com.raks.apiurlcomparison;
+
+/**
+ * Running totals of a comparison run: everything the report summary needs,
+ * without holding on to the results themselves.
+ */
+public class ResultSummary {
+    private long total;
+    private long matches;
+    private long mismatches;
+    private long errors;
+    private long totalDuration; // ms, both APIs
+    private String baselinePath;
+    private String baselineOperation; // "Baseline Used" or "Baseline Captured"
+
+    public static ResultSummary of(Iterable<ComparisonResult> results) {
+        ResultSummary summary = new ResultSummary();
+        for (ComparisonResult result : results) {
+            summary.add(result);
+        }
+        return summary;
+    }
+
+    public synchronized void add(ComparisonResult result) {
+        if (total == 0 && result.getBaselinePath() != null) {
+            baselinePath = result.getBaselinePath();
+            // Determine if this is capture or compare based on whether api2 exists
+            baselineOperation = result.getApi2() != null ? "Baseline Used" : "Baseline Captured";
+        }
+        total++;
+        if ("MATCH".equals(result.getStatus())) {
+            matches++;
+        } else if ("MISMATCH".equals(result.getStatus())) {
+            mismatches++;
+        } else if ("ERROR".equals(result.getStatus())) {
+            errors++;
+        }
+        totalDuration += (result.getApi1() != null ? result.getApi1().getDuration() : 0)
+                + (result.getApi2() != null ? result.getApi2().getDuration() : 0);
+    }
+
+    public synchronized long getTotal() {
+        return total;
+    }
+
+    public synchronized long getMatches() {
+        return matches;
+    }
+
+    public synchronized long getMismatches() {
+        return mismatches;
+    }
+
+    public synchronized long getErrors() {
+        return errors;
+    }
+
+    public synchronized long getTotalDuration() {
+        return totalDuration;
+    }
+
+    public synchronized String getBaselinePath() {
+        return baselinePath;
+    }
+
+    public synchronized String getBaselineOperation() {
+        return baselineOperation;
+    }
+}
@@ -0,0 +1,380 @@
+package com.raks.apiurlcomparison;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.StringReader;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compares two XML documents by walking two {@link XMLStreamReader}s in step,
+ * for SOAP responses too large for a DOM. Memory use depends on nesting depth
+ * and the longest text node, not on document size.
+ *
+ * <p>
+ * Follows the same rules as {@link XmlComparator} where a single pass allows:
+ * comments and whitespace around text are ignored, attribute order does not
+ * matter, and ignore paths, normalizers and namespace options apply. Text and
+ * CDATA are compared by content, and processing instructions are skipped.
+ * When elements differ, both subtrees are reported once and skipped, so the
+ * walk stays aligned on the following siblings. Differences name an
+ * XPath-like location such as {@code /Envelope[1]/Body[1]/Line[3]/@amount}.
+ */
+final class StreamingXmlComparator {
+
+    private static final XMLInputFactory xmlInputFactory = createXmlInputFactory();
+
+    // Pseudo event for text collected over CHARACTERS, CDATA and SPACE events
+    private static final int TEXT = -1;
+
+    private StreamingXmlComparator() {
+    }
+
+    private static XMLInputFactory createXmlInputFactory() {
+        XMLInputFactory factory = XMLInputFactory.newInstance();
+        factory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, true);
+        factory.setProperty(XMLInputFactory.IS_COALESCING, false);
+        // Responses come from the network: no DTD processing, no external entities
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        return factory;
+    }
+
+    /**
+     * True if the documents do not differ, stopping at the first difference.
+     *
+     * @throws XMLStreamException if either response is not well-formed XML
+     */
+    static boolean isEqual(String xml1, String xml2, ComparisonOptions options) throws XMLStreamException {
+        List<String> differences = new ArrayList<>(1);
+        new Walk(xml1, xml2, options, differences, 1).run();
+        return differences.isEmpty();
+    }
+
+    /**
+     * Every difference, up to the configured limit.
+     *
+     * @throws XMLStreamException if either response is not well-formed XML
+     */
+    static List<String> differences(String xml1, String xml2, ComparisonOptions options)
+            throws XMLStreamException {
+        int maxDifferences = options.getMaxDifferences();
+        List<String> differences = new ArrayList<>();
+        boolean complete = new Walk(xml1, xml2, options, differences,
+                maxDifferences > 0 ? maxDifferences : Integer.MAX_VALUE).run();
+        if (!complete) {
+            differences.add(ComparisonEngine.limitReached(maxDifferences));
+        }
+        return differences;
+    }
+
+    /**
+     * One comparison: both readers, the open elements and the differences.
+     */
+    private static final class Walk {
+        private final Side side1;
+        private final Side side2;
+        private final ComparisonOptions options;
+        private final List<String> differences;
+        private final int limit;
+        private final StringBuilder path = new StringBuilder(128);
+        private final Deque<Frame> open = new ArrayDeque<>();
+
+        private Walk(String xml1, String xml2, ComparisonOptions options, List<String> differences, int limit)
+                throws XMLStreamException {
+            this.side1 = new Side(xmlInputFactory.createXMLStreamReader(new StringReader(xml1)));
+            this.side2 = new Side(xmlInputFactory.createXMLStreamReader(new StringReader(xml2)));
+            this.options = options;
+            this.differences = differences;
+            this.limit = limit;
+        }
+
+        /**
+         * @return false if the walk stopped at the difference limit
+         */
+        private boolean run() throws XMLStreamException {
+            try {
+                open.push(new Frame(0, options.getRules().xmlRoot()));
+                advance(side1);
+                advance(side2);
+                while (side1.event != XMLStreamConstants.END_DOCUMENT
+                        || side2.event != XMLStreamConstants.END_DOCUMENT) {
+                    if (!step()) {
+                        return false;
+                    }
+                }
+                return true;
+            } finally {
+                side1.reader.close();
+                side2.reader.close();
+            }
+        }
+
+        // Compares the current events of both sides and moves past them
+        private boolean step() throws XMLStreamException {
+            int e1 = side1.event;
+            int e2 = side2.event;
+            Frame parent = open.peek();
+            int mark = path.length();
+
+            if (e1 == XMLStreamConstants.START_ELEMENT && e2 == XMLStreamConstants.START_ELEMENT) {
+                String name1 = side1.reader.getLocalName();
+                appendStep(parent, name1);
+                if (!sameName(side1.reader, side2.reader)) {
+                    boolean more = report("Element differs at " + path + ". API 1: " + qualifiedName(side1.reader)
+                            + ", API 2: " + qualifiedName(side2.reader));
+                    path.setLength(mark);
+                    side1.skipElement();
+                    side2.skipElement();
+                    advance(side1);
+                    advance(side2);
+                    return more;
+                }
+                Frame frame = new Frame(mark, parent.rule.child(name1));
+                if (!compareAttributes(frame.rule)) {
+                    return false;
+                }
+                open.push(frame);
+                advance(side1);
+                advance(side2);
+                return true;
+            }
+            if (e1 == XMLStreamConstants.END_ELEMENT && e2 == XMLStreamConstants.END_ELEMENT) {
+                path.setLength(open.pop().mark);
+                advance(side1);
+                advance(side2);
+                return true;
+            }
+            if (e1 == TEXT && e2 == TEXT) {
+                String text1 = side1.text.toString();
+                String text2 = side2.text.toString();
+                boolean more = true;
+                if (!text1.equals(text2) && !equalAfterNormalizing(text1, text2, parent.rule)) {
+                    more = report("Text differs at " + path + ". API 1: " + text1 + ", API 2: " + text2);
+                }
+                advance(side1);
+                advance(side2);
+                return more;
+            }
+
+            // Out of step: one side has content the other does not
+            if (e1 == TEXT) {
+                boolean more = report("Text missing in API 2 at " + path + ": " + side1.text);
+                advance(side1);
+                return more;
+            }
+            if (e2 == TEXT) {
+                boolean more = report("Text missing in API 1 at " + path + ": " + side2.text);
+                advance(side2);
+                return more;
+            }
+            if (e1 == XMLStreamConstants.START_ELEMENT) {
+                appendStep(parent, side1.reader.getLocalName());
+                boolean more = report("Missing element in API 2: " + path);
+                path.setLength(mark);
+                side1.skipElement();
+                advance(side1);
+                return more;
+            }
+            if (e2 == XMLStreamConstants.START_ELEMENT) {
+                appendStep(parent, side2.reader.getLocalName());
+                boolean more = report("Missing element in API 1: " + path);
+                path.setLength(mark);
+                side2.skipElement();
+                advance(side2);
+                return more;
+            }
+            // Both readers stay at equal depth, so END_ELEMENT always meets END_ELEMENT
+            throw new XMLStreamException("Readers out of step at " + path);
+        }
+
+        private boolean compareAttributes(ComparisonRules.Cursor element) {
+            XMLStreamReader reader1 = side1.reader;
+            XMLStreamReader reader2 = side2.reader;
+            Map<String, String> values2 = new HashMap<>();
+            for (int i = 0; i < reader2.getAttributeCount(); i++) {
+                values2.put(attributeKey(reader2, i), reader2.getAttributeValue(i));
+            }
+            int mark = path.length();
+            boolean more = true;
+            for (int i = 0; i < reader1.getAttributeCount() && more; i++) {
+                String key = attributeKey(reader1, i);
+                String value2 = values2.remove(key);
+                ComparisonRules.Cursor rule = element.child("@" + reader1.getAttributeLocalName(i));
+                if (rule.isIgnored() || ignoredNamespace(reader1.getAttributeNamespace(i))) {
+                    continue;
+                }
+                String value1 = reader1.getAttributeValue(i);
+                path.append("/@").append(reader1.getAttributeLocalName(i));
+                if (value2 == null) {
+                    more = report("Missing attribute in API 2: " + path);
+                } else if (!value1.equals(value2) && !equalAfterNormalizing(value1, value2, rule)) {
+                    more = report("Attribute value differs at " + path + ". API 1: " + value1
+                            + ", API 2: " + value2);
+                }
+                path.setLength(mark);
+            }
+            for (int i = 0; i < reader2.getAttributeCount() && more; i++) {
+                if (!values2.containsKey(attributeKey(reader2, i))
+                        || element.child("@" + reader2.getAttributeLocalName(i)).isIgnored()
+                        || ignoredNamespace(reader2.getAttributeNamespace(i))) {
+                    continue;
+                }
+                path.append("/@").append(reader2.getAttributeLocalName(i));
+                more = report("Missing attribute in API 1: " + path);
+                path.setLength(mark);
+            }
+            return more;
+        }
+
+        // Moves a side to its next event, skipping elements excluded by the rules
+        private void advance(Side side) throws XMLStreamException {
+            side.next();
+            Frame parent = open.peek();
+            while (side.event == XMLStreamConstants.START_ELEMENT
+                    && (ignoredNamespace(side.reader.getNamespaceURI())
+                            || parent.rule.child(side.reader.getLocalName()).isIgnored())) {
+                side.skipElement();
+                side.next();
+            }
+        }
+
+        private boolean sameName(XMLStreamReader reader1, XMLStreamReader reader2) {
+            return reader1.getLocalName().equals(reader2.getLocalName())
+                    && nullToEmpty(reader1.getNamespaceURI()).equals(nullToEmpty(reader2.getNamespaceURI()))
+                    && (options.isIgnoreNamespacePrefixes()
+                            || nullToEmpty(reader1.getPrefix()).equals(nullToEmpty(reader2.getPrefix())));
+        }
+
+        private boolean ignoredNamespace(String uri) {
+            return uri != null && !uri.isEmpty() && options.getIgnoredNamespaces().contains(uri);
+        }
+
+        // Adds "/name[n]", n counting same-named siblings from 1
+        private void appendStep(Frame parent, String localName) {
+            int position = parent.childCounts.merge(localName, 1, Integer::sum);
+            path.append('/').append(localName).append('[').append(position).append(']');
+        }
+
+        private boolean report(String difference) {
+            differences.add(difference);
+            return differences.size() < limit;
+        }
+    }
+
+    /**
+     * An open element: where its step starts in the path, the rules that
+     * apply inside it and how many children of each name were seen.
+     */
+    private static final class Frame {
+        private final int mark;
+        private final ComparisonRules.Cursor rule;
+        private final Map<String, Integer> childCounts = new HashMap<>(4);
+
+        private Frame(int mark, ComparisonRules.Cursor rule) {
+            this.mark = mark;
+            this.rule = rule;
+        }
+    }
+
+    /**
+     * One reader, reduced to START_ELEMENT, END_ELEMENT, END_DOCUMENT and
+     * {@link #TEXT} events. Adjacent text is joined and trimmed, and
+     * whitespace-only text is dropped.
+     */
+    private static final class Side {
+        private final XMLStreamReader reader;
+        private final StringBuilder text = new StringBuilder();
+        private int event;
+        private boolean pending; // Reader already sits on the event after the text
+
+        private Side(XMLStreamReader reader) {
+            this.reader = reader;
+        }
+
+        private void next() throws XMLStreamException {
+            text.setLength(0);
+            if (pending) {
+                pending = false;
+                event = reader.getEventType();
+                return;
+            }
+            while (true) {
+                int e = reader.next();
+                switch (e) {
+                    case XMLStreamConstants.CHARACTERS:
+                    case XMLStreamConstants.CDATA:
+                    case XMLStreamConstants.SPACE:
+                        text.append(reader.getTextCharacters(), reader.getTextStart(), reader.getTextLength());
+                        break;
+                    case XMLStreamConstants.START_ELEMENT:
+                    case XMLStreamConstants.END_ELEMENT:
+                    case XMLStreamConstants.END_DOCUMENT:
+                        if (trimText()) {
+                            pending = true;
+                            event = TEXT;
+                        } else {
+                            event = e;
+                        }
+                        return;
+                    case XMLStreamConstants.ENTITY_REFERENCE:
+                        throw new XMLStreamException("Unresolved entity reference &" + reader.getLocalName() + ";");
+                    default:
+                        break; // Comments, processing instructions, DTD
+                }
+            }
+        }
+
+        // Skips from a START_ELEMENT to its END_ELEMENT
+        private void skipElement() throws XMLStreamException {
+            int depth = 1;
+            while (depth > 0) {
+                int e = reader.next();
+                if (e == XMLStreamConstants.START_ELEMENT) {
+                    depth++;
+                } else if (e == XMLStreamConstants.END_ELEMENT) {
+                    depth--;
+                }
+            }
+            text.setLength(0);
+        }
+
+        // Trims the collected text in place; false if nothing is left
+        private boolean trimText() {
+            int end = text.length();
+            while (end > 0 && Character.isWhitespace(text.charAt(end - 1))) {
+                end--;
+            }
+            int start = 0;
+            while (start < end && Character.isWhitespace(text.charAt(start))) {
+                start++;
+            }
+            text.setLength(end);
+            text.delete(0, start);
+            return text.length() > 0;
+        }
+    }
+
+    private static boolean equalAfterNormalizing(String value1, String value2, ComparisonRules.Cursor rule) {
+        return rule.hasNormalizers() && rule.normalize(value1).equals(rule.normalize(value2));
+    }
+
+    private static String attributeKey(XMLStreamReader reader, int index) {
+        return nullToEmpty(reader.getAttributeNamespace(index)) + '|' + reader.getAttributeLocalName(index);
+    }
+
+    private static String qualifiedName(XMLStreamReader reader) {
+        String prefix = reader.getPrefix();
+        return prefix != null && !prefix.isEmpty() ? prefix + ":" + reader.getLocalName() : reader.getLocalName();
+    }
+
+    private static String nullToEmpty(String s) {
+        return s != null ? s : "";
+    }
+}
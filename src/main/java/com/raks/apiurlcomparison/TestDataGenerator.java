@@ -4,112 +4,241 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
 public class TestDataGenerator {
     private static final Logger logger = LoggerFactory.getLogger(TestDataGenerator.class);
 
+    // Strength used by PAIRWISE when none is configured: all pairs of tokens
+    public static final int DEFAULT_PAIRWISE_STRENGTH = 2;
+
     public static List<Map<String, Object>> generate(Map<String, List<Object>> tokens, int maxIterations) {
         return generate(tokens, maxIterations, "ALL_COMBINATIONS");
     }
 
     public static List<Map<String, Object>> generate(Map<String, List<Object>> tokens, int maxIterations,
             String strategy) {
-        if ("ONE_BY_ONE".equalsIgnoreCase(strategy)) {
-            return generateOneByOne(tokens, maxIterations);
-        }
-        return generateAllCombinations(tokens, maxIterations);
+        return generate(tokens, maxIterations, strategy, DEFAULT_PAIRWISE_STRENGTH);
+    }
+
+    /**
+     * Returns the iterations as a read-only list; elements are computed on
+     * access, see {@link #iterationSpace}.
+     *
+     * @param pairwiseStrength interaction strength t for the PAIRWISE strategy
+     */
+    public static List<Map<String, Object>> generate(Map<String, List<Object>> tokens, int maxIterations,
+            String strategy, int pairwiseStrength) {
+        return iterationSpace(tokens, maxIterations, strategy, pairwiseStrength).asList();
     }
 
-    private static List<Map<String, Object>> generateOneByOne(Map<String, List<Object>> tokens, int maxIterations) {
-        List<Map<String, Object>> iterations = new ArrayList<>();
+    public static IterationSpace iterationSpace(Map<String, List<Object>> tokens, int maxIterations,
+            String strategy) {
+        return iterationSpace(tokens, maxIterations, strategy, DEFAULT_PAIRWISE_STRENGTH);
+    }
+
+    /**
+     * Lazy iteration space for the given strategy, capped at {@code maxIterations}.
+     * At least one iteration is always produced: ALL_COMBINATIONS and PAIRWISE
+     * leave tokens without values out, so they do not empty the product, and
+     * ONE_BY_ONE keeps them at an empty default.
+     */
+    public static IterationSpace iterationSpace(Map<String, List<Object>> tokens, int maxIterations,
+            String strategy, int pairwiseStrength) {
         if (tokens == null || tokens.isEmpty()) {
-            iterations.add(Map.of());
-            return iterations;
+            // Ensure at least one run if no tokens
+            return IterationSpace.of(List.of(Map.of()));
+        }
+        if ("ONE_BY_ONE".equalsIgnoreCase(strategy)) {
+            return new OneByOneSpace(tokens, maxIterations);
+        }
+        if ("PAIRWISE".equalsIgnoreCase(strategy)) {
+            return pairwise(withValues(tokens), maxIterations, pairwiseStrength);
         }
+        return new AllCombinationsSpace(withValues(tokens), maxIterations);
+    }
 
-        // 1. Identify "defaults" (first value of each token)
-        Map<String, Object> defaults = new java.util.HashMap<>();
-        for (Map.Entry<String, List<Object>> entry : tokens.entrySet()) {
-            List<Object> values = entry.getValue();
+    // Tokens that have values, in configuration order
+    private static Map<String, List<Object>> withValues(Map<String, List<Object>> tokens) {
+        Map<String, List<Object>> parameters = new LinkedHashMap<>();
+        tokens.forEach((name, values) -> {
             if (values != null && !values.isEmpty()) {
-                defaults.put(entry.getKey(), values.get(0));
+                parameters.put(name, values);
             } else {
-                defaults.put(entry.getKey(), ""); // fallback
+                logger.warn("Token '{}' has no values and is left out of the iterations", name);
             }
-        }
-
-        // Add Baseline (All Defaults)
-        iterations.add(new java.util.HashMap<>(defaults));
+        });
+        return parameters;
+    }
 
-        // 2. Iterate each token and each of its values
-        for (Map.Entry<String, List<Object>> entry : tokens.entrySet()) {
-            String currentToken = entry.getKey();
-            List<Object> values = entry.getValue();
+    /**
+     * Covering array in which every combination of values of any {@code strength}
+     * tokens appears in at least one iteration. A strength covering all tokens is
+     * the same as ALL_COMBINATIONS.
+     */
+    @SuppressWarnings("unchecked")
+    private static IterationSpace pairwise(Map<String, List<Object>> parameters, int maxIterations,
+            int strength) {
+        int t = Math.max(1, strength);
+        if (parameters.isEmpty() || t >= parameters.size()) {
+            return new AllCombinationsSpace(parameters, maxIterations);
+        }
 
-            if (values == null || values.isEmpty())
-                continue;
+        String[] names = parameters.keySet().toArray(new String[0]);
+        List<Object>[] values = parameters.values().toArray(new List[0]);
+        int[] radices = new int[names.length];
+        for (int i = 0; i < names.length; i++) {
+            radices[i] = values[i].size();
+        }
+        List<int[]> rows = CoveringArray.generate(radices, t);
+        logger.info("PAIRWISE (t={}): {} iterations cover all {}-way token value combinations", t, rows.size(), t);
 
-            Object mainDefault = defaults.get(currentToken);
+        int limit = Math.max(1, maxIterations);
+        if (rows.size() > limit) {
+            logger.warn("Maximum number of iterations ({}) reached via PAIRWISE; {} of {} iterations will run "
+                    + "and {}-way coverage is incomplete.", maxIterations, limit, rows.size(), t);
+        }
+        int size = Math.min(rows.size(), limit);
+        return new IterationSpace() {
+            @Override
+            public int size() {
+                return size;
+            }
 
-            for (Object value : values) {
-                // Skip if value equals default (already covered by Baseline)
-                if (mainDefault != null && mainDefault.equals(value)) {
-                    continue;
+            @Override
+            public Map<String, Object> get(int index) {
+                if (index < 0 || index >= size) {
+                    throw new IndexOutOfBoundsException("Iteration " + index + " of " + size);
                 }
-
-                if (iterations.size() >= maxIterations) {
-                    logger.warn("Maximum number of iterations ({}) reached via ONE_BY_ONE.", maxIterations);
-                    return iterations;
+                int[] row = rows.get(index);
+                Map<String, Object> combination = new HashMap<>();
+                for (int i = 0; i < names.length; i++) {
+                    combination.put(names[i], values[i].get(row[i]));
                 }
+                return combination;
+            }
+        };
+    }
+
+    /**
+     * Cartesian product of all token values. Iteration {@code i} is decoded from
+     * its mixed-radix digits: the last token varies fastest, the first slowest.
+     */
+    private static final class AllCombinationsSpace extends IterationSpace {
+        private final String[] names;
+        private final List<Object>[] values;
+        private final int size;
+
+        @SuppressWarnings("unchecked")
+        private AllCombinationsSpace(Map<String, List<Object>> tokens, int maxIterations) {
+            names = new String[tokens.size()];
+            values = new List[tokens.size()];
+            int i = 0;
+            long total = 1;
+            for (Map.Entry<String, List<Object>> tokenEntry : tokens.entrySet()) {
+                names[i] = tokenEntry.getKey();
+                values[i] = tokenEntry.getValue();
+                // Saturate instead of overflowing; only the capped prefix is ever addressed
+                total = Math.min(total * values[i].size(), Integer.MAX_VALUE);
+                i++;
+            }
 
-                // Create a copy of defaults, but overwrite the current token's value
-                Map<String, Object> combination = new java.util.HashMap<>(defaults);
-                combination.put(currentToken, value);
-                iterations.add(combination);
+            int limit = Math.max(1, maxIterations);
+            if (total > limit) {
+                logger.warn("Maximum number of iterations ({}) reached. {} combinations available, running the first {}.",
+                        maxIterations, total >= Integer.MAX_VALUE ? "More than " + Integer.MAX_VALUE : total, limit);
             }
+            size = (int) Math.min(total, limit);
         }
 
-        return iterations;
-    }
+        @Override
+        public int size() {
+            return size;
+        }
 
-    private static List<Map<String, Object>> generateAllCombinations(Map<String, List<Object>> tokens,
-            int maxIterations) {
-        List<Map<String, Object>> iterations = new ArrayList<>();
-        if (tokens == null || tokens.isEmpty()) {
-            iterations.add(Map.of()); // Ensure at least one run if no tokens
-            return iterations;
+        @Override
+        public Map<String, Object> get(int index) {
+            if (index < 0 || index >= size) {
+                throw new IndexOutOfBoundsException("Iteration " + index + " of " + size);
+            }
+            Map<String, Object> combination = new HashMap<>();
+            int remainder = index;
+            for (int i = names.length - 1; i >= 0; i--) {
+                int radix = values[i].size();
+                combination.put(names[i], values[i].get(remainder % radix));
+                remainder /= radix;
+            }
+            return combination;
         }
+    }
+
+    /**
+     * Iteration 0 uses the first value of every token (the defaults); each later
+     * iteration changes exactly one token to one of its other values, token by
+     * token in configuration order.
+     */
+    private static final class OneByOneSpace extends IterationSpace {
+        private final Map<String, Object> defaults = new HashMap<>();
+        // Deviations from the defaults, one per iteration after the first
+        private final List<String> deviationTokens = new ArrayList<>();
+        private final List<Object> deviationValues = new ArrayList<>();
+        private final int size;
+
+        private OneByOneSpace(Map<String, List<Object>> tokens, int maxIterations) {
+            // 1. Identify "defaults" (first value of each token)
+            for (Map.Entry<String, List<Object>> entry : tokens.entrySet()) {
+                List<Object> values = entry.getValue();
+                if (values != null && !values.isEmpty()) {
+                    defaults.put(entry.getKey(), values.get(0));
+                } else {
+                    defaults.put(entry.getKey(), ""); // fallback
+                }
+            }
+
+            // 2. Each token and each of its values, skipping values equal to the
+            // default (already covered by the baseline iteration)
+            for (Map.Entry<String, List<Object>> entry : tokens.entrySet()) {
+                List<Object> values = entry.getValue();
+                if (values == null || values.isEmpty())
+                    continue;
 
-        // Start with a list containing one empty map, which will be built upon.
-        iterations.add(new java.util.HashMap<>());
-
-        // Loop through each token and its list of values to build the Cartesian product
-        for (Map.Entry<String, List<Object>> tokenEntry : tokens.entrySet()) {
-            String tokenName = tokenEntry.getKey();
-            List<Object> tokenValues = tokenEntry.getValue();
-            List<Map<String, Object>> newIterations = new ArrayList<>();
-
-            // For each existing combination, create new ones by adding the current token's
-            // values
-            for (Map<String, Object> existingCombination : iterations) {
-                for (Object value : tokenValues) {
-                    Map<String, Object> newCombination = new java.util.HashMap<>(existingCombination);
-                    newCombination.put(tokenName, value);
-                    newIterations.add(newCombination);
-
-                    // Early exit if maxIterations is reached
-                    if (newIterations.size() >= maxIterations) {
-                        logger.warn("Maximum number of iterations ({}) reached. Halting combination generation.",
-                                maxIterations);
-                        return newIterations;
+                Object mainDefault = defaults.get(entry.getKey());
+                for (Object value : values) {
+                    if (mainDefault != null && mainDefault.equals(value)) {
+                        continue;
                     }
+                    deviationTokens.add(entry.getKey());
+                    deviationValues.add(value);
                 }
             }
-            // Replace the old list of iterations with the newly expanded one
-            iterations = newIterations;
+
+            int limit = Math.max(1, maxIterations);
+            int total = deviationTokens.size() + 1;
+            if (total > limit) {
+                logger.warn("Maximum number of iterations ({}) reached via ONE_BY_ONE.", maxIterations);
+            }
+            size = Math.min(total, limit);
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+
+        @Override
+        public Map<String, Object> get(int index) {
+            if (index < 0 || index >= size) {
+                throw new IndexOutOfBoundsException("Iteration " + index + " of " + size);
+            }
+            // Copy of defaults, with the current token's value overwritten
+            Map<String, Object> combination = new HashMap<>(defaults);
+            if (index > 0) {
+                combination.put(deviationTokens.get(index - 1), deviationValues.get(index - 1));
+            }
+            return combination;
         }
-        return iterations;
     }
 }
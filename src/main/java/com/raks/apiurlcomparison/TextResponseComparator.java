@@ -0,0 +1,61 @@
+package com.raks.apiurlcomparison;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Plain text and HTML bodies: equal when equal after trimming, otherwise
+ * compared line by line.
+ */
+final class TextResponseComparator implements ResponseComparator {
+
+    @Override
+    public String format() {
+        return ResponseComparators.TEXT;
+    }
+
+    @Override
+    public Set<String> mediaTypes() {
+        return Set.of("text/plain", "text/html");
+    }
+
+    @Override
+    public void compare(ComparisonResult result, String response1, String response2, ComparisonOptions options) {
+        String text1 = response1.trim();
+        String text2 = response2.trim();
+        List<String> differences = new ArrayList<>();
+        if (text1.equals(text2)) {
+            result.setStatus(ComparisonResult.Status.MATCH);
+            result.setDifferences(differences);
+            return;
+        }
+
+        int maxDifferences = options.getMaxDifferences();
+        Iterator<String> lines1 = text1.lines().iterator();
+        Iterator<String> lines2 = text2.lines().iterator();
+        int line = 0;
+        while (lines1.hasNext() || lines2.hasNext()) {
+            line++;
+            String line1 = lines1.hasNext() ? lines1.next() : null;
+            String line2 = lines2.hasNext() ? lines2.next() : null;
+            if (line1 != null && line1.equals(line2)) {
+                continue;
+            }
+            if (maxDifferences > 0 && differences.size() == maxDifferences) {
+                differences.add(ComparisonEngine.limitReached(maxDifferences));
+                break;
+            }
+            if (line2 == null) {
+                differences.add("Missing line in API 2: line " + line);
+            } else if (line1 == null) {
+                differences.add("Missing line in API 1: line " + line);
+            } else {
+                differences.add("Text differs at line " + line + ". API 1: " + line1 + ", API 2: " + line2);
+            }
+        }
+        result.setStatus(ComparisonResult.Status.MISMATCH);
+        result.setDifferences(differences);
+    }
+}
@@ -0,0 +1,228 @@
+package com.raks.apiurlcomparison;
+
+import org.w3c.dom.Attr;
+import org.w3c.dom.Document;
+import org.w3c.dom.Node;
+import org.xml.sax.ErrorHandler;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.SAXParseException;
+import org.xmlunit.builder.DiffBuilder;
+import org.xmlunit.diff.Comparison;
+import org.xmlunit.diff.ComparisonControllers;
+import org.xmlunit.diff.ComparisonType;
+import org.xmlunit.diff.Diff;
+import org.xmlunit.diff.DifferenceEvaluator;
+import org.xmlunit.diff.DifferenceEvaluators;
+
+import javax.xml.XMLConstants;
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * XML (SOAP) response comparison in two phases. {@link #isEqual} stops at the
+ * first difference and only answers MATCH or MISMATCH; {@link #differences}
+ * walks the whole document and is run only when the difference list is read,
+ * usually while the report is written.
+ *
+ * <p>
+ * Documents are parsed with one {@link DocumentBuilder} per thread, reset
+ * between uses, from a factory hardened against XXE: no DTD loading, no
+ * external entities, no XInclude.
+ */
+final class XmlComparator {
+
+    private static final DocumentBuilderFactory documentBuilderFactory = createDocumentBuilderFactory();
+    private static final ThreadLocal<DocumentBuilder> documentBuilders = ThreadLocal.withInitial(
+            XmlComparator::newDocumentBuilder);
+
+    // Parse errors are thrown to the caller instead of printed to stderr
+    private static final ErrorHandler THROWING_ERROR_HANDLER = new ErrorHandler() {
+        @Override
+        public void warning(SAXParseException e) {
+        }
+
+        @Override
+        public void error(SAXParseException e) throws SAXException {
+            throw e;
+        }
+
+        @Override
+        public void fatalError(SAXParseException e) throws SAXException {
+            throw e;
+        }
+    };
+
+    private XmlComparator() {
+    }
+
+    private static DocumentBuilderFactory createDocumentBuilderFactory() {
+        DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+        factory.setNamespaceAware(true);
+        factory.setXIncludeAware(false);
+        factory.setExpandEntityReferences(false);
+        try {
+            factory.setFeature(XMLConstants.FEATURE_SECURE_PROCESSING, true);
+            factory.setFeature("http://xml.org/sax/features/external-general-entities", false);
+            factory.setFeature("http://xml.org/sax/features/external-parameter-entities", false);
+            factory.setFeature("http://apache.org/xml/features/nonvalidating/load-external-dtd", false);
+        } catch (ParserConfigurationException e) {
+            throw new IllegalStateException("XML parser does not support secure processing", e);
+        }
+        return factory;
+    }
+
+    private static DocumentBuilder newDocumentBuilder() {
+        try {
+            DocumentBuilder builder = documentBuilderFactory.newDocumentBuilder();
+            builder.setErrorHandler(THROWING_ERROR_HANDLER);
+            return builder;
+        } catch (ParserConfigurationException e) {
+            throw new IllegalStateException("Cannot create XML document builder", e);
+        }
+    }
+
+    static Document parse(String xml) throws SAXException, IOException {
+        DocumentBuilder builder = documentBuilders.get();
+        try {
+            return builder.parse(new InputSource(new StringReader(xml)));
+        } finally {
+            builder.reset();
+            builder.setErrorHandler(THROWING_ERROR_HANDLER);
+        }
+    }
+
+    /**
+     * First phase: true if the documents do not differ, stopping at the first
+     * difference found.
+     *
+     * @throws SAXException if either response is not well-formed XML
+     */
+    static boolean isEqual(String xml1, String xml2, ComparisonOptions options) throws SAXException, IOException {
+        // Comparisons are checked for identity, so a SIMILAR outcome (e.g. a
+        // different prefix) is already a difference: stop there as well
+        Diff diff = diffBuilder(parse(xml1), parse(xml2), options)
+                .withComparisonController(ComparisonControllers.StopWhenSimilar)
+                .build();
+        return !diff.hasDifferences();
+    }
+
+    /**
+     * Second phase: every difference, up to the configured limit.
+     *
+     * @throws SAXException if either response is not well-formed XML
+     */
+    static List<String> differences(String xml1, String xml2, ComparisonOptions options)
+            throws SAXException, IOException {
+        int maxDifferences = options.getMaxDifferences();
+        List<String> differences = new ArrayList<>();
+        Diff diff = diffBuilder(parse(xml1), parse(xml2), options).build();
+        for (org.xmlunit.diff.Difference difference : diff.getDifferences()) {
+            if (maxDifferences > 0 && differences.size() == maxDifferences) {
+                differences.add(ComparisonEngine.limitReached(maxDifferences));
+                break;
+            }
+            differences.add(difference.toString());
+        }
+        return differences;
+    }
+
+    private static DiffBuilder diffBuilder(Document control, Document test, ComparisonOptions options) {
+        DiffBuilder builder = DiffBuilder.compare(control).withTest(test)
+                .ignoreComments()
+                .ignoreWhitespace();
+        ComparisonRules rules = options.getRules();
+        boolean filterNamespaces = !options.getIgnoredNamespaces().isEmpty();
+        if (!rules.isEmpty() || filterNamespaces) {
+            builder.withNodeFilter(node -> !ignoredNamespace(node, options) && !elementRule(rules, node).isIgnored())
+                    .withAttributeFilter(attr -> !ignoredNamespace(attr, options)
+                            && !attributeRule(rules, attr).isIgnored());
+        }
+        if (!rules.isEmpty() || options.isIgnoreNamespacePrefixes()) {
+            builder.withDifferenceEvaluator(DifferenceEvaluators.chain(
+                    DifferenceEvaluators.Default, relaxingEvaluator(rules, options.isIgnoreNamespacePrefixes())));
+        }
+        return builder;
+    }
+
+    private static boolean ignoredNamespace(Node node, ComparisonOptions options) {
+        String uri = node.getNamespaceURI();
+        return uri != null && options.getIgnoredNamespaces().contains(uri);
+    }
+
+    /**
+     * Rule cursor at an element (or, for other nodes, at their parent element),
+     * following local names down from the document element. An ignored
+     * ancestor makes the cursor ignored as well.
+     */
+    private static ComparisonRules.Cursor elementRule(ComparisonRules rules, Node node) {
+        if (rules.isEmpty()) {
+            return rules.xmlRoot();
+        }
+        Deque<String> names = new ArrayDeque<>();
+        for (Node n = node; n != null; n = n.getParentNode()) {
+            if (n.getNodeType() == Node.ELEMENT_NODE) {
+                names.push(localName(n));
+            }
+        }
+        ComparisonRules.Cursor cursor = rules.xmlRoot();
+        for (String name : names) {
+            cursor = cursor.child(name);
+            if (cursor.isIgnored() || cursor.isNone()) {
+                return cursor;
+            }
+        }
+        return cursor;
+    }
+
+    private static ComparisonRules.Cursor attributeRule(ComparisonRules rules, Attr attr) {
+        ComparisonRules.Cursor element = elementRule(rules, attr.getOwnerElement());
+        return element.isIgnored() ? element : element.child("@" + localName(attr));
+    }
+
+    private static String localName(Node node) {
+        String name = node.getLocalName() != null ? node.getLocalName() : node.getNodeName();
+        int colon = name.indexOf(':');
+        return colon >= 0 ? name.substring(colon + 1) : name;
+    }
+
+    /**
+     * Turns into EQUAL: prefix differences when prefixes are ignored, and text
+     * and attribute value differences whose values agree once the normalizers
+     * for their path have been applied.
+     */
+    private static DifferenceEvaluator relaxingEvaluator(ComparisonRules rules, boolean ignorePrefixes) {
+        return (Comparison comparison, org.xmlunit.diff.ComparisonResult outcome) -> {
+            if (outcome == org.xmlunit.diff.ComparisonResult.EQUAL) {
+                return outcome;
+            }
+            ComparisonType type = comparison.getType();
+            if (type == ComparisonType.NAMESPACE_PREFIX && ignorePrefixes) {
+                return org.xmlunit.diff.ComparisonResult.EQUAL;
+            }
+            if (type != ComparisonType.TEXT_VALUE && type != ComparisonType.ATTR_VALUE) {
+                return outcome;
+            }
+            Node target = comparison.getControlDetails().getTarget();
+            if (target == null || rules.isEmpty()) {
+                return outcome;
+            }
+            ComparisonRules.Cursor cursor = type == ComparisonType.ATTR_VALUE
+                    ? attributeRule(rules, (Attr) target)
+                    : elementRule(rules, target);
+            if (!cursor.hasNormalizers()) {
+                return outcome;
+            }
+            String control = cursor.normalize(String.valueOf(comparison.getControlDetails().getValue()));
+            String test = cursor.normalize(String.valueOf(comparison.getTestDetails().getValue()));
+            return control.equals(test) ? org.xmlunit.diff.ComparisonResult.EQUAL : outcome;
+        };
+    }
+}
@@ -0,0 +1,78 @@
+package com.raks.apiurlcomparison;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * XML (SOAP) bodies: canonical hash first, then {@link XmlComparator}, or
+ * {@link StreamingXmlComparator} from the streaming threshold on. Only
+ * MATCH/MISMATCH is decided during the run; the difference list is built when
+ * the report reads it.
+ */
+final class XmlResponseComparator implements ResponseComparator {
+
+    private static final Logger logger = LoggerFactory.getLogger(XmlResponseComparator.class);
+
+    @Override
+    public String format() {
+        return ResponseComparators.XML;
+    }
+
+    @Override
+    public Set<String> mediaTypes() {
+        return Set.of("application/xml", "text/xml", "+xml");
+    }
+
+    @Override
+    public void compare(ComparisonResult result, String response1, String response2, ComparisonOptions options) {
+        // Equal canonical hashes settle it without building a DOM
+        boolean isMatch = false;
+        try {
+            isMatch = CanonicalHash.ofXml(response1).equals(CanonicalHash.ofXml(response2));
+        } catch (Exception e) {
+            logger.debug("Canonical hash not available, running detailed comparison: {}", e.getMessage());
+        }
+        if (!isMatch) {
+            try {
+                isMatch = streamXml(response1, response2, options)
+                        ? StreamingXmlComparator.isEqual(response1, response2, options)
+                        : XmlComparator.isEqual(response1, response2, options);
+            } catch (Exception e) {
+                // Looked like XML but is not; the bodies differ, so say why
+                List<String> differences = new ArrayList<>();
+                differences.add("XML Parsing failed, and strings differ.");
+                result.setStatus(ComparisonResult.Status.MISMATCH);
+                result.setDifferences(differences);
+                return;
+            }
+        }
+        if (isMatch) {
+            result.setStatus(ComparisonResult.Status.MATCH);
+            result.setDifferences(new ArrayList<>());
+        } else {
+            result.setStatus(ComparisonResult.Status.MISMATCH);
+            result.deferDifferences(() -> differences(response1, response2, options));
+        }
+    }
+
+    private static boolean streamXml(String response1, String response2, ComparisonOptions options) {
+        return Math.max(response1.length(), response2.length()) >= options.getStreamingXmlThreshold();
+    }
+
+    private static List<String> differences(String response1, String response2, ComparisonOptions options) {
+        try {
+            return streamXml(response1, response2, options)
+                    ? StreamingXmlComparator.differences(response1, response2, options)
+                    : XmlComparator.differences(response1, response2, options);
+        } catch (Exception e) {
+            logger.error("Failed to build XML differences", e);
+            List<String> differences = new ArrayList<>();
+            differences.add("Error while listing XML differences: " + e.getMessage());
+            return differences;
+        }
+    }
+}
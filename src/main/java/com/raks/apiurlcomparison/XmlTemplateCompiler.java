@@ -0,0 +1,187 @@
+package com.raks.apiurlcomparison;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.StringReader;
+import java.util.Arrays;
+import java.util.Set;
+
+/**
+ * Compiles an XML (SOAP) payload template into a {@link PayloadTemplate} in a
+ * single streaming StAX pass. No DOM is built and nothing goes through a
+ * Transformer: the document is re-emitted event by event, and the content of
+ * every element whose qualified name contains a token name becomes a slot.
+ *
+ * <p>
+ * The XML declaration, namespace declarations, comments, processing
+ * instructions and CDATA sections are written back as they appear in the
+ * template.
+ */
+public final class XmlTemplateCompiler {
+
+    private static final XMLInputFactory inputFactory = createInputFactory();
+
+    private XmlTemplateCompiler() {
+    }
+
+    private static XMLInputFactory createInputFactory() {
+        XMLInputFactory factory = XMLInputFactory.newInstance();
+        factory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, true);
+        factory.setProperty(XMLInputFactory.IS_COALESCING, false);
+        // Templates are local files, but never resolve external entities from them
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        return factory;
+    }
+
+    public static PayloadTemplate compile(String xml, Set<String> tokenNames) throws XMLStreamException {
+        PayloadTemplate.Builder template = PayloadTemplate.builder(PayloadTemplate.Format.XML);
+        StringBuilder out = new StringBuilder(xml.length() + 64);
+        // Element depth of each open slot, innermost last
+        int[] slotDepths = new int[16];
+        int openSlots = 0;
+        int depth = 0;
+
+        XMLStreamReader reader = inputFactory.createXMLStreamReader(new StringReader(xml));
+        try {
+            int event = reader.getEventType();
+            while (true) {
+                switch (event) {
+                    case XMLStreamConstants.START_DOCUMENT:
+                        writeDeclaration(reader, out);
+                        break;
+                    case XMLStreamConstants.START_ELEMENT: {
+                        String name = qualifiedName(reader.getPrefix(), reader.getLocalName());
+                        writeStartTag(reader, name, out);
+                        depth++;
+                        Set<String> matches = PayloadTemplate.matchingTokens(name, tokenNames);
+                        boolean slot = !matches.isEmpty();
+                        int next = reader.next();
+                        if (next == XMLStreamConstants.END_ELEMENT && !slot) {
+                            out.append("/>");
+                            depth--;
+                            break;
+                        }
+                        out.append('>');
+                        if (slot) {
+                            template.literal(out);
+                            out.setLength(0);
+                            template.openSlot(matches, false);
+                            if (openSlots == slotDepths.length) {
+                                slotDepths = Arrays.copyOf(slotDepths, openSlots * 2);
+                            }
+                            slotDepths[openSlots++] = depth;
+                        }
+                        // The look-ahead event still has to be handled
+                        event = next;
+                        continue;
+                    }
+                    case XMLStreamConstants.END_ELEMENT:
+                        if (openSlots > 0 && slotDepths[openSlots - 1] == depth) {
+                            template.literal(out);
+                            out.setLength(0);
+                            template.closeSlot();
+                            openSlots--;
+                        }
+                        out.append("</").append(qualifiedName(reader.getPrefix(), reader.getLocalName())).append('>');
+                        depth--;
+                        break;
+                    case XMLStreamConstants.CHARACTERS:
+                    case XMLStreamConstants.SPACE:
+                        PayloadTemplate.appendXmlText(reader.getText(), out);
+                        break;
+                    case XMLStreamConstants.CDATA:
+                        out.append("<![CDATA[").append(reader.getText()).append("]]>");
+                        break;
+                    case XMLStreamConstants.COMMENT:
+                        out.append("<!--").append(reader.getText()).append("-->");
+                        break;
+                    case XMLStreamConstants.PROCESSING_INSTRUCTION:
+                        out.append("<?").append(reader.getPITarget());
+                        if (reader.getPIData() != null && !reader.getPIData().isEmpty()) {
+                            out.append(' ').append(reader.getPIData());
+                        }
+                        out.append("?>");
+                        break;
+                    case XMLStreamConstants.ENTITY_REFERENCE:
+                        out.append('&').append(reader.getLocalName()).append(';');
+                        break;
+                    case XMLStreamConstants.DTD:
+                        out.append(reader.getText());
+                        break;
+                    case XMLStreamConstants.END_DOCUMENT:
+                        template.literal(out);
+                        return template.build();
+                    default:
+                        break;
+                }
+                event = reader.next();
+            }
+        } finally {
+            reader.close();
+        }
+    }
+
+    private static void writeDeclaration(XMLStreamReader reader, StringBuilder out) {
+        if (reader.getVersion() == null) {
+            return; // Template has no XML declaration; do not invent one
+        }
+        out.append("<?xml version=\"").append(reader.getVersion()).append('"');
+        if (reader.getCharacterEncodingScheme() != null) {
+            out.append(" encoding=\"").append(reader.getCharacterEncodingScheme()).append('"');
+        }
+        if (reader.standaloneSet()) {
+            out.append(" standalone=\"").append(reader.isStandalone() ? "yes" : "no").append('"');
+        }
+        out.append("?>");
+    }
+
+    private static void writeStartTag(XMLStreamReader reader, String name, StringBuilder out) {
+        out.append('<').append(name);
+        for (int i = 0; i < reader.getNamespaceCount(); i++) {
+            String prefix = reader.getNamespacePrefix(i);
+            out.append(prefix == null || prefix.isEmpty() ? " xmlns" : " xmlns:" + prefix).append("=\"");
+            appendAttributeValue(reader.getNamespaceURI(i), out);
+            out.append('"');
+        }
+        for (int i = 0; i < reader.getAttributeCount(); i++) {
+            out.append(' ').append(qualifiedName(reader.getAttributePrefix(i), reader.getAttributeLocalName(i)))
+                    .append("=\"");
+            appendAttributeValue(reader.getAttributeValue(i), out);
+            out.append('"');
+        }
+    }
+
+    private static String qualifiedName(String prefix, String localName) {
+        return prefix == null || prefix.isEmpty() ? localName : prefix + ":" + localName;
+    }
+
+    private static void appendAttributeValue(String value, StringBuilder out) {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '&':
+                    out.append("&amp;");
+                    break;
+                case '<':
+                    out.append("&lt;");
+                    break;
+                case '"':
+                    out.append("&quot;");
+                    break;
+                case '\n':
+                    out.append("&#10;");
+                    break;
+                case '\r':
+                    out.append("&#13;");
+                    break;
+                case '\t':
+                    out.append("&#9;");
+                    break;
+                default:
+                    out.append(c);
+            }
+        }
+    }
+}
@@ -1,111 +1,192 @@
 package com.raks.apiurlcomparison.http;
 
 import com.raks.apiurlcomparison.Authentication;
-import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
 import org.apache.http.HttpHeaders;
-import org.apache.http.NameValuePair;
-import org.apache.http.client.entity.UrlEncodedFormEntity;
+import org.apache.http.HttpStatus;
 import org.apache.http.client.methods.CloseableHttpResponse;
-import org.apache.http.client.methods.HttpPost;
 import org.apache.http.client.methods.HttpUriRequest;
 import org.apache.http.client.methods.RequestBuilder;
 import org.apache.http.entity.StringEntity;
 import org.apache.http.impl.client.CloseableHttpClient;
-import org.apache.http.impl.client.HttpClients;
-import org.apache.http.message.BasicNameValuePair;
 import org.apache.http.util.EntityUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.nio.charset.StandardCharsets;
-import java.util.ArrayList;
 import java.util.Base64;
-import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
 
 public class ApiClient {
     private static final Logger logger = LoggerFactory.getLogger(ApiClient.class);
+
+    /** Blocking Apache HttpClient 4.x over the shared connection pool (default). */
+    public static final String TRANSPORT_APACHE = "APACHE";
+    /** Non-blocking JDK java.net.http client with HTTP/2 multiplexing. */
+    public static final String TRANSPORT_HTTP2 = "HTTP2";
+
     private final Authentication authentication;
-    private String accessToken;
-    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final boolean http2;
 
     public ApiClient(Authentication authentication) {
+        this(authentication, TRANSPORT_APACHE);
+    }
+
+    /**
+     * @param transport {@link #TRANSPORT_APACHE} (also used when null) or
+     *                  {@link #TRANSPORT_HTTP2}
+     */
+    public ApiClient(Authentication authentication, String transport) {
         this.authentication = authentication;
+        this.http2 = TRANSPORT_HTTP2.equalsIgnoreCase(transport);
+    }
+
+    /**
+     * True when {@link #sendRequestAsync} returns without blocking the caller.
+     */
+    public boolean isNonBlocking() {
+        return http2;
     }
 
-    private void obtainAccessToken() throws IOException {
-        if (authentication == null || authentication.getTokenUrl() == null) {
-            return; // Not OAuth or no token URL
+    public String sendRequest(String url, String method, Map<String, String> headers, String body) throws IOException {
+        if (http2) {
+            return await(sendRequestAsync(url, method, headers, body));
         }
 
-        try (CloseableHttpClient client = HttpClients.createDefault()) {
-            HttpPost post = new HttpPost(authentication.getTokenUrl());
-            List<NameValuePair> params = new ArrayList<>();
-            params.add(new BasicNameValuePair("grant_type", "client_credentials"));
-            // Some OAuth providers might require client_id/secret in body
-            if (authentication.getClientId() != null) {
-                params.add(new BasicNameValuePair("client_id", authentication.getClientId()));
+        String accessToken = currentAccessToken();
+
+        // Shared pooled client: never closed here so the connection can be reused
+        CloseableHttpClient client = HttpConnectionPool.getClient();
+        HttpUriRequest request = buildRequest(url, method, headers, body, accessToken);
+        logger.debug("Executing request: {}", request);
+
+        // Fully consuming the entity and closing the response releases the
+        // connection back to the pool
+        try (CloseableHttpResponse response = client.execute(request)) {
+            if (accessToken == null || response.getStatusLine().getStatusCode() != HttpStatus.SC_UNAUTHORIZED) {
+                return EntityUtils.toString(response.getEntity());
             }
-            if (authentication.getClientSecret() != null) {
-                params.add(new BasicNameValuePair("client_secret", authentication.getClientSecret()));
+            EntityUtils.consume(response.getEntity());
+        }
+
+        accessToken = renewRejectedToken(url, accessToken);
+        request = buildRequest(url, method, headers, body, accessToken);
+        try (CloseableHttpResponse response = client.execute(request)) {
+            return EntityUtils.toString(response.getEntity());
+        }
+    }
+
+    /**
+     * Sends the request and returns the response body as a future. With the
+     * HTTP2 transport no thread is held while the request is in flight; with the
+     * Apache transport the call completes on the calling thread.
+     */
+    public CompletableFuture<String> sendRequestAsync(String url, String method, Map<String, String> headers,
+            String body) {
+        if (!http2) {
+            try {
+                return CompletableFuture.completedFuture(sendRequest(url, method, headers, body));
+            } catch (IOException e) {
+                return CompletableFuture.failedFuture(e);
             }
-            post.setEntity(new UrlEncodedFormEntity(params));
-
-            logger.info("Requesting new access token from {}", authentication.getTokenUrl());
-            try (CloseableHttpResponse response = client.execute(post)) {
-                String responseBody = EntityUtils.toString(response.getEntity());
-                if (response.getStatusLine().getStatusCode() == 200) {
-                    JsonNode tokenResponse = objectMapper.readTree(responseBody);
-                    if (tokenResponse.has("access_token")) {
-                        this.accessToken = tokenResponse.get("access_token").asText();
-                        logger.info("Successfully obtained new access token.");
-                    } else {
-                        throw new IOException("Token response missing access_token field: " + responseBody);
+        }
+
+        String accessToken;
+        try {
+            accessToken = currentAccessToken();
+        } catch (IOException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+
+        logger.debug("Executing HTTP/2 request: {} {}", method, url);
+        return Http2Transport.send(url, method, headers, body, authorizationHeader(accessToken))
+                .thenCompose(response -> {
+                    if (accessToken == null || response.statusCode() != HttpStatus.SC_UNAUTHORIZED) {
+                        return CompletableFuture.completedFuture(response);
                     }
-                } else {
-                    throw new IOException("Failed to obtain access token. Status: " + response.getStatusLine()
-                            + ", Body: " + responseBody);
-                }
-            }
+                    String renewed;
+                    try {
+                        renewed = renewRejectedToken(url, accessToken);
+                    } catch (IOException e) {
+                        throw new CompletionException(e);
+                    }
+                    return Http2Transport.send(url, method, headers, body, authorizationHeader(renewed));
+                })
+                .thenApply(response -> {
+                    try {
+                        return Http2Transport.body(response);
+                    } catch (IOException e) {
+                        throw new CompletionException(e);
+                    }
+                });
+    }
+
+    // OAuth token from the shared cache, if configured
+    private String currentAccessToken() throws IOException {
+        if (authentication != null && authentication.getTokenUrl() != null) {
+            return OAuthTokenCache.getInstance().getToken(authentication);
         }
+        return null;
     }
 
-    public String sendRequest(String url, String method, Map<String, String> headers, String body) throws IOException {
-        // Try to get OAuth token if configured
-        if (accessToken == null && authentication != null && authentication.getTokenUrl() != null) {
-            obtainAccessToken();
+    // Cached token was rejected (revoked or expired early): fetch a new one for a single retry
+    private String renewRejectedToken(String url, String rejectedToken) throws IOException {
+        logger.info("Access token rejected by {}, retrying with a fresh token", url);
+        OAuthTokenCache.getInstance().invalidate(authentication, rejectedToken);
+        return OAuthTokenCache.getInstance().getToken(authentication);
+    }
+
+    private String authorizationHeader(String accessToken) {
+        // OAuth Token
+        if (accessToken != null) {
+            return "Bearer " + accessToken;
+        }
+        // Basic Auth Fallback (if no token URL but client credentials exist)
+        if (authentication != null && authentication.getClientId() != null
+                && authentication.getClientSecret() != null) {
+            String auth = authentication.getClientId() + ":" + authentication.getClientSecret();
+            byte[] encodedAuth = Base64.getEncoder().encode(auth.getBytes(StandardCharsets.UTF_8));
+            return "Basic " + new String(encodedAuth);
         }
+        return null;
+    }
 
-        try (CloseableHttpClient client = HttpClients.createDefault()) {
-            RequestBuilder requestBuilder = RequestBuilder.create(method.toUpperCase()).setUri(url);
+    private HttpUriRequest buildRequest(String url, String method, Map<String, String> headers, String body,
+            String accessToken) {
+        RequestBuilder requestBuilder = RequestBuilder.create(method.toUpperCase()).setUri(url);
 
+        if (headers != null) {
             headers.forEach(requestBuilder::addHeader);
+        }
 
-            // OAuth Token
-            if (accessToken != null) {
-                requestBuilder.addHeader(HttpHeaders.AUTHORIZATION, "Bearer " + accessToken);
-            }
-            // Basic Auth Fallback (if no token URL but client credentials exist)
-            else if (authentication != null && authentication.getClientId() != null
-                    && authentication.getClientSecret() != null) {
-                String auth = authentication.getClientId() + ":" + authentication.getClientSecret();
-                byte[] encodedAuth = Base64.getEncoder().encode(auth.getBytes(StandardCharsets.UTF_8));
-                String authHeader = "Basic " + new String(encodedAuth);
-                requestBuilder.addHeader(HttpHeaders.AUTHORIZATION, authHeader);
-            }
+        String authorization = authorizationHeader(accessToken);
+        if (authorization != null) {
+            requestBuilder.addHeader(HttpHeaders.AUTHORIZATION, authorization);
+        }
 
-            if (body != null && !body.isEmpty()) {
-                requestBuilder.setEntity(new StringEntity(body, "UTF-8"));
-            }
+        if (body != null && !body.isEmpty()) {
+            requestBuilder.setEntity(new StringEntity(body, "UTF-8"));
+        }
 
-            HttpUriRequest request = requestBuilder.build();
-            logger.debug("Executing request: {}", request);
+        return requestBuilder.build();
+    }
 
-            try (CloseableHttpResponse response = client.execute(request)) {
-                return EntityUtils.toString(response.getEntity());
+    private static String await(CompletableFuture<String> future) throws IOException {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
             }
+            throw new IOException(cause.getMessage(), cause);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for response");
         }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,119 @@
+package com.raks.apiurlcomparison.http;
+
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.util.EntityUtils;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/**
+ * Non-blocking transport on the JDK {@link HttpClient}. HTTP/2 is negotiated
+ * where the server supports it, so many requests to the same gateway share one
+ * multiplexed connection and a few threads can keep thousands in flight.
+ * Falls back to HTTP/1.1 transparently.
+ * <p>
+ * Redirects and response charsets are handled as by the default Apache client,
+ * so api1 and api2 see the same body for the same server response whichever
+ * transport each is configured with.
+ */
+final class Http2Transport {
+
+    private static final Duration CONNECT_TIMEOUT = Duration.ofSeconds(10);
+    private static final Duration REQUEST_TIMEOUT = Duration.ofSeconds(60);
+    private static final int MAX_REDIRECTS = 50;
+
+    // Headers the JDK client manages itself and refuses to accept from callers
+    private static final Set<String> RESTRICTED_HEADERS = new TreeSet<>(String.CASE_INSENSITIVE_ORDER);
+
+    static {
+        RESTRICTED_HEADERS.addAll(Set.of("Connection", "Content-Length", "Expect", "Host", "Upgrade"));
+    }
+
+    private static final HttpClient client = HttpClient.newBuilder()
+            .version(HttpClient.Version.HTTP_2)
+            .connectTimeout(CONNECT_TIMEOUT)
+            .followRedirects(HttpClient.Redirect.NEVER)
+            .build();
+
+    private Http2Transport() {
+    }
+
+    static CompletableFuture<HttpResponse<byte[]>> send(String url, String method, Map<String, String> headers,
+            String body, String authorization) {
+        return send(URI.create(url), method.toUpperCase(), headers, body, authorization, 0);
+    }
+
+    private static CompletableFuture<HttpResponse<byte[]>> send(URI uri, String method,
+            Map<String, String> headers, String body, String authorization, int redirects) {
+        HttpRequest.BodyPublisher publisher = (body != null && !body.isEmpty())
+                ? HttpRequest.BodyPublishers.ofString(body, StandardCharsets.UTF_8)
+                : HttpRequest.BodyPublishers.noBody();
+
+        HttpRequest.Builder builder = HttpRequest.newBuilder(uri)
+                .timeout(REQUEST_TIMEOUT)
+                .method(method, publisher);
+
+        if (headers != null) {
+            headers.forEach((name, value) -> {
+                if (!RESTRICTED_HEADERS.contains(name)) {
+                    builder.header(name, value);
+                }
+            });
+        }
+        if (authorization != null) {
+            builder.header("Authorization", authorization);
+        }
+
+        return client.sendAsync(builder.build(), HttpResponse.BodyHandlers.ofByteArray()).thenCompose(response -> {
+            String redirectMethod = redirectMethod(response.statusCode(), method);
+            Optional<String> location = response.headers().firstValue("Location");
+            if (redirectMethod == null || location.isEmpty()) {
+                return CompletableFuture.completedFuture(response);
+            }
+            if (redirects == MAX_REDIRECTS) {
+                throw new CompletionException(new IOException("Maximum redirects (" + MAX_REDIRECTS
+                        + ") exceeded at " + uri));
+            }
+            // The request is repeated as GET or HEAD, which carry no body
+            return send(uri.resolve(location.get()), redirectMethod, headers, null, authorization, redirects + 1);
+        });
+    }
+
+    // Apache's default rules: 301, 302, 307 and 308 are followed for GET and HEAD
+    // only, 303 for any method as a GET; null if the response is returned as is
+    private static String redirectMethod(int status, String method) {
+        switch (status) {
+            case 301:
+            case 302:
+            case 307:
+            case 308:
+                return "GET".equals(method) || "HEAD".equals(method) ? method : null;
+            case 303:
+                return "HEAD".equals(method) ? method : "GET";
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * Decodes the body as {@code EntityUtils.toString} does for the Apache
+     * transport: the charset of the Content-Type, else the default one of its
+     * MIME type, else ISO-8859-1.
+     */
+    static String body(HttpResponse<byte[]> response) throws IOException {
+        ByteArrayEntity entity = new ByteArrayEntity(response.body());
+        response.headers().firstValue("Content-Type").ifPresent(entity::setContentType);
+        return EntityUtils.toString(entity);
+    }
+}
@@ -0,0 +1,98 @@
+package com.raks.apiurlcomparison.http;
+
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Process-wide pooled HTTP transport shared by every {@link ApiClient}, in both
+ * LIVE and BASELINE modes. Connections are kept alive between iterations so
+ * each call reuses an already established TCP/TLS session.
+ */
+public final class HttpConnectionPool {
+
+    private static final Logger logger = LoggerFactory.getLogger(HttpConnectionPool.class);
+
+    private static final int DEFAULT_MAX_TOTAL = 200;
+    private static final int DEFAULT_MAX_PER_ROUTE = 20;
+    private static final int VALIDATE_AFTER_INACTIVITY_MS = 2_000;
+    private static final long MAX_IDLE_SECONDS = 30;
+    private static final int CONNECT_TIMEOUT_MS = 10_000;
+    private static final int SOCKET_TIMEOUT_MS = 60_000;
+
+    private static PoolingHttpClientConnectionManager connectionManager;
+    private static CloseableHttpClient client;
+
+    private HttpConnectionPool() {
+    }
+
+    /**
+     * Returns the shared client, creating it on first use. Callers must not close
+     * it; closing the response is enough to hand the connection back to the pool.
+     */
+    public static synchronized CloseableHttpClient getClient() {
+        if (client == null) {
+            connectionManager = new PoolingHttpClientConnectionManager();
+            connectionManager.setMaxTotal(DEFAULT_MAX_TOTAL);
+            connectionManager.setDefaultMaxPerRoute(DEFAULT_MAX_PER_ROUTE);
+            // Stale-connection check before reusing a connection that sat idle
+            connectionManager.setValidateAfterInactivity(VALIDATE_AFTER_INACTIVITY_MS);
+
+            RequestConfig requestConfig = RequestConfig.custom()
+                    .setConnectTimeout(CONNECT_TIMEOUT_MS)
+                    .setConnectionRequestTimeout(CONNECT_TIMEOUT_MS)
+                    .setSocketTimeout(SOCKET_TIMEOUT_MS)
+                    .build();
+
+            client = HttpClients.custom()
+                    .setConnectionManager(connectionManager)
+                    .setKeepAliveStrategy(DefaultConnectionKeepAliveStrategy.INSTANCE)
+                    .setDefaultRequestConfig(requestConfig)
+                    .evictExpiredConnections()
+                    .evictIdleConnections(MAX_IDLE_SECONDS, TimeUnit.SECONDS)
+                    .build();
+
+            logger.info("Initialized shared HTTP connection pool (maxTotal={}, maxPerRoute={})",
+                    DEFAULT_MAX_TOTAL, DEFAULT_MAX_PER_ROUTE);
+        }
+        return client;
+    }
+
+    /**
+     * Raises the pool limits so that at least {@code perRoute} connections can be
+     * open to a single host. Limits are never lowered.
+     */
+    public static synchronized void ensureCapacity(int perRoute) {
+        getClient();
+        if (perRoute > connectionManager.getDefaultMaxPerRoute()) {
+            connectionManager.setDefaultMaxPerRoute(perRoute);
+            // Room for two hosts at the per-route limit
+            connectionManager.setMaxTotal(Math.max(connectionManager.getMaxTotal(), perRoute * 2));
+            logger.info("HTTP connection pool resized (maxTotal={}, maxPerRoute={})",
+                    connectionManager.getMaxTotal(), perRoute);
+        }
+    }
+
+    /**
+     * Closes the shared client and all pooled connections. A later call to
+     * {@link #getClient()} creates a fresh pool.
+     */
+    public static synchronized void shutdown() {
+        if (client != null) {
+            try {
+                client.close();
+            } catch (IOException e) {
+                logger.warn("Error closing HTTP connection pool: {}", e.getMessage());
+            }
+            client = null;
+            connectionManager = null;
+        }
+    }
+}
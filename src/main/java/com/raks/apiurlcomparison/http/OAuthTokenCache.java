@@ -0,0 +1,248 @@
+package com.raks.apiurlcomparison.http;
+
+import com.raks.apiurlcomparison.Authentication;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.http.NameValuePair;
+import org.apache.http.client.entity.UrlEncodedFormEntity;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.message.BasicNameValuePair;
+import org.apache.http.util.EntityUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JVM-wide cache of OAuth client-credentials tokens, keyed by token URL and
+ * client id. Tokens are reused until shortly before {@code expires_in} runs
+ * out. A token that was handed out during its lifetime is refreshed in the
+ * background ahead of expiry; one nobody asked for is left to expire, so an
+ * idle configuration stops calling the identity provider and the next caller
+ * fetches a token again. Only one caller per key talks to the identity
+ * provider at a time; concurrent callers wait for and share that result.
+ */
+public final class OAuthTokenCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(OAuthTokenCache.class);
+    private static final OAuthTokenCache INSTANCE = new OAuthTokenCache();
+
+    /** Lifetime assumed when the provider does not send expires_in. */
+    private static final long DEFAULT_TTL_MS = TimeUnit.MINUTES.toMillis(5);
+    /** A token is treated as expired this long before its real expiry. */
+    private static final long EXPIRY_SKEW_MS = TimeUnit.SECONDS.toMillis(5);
+    /** Upper bound on how early the background refresh runs. */
+    private static final long MAX_REFRESH_AHEAD_MS = TimeUnit.SECONDS.toMillis(60);
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final Map<TokenKey, TokenEntry> entries = new ConcurrentHashMap<>();
+    private final TokenFetcher fetcher;
+    private final ScheduledExecutorService refresher = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "oauth-token-refresher");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private OAuthTokenCache() {
+        this.fetcher = this::fetchToken;
+    }
+
+    // For tests: tokens come from the given fetcher instead of the token URL
+    OAuthTokenCache(TokenFetcher fetcher) {
+        this.fetcher = fetcher;
+    }
+
+    interface TokenFetcher {
+        CachedToken fetch(Authentication authentication) throws IOException;
+    }
+
+    public static OAuthTokenCache getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Returns a valid access token for the given authentication, fetching one
+     * only if no unexpired token is cached.
+     */
+    public String getToken(Authentication authentication) throws IOException {
+        TokenKey key = new TokenKey(authentication.getTokenUrl(), authentication.getClientId());
+        TokenEntry entry = entries.computeIfAbsent(key, k -> new TokenEntry());
+
+        CachedToken token = entry.token;
+        if (token != null && token.isValid()) {
+            entry.used = true;
+            if (entry.scheduledRefresh == null) {
+                // The previous refresh was skipped while idle; in use again, refresh ahead again
+                synchronized (entry) {
+                    scheduleRefresh(key, entry, authentication);
+                }
+            }
+            return token.value;
+        }
+
+        // Single-flight: the first thread fetches, the rest find a fresh token on re-check
+        synchronized (entry) {
+            token = entry.token;
+            if (token == null || !token.isValid()) {
+                token = refresh(key, entry, authentication);
+            }
+            entry.used = true;
+            return token.value;
+        }
+    }
+
+    /**
+     * Drops the cached token, e.g. after the target API rejected it with 401.
+     * Only the given token is dropped, so a concurrent refresh is not undone.
+     */
+    public void invalidate(Authentication authentication, String rejectedToken) {
+        TokenEntry entry = entries.get(new TokenKey(authentication.getTokenUrl(), authentication.getClientId()));
+        if (entry == null) {
+            return;
+        }
+        synchronized (entry) {
+            if (entry.token != null && entry.token.value.equals(rejectedToken)) {
+                entry.token = null;
+                if (entry.scheduledRefresh != null) {
+                    entry.scheduledRefresh.cancel(false);
+                    entry.scheduledRefresh = null;
+                }
+            }
+        }
+    }
+
+    /**
+     * Whether a background refresh is pending for the authentication's token.
+     */
+    boolean isRefreshScheduled(Authentication authentication) {
+        TokenEntry entry = entries.get(new TokenKey(authentication.getTokenUrl(), authentication.getClientId()));
+        return entry != null && entry.scheduledRefresh != null;
+    }
+
+    /**
+     * What the scheduled background refresh does, run now.
+     */
+    void refreshAhead(Authentication authentication) {
+        TokenKey key = new TokenKey(authentication.getTokenUrl(), authentication.getClientId());
+        TokenEntry entry = entries.get(key);
+        if (entry != null) {
+            backgroundRefresh(key, entry, authentication);
+        }
+    }
+
+    // Caller must hold the entry's monitor
+    private CachedToken refresh(TokenKey key, TokenEntry entry, Authentication authentication) throws IOException {
+        CachedToken token = fetcher.fetch(authentication);
+        entry.token = token;
+        entry.used = false;
+
+        if (entry.scheduledRefresh != null) {
+            entry.scheduledRefresh.cancel(false);
+            entry.scheduledRefresh = null;
+        }
+        scheduleRefresh(key, entry, authentication);
+        return token;
+    }
+
+    // Caller must hold the entry's monitor
+    private void scheduleRefresh(TokenKey key, TokenEntry entry, Authentication authentication) {
+        CachedToken token = entry.token;
+        if (entry.scheduledRefresh != null || token == null) {
+            return;
+        }
+        long lifetime = token.expiresAtMillis - System.currentTimeMillis();
+        long refreshAhead = Math.min(MAX_REFRESH_AHEAD_MS, lifetime / 5);
+        long delay = lifetime - refreshAhead;
+        if (delay > 0) {
+            entry.scheduledRefresh = refresher.schedule(
+                    () -> backgroundRefresh(key, entry, authentication), delay, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void backgroundRefresh(TokenKey key, TokenEntry entry, Authentication authentication) {
+        synchronized (entry) {
+            entry.scheduledRefresh = null;
+            if (!entry.used) {
+                // Not handed out since it was fetched: let it expire, the next caller fetches lazily
+                logger.debug("Access token for {} unused; not refreshing it ahead of expiry", key.tokenUrl());
+                return;
+            }
+            try {
+                refresh(key, entry, authentication);
+                logger.debug("Proactively refreshed access token for {}", key.tokenUrl());
+            } catch (Exception e) {
+                // The current token stays in place; callers refetch once it expires
+                logger.warn("Background token refresh failed for {}: {}", key.tokenUrl(), e.getMessage());
+            }
+        }
+    }
+
+    private CachedToken fetchToken(Authentication authentication) throws IOException {
+        HttpPost post = new HttpPost(authentication.getTokenUrl());
+        List<NameValuePair> params = new ArrayList<>();
+        params.add(new BasicNameValuePair("grant_type", "client_credentials"));
+        // Some OAuth providers might require client_id/secret in body
+        if (authentication.getClientId() != null) {
+            params.add(new BasicNameValuePair("client_id", authentication.getClientId()));
+        }
+        if (authentication.getClientSecret() != null) {
+            params.add(new BasicNameValuePair("client_secret", authentication.getClientSecret()));
+        }
+        post.setEntity(new UrlEncodedFormEntity(params));
+
+        logger.info("Requesting new access token from {}", authentication.getTokenUrl());
+        long requestedAt = System.currentTimeMillis();
+        try (CloseableHttpResponse response = HttpConnectionPool.getClient().execute(post)) {
+            String responseBody = EntityUtils.toString(response.getEntity());
+            if (response.getStatusLine().getStatusCode() != 200) {
+                throw new IOException("Failed to obtain access token. Status: " + response.getStatusLine()
+                        + ", Body: " + responseBody);
+            }
+            JsonNode tokenResponse = objectMapper.readTree(responseBody);
+            if (!tokenResponse.has("access_token")) {
+                throw new IOException("Token response missing access_token field: " + responseBody);
+            }
+
+            long ttl = DEFAULT_TTL_MS;
+            JsonNode expiresIn = tokenResponse.get("expires_in");
+            if (expiresIn != null && expiresIn.asLong(0) > 0) {
+                ttl = TimeUnit.SECONDS.toMillis(expiresIn.asLong());
+            }
+            logger.info("Successfully obtained new access token (expires in {}s).", ttl / 1000);
+            // Measure from request time so network latency never extends the lifetime
+            return new CachedToken(tokenResponse.get("access_token").asText(), requestedAt + ttl);
+        }
+    }
+
+    private record TokenKey(String tokenUrl, String clientId) {
+    }
+
+    private static final class TokenEntry {
+        private volatile CachedToken token;
+        private volatile ScheduledFuture<?> scheduledRefresh;
+        private volatile boolean used; // Handed out since it was fetched
+    }
+
+    static final class CachedToken {
+        private final String value;
+        private final long expiresAtMillis;
+
+        CachedToken(String value, long expiresAtMillis) {
+            this.value = value;
+            this.expiresAtMillis = expiresAtMillis;
+        }
+
+        private boolean isValid() {
+            return System.currentTimeMillis() < expiresAtMillis - EXPIRY_SKEW_MS;
+        }
+    }
+}
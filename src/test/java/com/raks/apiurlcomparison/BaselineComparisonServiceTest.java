@@ -0,0 +1,255 @@
+package com.raks.apiurlcomparison;
+
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.ref.WeakReference;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class BaselineComparisonServiceTest {
+
+    @TempDir
+    Path storageDir;
+
+    @Test
+    void testStoredRunsAreDiffedOffline() throws Exception {
+        BaselineStorageService storage = new BaselineStorageService(storageDir.toString());
+        storage.saveBaseline(BaselineStorageServiceTest.metadata("run-001", 3),
+                BaselineStorageServiceTest.iterations(3));
+
+        // Same tokens, renumbered and in another order; iteration with id=2 answers differently
+        List<BaselineStorageService.BaselineIteration> current = new ArrayList<>();
+        for (BaselineStorageService.BaselineIteration iteration : BaselineStorageServiceTest.iterations(3)) {
+            int number = 13 - iteration.getIterationNumber();
+            String response = iteration.getIterationNumber() == 2 ? "<response id=\"2\">changed</response>"
+                    : iteration.getResponsePayload();
+            current.add(BaselineStorageServiceTest.withResponse(number, iteration, response));
+        }
+        current.sort((a, b) -> Integer.compare(a.getIterationNumber(), b.getIterationNumber()));
+        storage.saveBaseline(BaselineStorageServiceTest.metadata("run-002", 3), current);
+
+        Config config = new Config();
+        config.setTestType("SOAP");
+        Config.BaselineConfig baselineConfig = new Config.BaselineConfig();
+        baselineConfig.setOperation("DIFF");
+        baselineConfig.setStorageDir(storageDir.toString());
+        baselineConfig.setServiceName("svc");
+        baselineConfig.setCompareDate("20240101");
+        baselineConfig.setCompareRunId("run-001");
+        baselineConfig.setDiffRunId("run-002");
+        baselineConfig.setMatchBy("TOKENS");
+        config.setBaseline(baselineConfig);
+
+        List<ComparisonResult> results = new BaselineComparisonService(storage).diffWithBaseline(config);
+        assertEquals(3, results.size());
+        for (ComparisonResult result : results) {
+            String expected = "2".equals(result.getIterationTokens().get("id")) ? "MISMATCH" : "MATCH";
+            assertEquals(expected, result.getStatus(), String.valueOf(result.getIterationTokens()));
+            assertEquals("run-001", result.getBaselineRunId());
+        }
+
+        // By iteration number nothing pairs up: every side is reported unmatched
+        baselineConfig.setMatchBy("ITERATION");
+        results = new BaselineComparisonService(storage).diffWithBaseline(config);
+        assertEquals(6, results.size());
+        assertTrue(results.stream().allMatch(result -> "ERROR".equals(result.getStatus())));
+    }
+
+    @Test
+    void testResultsFileIsPairedWithinTheBaselineOperation() throws Exception {
+        BaselineStorageService storage = new BaselineStorageService(storageDir.toString());
+        storage.saveBaseline(BaselineStorageServiceTest.metadata("run-001", 3),
+                BaselineStorageServiceTest.iterations(3));
+
+        // A live run of the same operation, interleaved with another operation's results
+        Path resultsFile = storageDir.resolve("results.jsonl");
+        try (JsonLinesResultSink sink = new JsonLinesResultSink(resultsFile.toFile())) {
+            for (BaselineStorageService.BaselineIteration iteration : BaselineStorageServiceTest.iterations(3)) {
+                int number = iteration.getIterationNumber();
+                sink.accept(liveResult(number == 1 ? "op (Original Input Payload)" : "op", number,
+                        number == 2 ? "<response id=\"2\">changed</response>" : iteration.getResponsePayload()));
+                sink.accept(liveResult("other", number, "<other/>"));
+            }
+        }
+
+        Config config = new Config();
+        config.setTestType("SOAP");
+        Config.BaselineConfig baselineConfig = new Config.BaselineConfig();
+        baselineConfig.setOperation("DIFF");
+        baselineConfig.setStorageDir(storageDir.toString());
+        baselineConfig.setServiceName("svc");
+        baselineConfig.setCompareDate("20240101");
+        baselineConfig.setCompareRunId("run-001");
+        baselineConfig.setDiffResultsFile(resultsFile.toString());
+        config.setBaseline(baselineConfig);
+
+        for (String matchBy : List.of("ITERATION", "TOKENS")) {
+            baselineConfig.setMatchBy(matchBy);
+            List<ComparisonResult> results = new BaselineComparisonService(storage).diffWithBaseline(config);
+            assertEquals(List.of("MATCH", "MISMATCH", "MATCH"),
+                    results.stream().map(ComparisonResult::getStatus).collect(Collectors.toList()), matchBy);
+        }
+
+        // Without the baseline's operation the file cannot be paired
+        storage.saveBaseline(new RunMetadata("run-002", "svc", "20240101", "2024-01-01T00:00:00Z", "SOAP",
+                "http://localhost", null, 3, null, List.of(), Map.of()), BaselineStorageServiceTest.iterations(3));
+        baselineConfig.setCompareRunId("run-002");
+        IllegalArgumentException error = assertThrows(IllegalArgumentException.class,
+                () -> new BaselineComparisonService(storage).diffWithBaseline(config));
+        assertTrue(error.getMessage().contains("several operations"), error.getMessage());
+    }
+
+    private static ComparisonResult liveResult(String operationName, int id, String response) {
+        ApiCallResult api = new ApiCallResult();
+        api.setStatusCode(200);
+        api.setResponsePayload(response);
+        ComparisonResult result = new ComparisonResult();
+        result.setOperationName(operationName);
+        result.setIterationTokens(Map.of("id", String.valueOf(id)));
+        result.setApi1(api);
+        return result;
+    }
+
+    @Test
+    void testBaselineModesKeepNoResultOncePublished() throws Exception {
+        byte[] body = ("{\"data\":\"" + "x".repeat(256 * 1024) + "\"}").getBytes(StandardCharsets.UTF_8);
+        HttpServer server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/resource", exchange -> {
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        server.start();
+        try {
+            ApiConfig api = new ApiConfig();
+            api.setBaseUrl("http://localhost:" + server.getAddress().getPort());
+            Operation operation = new Operation();
+            operation.setName("getResource");
+            operation.setPath("/resource");
+            operation.setMethods(List.of("GET"));
+            operation.setHeaders(Map.of("Accept", "application/json"));
+            api.setOperations(List.of(operation));
+
+            Config config = new Config();
+            config.setTestType("REST");
+            config.setComparisonMode("BASELINE");
+            config.setRestApis(Map.of("api1", api));
+            config.setMaxIterations(100);
+            config.setTokens(Map.of("id", IntStream.rangeClosed(1, 23).<Object>mapToObj(i -> i).collect(Collectors.toList())));
+            Config.BaselineConfig baselineConfig = new Config.BaselineConfig();
+            baselineConfig.setOperation("CAPTURE");
+            baselineConfig.setStorageDir(storageDir.toString());
+            baselineConfig.setServiceName("svc");
+            config.setBaseline(baselineConfig);
+
+            assertRunKeepsNoResultOncePublished(config, 24);
+
+            // Comparing against the run just captured: every response is the same
+            baselineConfig.setOperation("COMPARE");
+            baselineConfig.setCompareDate(BaselineStorageService.getTodayDate());
+            baselineConfig.setCompareRunId("run-001");
+            ResultSummary summary = assertRunKeepsNoResultOncePublished(config, 24);
+            assertEquals(24, summary.getMatches());
+        } finally {
+            server.stop(0);
+        }
+    }
+
+    @Test
+    void testCaptureResumesOnlyARunOfTheSameIterations() throws Exception {
+        HttpServer server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/resource", exchange -> {
+            byte[] body = ("{\"query\":\"" + exchange.getRequestURI().getQuery() + "\"}")
+                    .getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        server.start();
+        try {
+            ApiConfig api = new ApiConfig();
+            api.setBaseUrl("http://localhost:" + server.getAddress().getPort());
+            Operation operation = new Operation();
+            operation.setName("getResource");
+            operation.setPath("/resource");
+            operation.setMethods(List.of("GET"));
+            operation.setHeaders(Map.of("Accept", "application/json"));
+            api.setOperations(List.of(operation));
+
+            Config config = new Config();
+            config.setTestType("REST");
+            config.setRestApis(Map.of("api1", api));
+            config.setMaxIterations(10);
+            config.setTokens(Map.of("id", List.<Object>of(1, 2, 3)));
+            Config.BaselineConfig baselineConfig = new Config.BaselineConfig();
+            baselineConfig.setOperation("CAPTURE");
+            baselineConfig.setStorageDir(storageDir.toString());
+            baselineConfig.setServiceName("svc");
+            baselineConfig.setResumeCapture(true);
+            config.setBaseline(baselineConfig);
+            BaselineStorageService storage = new BaselineStorageService(storageDir.toString());
+
+            // Interrupted after two of its four iterations
+            int[] published = new int[1];
+            assertThrows(IOException.class, () -> new BaselineComparisonService(storage).captureBaseline(config,
+                    result -> {
+                        if (++published[0] == 2) {
+                            throw new IOException("interrupted");
+                        }
+                    }));
+            assertEquals("run-001", storage.findIncompleteCapture("svc").getRunId());
+
+            // Other tokens number the iterations differently: a new run is captured instead
+            config.setTokens(Map.of("id", List.<Object>of(4, 5, 6)));
+            List<ComparisonResult> results = new BaselineComparisonService(storage).captureBaseline(config);
+            assertEquals(4, results.size());
+            assertTrue(results.stream().allMatch(result -> "run-002".equals(result.getBaselineRunId())));
+            assertEquals("run-001", storage.findIncompleteCapture("svc").getRunId());
+
+            // The same tokens again continue the interrupted run
+            config.setTokens(Map.of("id", List.<Object>of(1, 2, 3)));
+            results = new BaselineComparisonService(storage).captureBaseline(config);
+            assertEquals(2, results.size());
+            assertTrue(results.stream().allMatch(result -> "run-001".equals(result.getBaselineRunId())));
+            assertNull(storage.findIncompleteCapture("svc"));
+            try (BaselineStorageService.BaselineRun run = storage.loadBaseline("svc",
+                    BaselineStorageService.getTodayDate(), "run-001")) {
+                assertEquals(4, run.size());
+            }
+        } finally {
+            server.stop(0);
+        }
+    }
+
+    // Once the last result arrives, the earlier ones must be collectable
+    private static ResultSummary assertRunKeepsNoResultOncePublished(Config config, int expected) throws Exception {
+        List<WeakReference<ComparisonResult>> published = new ArrayList<>();
+        int[] retained = new int[1];
+        ResultSummary summary = new ComparisonService().execute(config, result -> {
+            published.add(new WeakReference<>(result));
+            if (published.size() == expected) {
+                System.gc();
+                retained[0] = (int) published.stream().filter(ref -> ref.get() != null).count();
+            }
+        });
+
+        assertEquals(expected, summary.getTotal());
+        assertEquals(0, summary.getErrors());
+        assertTrue(retained[0] <= 2, retained[0] + " of " + expected + " results still held during the run");
+        return summary;
+    }
+}
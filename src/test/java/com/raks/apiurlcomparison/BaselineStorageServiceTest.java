@@ -0,0 +1,362 @@
+package com.raks.apiurlcomparison;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class BaselineStorageServiceTest {
+
+    @TempDir
+    Path storageDir;
+
+    @Test
+    void testPackedRunRoundTrip() throws Exception {
+        BaselineStorageService storage = new BaselineStorageService(storageDir.toString());
+        storage.saveBaseline(metadata("run-001", 3), iterations(3));
+
+        Path runDir = storageDir.resolve("svc/20240101/run-001");
+        assertTrue(Files.exists(runDir.resolve(BaselineSegment.FILE_NAME)));
+        assertFalse(Files.exists(runDir.resolve("iteration-001")));
+
+        BaselineStorageService.BaselineRun run = storage.loadBaseline("svc", "20240101", "run-001");
+        assertEquals(3, run.getIterations().size());
+        BaselineStorageService.BaselineIteration second = run.getIterations().get(1);
+        assertEquals(2, second.getIterationNumber());
+        assertEquals("<response id=\"2\">é</response>", second.getResponsePayload());
+        assertEquals("2", second.getRequestMetadata().getTokensUsed().get("id"));
+        assertEquals(200, second.getResponseMetadata().get("statusCode"));
+        assertNull(second.getResponseHeaders());
+    }
+
+    @Test
+    void testDirectoryRunIsConvertedToPacked() throws Exception {
+        BaselineStorageService directory = new BaselineStorageService(storageDir.toString(),
+                BaselineStorageService.StorageFormat.DIRECTORY);
+        directory.saveBaseline(metadata("run-001", 2), iterations(2));
+        Path runDir = storageDir.resolve("svc/20240101/run-001");
+        assertTrue(Files.isDirectory(runDir.resolve("iteration-001")));
+
+        BaselineStorageService storage = new BaselineStorageService(storageDir.toString());
+        String reserved = storage.generateRunId("svc", "20240101");
+        assertEquals(1, storage.convertAllToPacked());
+
+        assertFalse(Files.exists(runDir.resolve("iteration-001")));
+        assertFalse(BaselineSegment.exists(storageDir.resolve("svc/20240101").resolve(reserved)));
+        List<BaselineStorageService.BaselineIteration> loaded = storage.loadBaseline("svc", "20240101", "run-001")
+                .getIterations();
+        assertEquals(2, loaded.size());
+        assertEquals("<request id=\"1\"/>", loaded.get(0).getRequestPayload());
+        assertEquals(0, storage.convertAllToPacked());
+    }
+
+    @Test
+    void testCompressedRunWithDictionaryRoundTrip() throws Exception {
+        List<BaselineStorageService.BaselineIteration> iterations = new ArrayList<>();
+        for (BaselineStorageService.BaselineIteration iteration : iterations(5)) {
+            StringBuilder body = new StringBuilder("<accounts>\n");
+            for (int row = 0; row < 50; row++) {
+                body.append("  <account><id>").append(iteration.getIterationNumber() * 100 + row)
+                        .append("</id><status>ACTIVE</status></account>\n");
+            }
+            iterations.add(withResponse(iteration, body.append("</accounts>").toString()));
+        }
+        // Without deduplication, so the responses are compressed into the segment itself
+        BaselineStorageService storage = new BaselineStorageService(storageDir.toString(),
+                BaselineStorageService.StorageFormat.PACKED, true, 3, false);
+        storage.saveBaseline(metadata("run-001", 5), iterations);
+
+        Path segment = storageDir.resolve("svc/20240101/run-001").resolve(BaselineSegment.FILE_NAME);
+        long rawSize = iterations.stream().mapToLong(i -> i.getResponsePayload().length()).sum();
+        assertTrue(Files.size(segment) < rawSize / 4, "segment should be compressed");
+
+        List<BaselineStorageService.BaselineIteration> loaded = storage.loadBaseline("svc", "20240101", "run-001")
+                .getIterations();
+        assertEquals(5, loaded.size());
+        for (int i = 0; i < 5; i++) {
+            assertEquals(iterations.get(i).getResponsePayload(), loaded.get(i).getResponsePayload());
+            assertEquals(i + 1, loaded.get(i).getIterationNumber());
+        }
+    }
+
+    @Test
+    void testCorruptPayloadFailsChecksum() throws Exception {
+        BaselineStorageService storage = new BaselineStorageService(storageDir.toString(),
+                BaselineStorageService.StorageFormat.PACKED, false, 0, true);
+        storage.saveBaseline(metadata("run-001", 2), iterations(2));
+
+        Path segment = storageDir.resolve("svc/20240101/run-001").resolve(BaselineSegment.FILE_NAME);
+        byte[] bytes = Files.readAllBytes(segment);
+        String content = new String(bytes, StandardCharsets.ISO_8859_1);
+        bytes[content.indexOf("<response id=\"2\"") + 1] = 'R';
+        Files.write(segment, bytes);
+
+        IOException e = assertThrows(IOException.class,
+                () -> storage.loadBaseline("svc", "20240101", "run-001"));
+        assertTrue(e.getMessage().contains("Checksum"), e.getMessage());
+    }
+
+    @Test
+    void testPayloadsAreDeduplicatedAcrossRuns() throws Exception {
+        String body = "<response>" + "x".repeat(BaselineSegment.MIN_BLOB_LENGTH) + "</response>";
+        List<BaselineStorageService.BaselineIteration> iterations = new ArrayList<>();
+        for (BaselineStorageService.BaselineIteration iteration : iterations(3)) {
+            iterations.add(withResponse(iteration, body));
+        }
+        BaselineStorageService storage = new BaselineStorageService(storageDir.toString());
+        storage.saveBaseline(metadata("run-001", 3), iterations);
+        storage.saveBaseline(metadata("run-002", 3), iterations);
+
+        // One pack for the service, one reference per run
+        String hash = BaselineBlobStore.hex(BaselineBlobStore.hash(body));
+        BaselineBlobStore blobs = new BaselineBlobStore(storageDir.resolve("svc"), true);
+        Path run1 = storageDir.resolve("svc/20240101/run-001");
+        assertEquals(Set.of(hash), BaselineBlobStore.references(run1));
+        assertEquals(Set.of(hash), BaselineBlobStore.references(storageDir.resolve("svc/20240101/run-002")));
+        assertEquals(List.of("20240101"), storage.listDates("svc"));
+
+        BaselineStorageService.BaselineIteration loaded = storage.loadBaseline("svc", "20240101", "run-002")
+                .getIterations().get(2);
+        assertEquals(hash, loaded.getResponsePayloadHash());
+        assertEquals(body, loaded.getResponsePayload());
+
+        assertTrue(storage.deleteRun("svc", "20240101", "run-001"));
+        assertTrue(blobs.contains(hash));
+        assertEquals(body, storage.loadBaseline("svc", "20240101", "run-002").getIterations().get(0)
+                .getResponsePayload());
+
+        // Requests stay inline however long; compacting the pack moves the blobs that stay
+        String request = "<request>" + "y".repeat(BaselineSegment.MIN_BLOB_LENGTH) + "</request>";
+        String other = body.replace('x', 'z');
+        storage.saveBaseline(metadata("run-003", 1), List.of(new BaselineStorageService.BaselineIteration(1,
+                request, null, iterations.get(0).getRequestMetadata(), other, null, null)));
+        assertEquals(Set.of(BaselineBlobStore.hex(BaselineBlobStore.hash(other))),
+                BaselineBlobStore.references(storageDir.resolve("svc/20240101/run-003")));
+        assertTrue(storage.deleteRun("svc", "20240101", "run-002"));
+        assertFalse(blobs.contains(hash));
+        assertThrows(IOException.class, () -> blobs.get(hash));
+        assertEquals(other, storage.loadBaseline("svc", "20240101", "run-003").getIterations().get(0)
+                .getResponsePayload());
+    }
+
+    @Test
+    void testInterruptedCaptureIsResumed() throws Exception {
+        BaselineStorageService storage = new BaselineStorageService(storageDir.toString());
+        List<BaselineStorageService.BaselineIteration> iterations = iterations(4);
+        BaselineCaptureWriter writer = storage.startCapture(metadata("run-001", 0), 1);
+        writer.append(iterations.get(1));
+        writer.append(iterations.get(0));
+        writer.close(); // Interrupted before complete()
+
+        Path runDir = storageDir.resolve("svc/20240101/run-001");
+        // A record torn by the interruption
+        Files.write(BaselineCaptureWriter.partialSegment(runDir), new byte[] { 0, 0, 1, 0, 0, 0 },
+                StandardOpenOption.APPEND);
+        assertThrows(IOException.class, () -> storage.loadBaseline("svc", "20240101", "run-001"));
+        assertTrue(storage.listRuns("svc", "20240101").isEmpty());
+        assertEquals("run-001", storage.findIncompleteCapture("svc").getRunId());
+
+        try (BaselineCaptureWriter resumed = storage.resumeCapture("svc", "20240101", "run-001", 1)) {
+            assertEquals(2, resumed.getCapturedCount());
+            assertTrue(resumed.isCaptured(2));
+            assertFalse(resumed.isCaptured(3));
+            resumed.append(iterations.get(3));
+            resumed.append(iterations.get(2));
+            resumed.complete();
+        }
+
+        assertNull(storage.findIncompleteCapture("svc"));
+        BaselineStorageService.BaselineRun run = storage.loadBaseline("svc", "20240101", "run-001");
+        assertEquals(4, run.getMetadata().getTotalIterations());
+        for (int i = 0; i < 4; i++) {
+            assertEquals(i + 1, run.getIterations().get(i).getIterationNumber());
+        }
+        assertEquals("<request id=\"2\"/>", run.getIterations().get(1).getRequestPayload());
+    }
+
+    @Test
+    void testDamageBeforeTheTailFailsTheResume() throws Exception {
+        BaselineStorageService storage = new BaselineStorageService(storageDir.toString());
+        BaselineCaptureWriter writer = storage.startCapture(metadata("run-001", 0), 1);
+        for (BaselineStorageService.BaselineIteration iteration : iterations(2)) {
+            writer.append(iteration);
+        }
+        writer.close(); // Interrupted before complete()
+
+        // Resuming with other settings than the capture was started with
+        BaselineStorageService uncompressed = new BaselineStorageService(storageDir.toString(),
+                BaselineStorageService.StorageFormat.PACKED, false, 0, true);
+        IOException mismatch = assertThrows(IOException.class,
+                () -> uncompressed.resumeCapture("svc", "20240101", "run-001", 1));
+        assertTrue(mismatch.getMessage().contains("compressed=true"), mismatch.getMessage());
+
+        // A flipped byte in the first of two records is not a torn tail
+        Path runDir = storageDir.resolve("svc/20240101/run-001");
+        Path segment = BaselineCaptureWriter.partialSegment(runDir);
+        byte[] bytes = Files.readAllBytes(segment);
+        int firstFieldBytes = (int) BaselineCaptureWriter.markedOffset(BaselineCaptureWriter.readMarker(runDir),
+                "recordsOffset") + 4 + 4 + 13;
+        bytes[firstFieldBytes] ^= 0x55;
+        Files.write(segment, bytes);
+        IOException e = assertThrows(IOException.class,
+                () -> storage.resumeCapture("svc", "20240101", "run-001", 1));
+        assertTrue(e.getMessage().contains("not the last one"), e.getMessage());
+        assertEquals(bytes.length, Files.size(segment));
+    }
+
+    @Test
+    void testLiveCaptureIsNotResumed() throws Exception {
+        BaselineStorageService storage = new BaselineStorageService(storageDir.toString());
+        List<BaselineStorageService.BaselineIteration> iterations = iterations(2);
+        BaselineCaptureWriter writer = storage.startCapture(metadata("run-001", 0), 1);
+        writer.append(iterations.get(0));
+
+        // Still being written: neither offered for resumption nor resumable, nor deleted
+        assertNull(storage.findIncompleteCapture("svc"));
+        assertNull(storage.resumeIncompleteCapture("svc", run -> true, 1));
+        assertThrows(IOException.class, () -> storage.resumeCapture("svc", "20240101", "run-001", 1));
+        assertThrows(IOException.class, () -> storage.deleteRun("svc", "20240101", "run-001"));
+
+        writer.close(); // Interrupted before complete()
+        assertEquals("run-001", storage.findIncompleteCapture("svc").getRunId());
+        try (BaselineCaptureWriter resumed = storage.resumeIncompleteCapture("svc", run -> true, 1)) {
+            assertEquals(1, resumed.getCapturedCount());
+            assertThrows(IOException.class, () -> storage.resumeCapture("svc", "20240101", "run-001", 1));
+            resumed.append(iterations.get(1));
+            resumed.complete();
+        }
+        assertEquals(2, storage.loadBaseline("svc", "20240101", "run-001").getMetadata().getTotalIterations());
+        assertTrue(storage.deleteRun("svc", "20240101", "run-001"));
+        assertFalse(Files.exists(storageDir.resolve("svc/20240101/run-001")));
+    }
+
+    @Test
+    void testOpenedRunIsReadLazilyInOrder() throws Exception {
+        BaselineStorageService storage = new BaselineStorageService(storageDir.toString());
+        storage.saveBaseline(metadata("run-001", 10), iterations(10));
+
+        try (BaselineStorageService.BaselineRun run = storage.openBaseline("svc", "20240101", "run-001")) {
+            assertEquals(10, run.size());
+            assertEquals(7, run.getIteration(6).getIterationNumber());
+            for (int prefetch : new int[] { 0, 3 }) {
+                try (BaselineStorageService.BaselineRun.Cursor cursor = run.cursor(prefetch)) {
+                    for (int i = 1; i <= 10; i++) {
+                        assertTrue(cursor.hasNext());
+                        assertEquals("<request id=\"" + i + "\"/>", cursor.next().getRequestPayload());
+                    }
+                    assertFalse(cursor.hasNext());
+                }
+            }
+        }
+    }
+
+    @Test
+    void testRunsAreListedAndFoundThroughCatalog() throws Exception {
+        BaselineStorageService storage = new BaselineStorageService(storageDir.toString());
+        storage.saveBaseline(metadata("run-001", 2), iterations(2));
+        RunMetadata later = metadata("run-001", 2);
+        later.setCaptureDate("20240301");
+        later.setDescription("Nightly regression");
+        later.setTags(List.of("nightly"));
+        storage.saveBaseline(later, iterations(2));
+
+        assertTrue(Files.exists(storageDir.resolve(BaselineCatalog.FILE_NAME)));
+        assertEquals(List.of("svc"), storage.listServices());
+        assertEquals(List.of("20240301", "20240101"), storage.listDates("svc"));
+        assertEquals("test run", storage.listRuns("svc", "20240101").get(0).getDescription());
+
+        assertEquals(List.of("20240301", "20240101"), storage.findRuns("svc", null, null, null, null).stream()
+                .map(RunMetadata::getCaptureDate).toList());
+        assertEquals("20240301", storage.findRuns(null, "nightly", null, null, null).get(0).getCaptureDate());
+        assertEquals("20240301", storage.findRuns(null, null, "REGRESSION", null, null).get(0).getCaptureDate());
+        assertEquals("20240101", storage.findRuns("svc", null, null, "20231201", "20240201").get(0).getCaptureDate());
+        assertTrue(storage.findRuns("svc", "nightly", null, null, "20240201").isEmpty());
+
+        Files.delete(storageDir.resolve(BaselineCatalog.FILE_NAME));
+        assertEquals(2, storage.rebuildCatalog());
+        assertTrue(storage.deleteRun("svc", "20240101", "run-001"));
+        assertEquals(List.of("20240301"), storage.listDates("svc"));
+
+        // Replaced by another host: seen on the next lookup, whether or not a file event arrives
+        Files.writeString(storageDir.resolve(BaselineCatalog.FILE_NAME), "[]");
+        assertTrue(storage.listServices().isEmpty());
+
+        // An unreadable metadata.json leaves its run out instead of failing the rebuild
+        storage.saveBaseline(metadata("run-002", 2), iterations(2));
+        Files.writeString(storageDir.resolve("svc/20240301/run-001/metadata.json"), "{not json");
+        assertEquals(1, storage.rebuildCatalog());
+        assertEquals(List.of("20240101"), storage.listDates("svc"));
+    }
+
+    @Test
+    void testConcurrentRunIdsAreDistinct() throws Exception {
+        BaselineStorageService storage = new BaselineStorageService(storageDir.toString());
+        storage.saveBaseline(metadata("run-001", 1), iterations(1));
+
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<String>> runIds = new ArrayList<>();
+            for (int i = 0; i < 32; i++) {
+                runIds.add(executor.submit(() -> storage.generateRunId("svc", "20240101")));
+            }
+            Set<String> distinct = new HashSet<>();
+            for (Future<String> runId : runIds) {
+                assertTrue(distinct.add(runId.get()));
+            }
+            assertEquals(32, distinct.size());
+            assertFalse(distinct.contains("run-001"));
+        } finally {
+            executor.shutdown();
+        }
+        assertThrows(IOException.class, () -> storage.startCapture(metadata("run-001", 1), 0));
+    }
+
+    static RunMetadata metadata(String runId, int iterations) {
+        return new RunMetadata(runId, "svc", "20240101", "2024-01-01T00:00:00Z", "SOAP",
+                "http://localhost", "op", iterations, "test run", List.of("t"), new HashMap<>());
+    }
+
+    static List<BaselineStorageService.BaselineIteration> iterations(int count) {
+        List<BaselineStorageService.BaselineIteration> iterations = new ArrayList<>();
+        for (int i = 1; i <= count; i++) {
+            Map<String, String> tokens = Map.of("id", String.valueOf(i));
+            IterationMetadata request = new IterationMetadata(i, "2024-01-01 00:00:00", tokens,
+                    "http://localhost", "POST", null, Map.of());
+            Map<String, Object> response = new HashMap<>();
+            response.put("statusCode", 200);
+            response.put("duration", 5);
+            iterations.add(new BaselineStorageService.BaselineIteration(i, "<request id=\"" + i + "\"/>",
+                    Map.of("Content-Type", "text/xml"), request, "<response id=\"" + i + "\">é</response>",
+                    null, response));
+        }
+        return iterations;
+    }
+
+    // The same iteration, answered differently
+    static BaselineStorageService.BaselineIteration withResponse(BaselineStorageService.BaselineIteration iteration,
+            String response) {
+        return withResponse(iteration.getIterationNumber(), iteration, response);
+    }
+
+    static BaselineStorageService.BaselineIteration withResponse(int iterationNumber,
+            BaselineStorageService.BaselineIteration iteration, String response) {
+        return new BaselineStorageService.BaselineIteration(iterationNumber, iteration.getRequestPayload(),
+                iteration.getRequestHeaders(), iteration.getRequestMetadata(), response, null,
+                iteration.getResponseMetadata());
+    }
+}
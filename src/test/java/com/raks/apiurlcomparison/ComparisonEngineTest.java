@@ -2,6 +2,8 @@ package com.raks.apiurlcomparison;
 
 import org.junit.jupiter.api.Test;
 
+import java.util.List;
+
 import static org.junit.jupiter.api.Assertions.*;
 
 public class ComparisonEngineTest {
@@ -104,4 +106,209 @@ public class ComparisonEngineTest {
 
         assertEquals(ComparisonResult.Status.MATCH.name(), result.getStatus());
     }
+
+    @Test
+    void testCompare_RestKeyOrderAndWhitespaceIgnored() {
+        ComparisonResult result = result("{\"id\":1,\"tags\":[\"a\",\"b\"],\"n\":1.0}",
+                "{ \"n\" : 1.00,\n  \"tags\" : [ \"a\", \"b\" ], \"id\" : 1 }");
+
+        ComparisonEngine.compare(result, "REST");
+
+        assertEquals(ComparisonResult.Status.MATCH.name(), result.getStatus());
+    }
+
+    @Test
+    void testCompare_RestCanonicalHashKeepsTypesAndArrayOrder() {
+        ComparisonResult intVsFloat = result("{\"n\":1}", "{\"n\":1.0}");
+        ComparisonEngine.compare(intVsFloat, "REST");
+        assertEquals(ComparisonResult.Status.MISMATCH.name(), intVsFloat.getStatus());
+
+        ComparisonResult arrayOrder = result("[1,2]", "[2,1]");
+        ComparisonEngine.compare(arrayOrder, "REST");
+        assertEquals(ComparisonResult.Status.MISMATCH.name(), arrayOrder.getStatus());
+
+        ComparisonResult stringVsNumber = result("{\"n\":\"1\"}", "{\"n\":1}");
+        ComparisonEngine.compare(stringVsNumber, "REST");
+        assertEquals(ComparisonResult.Status.MISMATCH.name(), stringVsNumber.getStatus());
+    }
+
+    @Test
+    void testCompare_SoapAttributeOrderIgnored() {
+        ComparisonResult result = result("<root a=\"1\" b=\"2\"><!-- x --><v>ok</v></root>",
+                "<root b=\"2\" a=\"1\">\n  <v>ok</v>\n</root>");
+
+        ComparisonEngine.compare(result, "SOAP");
+
+        assertEquals(ComparisonResult.Status.MATCH.name(), result.getStatus());
+    }
+
+    @Test
+    void testCompare_SoapAttributePrefixKept() {
+        ComparisonResult result = result("<root xmlns:a=\"urn:x\" xmlns:b=\"urn:x\" a:id=\"1\"/>",
+                "<root xmlns:a=\"urn:x\" xmlns:b=\"urn:x\" b:id=\"1\"/>");
+        ComparisonEngine.compare(result, "SOAP");
+        assertEquals(ComparisonResult.Status.MISMATCH.name(), result.getStatus());
+
+        ComparisonResult ignored = result(result.getApi1().getResponsePayload(),
+                result.getApi2().getResponsePayload());
+        ComparisonEngine.compare(ignored, "SOAP", ComparisonOptions.defaults().withNamespaces(List.of(), true));
+        assertEquals(ComparisonResult.Status.MATCH.name(), ignored.getStatus());
+    }
+
+    @Test
+    void testCompare_RestDifferenceLimit() {
+        StringBuilder array1 = new StringBuilder("[");
+        StringBuilder array2 = new StringBuilder("[");
+        for (int i = 0; i < 500; i++) {
+            array1.append(i == 0 ? "" : ",").append("{\"id\":").append(i).append(",\"ts\":\"a\"}");
+            array2.append(i == 0 ? "" : ",").append("{\"id\":").append(i).append(",\"ts\":\"b\"}");
+        }
+        ComparisonResult result = result(array1.append(']').toString(), array2.append(']').toString());
+
+        ComparisonEngine.compare(result, "REST",
+                new ComparisonOptions(10, ComparisonOptions.ArrayAlignment.INDEX, null));
+
+        assertEquals(ComparisonResult.Status.MISMATCH.name(), result.getStatus());
+        assertEquals(11, result.getDifferences().size());
+        assertEquals("Values differ at $[0].ts. API 1: a, API 2: b", result.getDifferences().get(0));
+        assertTrue(result.getDifferences().get(10).startsWith("Difference limit (10)"));
+    }
+
+    @Test
+    void testCompare_RestHashAlignmentReportsOnlyInsert() {
+        StringBuilder array1 = new StringBuilder("[");
+        StringBuilder array2 = new StringBuilder("[{\"id\":-1}");
+        for (int i = 0; i < 100; i++) {
+            array1.append(i == 0 ? "" : ",").append("{\"id\":").append(i).append('}');
+            array2.append(",{\"id\":").append(i == 50 ? 999 : i).append('}');
+        }
+        ComparisonResult result = result(array1.append(']').toString(), array2.append(']').toString());
+
+        ComparisonEngine.compare(result, "REST",
+                new ComparisonOptions(0, ComparisonOptions.ArrayAlignment.HASH, null));
+
+        assertEquals(List.of("Missing element in API 1: $[0]", "Values differ at $[50].id. API 1: null, API 2: null"),
+                result.getDifferences());
+    }
+
+    @Test
+    void testCompare_RestKeyAlignment() {
+        ComparisonResult result = result(
+                "{\"items\":[{\"id\":1,\"v\":\"a\"},{\"id\":2,\"v\":\"b\"},{\"id\":3,\"v\":\"c\"}]}",
+                "{\"items\":[{\"id\":4,\"v\":\"d\"},{\"id\":3,\"v\":\"c\"},{\"id\":1,\"v\":\"x\"}]}");
+
+        ComparisonEngine.compare(result, "REST",
+                new ComparisonOptions(0, ComparisonOptions.ArrayAlignment.KEY, "id"));
+
+        assertEquals(List.of(
+                "Values differ at $.items[id=1].v. API 1: a, API 2: x",
+                "Missing element in API 2: $.items[id=2]",
+                "Missing element in API 1: $.items[id=4]"), result.getDifferences());
+    }
+
+    @Test
+    void testCompare_RestIgnoreAndNormalizeRules() {
+        Config.NormalizeRule uuid = new Config.NormalizeRule();
+        uuid.setPath("$.items[*].ref");
+        uuid.setPattern("[0-9a-f]{8}-[0-9a-f-]{27}");
+        uuid.setReplacement("<uuid>");
+        ComparisonRules rules = ComparisonRules.compile(List.of("$.meta.timestamp", "$..traceId"), List.of(uuid));
+        ComparisonResult result = result(
+                "{\"meta\":{\"timestamp\":1,\"traceId\":\"a\"},\"items\":[{\"ref\":\"R-1b4e28ba-2fa1-11d2-883f-0016d3cca427\",\"traceId\":\"b\"}]}",
+                "{\"meta\":{\"timestamp\":2},\"items\":[{\"ref\":\"R-6fa459ea-ee8a-3ca4-894e-db77e160355e\",\"traceId\":\"c\"}]}");
+
+        ComparisonEngine.compare(result, "REST",
+                new ComparisonOptions(0, ComparisonOptions.ArrayAlignment.INDEX, null, rules));
+
+        assertEquals(ComparisonResult.Status.MATCH.name(), result.getStatus());
+        assertTrue(result.getDifferences().isEmpty());
+    }
+
+    @Test
+    void testCompare_SoapIgnoreRules() {
+        ComparisonRules rules = ComparisonRules.compile(List.of("//MessageID", "//Order/@created"), null);
+        ComparisonResult result = result(
+                "<soap:Envelope xmlns:soap=\"http://schemas.xmlsoap.org/soap/envelope/\"><soap:Header><MessageID>1</MessageID></soap:Header>"
+                        + "<soap:Body><Order created=\"t1\" id=\"7\"/></soap:Body></soap:Envelope>",
+                "<soap:Envelope xmlns:soap=\"http://schemas.xmlsoap.org/soap/envelope/\"><soap:Header><MessageID>2</MessageID></soap:Header>"
+                        + "<soap:Body><Order created=\"t2\" id=\"8\"/></soap:Body></soap:Envelope>");
+
+        ComparisonEngine.compare(result, "SOAP",
+                new ComparisonOptions(0, ComparisonOptions.ArrayAlignment.INDEX, null, rules));
+
+        assertEquals(ComparisonResult.Status.MISMATCH.name(), result.getStatus());
+        assertEquals(1, result.getDifferences().size());
+        assertTrue(result.getDifferences().get(0).contains("@id"));
+    }
+
+    @Test
+    void testCompare_SoapIgnoredNamespacesAndPrefixes() {
+        ComparisonOptions options = ComparisonOptions.defaults()
+                .withNamespaces(List.of("http://www.w3.org/2005/08/addressing"), true);
+        ComparisonResult result = result(
+                "<a:Order xmlns:a=\"urn:orders\"><wsa:MessageID xmlns:wsa=\"http://www.w3.org/2005/08/addressing\">1</wsa:MessageID><a:id>7</a:id></a:Order>",
+                "<b:Order xmlns:b=\"urn:orders\"><b:id>7</b:id><w:MessageID xmlns:w=\"http://www.w3.org/2005/08/addressing\">2</w:MessageID></b:Order>");
+
+        ComparisonEngine.compare(result, "SOAP", options);
+        assertEquals(ComparisonResult.Status.MATCH.name(), result.getStatus());
+
+        ComparisonResult strict = result(result.getApi1().getResponsePayload(), result.getApi2().getResponsePayload());
+        ComparisonEngine.compare(strict, "SOAP");
+        assertEquals(ComparisonResult.Status.MISMATCH.name(), strict.getStatus());
+        assertFalse(strict.getDifferences().isEmpty());
+    }
+
+    @Test
+    void testCompare_SoapStreamingReportsLocations() {
+        ComparisonOptions streaming = ComparisonOptions.defaults().withStreamingXmlThreshold(0);
+        ComparisonResult result = result(
+                "<Statement><!-- v1 --><Line amount=\"10\">a</Line><Line amount=\"20\">b</Line><Total>30</Total></Statement>",
+                "<Statement>\n  <Line amount=\"10\">a</Line>\n  <Line amount=\"25\">b</Line>\n  <Fee>1</Fee><Total>31</Total>\n</Statement>");
+
+        ComparisonEngine.compare(result, "SOAP", streaming);
+
+        assertEquals(ComparisonResult.Status.MISMATCH.name(), result.getStatus());
+        assertEquals(List.of(
+                "Attribute value differs at /Statement[1]/Line[2]/@amount. API 1: 20, API 2: 25",
+                "Element differs at /Statement[1]/Total[1]. API 1: Total, API 2: Fee",
+                "Missing element in API 1: /Statement[1]/Total[2]"), result.getDifferences());
+    }
+
+    @Test
+    void testCompare_SoapStreamingAppliesRules() {
+        ComparisonRules rules = ComparisonRules.compile(List.of("//MessageID", "//Order/@created"), null);
+        ComparisonOptions streaming = new ComparisonOptions(0, ComparisonOptions.ArrayAlignment.INDEX, null, rules)
+                .withStreamingXmlThreshold(0);
+        ComparisonResult result = result(
+                "<Envelope><Header><MessageID>1</MessageID></Header><Body><Order created=\"t1\" id=\"7\"/></Body></Envelope>",
+                "<Envelope><Header><MessageID>2</MessageID></Header><Body><Order id=\"7\" created=\"t2\"/></Body></Envelope>");
+
+        ComparisonEngine.compare(result, "SOAP", streaming);
+
+        assertEquals(ComparisonResult.Status.MATCH.name(), result.getStatus());
+    }
+
+    @Test
+    void testCompare_FormatsAreDetectedFromTheBody() {
+        ComparisonResult htmlError = result("{\"id\":1}", "<html><body>404 Not Found</body></html>");
+        ComparisonEngine.compare(htmlError, "REST");
+        assertEquals(ComparisonResult.Status.MISMATCH.name(), htmlError.getStatus());
+        assertEquals(List.of("Response formats differ. API 1: json, API 2: text"), htmlError.getDifferences());
+
+        ComparisonResult form = result("b=2&a=1&c=x", "a=1&b=3");
+        ComparisonEngine.compare(form, "REST");
+        assertEquals(List.of("Values differ at $.b. API 1: 2, API 2: 3", "Missing field in API 2: $.c"),
+                form.getDifferences());
+    }
+
+    private static ComparisonResult result(String response1, String response2) {
+        ComparisonResult result = new ComparisonResult();
+        ApiCallResult api1 = new ApiCallResult();
+        api1.setResponsePayload(response1);
+        ApiCallResult api2 = new ApiCallResult();
+        api2.setResponsePayload(response2);
+        result.setApi1(api1);
+        result.setApi2(api2);
+        return result;
+    }
 }
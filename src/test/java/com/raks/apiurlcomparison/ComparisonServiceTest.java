@@ -0,0 +1,118 @@
+package com.raks.apiurlcomparison;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ComparisonServiceTest {
+
+    private static final Pattern ID = Pattern.compile("\"id\"\\s*:\\s*\"?(\\d+)");
+
+    @Test
+    void testParallelIterationsArePublishedInOrderWithinTheWindow() throws Exception {
+        int concurrency = 3;
+        int tokens = 12;
+        // Both calls of an iteration meet here, so neither can be answered unless they overlap
+        Map<Integer, CountDownLatch> bothSides = new ConcurrentHashMap<>();
+        Set<Integer> started = ConcurrentHashMap.newKeySet();
+        Set<Integer> alone = ConcurrentHashMap.newKeySet();
+        HttpServer server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        ExecutorService handlers = Executors.newCachedThreadPool();
+        server.setExecutor(handlers);
+        for (String path : List.of("/api1", "/api2")) {
+            server.createContext(path, exchange -> {
+                String body = new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8);
+                int id = id(body);
+                started.add(id);
+                try {
+                    CountDownLatch latch = bothSides.computeIfAbsent(id, k -> new CountDownLatch(2));
+                    latch.countDown();
+                    if (!latch.await(5, TimeUnit.SECONDS)) {
+                        alone.add(id);
+                    }
+                    // Later iterations answer first
+                    Thread.sleep((tokens - id) * 15L);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                respond(exchange, body);
+            });
+        }
+        server.start();
+        try {
+            String baseUrl = "http://localhost:" + server.getAddress().getPort();
+            Config config = new Config();
+            config.setTestType("REST");
+            config.setRestApis(Map.of("api1", api(baseUrl, "/api1"), "api2", api(baseUrl, "/api2")));
+            config.setMaxIterations(100);
+            config.setConcurrency(concurrency);
+            config.setTokens(Map.of("id", IntStream.rangeClosed(1, tokens).<Object>mapToObj(i -> i)
+                    .collect(Collectors.toList())));
+
+            List<Integer> published = new ArrayList<>();
+            int window = 2 * concurrency;
+            ResultSummary summary = new ComparisonService().execute(config, result -> {
+                published.add(id(result.getApi1().getResponsePayload()));
+                // Iterations are submitted only as earlier ones are published
+                assertTrue(started.size() <= published.size() + window,
+                        started.size() + " iterations started with " + published.size() + " published");
+            });
+
+            // The original payload (id 0) first, then every token in iteration order
+            assertEquals(IntStream.rangeClosed(0, tokens).boxed().collect(Collectors.toList()), published);
+            assertEquals(tokens + 1, summary.getMatches());
+            assertTrue(alone.isEmpty(), "api1 and api2 not in flight together for " + alone);
+        } finally {
+            server.stop(0);
+            handlers.shutdownNow();
+        }
+    }
+
+    private static ApiConfig api(String baseUrl, String path) {
+        Operation operation = new Operation();
+        operation.setName("echo");
+        operation.setPath(path);
+        operation.setMethods(List.of("POST"));
+        operation.setHeaders(Map.of("Content-Type", "application/json"));
+        operation.setPayloadTemplatePath("{\"id\":0}");
+        ApiConfig api = new ApiConfig();
+        api.setBaseUrl(baseUrl);
+        api.setOperations(List.of(operation));
+        return api;
+    }
+
+    private static int id(String body) {
+        Matcher matcher = ID.matcher(body);
+        assertTrue(matcher.find(), body);
+        return Integer.parseInt(matcher.group(1));
+    }
+
+    private static void respond(HttpExchange exchange, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().add("Content-Type", "application/json");
+        exchange.sendResponseHeaders(200, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package com.raks.apiurlcomparison;
+
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class JsonLinesResultSinkTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void testWritesOneLinePerResultAndReadsBack() throws Exception {
+        File log = tempDir.resolve("results.jsonl").toFile();
+        ResultSummary summary = new ResultSummary();
+        try (JsonLinesResultSink sink = new JsonLinesResultSink(log)) {
+            for (int i = 0; i < 3; i++) {
+                ComparisonResult result = result("op" + i, i == 1 ? ComparisonResult.Status.MISMATCH
+                        : ComparisonResult.Status.MATCH);
+                sink.accept(result);
+                summary.add(result);
+            }
+            // Flushed per result: readable before the sink is closed
+            assertEquals(3, Files.readAllLines(log.toPath()).size());
+        }
+
+        try (MappingIterator<ComparisonResult> results = JsonLinesResultSink.read(log)) {
+            List<ComparisonResult> all = results.readAll();
+            assertEquals(3, all.size());
+            assertEquals("op1", all.get(1).getOperationName());
+            assertEquals("MISMATCH", all.get(1).getStatus());
+            assertEquals("<a>1</a>", all.get(0).getApi1().getResponsePayload());
+            assertEquals(Map.of("id", 7), all.get(2).getIterationTokens());
+        }
+        assertEquals(2, summary.getMatches());
+        assertEquals(1, summary.getMismatches());
+        assertEquals(30, summary.getTotalDuration());
+
+        File html = HtmlReportGenerator.generateHtmlReport(log, summary, tempDir.resolve("results.json").toString());
+        assertTrue(Files.readString(html.toPath()).contains("details-3"));
+        File json = HtmlReportGenerator.generateJsonReport(log, tempDir.toString());
+        assertEquals(3, new ObjectMapper().readTree(json).size());
+    }
+
+    private static ComparisonResult result(String operation, ComparisonResult.Status status) {
+        ComparisonResult result = new ComparisonResult();
+        result.setOperationName(operation);
+        result.setStatus(status);
+        result.setIterationTokens(Map.of("id", 7));
+        ApiCallResult api1 = new ApiCallResult();
+        api1.setResponsePayload("<a>1</a>");
+        api1.setDuration(10);
+        result.setApi1(api1);
+        return result;
+    }
+}
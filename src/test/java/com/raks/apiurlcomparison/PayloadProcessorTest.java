@@ -0,0 +1,86 @@
+package com.raks.apiurlcomparison;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class PayloadProcessorTest {
+
+    @Test
+    void testJson_ReplacesMatchingFields() throws Exception {
+        PayloadProcessor processor = new PayloadProcessor(
+                "{\"accountId\":1,\"name\":\"x\",\"details\":{\"uuid\":\"old\"}}", "REST");
+
+        Map<String, Object> tokens = new HashMap<>();
+        tokens.put("account", 42);
+        tokens.put("uuid", "id-1");
+
+        assertEquals("{\"accountId\":42.0,\"name\":\"x\",\"details\":{\"uuid\":\"id-1\"}}",
+                processor.process(tokens));
+    }
+
+    @Test
+    void testJson_NumberTokenIntoStringFieldStaysString() throws Exception {
+        PayloadProcessor processor = new PayloadProcessor("{\"account\":\"999\"}", "REST");
+
+        Map<String, Object> tokens = new HashMap<>();
+        tokens.put("account", 1000);
+
+        assertEquals("{\"account\":\"1000\"}", processor.process(tokens));
+    }
+
+    @Test
+    void testJson_OuterMatchReplacesNestedSlots() throws Exception {
+        PayloadProcessor processor = new PayloadProcessor(
+                "{\"accountInfo\":{\"accountNumber\":\"1\"}}", "REST");
+
+        Map<String, Object> tokens = new HashMap<>();
+        tokens.put("account", "A");
+
+        assertEquals("{\"accountInfo\":\"A\"}", processor.process(tokens));
+        // Original Input Payload iteration renders the template untouched
+        assertEquals("{\"accountInfo\":{\"accountNumber\":\"1\"}}", processor.process(new HashMap<>()));
+    }
+
+    @Test
+    void testXml_ReplacesElementTextAndEscapes() throws Exception {
+        PayloadProcessor processor = new PayloadProcessor(
+                "<root><acc:AccountNumber xmlns:acc=\"urn:a\">999</acc:AccountNumber><other>z</other></root>",
+                "SOAP");
+
+        Map<String, Object> tokens = new HashMap<>();
+        tokens.put("account", "1<2");
+
+        String payload = processor.process(tokens);
+        assertTrue(payload.contains("<acc:AccountNumber xmlns:acc=\"urn:a\">1&lt;2</acc:AccountNumber>"), payload);
+        assertTrue(payload.contains("<other>z</other>"), payload);
+    }
+
+    @Test
+    void testXml_KeepsPrologNamespacesAndComments() throws Exception {
+        String template = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+                + "<soapenv:Envelope xmlns:soapenv=\"http://schemas.xmlsoap.org/soap/envelope/\">"
+                + "<soapenv:Body><!-- request --><Account id=\"a&amp;b\">1</Account><Empty/></soapenv:Body>"
+                + "</soapenv:Envelope>";
+        PayloadProcessor processor = new PayloadProcessor(template, "SOAP");
+
+        Map<String, Object> tokens = new HashMap<>();
+        tokens.put("account", "2");
+
+        assertEquals(template.replace("\n", "").replace(">1</Account>", ">2</Account>"),
+                processor.process(tokens));
+    }
+
+    @Test
+    void testInvalidTemplate_ReturnsRawContent() throws Exception {
+        PayloadProcessor processor = new PayloadProcessor("not json", "REST");
+
+        Map<String, Object> tokens = new HashMap<>();
+        tokens.put("account", "1");
+
+        assertEquals("not json", processor.process(tokens));
+    }
+}
@@ -0,0 +1,101 @@
+package com.raks.apiurlcomparison;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ResponseComparatorsTest {
+
+    @Test
+    void testDetect_FromLeadingCharacters() {
+        assertEquals(ResponseComparators.JSON, ResponseComparators.detect("\uFEFF  {\"a\":1}", null));
+        assertEquals(ResponseComparators.JSON, ResponseComparators.detect("[1,2]", null));
+        assertEquals(ResponseComparators.XML, ResponseComparators.detect("<?xml version=\"1.0\"?><a/>", null));
+        assertEquals(ResponseComparators.TEXT, ResponseComparators.detect("<!DOCTYPE html><html></html>", null));
+        assertEquals(ResponseComparators.BINARY, ResponseComparators.detect("PK\u0003\u0004data", null));
+        assertEquals(ResponseComparators.FORM, ResponseComparators.detect("a=1&b=two%20words", null));
+        assertEquals(ResponseComparators.TEXT, ResponseComparators.detect("Service Unavailable", null));
+    }
+
+    @Test
+    void testDetect_ContentTypeOnlyWhenBodyIsNotConclusive() {
+        Map<String, String> json = Map.of("content-type", "application/problem+json; charset=UTF-8");
+        assertEquals(ResponseComparators.JSON, ResponseComparators.detect("42", json));
+        // An HTML error page stays text whatever the header claims
+        assertEquals(ResponseComparators.TEXT, ResponseComparators.detect("<html>404</html>", json));
+        assertEquals(ResponseComparators.XML,
+                ResponseComparators.detect("<a/>", Map.of("Content-Type", "application/soap+xml")));
+        assertEquals(ResponseComparators.BINARY,
+                ResponseComparators.detect("abc", Map.of("Content-Type", "application/octet-stream")));
+    }
+
+    @Test
+    void testBinary_OffsetsSizesAndHashesAreOfTheReceivedBytes() throws Exception {
+        // As the Apache transport decodes a body without charset: one char per byte
+        byte[] wire1 = { 'P', 'K', 3, 4, (byte) 0xE9, (byte) 0xFF, 1 };
+        byte[] wire2 = { 'P', 'K', 3, 4, (byte) 0xE9, (byte) 0xFE, 1 };
+        String body1 = new String(wire1, StandardCharsets.ISO_8859_1);
+        String body2 = new String(wire2, StandardCharsets.ISO_8859_1);
+
+        ComparisonResult result = new ComparisonResult();
+        ResponseComparators.forFormat(ResponseComparators.BINARY).compare(result, body1, body2,
+                ComparisonOptions.defaults());
+        assertEquals(ComparisonResult.Status.MISMATCH.name(), result.getStatus());
+        assertEquals(List.of("Binary content differs at byte 5. API 1: 7 bytes, SHA-256 " + sha256(wire1)
+                + ", API 2: 7 bytes, SHA-256 " + sha256(wire2)), result.getDifferences());
+
+        ComparisonResult same = new ComparisonResult();
+        ResponseComparators.forFormat(ResponseComparators.BINARY).compare(same, body1, new String(body1),
+                ComparisonOptions.defaults());
+        assertEquals(ComparisonResult.Status.MATCH.name(), same.getStatus());
+    }
+
+    @Test
+    void testText_ComparedLineByLineAfterTrimming() {
+        ResponseComparator text = ResponseComparators.forFormat(ResponseComparators.TEXT);
+        ComparisonResult trimmed = new ComparisonResult();
+        text.compare(trimmed, "OK\n", "  OK", ComparisonOptions.defaults());
+        assertEquals(ComparisonResult.Status.MATCH.name(), trimmed.getStatus());
+
+        ComparisonResult result = new ComparisonResult();
+        text.compare(result, "a\nb\nc", "a\nB", ComparisonOptions.defaults());
+        assertEquals(ComparisonResult.Status.MISMATCH.name(), result.getStatus());
+        assertEquals(List.of("Text differs at line 2. API 1: b, API 2: B", "Missing line in API 2: line 3"),
+                result.getDifferences());
+    }
+
+    @Test
+    void testServiceLoaderProviderIsRegistered() {
+        // Registered through src/test/resources/META-INF/services
+        assertEquals("csv", ResponseComparators.detect("a,b\n1,2", Map.of("Content-Type", "text/csv")));
+        assertInstanceOf(CsvComparator.class, ResponseComparators.forFormat("csv"));
+    }
+
+    public static class CsvComparator implements ResponseComparator {
+        @Override
+        public String format() {
+            return "csv";
+        }
+
+        @Override
+        public Set<String> mediaTypes() {
+            return Set.of("text/csv");
+        }
+
+        @Override
+        public void compare(ComparisonResult result, String response1, String response2, ComparisonOptions options) {
+            result.setStatus(ComparisonResult.Status.MISMATCH);
+        }
+    }
+
+    private static String sha256(byte[] bytes) throws Exception {
+        return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(bytes));
+    }
+}
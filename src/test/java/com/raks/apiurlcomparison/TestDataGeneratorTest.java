@@ -3,8 +3,11 @@ package com.raks.apiurlcomparison;
 import org.junit.jupiter.api.Test;
 import java.util.Arrays;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -55,4 +58,119 @@ public class TestDataGeneratorTest {
         assertEquals("a1", iterations.get(0).get("A")); // Baseline
         assertEquals("a2", iterations.get(1).get("A")); // Val 2 (a1 skipped)
     }
+
+    @Test
+    void testAllCombinations_IndexOrder() {
+        Map<String, List<Object>> tokens = new LinkedHashMap<>();
+        tokens.put("A", Arrays.asList(1, 2));
+        tokens.put("B", Arrays.asList(3, 4, 5));
+
+        IterationSpace space = TestDataGenerator.iterationSpace(tokens, 100, "ALL_COMBINATIONS");
+
+        // Last token varies fastest
+        assertEquals(Map.of("A", 1, "B", 3), space.get(0));
+        assertEquals(Map.of("A", 1, "B", 5), space.get(2));
+        assertEquals(Map.of("A", 2, "B", 3), space.get(3));
+        assertEquals(Map.of("A", 2, "B", 5), space.get(5));
+    }
+
+    @Test
+    void testAllCombinations_MaxIterationsKeepsCompleteCombinations() {
+        Map<String, List<Object>> tokens = new LinkedHashMap<>();
+        tokens.put("A", Arrays.asList(1, 2));
+        tokens.put("B", Arrays.asList(3, 4, 5));
+
+        List<Map<String, Object>> iterations = TestDataGenerator.generate(tokens, 4, "ALL_COMBINATIONS");
+
+        assertEquals(4, iterations.size());
+        iterations.forEach(m -> assertEquals(2, m.size()));
+    }
+
+    @Test
+    void testAllCombinations_LargeSpaceIsLazy() {
+        Map<String, List<Object>> tokens = new LinkedHashMap<>();
+        List<Object> digits = Arrays.asList(0, 1, 2, 3, 4, 5, 6, 7, 8, 9);
+        for (int i = 0; i < 8; i++) {
+            tokens.put("T" + i, digits);
+        }
+
+        IterationSpace space = TestDataGenerator.iterationSpace(tokens, Integer.MAX_VALUE, "ALL_COMBINATIONS");
+
+        assertEquals(100_000_000, space.size());
+        Map<String, Object> last = space.get(space.size() - 1);
+        tokens.keySet().forEach(name -> assertEquals(9, last.get(name)));
+        // Index range splits cover every iteration exactly once, in order
+        IterationSpace prefix = TestDataGenerator.iterationSpace(tokens, 10_000, "ALL_COMBINATIONS");
+        assertEquals(prefix.asList(), prefix.stream().parallel().collect(Collectors.toList()));
+    }
+
+    @Test
+    void testWithOriginalPayload() {
+        Map<String, List<Object>> tokens = new HashMap<>();
+        tokens.put("A", Arrays.asList("a1", "a2"));
+
+        IterationSpace space = TestDataGenerator.iterationSpace(tokens, 100, "ONE_BY_ONE").withOriginalPayload();
+
+        assertEquals(3, space.size());
+        assertTrue(space.get(0).isEmpty());
+        assertEquals("a1", space.get(1).get("A"));
+    }
+
+    @Test
+    void testPairwise_CoversAllPairs() {
+        Map<String, List<Object>> tokens = new LinkedHashMap<>();
+        for (int i = 0; i < 10; i++) {
+            tokens.put("T" + i, Arrays.asList("a", "b", "c", "d"));
+        }
+
+        List<Map<String, Object>> iterations = TestDataGenerator.generate(tokens, 1000, "PAIRWISE");
+
+        assertTrue(iterations.size() < 40, "rows: " + iterations.size());
+        for (String first : tokens.keySet()) {
+            for (String second : tokens.keySet()) {
+                if (first.compareTo(second) >= 0) {
+                    continue;
+                }
+                long pairs = iterations.stream().map(m -> m.get(first) + "/" + m.get(second)).distinct().count();
+                assertEquals(16, pairs, first + " x " + second);
+            }
+        }
+    }
+
+    @Test
+    void testPairwise_StrengthThree() {
+        Map<String, List<Object>> tokens = new LinkedHashMap<>();
+        for (int i = 0; i < 5; i++) {
+            tokens.put("T" + i, Arrays.asList(0, 1, 2));
+        }
+
+        List<Map<String, Object>> iterations = TestDataGenerator.generate(tokens, 1000, "PAIRWISE", 3);
+
+        assertTrue(iterations.size() < 243, "rows: " + iterations.size());
+        long triples = iterations.stream().map(m -> m.get("T0") + "/" + m.get("T2") + "/" + m.get("T4"))
+                .distinct().count();
+        assertEquals(27, triples);
+        // Strength covering every token is the full Cartesian product
+        assertEquals(243, TestDataGenerator.generate(tokens, 1000, "PAIRWISE", 5).size());
+    }
+
+    @Test
+    void testTokensWithoutValuesAreLeftOut() {
+        Map<String, List<Object>> tokens = new LinkedHashMap<>();
+        tokens.put("A", Arrays.asList("a1", "a2"));
+        tokens.put("B", List.of());
+        tokens.put("C", Arrays.asList("c1", "c2"));
+        tokens.put("D", null);
+
+        for (String strategy : List.of("ALL_COMBINATIONS", "PAIRWISE")) {
+            List<Map<String, Object>> iterations = TestDataGenerator.generate(tokens, 100, strategy);
+            assertEquals(4, iterations.size(), strategy);
+            iterations.forEach(iteration -> assertEquals(Set.of("A", "C"), iteration.keySet(), strategy));
+        }
+
+        // Only tokens without values: one iteration with no substitutions
+        Map<String, List<Object>> empty = new LinkedHashMap<>();
+        empty.put("B", List.of());
+        assertEquals(List.of(Map.of()), TestDataGenerator.generate(empty, 100, "ALL_COMBINATIONS"));
+    }
 }
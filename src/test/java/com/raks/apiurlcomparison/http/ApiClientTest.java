@@ -0,0 +1,122 @@
+package com.raks.apiurlcomparison.http;
+
+import com.raks.apiurlcomparison.Authentication;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ApiClientTest {
+
+    private static final List<String> TRANSPORTS = List.of(ApiClient.TRANSPORT_APACHE, ApiClient.TRANSPORT_HTTP2);
+
+    private HttpServer server;
+    private String baseUrl;
+    private final AtomicInteger tokensIssued = new AtomicInteger();
+
+    @BeforeEach
+    void startServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/echo", exchange -> respond(exchange, 200, "text/plain; charset=UTF-8",
+                exchange.getRequestMethod() + " " + new String(exchange.getRequestBody().readAllBytes(),
+                        StandardCharsets.UTF_8)));
+        server.createContext("/moved", exchange -> {
+            exchange.getResponseHeaders().add("Location", "/echo");
+            respond(exchange, 302, "text/plain; charset=UTF-8", "moved");
+        });
+        server.createContext("/see-other", exchange -> {
+            exchange.getResponseHeaders().add("Location", "/echo");
+            respond(exchange, 303, "text/plain; charset=UTF-8", "see other");
+        });
+        // No charset: read as the MIME type's default, ISO-8859-1 for text/plain
+        server.createContext("/latin1", exchange -> {
+            byte[] body = "café".getBytes(StandardCharsets.ISO_8859_1);
+            exchange.getResponseHeaders().add("Content-Type", "text/plain");
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        server.createContext("/token", exchange -> respond(exchange, 200, "application/json",
+                "{\"access_token\":\"token-" + tokensIssued.incrementAndGet() + "\",\"expires_in\":300}"));
+        // The first token issued is rejected as if it had been revoked
+        server.createContext("/secured", exchange -> {
+            String authorization = exchange.getRequestHeaders().getFirst("Authorization");
+            if ("Bearer token-1".equals(authorization)) {
+                respond(exchange, 401, "text/plain", "rejected");
+            } else {
+                respond(exchange, 200, "text/plain", "accepted " + authorization);
+            }
+        });
+        server.start();
+        baseUrl = "http://localhost:" + server.getAddress().getPort();
+    }
+
+    @AfterEach
+    void stopServer() {
+        server.stop(0);
+    }
+
+    @Test
+    void testTransportsReturnTheSameBodies() throws Exception {
+        for (String transport : TRANSPORTS) {
+            ApiClient client = new ApiClient(null, transport);
+            Map<String, String> headers = Map.of("Content-Type", "application/json");
+
+            assertEquals("POST {\"a\":1}", client.sendRequest(baseUrl + "/echo", "POST", headers, "{\"a\":1}"),
+                    transport);
+            assertEquals("POST {\"a\":1}",
+                    client.sendRequestAsync(baseUrl + "/echo", "POST", headers, "{\"a\":1}").get(), transport);
+            // Temporary redirects are followed for GET, not for POST; 303 turns any method into a GET
+            assertEquals("GET ", client.sendRequest(baseUrl + "/moved", "GET", null, null), transport);
+            assertEquals("moved", client.sendRequest(baseUrl + "/moved", "POST", headers, "{}"), transport);
+            assertEquals("GET ", client.sendRequestAsync(baseUrl + "/see-other", "POST", headers, "{}").get(),
+                    transport);
+            assertEquals("café", client.sendRequest(baseUrl + "/latin1", "GET", null, null), transport);
+        }
+    }
+
+    @Test
+    void testRejectedTokenIsRenewedOnceWithApache() throws Exception {
+        assertRejectedTokenIsRenewedOnce(ApiClient.TRANSPORT_APACHE);
+    }
+
+    @Test
+    void testRejectedTokenIsRenewedOnceWithHttp2() throws Exception {
+        assertRejectedTokenIsRenewedOnce(ApiClient.TRANSPORT_HTTP2);
+    }
+
+    // Each test has its own server, so its token URL is not in the shared token cache yet
+    private void assertRejectedTokenIsRenewedOnce(String transport) throws Exception {
+        Authentication authentication = new Authentication();
+        authentication.setTokenUrl(baseUrl + "/token");
+        authentication.setClientId("client");
+        ApiClient client = new ApiClient(authentication, transport);
+
+        assertEquals("accepted Bearer token-2", client.sendRequest(baseUrl + "/secured", "GET", null, null));
+        assertEquals("accepted Bearer token-2",
+                client.sendRequestAsync(baseUrl + "/secured", "GET", null, null).get());
+        assertEquals(2, tokensIssued.get());
+    }
+
+    private static void respond(HttpExchange exchange, int status, String contentType, String body)
+            throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().add("Content-Type", contentType);
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package com.raks.apiurlcomparison.http;
+
+import com.raks.apiurlcomparison.Authentication;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class OAuthTokenCacheTest {
+
+    private final AtomicInteger fetches = new AtomicInteger();
+
+    // Tokens live five minutes, so no scheduled refresh fires during a test
+    private OAuthTokenCache cache(long fetchMillis) {
+        return new OAuthTokenCache(authentication -> {
+            int n = fetches.incrementAndGet();
+            try {
+                Thread.sleep(fetchMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return new OAuthTokenCache.CachedToken("token-" + n,
+                    System.currentTimeMillis() + TimeUnit.MINUTES.toMillis(5));
+        });
+    }
+
+    private static Authentication authentication() {
+        Authentication authentication = new Authentication();
+        authentication.setTokenUrl("http://localhost/token");
+        authentication.setClientId("client");
+        return authentication;
+    }
+
+    @Test
+    void testConcurrentCallersShareOneFetch() throws Exception {
+        OAuthTokenCache cache = cache(200);
+        Authentication authentication = authentication();
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<String>> tokens = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                tokens.add(executor.submit(() -> cache.getToken(authentication)));
+            }
+            for (Future<String> token : tokens) {
+                assertEquals("token-1", token.get());
+            }
+        } finally {
+            executor.shutdown();
+        }
+        assertEquals(1, fetches.get());
+    }
+
+    @Test
+    void testInvalidateDropsOnlyTheRejectedToken() throws Exception {
+        OAuthTokenCache cache = cache(0);
+        Authentication authentication = authentication();
+        assertEquals("token-1", cache.getToken(authentication));
+
+        cache.invalidate(authentication, "some-older-token");
+        assertEquals("token-1", cache.getToken(authentication));
+
+        cache.invalidate(authentication, "token-1");
+        assertFalse(cache.isRefreshScheduled(authentication));
+        assertEquals("token-2", cache.getToken(authentication));
+        assertEquals(2, fetches.get());
+    }
+
+    @Test
+    void testOnlyTokensInUseAreRefreshedAhead() throws Exception {
+        OAuthTokenCache cache = cache(0);
+        Authentication authentication = authentication();
+        assertEquals("token-1", cache.getToken(authentication));
+        assertTrue(cache.isRefreshScheduled(authentication));
+
+        // Handed out since it was fetched: refreshed
+        cache.refreshAhead(authentication);
+        assertEquals(2, fetches.get());
+        assertTrue(cache.isRefreshScheduled(authentication));
+
+        // Nobody asked for token-2: left to expire, nothing more scheduled
+        cache.refreshAhead(authentication);
+        assertEquals(2, fetches.get());
+        assertFalse(cache.isRefreshScheduled(authentication));
+
+        // Used again: served from the cache and refreshed ahead once more
+        assertEquals("token-2", cache.getToken(authentication));
+        assertEquals(2, fetches.get());
+        assertTrue(cache.isRefreshScheduled(authentication));
+    }
+}